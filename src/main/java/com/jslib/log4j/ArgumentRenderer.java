@@ -0,0 +1,50 @@
+package com.jslib.log4j;
+
+/**
+ * Service provider interface for message argument rendering. A renderer writes argument string representation straight
+ * into message buffer, for both <code>{}</code> placeholders and Java format specifiers; it is the way to log hot domain
+ * types, e.g. identifiers, without <code>toString()</code> allocation.
+ * <p>
+ * Renderers are discovered with Java service loader: implementation class should be listed in
+ * <code>META-INF/services/com.jslib.log4j.ArgumentRenderer</code> and should have a public no-arguments constructor.
+ * Renderer applies to arguments of its type and its subtypes, unless there is a renderer for a more specific type.
+ * Renderer for a type with built-in rendering, e.g. {@link Class} or <code>int[]</code>, replaces built-in renderer.
+ *
+ * <pre>
+ * public final class UserIdRenderer implements ArgumentRenderer&lt;UserId&gt;
+ * {
+ *   public Class&lt;UserId&gt; getType()
+ *   {
+ *     return UserId.class;
+ *   }
+ *
+ *   public void render(StringBuilder builder, UserId userId)
+ *   {
+ *     builder.append("U-").append(userId.value());
+ *   }
+ * }
+ * </pre>
+ * <p>
+ * Renderer is invoked on logging thread or on log4j asynchronous thread, possible concurrently, and should be
+ * stateless. It should not throw exceptions.
+ *
+ * @param <T> rendered argument type.
+ * @author Iulian Rotaru
+ */
+public interface ArgumentRenderer<T>
+{
+  /**
+   * Get the type of arguments handled by this renderer.
+   *
+   * @return rendered argument type.
+   */
+  Class<T> getType();
+
+  /**
+   * Append argument string representation to message buffer.
+   *
+   * @param builder message buffer,
+   * @param argument message argument, not null.
+   */
+  void render(StringBuilder builder, T argument);
+}
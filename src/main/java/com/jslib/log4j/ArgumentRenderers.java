@@ -0,0 +1,354 @@
+package com.jslib.log4j;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Registry of message argument renderers, used by both <code>{}</code> placeholders and Java format specifiers. There
+ * are built-in renderers for next types:
+ * <ul>
+ * <li>{@link Class} is rendered as class canonical name,
+ * <li>{@link Throwable} is rendered as exception message or exception class canonical name if null message,
+ * <li>{@link Thread} is rendered as concatenation of thread name and thread ID,
+ * <li>{@link File} is rendered as file absolute path,
+ * <li>arrays and collections are rendered as first not empty items, 3 by default, see {@link RenderBudget#MAX_ITEMS};
+ * primitive arrays are rendered without reflection and boxing.
+ * </ul>
+ * Additional renderers are loaded with Java service loader, see {@link ArgumentRenderer}. Arguments without renderer
+ * are rendered by their <code>toString()</code>. Note that for <code>{}</code> placeholders built-in renderers replace
+ * argument <code>toString()</code>, e.g. an <code>int[]</code> is rendered as its items, not as
+ * <code>[I@1b6d3586</code>, and a class as its canonical name, without <code>class</code> prefix.
+ * <p>
+ * Renderer for an argument class is resolved once and cached in a {@link ClassValue}, so that dispatch cost does not
+ * depend on the number of registered renderers. Resolution looks for a renderer registered for argument class, then
+ * for its super classes and finally for implemented interfaces, breadth first. Object arrays without a renderer for
+ * their exact type use generic object array renderer.
+ *
+ * @author Iulian Rotaru
+ */
+final class ArgumentRenderers
+{
+  /** Renderer used for arguments without registered renderer; it appends argument <code>toString()</code>. */
+  private static final ArgumentRenderer<Object> DEFAULT = new BuiltinRenderer<>(Object.class, StringBuilder::append);
+
+  /** Registered renderers mapped to their type. After class initialization this map is read only. */
+  private static final Map<Class<?>, ArgumentRenderer<?>> REGISTRY;
+  static {
+    Map<Class<?>, ArgumentRenderer<?>> registry = new HashMap<>();
+
+    register(registry, Class.class, (builder, type) -> builder.append(type.getCanonicalName()));
+    register(registry, Throwable.class, (builder, throwable) -> {
+      String message = throwable.getMessage();
+      builder.append(message != null ? message : throwable.getClass().getCanonicalName());
+    });
+    register(registry, Thread.class, (builder, thread) -> {
+      builder.append(thread.getName());
+      builder.append(':');
+      builder.append(thread.getId());
+    });
+    register(registry, File.class, (builder, file) -> builder.append(file.getAbsolutePath()));
+
+    register(registry, Collection.class, (builder, collection) -> {
+      int start = builder.length();
+      builder.append('[');
+      int itemsCount = 0;
+      for(Object item : collection) {
+        itemsCount = item(builder, start, itemsCount, item);
+        if(itemsCount == -1) {
+          break;
+        }
+      }
+      builder.append(']');
+    });
+    register(registry, Object[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      int itemsCount = 0;
+      for(int i = 0; i < array.length && itemsCount != -1; ++i) {
+        itemsCount = item(builder, start, itemsCount, array[i]);
+      }
+      builder.append(']');
+    });
+
+    register(registry, boolean[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, char[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, byte[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, short[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, int[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, long[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, float[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+    register(registry, double[].class, (builder, array) -> {
+      int start = builder.length();
+      builder.append('[');
+      for(int i = 0; i < array.length && separator(builder, start, i); ++i) {
+        builder.append(array[i]);
+      }
+      builder.append(']');
+    });
+
+    try {
+      for(ArgumentRenderer<?> renderer : ServiceLoader.load(ArgumentRenderer.class)) {
+        registry.put(renderer.getType(), renderer);
+      }
+    }
+    catch(ServiceConfigurationError e) {
+      StatusLogger.getLogger().error("Fail to load message argument renderers: {}", e.getMessage());
+    }
+
+    REGISTRY = Collections.unmodifiableMap(registry);
+  }
+
+  /** Cached renderers resolved for argument classes. */
+  private static final ClassValue<ArgumentRenderer<?>> RENDERERS = new ClassValue<ArgumentRenderer<?>>()
+  {
+    @Override
+    protected ArgumentRenderer<?> computeValue(Class<?> type)
+    {
+      return resolve(type);
+    }
+  };
+
+  /** Prevent default constructor synthesis. */
+  private ArgumentRenderers()
+  {
+  }
+
+  /**
+   * Append argument string representation to string builder, using renderer for argument class. Null argument is
+   * appended as <code>null</code> and primitive argument holder value is appended without boxing.
+   * <p>
+   * Rendered argument is limited to {@link RenderBudget#MAX_ARGUMENT_LENGTH}. Character sequences, including
+   * <code>toString()</code> of arguments without renderer, are copied only up to the budget; built-in renderers for
+   * arrays and collections stop iterating when budget is spent.
+   *
+   * @param builder string builder,
+   * @param argument message argument, possible null.
+   */
+  public static void render(StringBuilder builder, Object argument)
+  {
+    if(argument == null) {
+      builder.append((Object)null);
+      return;
+    }
+    if(argument instanceof PrimitiveArgument) {
+      ((PrimitiveArgument)argument).appendTo(builder);
+      return;
+    }
+
+    ArgumentRenderer<Object> renderer = renderer(argument.getClass());
+    if(renderer == DEFAULT) {
+      RenderBudget.appendArgument(builder, argument instanceof CharSequence ? (CharSequence)argument : argument.toString());
+      return;
+    }
+    int start = builder.length();
+    renderer.render(builder, argument);
+    RenderBudget.truncateArgument(builder, start);
+  }
+
+  /**
+   * Get renderer for argument class or null if argument has no renderer and should be rendered by its
+   * <code>toString()</code>.
+   *
+   * @param argument message argument, possible null.
+   * @return argument renderer or null.
+   */
+  public static ArgumentRenderer<Object> get(Object argument)
+  {
+    if(argument == null) {
+      return null;
+    }
+    ArgumentRenderer<Object> renderer = renderer(argument.getClass());
+    return renderer != DEFAULT ? renderer : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArgumentRenderer<Object> renderer(Class<?> type)
+  {
+    return (ArgumentRenderer<Object>)RENDERERS.get(type);
+  }
+
+  /**
+   * Resolve renderer for a class from registered renderers. Return {@link #DEFAULT} if there is no renderer for class,
+   * its super classes or implemented interfaces.
+   *
+   * @param type argument class.
+   * @return renderer for argument class.
+   */
+  private static ArgumentRenderer<?> resolve(Class<?> type)
+  {
+    if(type.isArray() && !type.getComponentType().isPrimitive()) {
+      ArgumentRenderer<?> renderer = REGISTRY.get(type);
+      return renderer != null ? renderer : REGISTRY.get(Object[].class);
+    }
+
+    Deque<Class<?>> interfaces = new ArrayDeque<>();
+    for(Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+      ArgumentRenderer<?> renderer = REGISTRY.get(superclass);
+      if(renderer != null) {
+        return renderer;
+      }
+      Collections.addAll(interfaces, superclass.getInterfaces());
+    }
+    while(!interfaces.isEmpty()) {
+      Class<?> superinterface = interfaces.removeFirst();
+      ArgumentRenderer<?> renderer = REGISTRY.get(superinterface);
+      if(renderer != null) {
+        return renderer;
+      }
+      Collections.addAll(interfaces, superinterface.getInterfaces());
+    }
+    return DEFAULT;
+  }
+
+  private static <T> void register(Map<Class<?>, ArgumentRenderer<?>> registry, Class<T> type, BiConsumer<StringBuilder, T> renderer)
+  {
+    registry.put(type, new BuiltinRenderer<>(type, renderer));
+  }
+
+  /**
+   * Append array or collection item, if not null and not empty. Item is preceded by comma if it is not the first one.
+   * If there are already {@link RenderBudget#MAX_ITEMS} items append ellipsis instead of item. Returns -1, to stop
+   * iteration, after ellipsis or if argument budget is spent.
+   *
+   * @param builder string builder,
+   * @param start array or collection start position,
+   * @param itemsCount number of items already appended,
+   * @param item array or collection item, possible null.
+   * @return updated items count or -1 to stop iteration.
+   */
+  private static int item(StringBuilder builder, int start, int itemsCount, Object item)
+  {
+    if(item == null) {
+      return itemsCount;
+    }
+    int itemStart = builder.length();
+    if(itemsCount > 0) {
+      builder.append(',');
+    }
+    int valueStart = builder.length();
+    RenderBudget.appendArgument(builder, item instanceof CharSequence ? (CharSequence)item : item.toString());
+    if(builder.length() == valueStart) {
+      builder.setLength(itemStart);
+      return itemsCount;
+    }
+    if(itemsCount == RenderBudget.MAX_ITEMS) {
+      builder.setLength(valueStart);
+      builder.append(RenderBudget.ELLIPSIS);
+      return -1;
+    }
+    return RenderBudget.isArgumentFull(builder, start) ? -1 : itemsCount + 1;
+  }
+
+  /**
+   * Append separator before primitive array item. If item index reached {@link RenderBudget#MAX_ITEMS} append ellipsis
+   * and return false to stop iteration. Also return false if argument budget is spent.
+   *
+   * @param builder string builder,
+   * @param start array start position,
+   * @param index array item index.
+   * @return true if item should be appended.
+   */
+  private static boolean separator(StringBuilder builder, int start, int index)
+  {
+    if(RenderBudget.isArgumentFull(builder, start)) {
+      return false;
+    }
+    if(index > 0) {
+      builder.append(',');
+    }
+    if(index == RenderBudget.MAX_ITEMS) {
+      builder.append(RenderBudget.ELLIPSIS);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Built-in renderer implemented by a function.
+   *
+   * @param <T> rendered argument type.
+   * @author Iulian Rotaru
+   */
+  private static final class BuiltinRenderer<T> implements ArgumentRenderer<T>
+  {
+    private final Class<T> type;
+    private final BiConsumer<StringBuilder, T> renderer;
+
+    BuiltinRenderer(Class<T> type, BiConsumer<StringBuilder, T> renderer)
+    {
+      this.type = type;
+      this.renderer = renderer;
+    }
+
+    @Override
+    public Class<T> getType()
+    {
+      return type;
+    }
+
+    @Override
+    public void render(StringBuilder builder, T argument)
+    {
+      renderer.accept(builder, argument);
+    }
+  }
+}
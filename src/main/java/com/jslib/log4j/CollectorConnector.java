@@ -0,0 +1,213 @@
+package com.jslib.log4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Remote console push mode connection maintenance: non-blocking connection to collector and reconnection, on connection
+ * failure or loss, after a delay doubled on every failed attempt, from initial reconnect delay up to maximum reconnect
+ * delay. Collector host name is resolved on every attempt, so that collector address changes are followed. Connection
+ * attempt not completed in {@link #CONNECT_TIMEOUT} is aborted.
+ * <p>
+ * Connector only establishes connections; established connection is handed to writer, that makes it the collector
+ * console, see {@link RemoteConsoleClient#push(long, long)}, and reports its loss by {@link #backoff(long)}.
+ * <p>
+ * This class is not thread safe; it is used only by remote console I/O thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class CollectorConnector implements Closeable
+{
+  /** Maximum time, in nanoseconds, to wait for collector connection establishment. */
+  private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+  /** Collector unresolved address, resolved on every connection attempt. */
+  private final InetSocketAddress collector;
+
+  /** Initial and maximum delays, in nanoseconds, before reconnecting to collector. */
+  private final long minReconnectDelay;
+  private final long maxReconnectDelay;
+
+  /** Delay, in nanoseconds, before next reconnect attempt, doubled on every failed attempt. */
+  private long reconnectDelay;
+
+  /** Time, in nanoseconds, of next connection attempt; {@link Long#MAX_VALUE} while connecting or connected. */
+  private long reconnectTime = Long.MIN_VALUE;
+
+  /** Collector channel with connection in progress; null if not connecting. */
+  private SocketChannel connecting;
+
+  /** Time, in nanoseconds, when connection in progress was started. */
+  private long connectTime;
+
+  /**
+   * Create connector. First connection attempt is made on first {@link #reconnect(Selector, long)}.
+   *
+   * @param collector collector unresolved address,
+   * @param minReconnectDelay initial reconnect delay, in nanoseconds,
+   * @param maxReconnectDelay maximum reconnect delay, in nanoseconds.
+   */
+  CollectorConnector(InetSocketAddress collector, long minReconnectDelay, long maxReconnectDelay)
+  {
+    this.collector = collector;
+    this.minReconnectDelay = minReconnectDelay;
+    this.maxReconnectDelay = maxReconnectDelay;
+    this.reconnectDelay = minReconnectDelay;
+  }
+
+  InetSocketAddress getCollector()
+  {
+    return collector;
+  }
+
+  /**
+   * Get the time of the next connection event: connection attempt timeout while connecting, next connection attempt
+   * otherwise. I/O thread should not wait on selector beyond it.
+   *
+   * @return next connection event time, in nanoseconds, or {@link Long#MAX_VALUE} if connected.
+   */
+  long getDeadline()
+  {
+    return connecting != null ? connectTime + CONNECT_TIMEOUT : reconnectTime;
+  }
+
+  /**
+   * Abort connection attempt not completed in {@link #CONNECT_TIMEOUT} and start connection attempt when reconnect
+   * time is reached. New connection is registered with selector for connect event.
+   *
+   * @param selector I/O thread selector,
+   * @param now current time, in nanoseconds.
+   * @return selection key of the connection established right away or null.
+   */
+  SelectionKey reconnect(Selector selector, long now)
+  {
+    if(connecting != null && now - connectTime >= CONNECT_TIMEOUT) {
+      debug("Timeout connecting to remote console collector |%s|.", collector);
+      close(connecting);
+      connecting = null;
+      backoff(now);
+    }
+    if(connecting != null || now < reconnectTime) {
+      return null;
+    }
+
+    reconnectTime = Long.MAX_VALUE;
+    connectTime = now;
+    SocketChannel channel = null;
+    try {
+      InetSocketAddress address = new InetSocketAddress(collector.getHostString(), collector.getPort());
+      if(address.isUnresolved()) {
+        throw new UnknownHostException(collector.getHostString());
+      }
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+      connecting = channel;
+      if(channel.connect(address) && finishConnect(key, now)) {
+        return key;
+      }
+    }
+    catch(IOException e) {
+      fail(channel, e, now);
+    }
+    return null;
+  }
+
+  /**
+   * Complete connection in progress. On success selection key interest is switched to read events; on failure next
+   * attempt is scheduled.
+   *
+   * @param key collector channel selection key,
+   * @param now current time, in nanoseconds.
+   * @return true if connection is established.
+   */
+  boolean finishConnect(SelectionKey key, long now)
+  {
+    SocketChannel channel = (SocketChannel)key.channel();
+    try {
+      if(!channel.finishConnect()) {
+        return false;
+      }
+      connecting = null;
+      key.interestOps(SelectionKey.OP_READ);
+      return true;
+    }
+    catch(IOException e) {
+      fail(channel, e, now);
+      return false;
+    }
+  }
+
+  /**
+   * Close failed collector connection and schedule next attempt.
+   *
+   * @param channel collector channel, possible null,
+   * @param cause failure cause,
+   * @param now current time, in nanoseconds.
+   */
+  void fail(SocketChannel channel, IOException cause, long now)
+  {
+    debug("Fail to connect remote console collector |%s|. Root cause: %s", collector, cause);
+    close(channel);
+    connecting = null;
+    backoff(now);
+  }
+
+  /**
+   * Schedule next connection attempt and double reconnect delay, up to maximum reconnect delay.
+   *
+   * @param now current time, in nanoseconds.
+   */
+  void backoff(long now)
+  {
+    reconnectTime = now + reconnectDelay;
+    reconnectDelay = Math.min(2 * reconnectDelay, maxReconnectDelay);
+  }
+
+  /** Reset reconnect delay after collector acknowledged connection. */
+  void reset()
+  {
+    reconnectDelay = minReconnectDelay;
+  }
+
+  /** Abort connection in progress, if any. */
+  @Override
+  public void close()
+  {
+    close(connecting);
+    connecting = null;
+  }
+
+  private static void close(Closeable closeable)
+  {
+    if(closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch(IOException e) {
+        StatusLogger.getLogger().error(e.toString());
+      }
+    }
+  }
+
+  /**
+   * Internal debug message.
+   *
+   * @param message debug message,
+   * @param args optional formatted message arguments.
+   */
+  private static void debug(String message, Object... args)
+  {
+    StatusLogger.getLogger().debug(String.format(message, args));
+  }
+}
@@ -0,0 +1,223 @@
+package com.jslib.log4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Decoder for remote console compact stream, requested by a console with <code>COMPACT</code> command; see
+ * {@link RemoteConsoleWriter}. Decoder keeps stream dictionary and rebuilds every event: level, timestamp, logger name,
+ * thread name and message text. For templated events message text is formatted from dictionary template and received
+ * arguments, with the same rules as {@link LogImpl} messages; for text events message text is layout output.
+ * <p>
+ * A decoder instance should be used for a single console connection and should see all stream bytes, in order.
+ * Sample usage:
+ *
+ * <pre>
+ * CompactDecoder decoder = new CompactDecoder();
+ * ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+ * while(channel.read(input) != -1) {
+ *   input.flip();
+ *   while(decoder.next(input)) {
+ *     display(decoder.getLevel(), decoder.getLoggerName(), decoder.getMessage());
+ *   }
+ *   input.compact();
+ * }
+ * </pre>
+ *
+ * This class is not thread safe.
+ *
+ * @author Iulian Rotaru
+ */
+public final class CompactDecoder
+{
+  /** Dictionary strings, indexed by ID. */
+  private final List<String> dictionary = new ArrayList<>();
+
+  /** Compiled message templates, indexed by dictionary ID, lazily created. */
+  private final List<MessageTemplate> templates = new ArrayList<>();
+
+  /** Buffer for message formatting. */
+  private final StringBuilder builder = new StringBuilder();
+
+  /** Level of the last decoded event. */
+  private Level level;
+
+  /** Timestamp of the last decoded event, milliseconds since epoch. */
+  private long time;
+
+  /** Logger name of the last decoded event. */
+  private String loggerName;
+
+  /** Thread name of the last decoded event. */
+  private String threadName;
+
+  /** Message text of the last decoded event. */
+  private String message;
+
+  /**
+   * Decode frames from input position until an event frame is decoded. Dictionary frames are processed and consumed.
+   * If input has no complete event frame this method returns false and input position is left at the first incomplete
+   * frame; caller should read more bytes and retry.
+   *
+   * @param input compact stream bytes.
+   * @return true if an event was decoded.
+   * @throws IllegalStateException if input is not a valid compact stream.
+   */
+  public boolean next(ByteBuffer input) throws IllegalStateException
+  {
+    for(;;) {
+      int start = input.position();
+      long frameLength = getVarint(input);
+      if(frameLength == -1 || input.remaining() < frameLength) {
+        input.position(start);
+        return false;
+      }
+      int end = input.position() + (int)frameLength;
+      byte type = input.get();
+      switch(type) {
+      case CompactEncoder.DEFINE:
+        int id = (int)getVarint(input);
+        if(id != dictionary.size()) {
+          throw new IllegalStateException("Out of order dictionary ID: " + id);
+        }
+        dictionary.add(getString(input, end));
+        templates.add(null);
+        break;
+
+      case CompactEncoder.RESET:
+        dictionary.clear();
+        templates.clear();
+        break;
+
+      case CompactEncoder.EVENT:
+      case CompactEncoder.TEXT:
+        level = ConsoleRecord.level(input.get());
+        long zigzag = getVarint(input);
+        time += (zigzag >>> 1) ^ -(zigzag & 1);
+        loggerName = entry(getVarint(input));
+        threadName = entry(getVarint(input));
+        message = type == CompactEncoder.EVENT ? format(input, end) : text(input, end);
+        input.position(end);
+        return true;
+
+      default:
+        throw new IllegalStateException("Invalid compact stream frame type: " + type);
+      }
+      input.position(end);
+    }
+  }
+
+  public Level getLevel()
+  {
+    return level;
+  }
+
+  public long getTime()
+  {
+    return time;
+  }
+
+  public String getLoggerName()
+  {
+    return loggerName;
+  }
+
+  public String getThreadName()
+  {
+    return threadName;
+  }
+
+  /**
+   * Get message text of the last decoded event, without line terminator.
+   *
+   * @return message text.
+   */
+  public String getMessage()
+  {
+    return message;
+  }
+
+  /**
+   * Format templated event message from dictionary template and arguments up to frame end.
+   *
+   * @param input frame bytes, positioned on template ID,
+   * @param end frame end index.
+   * @return formatted message.
+   */
+  private String format(ByteBuffer input, int end)
+  {
+    int id = (int)getVarint(input);
+    entry(id);
+    MessageTemplate template = templates.get(id);
+    if(template == null) {
+      template = new MessageTemplate(dictionary.get(id));
+      templates.set(id, template);
+    }
+    List<Object> arguments = new ArrayList<>();
+    while(input.position() < end) {
+      int length = (int)getVarint(input);
+      arguments.add(getString(input, input.position() + length));
+    }
+    builder.setLength(0);
+    template.format(builder, arguments.toArray());
+    RenderBudget.truncateMessage(builder, 0);
+    return builder.toString();
+  }
+
+  /** Get text event message, line terminator removed. */
+  private static String text(ByteBuffer input, int end)
+  {
+    String text = getString(input, end);
+    int length = text.length();
+    if(length > 0 && text.charAt(length - 1) == '\n') {
+      --length;
+      if(length > 0 && text.charAt(length - 1) == '\r') {
+        --length;
+      }
+    }
+    return text.substring(0, length);
+  }
+
+  private String entry(long id)
+  {
+    if(id < 0 || id >= dictionary.size()) {
+      throw new IllegalStateException("Undefined dictionary ID: " + id);
+    }
+    return dictionary.get((int)id);
+  }
+
+  /** Get UTF-8 string from input position to given end index; on return input position is end index. */
+  private static String getString(ByteBuffer input, int end)
+  {
+    byte[] bytes = new byte[end - input.position()];
+    input.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Read unsigned variable length integer, see {@link CompactEncoder}.
+   *
+   * @param input input bytes.
+   * @return integer value or -1 if input ends before integer end.
+   * @throws IllegalStateException if integer is longer than 64 bits.
+   */
+  private static long getVarint(ByteBuffer input) throws IllegalStateException
+  {
+    long value = 0;
+    for(int shift = 0; input.hasRemaining(); shift += 7) {
+      if(shift > 63) {
+        throw new IllegalStateException("Invalid compact stream integer.");
+      }
+      byte b = input.get();
+      value |= (long)(b & 0x7F) << shift;
+      if(b >= 0) {
+        return value;
+      }
+    }
+    return -1;
+  }
+}
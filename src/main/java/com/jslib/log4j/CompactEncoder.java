@@ -0,0 +1,306 @@
+package com.jslib.log4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Remote console compact stream encoder, owned by a console connection. Compact stream sends every distinct logger
+ * name, thread name and message template only once, as a dictionary definition with a numeric ID; subsequent events
+ * carry only dictionary IDs, a delta encoded timestamp and rendered message arguments. Messages are rebuilt by
+ * {@link CompactDecoder}.
+ * <p>
+ * Compact stream is a sequence of frames. Every frame starts with frame length, not including length itself, followed
+ * by frame type and payload. Lengths, IDs and timestamp deltas are unsigned variable length integers, 7 bits per byte,
+ * least significant group first and high bit set on all bytes but last; timestamp deltas are zigzag encoded so that
+ * small negative values are small too. Frame types are:
+ * <ul>
+ * <li>{@link #DEFINE} - ID followed by UTF-8 string up to frame end; IDs are assigned in order, starting with 0,
+ * <li>{@link #EVENT} - level code, timestamp delta, logger, thread and template IDs followed by message arguments up to
+ * frame end, every argument with its length,
+ * <li>{@link #TEXT} - level code, timestamp delta, logger and thread IDs followed by message text up to frame end, used
+ * for records without message template, see {@link ConsoleRecord},
+ * <li>{@link #RESET} - no payload; dictionary is cleared and IDs restart from 0.
+ * </ul>
+ * Timestamp delta is the difference from previous event or text frame timestamp, milliseconds; first delta is from
+ * epoch. Dictionary is bounded to {@link #MAX_ENTRIES} entries and {@link #MAX_BYTES} bytes; when full it is reset,
+ * so that dynamic templates, e.g. built by string concatenation, do not grow it indefinitely.
+ * <p>
+ * Records are encoded all or nothing: if there is no room for all frames of a record target buffer and dictionary are
+ * not changed. This class is not thread safe; it is used only by remote console I/O thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class CompactEncoder
+{
+  /** Dictionary definition frame type. */
+  static final byte DEFINE = 0;
+
+  /** Templated event frame type. */
+  static final byte EVENT = 1;
+
+  /** Text event frame type. */
+  static final byte TEXT = 2;
+
+  /** Dictionary reset frame type. */
+  static final byte RESET = 3;
+
+  /** Maximum number of dictionary entries. */
+  static final int MAX_ENTRIES = 4096;
+
+  /** Maximum size, in bytes, of dictionary strings. */
+  static final int MAX_BYTES = 256 * 1024;
+
+  /** Upper bound of frame length, type, level, timestamp delta and IDs encoded size. */
+  private static final int MAX_OVERHEAD = 32;
+
+  /** Hash table size, power of 2 and at least twice the maximum number of entries. */
+  private static final int TABLE_SIZE = 2 * MAX_ENTRIES;
+
+  /** Open addressing hash table with dictionary IDs plus one; zero marks an empty slot. */
+  private final int[] table = new int[TABLE_SIZE];
+
+  /** Dictionary strings offset on {@link #bytes}, indexed by ID. */
+  private final int[] offsets = new int[MAX_ENTRIES];
+
+  /** Dictionary strings length, indexed by ID. */
+  private final int[] lengths = new int[MAX_ENTRIES];
+
+  /** UTF-8 encoded dictionary strings. */
+  private final byte[] bytes = new byte[MAX_BYTES];
+
+  /** The number of dictionary entries. */
+  private int count;
+
+  /** Used dictionary bytes. */
+  private int used;
+
+  /** Timestamp of the last encoded event. */
+  private long time;
+
+  /** Dictionary IDs of logger name, thread name and message template for the record being encoded. */
+  private final int[] ids = new int[3];
+
+  /**
+   * Get the upper bound of the encoded size of a record, dictionary definitions included.
+   *
+   * @param record record bytes, see {@link ConsoleRecord}.
+   * @return maximum encoded size, in bytes.
+   */
+  static int maxLength(ByteBuffer record)
+  {
+    // every header byte is encoded at most twice: as dictionary definition and, for arguments, with a length prefix
+    return 2 * record.remaining() + 4 * MAX_OVERHEAD;
+  }
+
+  /**
+   * Encode record, from its position to limit, at target position. Record position is not changed.
+   *
+   * @param record record bytes, see {@link ConsoleRecord},
+   * @param target target buffer,
+   * @param reserve target bytes that encoded record should not use.
+   * @return false if there is no room for encoded record.
+   */
+  public boolean encode(ByteBuffer record, ByteBuffer target, int reserve)
+  {
+    int templateLength = ConsoleRecord.getFieldLength(record, ConsoleRecord.TEMPLATE);
+    int fieldsCount = templateLength > 0 ? 3 : 2;
+
+    // upper bound of required room; all or nothing, target and dictionary are changed only if record fits
+    // every argument length prefix is at most two bytes, that is, one more than its NUL terminator
+    int required = MAX_OVERHEAD + record.remaining() + ConsoleRecord.getFieldLength(record, ConsoleRecord.ARGUMENTS);
+    int missingBytes = 0;
+    int missingCount = 0;
+    for(int field = 0; field < fieldsCount; ++field) {
+      int start = ConsoleRecord.getFieldStart(record, dictionaryField(field));
+      int length = ConsoleRecord.getFieldLength(record, dictionaryField(field));
+      if(find(record, start, length) == -1) {
+        missingBytes += length;
+        ++missingCount;
+        required += MAX_OVERHEAD + length;
+      }
+    }
+    boolean reset = count + missingCount > MAX_ENTRIES || used + missingBytes > MAX_BYTES;
+    if(reset) {
+      required = maxLength(record);
+    }
+    if(target.remaining() - reserve < required) {
+      return false;
+    }
+
+    if(reset) {
+      clear();
+      target.put((byte)1).put(RESET);
+    }
+    for(int field = 0; field < fieldsCount; ++field) {
+      ids[field] = define(record, dictionaryField(field), target);
+    }
+
+    long delta = ConsoleRecord.getTime(record) - time;
+    time = ConsoleRecord.getTime(record);
+    long zigzag = (delta << 1) ^ (delta >> 63);
+
+    int headerLength = 2 + varintLength(zigzag) + varintLength(ids[0]) + varintLength(ids[1]);
+    if(templateLength == 0) {
+      int textStart = ConsoleRecord.getTextStart(record);
+      int textLength = record.limit() - textStart;
+      putVarint(target, headerLength + textLength);
+      target.put(TEXT).put((byte)ConsoleRecord.getLevel(record));
+      putVarint(target, zigzag);
+      putVarint(target, ids[0]);
+      putVarint(target, ids[1]);
+      copy(record, textStart, textLength, target);
+      return true;
+    }
+
+    int argumentsStart = ConsoleRecord.getFieldStart(record, ConsoleRecord.ARGUMENTS);
+    int argumentsEnd = argumentsStart + ConsoleRecord.getFieldLength(record, ConsoleRecord.ARGUMENTS);
+    int frameLength = headerLength + varintLength(ids[2]);
+    for(int start = argumentsStart, end; start < argumentsEnd; start = end + 1) {
+      end = argumentEnd(record, start, argumentsEnd);
+      frameLength += varintLength(end - start) + end - start;
+    }
+    putVarint(target, frameLength);
+    target.put(EVENT).put((byte)ConsoleRecord.getLevel(record));
+    putVarint(target, zigzag);
+    putVarint(target, ids[0]);
+    putVarint(target, ids[1]);
+    putVarint(target, ids[2]);
+    for(int start = argumentsStart, end; start < argumentsEnd; start = end + 1) {
+      end = argumentEnd(record, start, argumentsEnd);
+      putVarint(target, end - start);
+      copy(record, start, end - start, target);
+    }
+    return true;
+  }
+
+  /**
+   * Get record field index for dictionary encoded field index: logger name, thread name and message template, in this
+   * order.
+   */
+  private static int dictionaryField(int field)
+  {
+    return field < 2 ? field : ConsoleRecord.TEMPLATE;
+  }
+
+  /** Get the end index of argument starting at given index, that is, the index of its NUL terminator. */
+  private static int argumentEnd(ByteBuffer record, int start, int end)
+  {
+    while(start < end && record.get(start) != 0) {
+      ++start;
+    }
+    return start;
+  }
+
+  /**
+   * Get dictionary ID of a record field, writing a definition frame if field is not already in dictionary. Caller
+   * should ensure dictionary has room for field.
+   *
+   * @param record record bytes,
+   * @param field record field index,
+   * @param target target buffer.
+   * @return dictionary ID.
+   */
+  private int define(ByteBuffer record, int field, ByteBuffer target)
+  {
+    int start = ConsoleRecord.getFieldStart(record, field);
+    int length = ConsoleRecord.getFieldLength(record, field);
+    int id = find(record, start, length);
+    if(id != -1) {
+      return id;
+    }
+
+    id = count++;
+    offsets[id] = used;
+    lengths[id] = length;
+    for(int i = 0; i < length; ++i) {
+      bytes[used++] = record.get(start + i);
+    }
+    int slot = hash(record, start, length) & (TABLE_SIZE - 1);
+    while(table[slot] != 0) {
+      slot = (slot + 1) & (TABLE_SIZE - 1);
+    }
+    table[slot] = id + 1;
+
+    putVarint(target, 1 + varintLength(id) + length);
+    target.put(DEFINE);
+    putVarint(target, id);
+    copy(record, start, length, target);
+    return id;
+  }
+
+  /**
+   * Find dictionary ID of given record bytes.
+   *
+   * @param record record bytes,
+   * @param start bytes start index,
+   * @param length bytes length.
+   * @return dictionary ID or -1 if bytes are not in dictionary.
+   */
+  private int find(ByteBuffer record, int start, int length)
+  {
+    for(int slot = hash(record, start, length) & (TABLE_SIZE - 1); table[slot] != 0; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+      int id = table[slot] - 1;
+      if(equals(record, start, length, id)) {
+        return id;
+      }
+    }
+    return -1;
+  }
+
+  private boolean equals(ByteBuffer record, int start, int length, int id)
+  {
+    if(lengths[id] != length) {
+      return false;
+    }
+    for(int i = 0, offset = offsets[id]; i < length; ++i) {
+      if(record.get(start + i) != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(ByteBuffer record, int start, int length)
+  {
+    int hash = length;
+    for(int i = 0; i < length; ++i) {
+      hash = 31 * hash + record.get(start + i);
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private void clear()
+  {
+    Arrays.fill(table, 0);
+    count = 0;
+    used = 0;
+  }
+
+  /** Copy source bytes range to target; source position and limit are restored. */
+  private static void copy(ByteBuffer source, int start, int length, ByteBuffer target)
+  {
+    int position = source.position();
+    int limit = source.limit();
+    source.limit(start + length).position(start);
+    target.put(source);
+    source.limit(limit).position(position);
+  }
+
+  static int varintLength(long value)
+  {
+    int length = 1;
+    while((value >>>= 7) != 0) {
+      ++length;
+    }
+    return length;
+  }
+
+  static void putVarint(ByteBuffer target, long value)
+  {
+    while((value & ~0x7FL) != 0) {
+      target.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    target.put((byte)value);
+  }
+}
@@ -0,0 +1,116 @@
+package com.jslib.log4j;
+
+/**
+ * Compression statistics of a remote console connection using deflate compression, see {@link RemoteConsoleWriter}.
+ * Statistics are updated by remote console I/O thread after every compressed batch and can be read from any thread.
+ *
+ * @author Iulian Rotaru
+ */
+public final class CompressionStats
+{
+  /** Remote console address. */
+  private final String address;
+
+  /** The number of bytes given to compressor. */
+  private volatile long uncompressedBytes;
+
+  /** The number of bytes produced by compressor. */
+  private volatile long compressedBytes;
+
+  /** The number of compressed batches, that is, sync flushes. */
+  private volatile long batchesCount;
+
+  /** Time, in nanoseconds, spent by I/O thread compressing. */
+  private volatile long compressionTime;
+
+  CompressionStats(String address)
+  {
+    this.address = address;
+  }
+
+  /**
+   * Add statistics of another connection to this one, used to aggregate statistics of all compressed connections.
+   *
+   * @param stats connection statistics.
+   */
+  void add(CompressionStats stats)
+  {
+    uncompressedBytes += stats.uncompressedBytes;
+    compressedBytes += stats.compressedBytes;
+    compressionTime += stats.compressionTime;
+    batchesCount += stats.batchesCount;
+  }
+
+  /**
+   * Account a compressed batch. Invoked only by remote console I/O thread.
+   *
+   * @param uncompressedLength batch length before compression,
+   * @param compressedLength batch length after compression,
+   * @param time compression time, in nanoseconds.
+   */
+  void update(int uncompressedLength, int compressedLength, long time)
+  {
+    uncompressedBytes += uncompressedLength;
+    compressedBytes += compressedLength;
+    compressionTime += time;
+    ++batchesCount;
+  }
+
+  public String getAddress()
+  {
+    return address;
+  }
+
+  public long getUncompressedBytes()
+  {
+    return uncompressedBytes;
+  }
+
+  public long getCompressedBytes()
+  {
+    return compressedBytes;
+  }
+
+  public long getBatchesCount()
+  {
+    return batchesCount;
+  }
+
+  /**
+   * Get total time spent by I/O thread compressing this console stream.
+   *
+   * @return compression time, in nanoseconds.
+   */
+  public long getCompressionTime()
+  {
+    return compressionTime;
+  }
+
+  /**
+   * Get compression ratio, that is, uncompressed bytes divided by compressed bytes.
+   *
+   * @return compression ratio or 0 if nothing was compressed yet.
+   */
+  public double getRatio()
+  {
+    long compressedBytes = this.compressedBytes;
+    return compressedBytes > 0 ? (double)uncompressedBytes / compressedBytes : 0;
+  }
+
+  /**
+   * Get compression CPU cost, that is, compression time for every uncompressed megabyte.
+   *
+   * @return compression time, in nanoseconds, per megabyte or 0 if nothing was compressed yet.
+   */
+  public long getCostPerMegabyte()
+  {
+    long uncompressedBytes = this.uncompressedBytes;
+    return uncompressedBytes > 0 ? compressionTime * 1024 * 1024 / uncompressedBytes : 0;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s: %d bytes compressed to %d, ratio %.2f, %d ns/MB", address, uncompressedBytes, compressedBytes, getRatio(), getCostPerMegabyte());
+  }
+}
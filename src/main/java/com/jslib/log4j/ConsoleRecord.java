@@ -0,0 +1,252 @@
+package com.jslib.log4j;
+
+import java.nio.ByteBuffer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.spi.StandardLevel;
+
+/**
+ * Layout of remote console records stored on messages {@link RingBuffer}. A record starts with a header followed by
+ * message text, encoded and with CRLF line terminators. Header has a fixed part:
+ * <ul>
+ * <li>level code - one byte, see {@link #code(Level)},
+ * <li>timestamp - eight bytes, milliseconds since epoch,
+ * <li>fields length - an unsigned short for every variable field, in fields order,
+ * </ul>
+ * followed by variable fields, UTF-8 encoded: {@link #LOGGER logger name}, {@link #THREAD thread name},
+ * {@link #CONTEXT context data}, {@link #TEMPLATE message template} and {@link #ARGUMENTS message arguments}. Context
+ * data is a sequence of <code>key=value</code> entries, every entry ended by line feed. Fields are truncated to
+ * {@link #MAX_FIELD_LENGTH} characters, context data to {@link #MAX_CONTEXT_LENGTH} characters.
+ * <p>
+ * Message template and arguments are optional and are used by remote console compact stream, see
+ * {@link CompactEncoder}. Arguments field is the sequence of rendered arguments, every argument ended by a NUL
+ * character. Template and arguments are never truncated: publisher leaves both fields empty if any of them exceeds
+ * {@link #MAX_TEMPLATE_LENGTH} characters.
+ * <p>
+ * Level code is the ordinal of the standard level closest to record level, so that custom levels are accounted to a
+ * standard level. Records without a level, e.g. text written with writer methods, use {@link Level#INFO}. Timestamp is
+ * event time or, for text written with writer methods, the time line was published.
+ * <p>
+ * Record layout is also the payload of framed remote console protocol frames, see {@link RemoteConsoleWriter}.
+ *
+ * @author Iulian Rotaru
+ */
+final class ConsoleRecord
+{
+  /** Level code offset. */
+  static final int LEVEL_OFFSET = 0;
+
+  /** Timestamp offset. */
+  static final int TIME_OFFSET = 1;
+
+  /** Offset of variable fields length. */
+  static final int LENGTHS_OFFSET = 9;
+
+  /** Logger name field index. */
+  static final int LOGGER = 0;
+
+  /** Thread name field index. */
+  static final int THREAD = 1;
+
+  /** Context data field index. */
+  static final int CONTEXT = 2;
+
+  /** Message template field index. */
+  static final int TEMPLATE = 3;
+
+  /** Message arguments field index. */
+  static final int ARGUMENTS = 4;
+
+  /** The number of variable fields. */
+  static final int FIELDS_COUNT = 5;
+
+  /** Length of header fixed part; variable fields start at this offset. */
+  static final int FIXED_LENGTH = LENGTHS_OFFSET + 2 * FIELDS_COUNT;
+
+  /** Maximum length, in characters, of logger and thread name fields. */
+  static final int MAX_FIELD_LENGTH = 256;
+
+  /** Maximum length, in characters, of context data field. */
+  static final int MAX_CONTEXT_LENGTH = 1024;
+
+  /** Maximum length, in characters, of message template and arguments fields. */
+  static final int MAX_TEMPLATE_LENGTH = 1024;
+
+  /** The number of level codes. */
+  static final int LEVELS_COUNT = StandardLevel.values().length;
+
+  /** Level code used for records without a level. */
+  static final byte DEFAULT_LEVEL = code(Level.INFO);
+
+  /** Standard levels indexed by level code. */
+  private static final Level[] LEVELS = new Level[LEVELS_COUNT];
+  static {
+    for(StandardLevel level : StandardLevel.values()) {
+      LEVELS[level.ordinal()] = Level.toLevel(level.name());
+    }
+  }
+
+  /** Prevent default constructor synthesis. */
+  private ConsoleRecord()
+  {
+  }
+
+  /**
+   * Get level code, that is the ordinal of the closest standard level. Lower code means more severe level.
+   *
+   * @param level logging level.
+   * @return level code.
+   */
+  public static byte code(Level level)
+  {
+    return (byte)StandardLevel.getStandardLevel(level.intLevel()).ordinal();
+  }
+
+  /**
+   * Get standard level for level code.
+   *
+   * @param code level code.
+   * @return standard level.
+   */
+  public static Level level(int code)
+  {
+    return LEVELS[code];
+  }
+
+  /**
+   * Get header length for given variable fields, without message template and arguments.
+   *
+   * @param logger logger name,
+   * @param thread thread name,
+   * @param context context data.
+   * @return header length, in bytes.
+   */
+  public static int headerLength(CharSequence logger, CharSequence thread, CharSequence context)
+  {
+    return headerLength(logger, thread, context, "", "");
+  }
+
+  /**
+   * Get header length for given variable fields, truncated as described by class description.
+   *
+   * @param logger logger name,
+   * @param thread thread name,
+   * @param context context data,
+   * @param template message template,
+   * @param arguments message arguments.
+   * @return header length, in bytes.
+   */
+  public static int headerLength(CharSequence logger, CharSequence thread, CharSequence context, CharSequence template, CharSequence arguments)
+  {
+    return FIXED_LENGTH + fieldLength(logger, MAX_FIELD_LENGTH) + fieldLength(thread, MAX_FIELD_LENGTH) + fieldLength(context, MAX_CONTEXT_LENGTH) //
+        + fieldLength(template, MAX_TEMPLATE_LENGTH) + fieldLength(arguments, MAX_TEMPLATE_LENGTH);
+  }
+
+  /**
+   * Write record header at target position, without message template and arguments.
+   *
+   * @param target record buffer,
+   * @param level level code,
+   * @param time record timestamp, milliseconds since epoch,
+   * @param logger logger name,
+   * @param thread thread name,
+   * @param context context data.
+   */
+  public static void putHeader(ByteBuffer target, byte level, long time, CharSequence logger, CharSequence thread, CharSequence context)
+  {
+    putHeader(target, level, time, logger, thread, context, "", "");
+  }
+
+  /**
+   * Write record header at target position.
+   *
+   * @param target record buffer,
+   * @param level level code,
+   * @param time record timestamp, milliseconds since epoch,
+   * @param logger logger name,
+   * @param thread thread name,
+   * @param context context data,
+   * @param template message template,
+   * @param arguments message arguments.
+   */
+  public static void putHeader(ByteBuffer target, byte level, long time, CharSequence logger, CharSequence thread, CharSequence context, CharSequence template, CharSequence arguments)
+  {
+    target.put(level).putLong(time);
+    target.putShort((short)fieldLength(logger, MAX_FIELD_LENGTH));
+    target.putShort((short)fieldLength(thread, MAX_FIELD_LENGTH));
+    target.putShort((short)fieldLength(context, MAX_CONTEXT_LENGTH));
+    target.putShort((short)fieldLength(template, MAX_TEMPLATE_LENGTH));
+    target.putShort((short)fieldLength(arguments, MAX_TEMPLATE_LENGTH));
+    Utf8.encode(logger, 0, Math.min(logger.length(), MAX_FIELD_LENGTH), target);
+    Utf8.encode(thread, 0, Math.min(thread.length(), MAX_FIELD_LENGTH), target);
+    Utf8.encode(context, 0, Math.min(context.length(), MAX_CONTEXT_LENGTH), target);
+    Utf8.encode(template, 0, Math.min(template.length(), MAX_TEMPLATE_LENGTH), target);
+    Utf8.encode(arguments, 0, Math.min(arguments.length(), MAX_TEMPLATE_LENGTH), target);
+  }
+
+  private static int fieldLength(CharSequence field, int maxLength)
+  {
+    return Utf8.length(field, 0, Math.min(field.length(), maxLength));
+  }
+
+  /**
+   * Get level code of record starting at buffer position. Buffer position is not changed.
+   *
+   * @param record record buffer.
+   * @return record level code.
+   */
+  public static int getLevel(ByteBuffer record)
+  {
+    return record.get(record.position() + LEVEL_OFFSET);
+  }
+
+  /**
+   * Get timestamp of record starting at buffer position. Buffer position is not changed.
+   *
+   * @param record record buffer.
+   * @return record timestamp, milliseconds since epoch.
+   */
+  public static long getTime(ByteBuffer record)
+  {
+    return record.getLong(record.position() + TIME_OFFSET);
+  }
+
+  /**
+   * Get the length, in bytes, of a variable field of record starting at buffer position.
+   *
+   * @param record record buffer,
+   * @param field field index, from {@link #LOGGER} to {@link #ARGUMENTS}.
+   * @return field length.
+   */
+  public static int getFieldLength(ByteBuffer record, int field)
+  {
+    return record.getShort(record.position() + LENGTHS_OFFSET + 2 * field) & 0xFFFF;
+  }
+
+  /**
+   * Get buffer index of a variable field of record starting at buffer position.
+   *
+   * @param record record buffer,
+   * @param field field index, from {@link #LOGGER} to {@link #ARGUMENTS}.
+   * @return field start index.
+   */
+  public static int getFieldStart(ByteBuffer record, int field)
+  {
+    int start = record.position() + FIXED_LENGTH;
+    for(int i = 0; i < field; ++i) {
+      start += getFieldLength(record, i);
+    }
+    return start;
+  }
+
+  /**
+   * Get buffer index of message text of record starting at buffer position.
+   *
+   * @param record record buffer.
+   * @return message text start index.
+   */
+  public static int getTextStart(ByteBuffer record)
+  {
+    return getFieldStart(record, FIELDS_COUNT);
+  }
+}
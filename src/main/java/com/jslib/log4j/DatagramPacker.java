@@ -0,0 +1,193 @@
+package com.jslib.log4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remote console datagram mode sender: packs records into UDP packets and sends them to datagram target, with no
+ * connection state. Packet starts with writer session and packet sequence number, both 8 bytes, followed by records,
+ * every record prefixed by its length as 2 bytes unsigned integer; records have {@link ConsoleRecord} layout. Sequence
+ * numbers are contiguous, starting with 0, so that receiver detects lost packets, see {@link DatagramReceiver}.
+ * <p>
+ * A record larger than packet payload is sent in a packet of its own, possible fragmented by IP; a record larger than
+ * {@link #MAX_PACKET_SIZE} is dropped. Datagram channel is non-blocking and not connected: if socket send buffer is
+ * full packet is dropped and its records counted as dropped, so that I/O thread never waits for a slow or absent
+ * receiver.
+ * <p>
+ * This class is not thread safe; it is used only by remote console I/O thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class DatagramPacker implements Closeable
+{
+  /** Packet header size: writer session and packet sequence number. */
+  static final int PACKET_HEADER_SIZE = 16;
+
+  /** Size of record length prefix in packet. */
+  static final int PACKET_RECORD_LENGTH_SIZE = 2;
+
+  /** Maximum UDP payload size, in bytes. */
+  static final int MAX_PACKET_SIZE = 65507;
+
+  /** Minimum packet size, in bytes. */
+  private static final int MIN_PACKET_SIZE = 512;
+
+  /** Datagram target address, resolved. */
+  private final InetSocketAddress target;
+
+  /** Non-blocking datagram channel. */
+  private final DatagramChannel channel;
+
+  /** Random number identifying writer instance, sent on every packet header. */
+  private final long session;
+
+  /** Writer dropped messages counters, per level code, updated for records of packets not sent. */
+  private final LongAdder[] droppedCounts;
+
+  /** Packet being filled. */
+  private final ByteBuffer packet;
+
+  /** Reusable packet for records larger than packet payload, lazily created. */
+  private ByteBuffer largePacket;
+
+  /** Sequence number of the next packet. */
+  private long sequence;
+
+  /** Time, in nanoseconds, when the first record was packed on current packet. */
+  private long packetTime;
+
+  /** The number of records packed on current packet, per level code, accounted as dropped if packet send fails. */
+  private final int[] packetCounts = new int[ConsoleRecord.LEVELS_COUNT];
+
+  /**
+   * Open datagram channel. Packet size is limited to [{@link #MIN_PACKET_SIZE}, {@link #MAX_PACKET_SIZE}] range.
+   *
+   * @param target datagram target address, resolved,
+   * @param packetSize packet size, in bytes,
+   * @param sendBufferSize socket send buffer size, in bytes, or 0 for system default,
+   * @param session writer session,
+   * @param droppedCounts writer dropped messages counters, per level code.
+   * @throws IOException if datagram channel cannot be opened.
+   */
+  DatagramPacker(InetSocketAddress target, int packetSize, int sendBufferSize, long session, LongAdder[] droppedCounts) throws IOException
+  {
+    this.target = target;
+    this.session = session;
+    this.droppedCounts = droppedCounts;
+    this.packet = ByteBuffer.allocate(Math.max(MIN_PACKET_SIZE, Math.min(packetSize, MAX_PACKET_SIZE)));
+    this.channel = DatagramChannel.open();
+    try {
+      channel.configureBlocking(false);
+      if(sendBufferSize > 0) {
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+      }
+    }
+    catch(IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  InetSocketAddress getTarget()
+  {
+    return target;
+  }
+
+  /**
+   * Append record to current packet, sending current packet first if there is no room for record. Record larger than
+   * packet payload is sent in a packet of its own and record larger than {@link #MAX_PACKET_SIZE} is dropped. Record
+   * position is not changed.
+   *
+   * @param record encoded message,
+   * @param now current time, in nanoseconds.
+   */
+  void pack(ByteBuffer record, long now)
+  {
+    int level = ConsoleRecord.getLevel(record);
+    int length = PACKET_RECORD_LENGTH_SIZE + record.remaining();
+    if(PACKET_HEADER_SIZE + length > MAX_PACKET_SIZE) {
+      droppedCounts[level].increment();
+      return;
+    }
+    if(packet.position() > 0 && packet.remaining() < length) {
+      send(packet);
+    }
+    ByteBuffer target = packet;
+    if(PACKET_HEADER_SIZE + length > packet.capacity()) {
+      if(largePacket == null) {
+        largePacket = ByteBuffer.allocate(MAX_PACKET_SIZE);
+      }
+      target = largePacket;
+    }
+    if(target.position() == 0) {
+      target.position(PACKET_HEADER_SIZE);
+      packetTime = now;
+    }
+    int position = record.position();
+    target.putShort((short)record.remaining());
+    target.put(record);
+    record.position(position);
+    ++packetCounts[level];
+    if(target == largePacket) {
+      send(largePacket);
+    }
+  }
+
+  /**
+   * Send partial packet if forced or if its oldest record waited linger time.
+   *
+   * @param force send partial packet regardless of linger time,
+   * @param now current time, in nanoseconds,
+   * @param lingerTime maximum time, in nanoseconds, a record waits for packet completion.
+   * @return linger time expiration of partial packet not sent or {@link Long#MAX_VALUE}.
+   */
+  long flush(boolean force, long now, long lingerTime)
+  {
+    if(packet.position() == 0) {
+      return Long.MAX_VALUE;
+    }
+    if(force || now - packetTime >= lingerTime) {
+      send(packet);
+      return Long.MAX_VALUE;
+    }
+    return packetTime + lingerTime;
+  }
+
+  /**
+   * Send packet, without blocking, and clear it for reuse. If socket does not accept packet, its records are counted
+   * as dropped.
+   *
+   * @param target packet, in fill mode, with records after header.
+   */
+  private void send(ByteBuffer target)
+  {
+    target.putLong(0, session);
+    target.putLong(8, sequence++);
+    target.flip();
+    int sent;
+    try {
+      sent = channel.send(target, this.target);
+    }
+    catch(IOException e) {
+      sent = 0;
+    }
+    for(int i = 0; i < packetCounts.length; ++i) {
+      if(sent == 0 && packetCounts[i] > 0) {
+        droppedCounts[i].add(packetCounts[i]);
+      }
+      packetCounts[i] = 0;
+    }
+    target.clear();
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    channel.close();
+  }
+}
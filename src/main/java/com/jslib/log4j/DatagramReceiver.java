@@ -0,0 +1,210 @@
+package com.jslib.log4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Receiver for remote console datagram mode, see {@link RemoteConsoleWriter}. Receiver binds a UDP port, unpacks
+ * records from every received packet and writes their text to an output stream, in arrival order. Packets sequence
+ * numbers are tracked per writer session: when sequence numbers are skipped a marker line is written, e.g.
+ * <code>[remote console] 3 packets lost</code>, and lost packets are counted, see {@link #getLostCount()}. A packet
+ * arriving out of order is written when received and is no longer counted as lost. A new writer session restarts
+ * sequence tracking.
+ * <p>
+ * Receiver runs a daemon thread, started by constructor, and is intended for debugging sessions; it can be started
+ * standalone too, see {@link #main(String...)}.
+ *
+ * @author Iulian Rotaru
+ */
+public class DatagramReceiver implements Runnable, Closeable
+{
+  /** Prefix for lost packets marker line. */
+  private static final String MARKER = "[remote console] ";
+
+  /** I/O thread stop timeout. */
+  private static final int SHUTDOWN_TIMEOUT = 2000;
+
+  private final DatagramChannel channel;
+  private final OutputStream output;
+  private final Thread thread;
+
+  /** Received packet. */
+  private final ByteBuffer packet = ByteBuffer.allocate(DatagramPacker.MAX_PACKET_SIZE);
+
+  /** Current writer session; -1 before first packet. */
+  private long session = -1;
+
+  /** Sequence number expected for next packet of current session. */
+  private long expectedSequence;
+
+  /** The number of received packets. */
+  private volatile long packetsCount;
+
+  /** The number of lost packets. */
+  private volatile long lostCount;
+
+  /**
+   * Create receiver bound to given port and start receiver thread.
+   *
+   * @param port UDP port, 0 for an ephemeral port, see {@link #getPort()},
+   * @param receiveBufferSize socket receive buffer size, in bytes, 0 for system default,
+   * @param output output stream for received records text.
+   * @throws IOException if socket creation fails.
+   */
+  public DatagramReceiver(int port, int receiveBufferSize, OutputStream output) throws IOException
+  {
+    this.channel = DatagramChannel.open();
+    try {
+      if(receiveBufferSize > 0) {
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+      }
+      channel.bind(new InetSocketAddress(port));
+    }
+    catch(IOException e) {
+      channel.close();
+      throw e;
+    }
+    this.output = output;
+    this.thread = new Thread(this, "DatagramReceiver");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Get receiver bound port.
+   *
+   * @return UDP port.
+   */
+  public int getPort()
+  {
+    return channel.socket().getLocalPort();
+  }
+
+  public long getPacketsCount()
+  {
+    return packetsCount;
+  }
+
+  /**
+   * Get the number of packets lost, that is, sequence numbers skipped and not received later.
+   *
+   * @return lost packets count.
+   */
+  public long getLostCount()
+  {
+    return lostCount;
+  }
+
+  /**
+   * Implement runnable interface.
+   */
+  @Override
+  public void run()
+  {
+    debug("Open remote console datagram receiver on port |%d|.", getPort());
+    while(channel.isOpen()) {
+      try {
+        packet.clear();
+        channel.receive(packet);
+        packet.flip();
+        receive();
+        output.flush();
+      }
+      catch(ClosedChannelException unused) {
+        break;
+      }
+      catch(IOException | RuntimeException e) {
+        debug("Fail to process remote console datagram. Root cause: %s", e);
+      }
+    }
+    debug("Remote console datagram receiver thread |%s| finished.", Thread.currentThread().getId());
+  }
+
+  /**
+   * Handle received packet: check sequence number and write records text.
+   *
+   * @throws IOException if output stream write fails.
+   */
+  private void receive() throws IOException
+  {
+    if(packet.remaining() < DatagramPacker.PACKET_HEADER_SIZE) {
+      return;
+    }
+    ++packetsCount;
+    long session = packet.getLong();
+    long sequence = packet.getLong();
+    if(session != this.session) {
+      this.session = session;
+      expectedSequence = sequence;
+    }
+    if(sequence > expectedSequence) {
+      long lost = sequence - expectedSequence;
+      lostCount += lost;
+      output.write((MARKER + lost + " packets lost\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+    else if(sequence < expectedSequence && lostCount > 0) {
+      --lostCount;
+    }
+    expectedSequence = Math.max(expectedSequence, sequence + 1);
+
+    while(packet.remaining() >= DatagramPacker.PACKET_RECORD_LENGTH_SIZE) {
+      int length = packet.getShort() & 0xFFFF;
+      int end = packet.position() + length;
+      if(end > packet.limit()) {
+        throw new IllegalStateException("Invalid record length: " + length);
+      }
+      int textStart = ConsoleRecord.getTextStart(packet);
+      output.write(packet.array(), textStart, end - textStart);
+      packet.position(end);
+    }
+  }
+
+  /** Stop receiver thread and close socket. */
+  @Override
+  public void close() throws IOException
+  {
+    channel.close();
+    try {
+      thread.join(SHUTDOWN_TIMEOUT);
+    }
+    catch(InterruptedException unused) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Start receiver standalone, writing records text to standard output, and wait forever. Command line arguments are
+   * UDP port and optional socket receive buffer size, in bytes. Sample usage:
+   *
+   * <pre>
+   * java com.jslib.log4j.DatagramReceiver 8003 4194304
+   * </pre>
+   *
+   * @param args command line arguments.
+   * @throws Exception if receiver start fails.
+   */
+  public static void main(String... args) throws Exception
+  {
+    if(args.length == 0) {
+      System.err.println("Usage: DatagramReceiver port [receiveBufferSize]");
+      return;
+    }
+    int receiveBufferSize = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+    DatagramReceiver receiver = new DatagramReceiver(Integer.parseInt(args[0]), receiveBufferSize, System.out);
+    receiver.thread.join();
+  }
+
+  private static void debug(String message, Object... args)
+  {
+    StatusLogger.getLogger().debug(String.format(message, args));
+  }
+}
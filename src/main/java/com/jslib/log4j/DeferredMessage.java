@@ -0,0 +1,220 @@
+package com.jslib.log4j;
+
+import java.io.File;
+import java.io.ObjectStreamException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.logging.log4j.message.AsynchronouslyFormattable;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.Constants;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+/**
+ * Log4j message holding message template and arguments snapshot, formatted only when an appender actually renders it.
+ * If logging event is rejected by an appender filter or dropped by an asynchronous queue this message is never
+ * formatted. Being {@link AsynchronouslyFormattable}, log4j asynchronous loggers and appenders keep it unformatted and
+ * formatting is moved on their background thread.
+ * <p>
+ * Since formatting can happen on another thread and after logging call returns, arguments are copied into a snapshot
+ * array. Formatting is deferred only if all arguments are of known immutable types, see {@link #isImmutable(Object)};
+ * if any argument is mutable, message is formatted when created so that it records arguments state at logging time.
+ * {@link java.util.function.Supplier} arguments are not known to be immutable and are invoked when message is created.
+ * <p>
+ * This message is used instead of reusable {@link LogMessage} when deferred formatting is enabled; it is also the
+ * memento a reusable message is converted to when log4j needs to keep it.
+ *
+ * @author Iulian Rotaru
+ */
+@AsynchronouslyFormattable
+final class DeferredMessage implements Message, StringBuilderFormattable
+{
+  private static final long serialVersionUID = 6327541890315217358L;
+
+  /** Argument types known to be immutable, safe to be formatted later, on another thread. */
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>();
+  static {
+    IMMUTABLE_TYPES.add(String.class);
+    IMMUTABLE_TYPES.add(Boolean.class);
+    IMMUTABLE_TYPES.add(Character.class);
+    IMMUTABLE_TYPES.add(Byte.class);
+    IMMUTABLE_TYPES.add(Short.class);
+    IMMUTABLE_TYPES.add(Integer.class);
+    IMMUTABLE_TYPES.add(Long.class);
+    IMMUTABLE_TYPES.add(Float.class);
+    IMMUTABLE_TYPES.add(Double.class);
+    IMMUTABLE_TYPES.add(BigInteger.class);
+    IMMUTABLE_TYPES.add(BigDecimal.class);
+    IMMUTABLE_TYPES.add(Class.class);
+    IMMUTABLE_TYPES.add(File.class);
+    IMMUTABLE_TYPES.add(UUID.class);
+  }
+
+  /**
+   * Create deferred message for template and arguments. Arguments array is copied so that caller is free to reuse it.
+   * Primitive argument holders are replaced by boxed values. If there are mutable arguments message is formatted
+   * immediately.
+   *
+   * @param format message template, not null,
+   * @param arguments message arguments.
+   * @return deferred message instance.
+   */
+  public static DeferredMessage create(String format, Object[] arguments)
+  {
+    Object[] snapshot = Arrays.copyOf(arguments, arguments.length);
+    boolean immutable = true;
+    for(int i = 0; i < snapshot.length; ++i) {
+      snapshot[i] = PrimitiveArgument.box(snapshot[i]);
+      immutable &= isImmutable(snapshot[i]);
+    }
+    DeferredMessage message = new DeferredMessage(format, snapshot, null, immutable);
+    if(!immutable) {
+      message.formattedMessage = message.format();
+    }
+    return message;
+  }
+
+  /**
+   * Create deferred message for throwable summary. Throwable is considered immutable and summary formatting is always
+   * deferred.
+   *
+   * @param throwable throwable instance, not null.
+   * @return deferred message instance.
+   */
+  public static DeferredMessage create(Throwable throwable)
+  {
+    return new DeferredMessage(null, Constants.EMPTY_OBJECT_ARRAY, throwable, true);
+  }
+
+  /**
+   * Test if argument is immutable, that is, is null, an enumeration constant or its type is one of
+   * {@link #IMMUTABLE_TYPES}. Subclasses of immutable types are not considered immutable.
+   *
+   * @param argument message argument, possible null.
+   * @return true if argument is immutable.
+   */
+  private static boolean isImmutable(Object argument)
+  {
+    return argument == null || argument instanceof Enum || IMMUTABLE_TYPES.contains(argument.getClass());
+  }
+
+  /** Message template or null if this message is a throwable summary. */
+  private final String format;
+
+  /** Arguments snapshot. */
+  private final Object[] arguments;
+
+  /** Throwable for throwable summary message, null if this message has a template. */
+  private final Throwable throwable;
+
+  /** True if all arguments are immutable, that is, arguments snapshot still reflects arguments state at logging time. */
+  private final boolean immutable;
+
+  /** Cached formatted message, null if message was not yet formatted. */
+  private transient String formattedMessage;
+
+  private DeferredMessage(String format, Object[] arguments, Throwable throwable, boolean immutable)
+  {
+    this.format = format;
+    this.arguments = arguments;
+    this.throwable = throwable;
+    this.immutable = immutable;
+  }
+
+  @Override
+  public String getFormattedMessage()
+  {
+    if(formattedMessage == null) {
+      formattedMessage = format();
+    }
+    return formattedMessage;
+  }
+
+  @Override
+  public void formatTo(StringBuilder builder)
+  {
+    if(formattedMessage != null) {
+      builder.append(formattedMessage);
+    }
+    else if(throwable != null) {
+      LogImpl.throwable(builder, throwable);
+    }
+    else {
+      LogImpl.message(builder, format, arguments);
+    }
+  }
+
+  @Override
+  public String getFormat()
+  {
+    return format;
+  }
+
+  /**
+   * Format and cache message text from arguments rendered by an appender, if message is not already formatted, so that
+   * arguments are not rendered again. Rendered arguments are NUL terminated, one for every argument; they are used only
+   * if template has no Java format specifiers.
+   *
+   * @param rendered rendered arguments.
+   */
+  void setRendered(CharSequence rendered)
+  {
+    if(formattedMessage == null && format != null) {
+      StringBuilder builder = new StringBuilder();
+      LogImpl.message(builder, format, arguments, rendered);
+      formattedMessage = builder.toString();
+    }
+  }
+
+  /**
+   * Get arguments snapshot or null if message has mutable arguments and was formatted when created, since mutable
+   * arguments state may have changed after logging call.
+   *
+   * @return arguments snapshot, possible null.
+   */
+  Object[] getArguments()
+  {
+    return immutable ? arguments : null;
+  }
+
+  @Override
+  public Object[] getParameters()
+  {
+    return arguments;
+  }
+
+  @Override
+  public Throwable getThrowable()
+  {
+    return null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getFormattedMessage();
+  }
+
+  private String format()
+  {
+    StringBuilder builder = new StringBuilder();
+    formatTo(builder);
+    return builder.toString();
+  }
+
+  /**
+   * Serialize formatted message since arguments are not guaranteed to be serializable.
+   *
+   * @return simple message with formatted text.
+   * @throws ObjectStreamException never thrown.
+   */
+  private Object writeReplace() throws ObjectStreamException
+  {
+    return new SimpleMessage(getFormattedMessage());
+  }
+}
@@ -0,0 +1,443 @@
+package com.jslib.log4j;
+
+import com.jslib.api.log.Log;
+
+/**
+ * Extension of j(s)-lib {@link Log} interface with fixed arity and primitive specialized logging methods. Variable
+ * arguments methods from {@link Log} allocate an arguments array and box primitive arguments on every call, even if
+ * logging level is disabled. Methods from this interface have no arguments array and primitive specializations keep
+ * argument unboxed; primitive value is written straight into formatted message.
+ * <p>
+ * Overload resolution selects these methods for calls with up to four arguments, provided logger reference has this
+ * interface type. Loggers created by {@link LogProviderImpl} implement this interface.
+ * 
+ * <pre>
+ * ExtendedLog log = (ExtendedLog)LogFactory.getLog(Service.class);
+ * ...
+ * log.debug("Load user {user_id}.", userId); // no boxing for long userId
+ * </pre>
+ * 
+ * @author Iulian Rotaru
+ */
+public interface ExtendedLog extends Log
+{
+  /**
+   * Log trace message with one argument. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void trace(String message, Object arg);
+
+  /**
+   * Log trace message with two arguments. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   */
+  void trace(String message, Object arg1, Object arg2);
+
+  /**
+   * Log trace message with three arguments. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   */
+  void trace(String message, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Log trace message with four arguments. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   */
+  void trace(String message, Object arg1, Object arg2, Object arg3, Object arg4);
+
+  /**
+   * Log trace message with <code>int</code> argument, not boxed. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void trace(String message, int arg);
+
+  /**
+   * Log trace message with <code>long</code> argument, not boxed. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void trace(String message, long arg);
+
+  /**
+   * Log trace message with <code>double</code> argument, not boxed. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void trace(String message, double arg);
+
+  /**
+   * Log trace message with <code>boolean</code> argument, not boxed. See {@link #trace(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void trace(String message, boolean arg);
+
+  /**
+   * Log debug message with one argument. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void debug(String message, Object arg);
+
+  /**
+   * Log debug message with two arguments. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   */
+  void debug(String message, Object arg1, Object arg2);
+
+  /**
+   * Log debug message with three arguments. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   */
+  void debug(String message, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Log debug message with four arguments. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   */
+  void debug(String message, Object arg1, Object arg2, Object arg3, Object arg4);
+
+  /**
+   * Log debug message with <code>int</code> argument, not boxed. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void debug(String message, int arg);
+
+  /**
+   * Log debug message with <code>long</code> argument, not boxed. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void debug(String message, long arg);
+
+  /**
+   * Log debug message with <code>double</code> argument, not boxed. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void debug(String message, double arg);
+
+  /**
+   * Log debug message with <code>boolean</code> argument, not boxed. See {@link #debug(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void debug(String message, boolean arg);
+
+  /**
+   * Log info message with one argument. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void info(String message, Object arg);
+
+  /**
+   * Log info message with two arguments. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   */
+  void info(String message, Object arg1, Object arg2);
+
+  /**
+   * Log info message with three arguments. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   */
+  void info(String message, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Log info message with four arguments. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   */
+  void info(String message, Object arg1, Object arg2, Object arg3, Object arg4);
+
+  /**
+   * Log info message with <code>int</code> argument, not boxed. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void info(String message, int arg);
+
+  /**
+   * Log info message with <code>long</code> argument, not boxed. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void info(String message, long arg);
+
+  /**
+   * Log info message with <code>double</code> argument, not boxed. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void info(String message, double arg);
+
+  /**
+   * Log info message with <code>boolean</code> argument, not boxed. See {@link #info(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void info(String message, boolean arg);
+
+  /**
+   * Log warn message with one argument. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void warn(String message, Object arg);
+
+  /**
+   * Log warn message with two arguments. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   */
+  void warn(String message, Object arg1, Object arg2);
+
+  /**
+   * Log warn message with three arguments. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   */
+  void warn(String message, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Log warn message with four arguments. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   */
+  void warn(String message, Object arg1, Object arg2, Object arg3, Object arg4);
+
+  /**
+   * Log warn message with <code>int</code> argument, not boxed. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void warn(String message, int arg);
+
+  /**
+   * Log warn message with <code>long</code> argument, not boxed. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void warn(String message, long arg);
+
+  /**
+   * Log warn message with <code>double</code> argument, not boxed. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void warn(String message, double arg);
+
+  /**
+   * Log warn message with <code>boolean</code> argument, not boxed. See {@link #warn(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void warn(String message, boolean arg);
+
+  /**
+   * Log error message with one argument. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void error(String message, Object arg);
+
+  /**
+   * Log error message with two arguments. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   */
+  void error(String message, Object arg1, Object arg2);
+
+  /**
+   * Log error message with three arguments. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   */
+  void error(String message, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Log error message with four arguments. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   */
+  void error(String message, Object arg1, Object arg2, Object arg3, Object arg4);
+
+  /**
+   * Log error message with <code>int</code> argument, not boxed. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void error(String message, int arg);
+
+  /**
+   * Log error message with <code>long</code> argument, not boxed. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void error(String message, long arg);
+
+  /**
+   * Log error message with <code>double</code> argument, not boxed. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void error(String message, double arg);
+
+  /**
+   * Log error message with <code>boolean</code> argument, not boxed. See {@link #error(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void error(String message, boolean arg);
+
+  /**
+   * Log fatal message with one argument. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void fatal(String message, Object arg);
+
+  /**
+   * Log fatal message with two arguments. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   */
+  void fatal(String message, Object arg1, Object arg2);
+
+  /**
+   * Log fatal message with three arguments. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   */
+  void fatal(String message, Object arg1, Object arg2, Object arg3);
+
+  /**
+   * Log fatal message with four arguments. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   */
+  void fatal(String message, Object arg1, Object arg2, Object arg3, Object arg4);
+
+  /**
+   * Log fatal message with <code>int</code> argument, not boxed. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void fatal(String message, int arg);
+
+  /**
+   * Log fatal message with <code>long</code> argument, not boxed. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void fatal(String message, long arg);
+
+  /**
+   * Log fatal message with <code>double</code> argument, not boxed. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void fatal(String message, double arg);
+
+  /**
+   * Log fatal message with <code>boolean</code> argument, not boxed. See {@link #fatal(String, Object...)}.
+   * 
+   * @param message message template,
+   * @param arg message argument.
+   */
+  void fatal(String message, boolean arg);
+}
@@ -0,0 +1,674 @@
+package com.jslib.log4j;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiled Java format string, replacement for {@link String#format(String, Object...)} on logging path. Format string
+ * is parsed once into literal segments and format specifiers; formatting writes directly into caller supplied string
+ * builder and does not create a {@link Formatter} instance.
+ * <p>
+ * Common specifiers are formatted by this class: <code>%s</code>, <code>%d</code>, <code>%x</code>, <code>%X</code>,
+ * <code>%f</code>, <code>%n</code> and <code>%%</code>, with width, precision and the flags valid for them. Any other
+ * specifier, including those with arguments this class does not handle, is delegated to a {@link Formatter} for that
+ * specifier only. Format strings with explicit argument indices are entirely delegated to {@link Formatter}.
+ * <p>
+ * Numeric conversions are formatted by this class only if default format locale uses ASCII digits and dot as decimal
+ * separator; otherwise they are delegated to {@link Formatter} in order to keep locale specific output.
+ * <p>
+ * On bad format or arguments not matching format specifiers, formatting does not throw exception but appends original
+ * format string, just like previous implementation based on {@link String#format(String, Object...)}.
+ *
+ * @author Iulian Rotaru
+ */
+final class FormatTemplate
+{
+  /** Left justify flag, <code>-</code>. */
+  private static final int FLAG_LEFT = 1;
+  /** Alternate form flag, <code>#</code>. */
+  private static final int FLAG_ALTERNATE = 2;
+  /** Always include sign flag, <code>+</code>. */
+  private static final int FLAG_PLUS = 4;
+  /** Leading space for positive values flag, space character. */
+  private static final int FLAG_SPACE = 8;
+  /** Zero padding flag, <code>0</code>. */
+  private static final int FLAG_ZERO = 16;
+  /** Grouping separator flag, <code>,</code>. */
+  private static final int FLAG_GROUP = 32;
+  /** Negative values in parentheses flag, <code>(</code>. */
+  private static final int FLAG_PARENTHESES = 64;
+  /** Previous argument flag, <code>&lt;</code>. */
+  private static final int FLAG_PREVIOUS = 128;
+
+  /** Valid format flags, in the order of above flag constants. */
+  private static final String FLAGS = "-#+ 0,(<";
+
+  /** Conversions recognized by {@link Formatter}, except date/time prefixes. */
+  private static final String CONVERSIONS = "bBhHsScCdoxXeEfgGaA%n";
+
+  /** Platform line separator for <code>%n</code> specifier. */
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  /** Locale of the last plain locale test and its result, see {@link #isPlainLocale()}. */
+  private static volatile LocaleSymbols localeSymbols = new LocaleSymbols(Locale.ROOT);
+
+  /** Source format string. */
+  private final String format;
+
+  /** Literal segments; there is a literal before every specifier and one after the last one, possible empty. */
+  private final String[] literals;
+
+  /** Format specifiers or null if format string is not valid. */
+  private final Specifier[] specifiers;
+
+  /** Format string uses explicit argument indices and should be entirely delegated to {@link Formatter}. */
+  private final boolean indexed;
+
+  /** Number of arguments consumed by format specifiers, see {@link #getArgumentsCount()}. */
+  private final int argumentsCount;
+
+  /** Flags for arguments rendered straight into target builder, see {@link #isRendered(int)}. */
+  private final boolean[] rendered;
+
+  /**
+   * Parse format string. If format string is not valid this template formats to original format string.
+   *
+   * @param format format string, not null.
+   */
+  public FormatTemplate(String format)
+  {
+    this.format = format;
+
+    List<String> literals = new ArrayList<>();
+    List<Specifier> specifiers = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    boolean indexed = false;
+
+    int i = 0;
+    while(i < format.length()) {
+      char c = format.charAt(i);
+      if(c != '%') {
+        literal.append(c);
+        ++i;
+        continue;
+      }
+
+      Specifier specifier = Specifier.parse(format, i);
+      if(specifier == null) {
+        specifiers = null;
+        break;
+      }
+      literals.add(literal.toString());
+      literal.setLength(0);
+      specifiers.add(specifier);
+      indexed |= specifier.indexed;
+      i += specifier.text.length();
+    }
+    literals.add(literal.toString());
+
+    this.literals = literals.toArray(new String[literals.size()]);
+    this.specifiers = specifiers != null ? specifiers.toArray(new Specifier[specifiers.size()]) : null;
+    this.indexed = indexed;
+
+    List<Boolean> rendered = new ArrayList<>();
+    if(this.specifiers != null) {
+      for(Specifier specifier : this.specifiers) {
+        if(specifier.conversion != '%' && specifier.conversion != 'n') {
+          rendered.add(specifier.compiled && specifier.conversion == 's' && specifier.precision == -1);
+        }
+      }
+    }
+    this.argumentsCount = indexed ? -1 : rendered.size();
+    this.rendered = new boolean[indexed ? 0 : rendered.size()];
+    for(int j = 0; j < this.rendered.length; ++j) {
+      this.rendered[j] = rendered.get(j);
+    }
+  }
+
+  /**
+   * Get the number of arguments consumed by format specifiers. Returns zero if format string is not valid, since no
+   * argument is formatted, and -1 if format string uses explicit argument indices.
+   *
+   * @return arguments count, zero or -1.
+   */
+  public int getArgumentsCount()
+  {
+    return argumentsCount;
+  }
+
+  /**
+   * Test if argument with given index is consumed by a compiled <code>%s</code> specifier without precision. Such
+   * specifier appends argument using its {@link ArgumentRenderers renderer}, straight into target builder, unless
+   * argument is {@link Formattable}; caller does not need to render argument to string in advance.
+   *
+   * @param argumentIndex argument index.
+   * @return true if argument is rendered into target builder.
+   */
+  public boolean isRendered(int argumentIndex)
+  {
+    return argumentIndex < rendered.length && rendered[argumentIndex];
+  }
+
+  /**
+   * Append formatted string to given string builder. If format string is not valid or arguments does not match format
+   * specifiers append original format string.
+   *
+   * @param builder target string builder,
+   * @param args format arguments.
+   */
+  public void format(StringBuilder builder, Object[] args)
+  {
+    int start = builder.length();
+    try {
+      if(specifiers == null || !(indexed ? delegate(builder, format, box(args)) : formatSpecifiers(builder, args))) {
+        builder.setLength(start);
+        builder.append(format);
+      }
+    }
+    catch(RuntimeException unused) {
+      // argument toString() failure
+      builder.setLength(start);
+      builder.append(format);
+    }
+  }
+
+  private boolean formatSpecifiers(StringBuilder builder, Object[] args)
+  {
+    int argumentIndex = 0;
+    for(int i = 0; i < specifiers.length; ++i) {
+      builder.append(literals[i]);
+      Specifier specifier = specifiers[i];
+      if(specifier.conversion == '%' || specifier.conversion == 'n') {
+        if(!specifier.compiled) {
+          if(!delegate(builder, specifier.text)) {
+            return false;
+          }
+        }
+        else {
+          builder.append(specifier.conversion == '%' ? "%" : LINE_SEPARATOR);
+        }
+        continue;
+      }
+      if(argumentIndex == args.length) {
+        return false;
+      }
+      if(!specifier.format(builder, args[argumentIndex++])) {
+        return false;
+      }
+    }
+    builder.append(literals[specifiers.length]);
+    return true;
+  }
+
+  @Override
+  public String toString()
+  {
+    return format;
+  }
+
+  /**
+   * Format arguments using a {@link Formatter} writing into given string builder.
+   *
+   * @param builder target string builder,
+   * @param format format string,
+   * @param args format arguments.
+   * @return true if format succeeds.
+   */
+  private static boolean delegate(StringBuilder builder, String format, Object... args)
+  {
+    try {
+      new Formatter(builder).format(format, args);
+      return true;
+    }
+    catch(RuntimeException unused) {
+      return false;
+    }
+  }
+
+  /**
+   * Replace {@link PrimitiveArgument} holders with boxed values, before handing arguments to {@link Formatter}. Returns
+   * given arguments array if there is no holder.
+   *
+   * @param args format arguments.
+   * @return arguments with boxed primitive values.
+   */
+  private static Object[] box(Object[] args)
+  {
+    Object[] boxedArgs = args;
+    for(int i = 0; i < args.length; ++i) {
+      if(args[i] instanceof PrimitiveArgument) {
+        if(boxedArgs == args) {
+          boxedArgs = args.clone();
+        }
+        boxedArgs[i] = ((PrimitiveArgument)args[i]).box();
+      }
+    }
+    return boxedArgs;
+  }
+
+  /**
+   * Test if default format locale uses ASCII digits and dot as decimal separator. Test result is cached for last used
+   * locale.
+   *
+   * @return true if default format locale is plain.
+   */
+  private static boolean isPlainLocale()
+  {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    LocaleSymbols symbols = localeSymbols;
+    if(symbols.locale != locale) {
+      symbols = new LocaleSymbols(locale);
+      localeSymbols = symbols;
+    }
+    return symbols.plain;
+  }
+
+  /**
+   * Pad content appended to string builder from given start position, up to requested width. Padding is inserted
+   * before content or appended after it if left justified. Zero padding is inserted after sign and prefix.
+   *
+   * @param builder string builder,
+   * @param start content start position,
+   * @param prefix length of sign and prefix, used only for zero padding,
+   * @param width requested width, -1 if not specified,
+   * @param flags specifier flags.
+   */
+  private static void pad(StringBuilder builder, int start, int prefix, int width, int flags)
+  {
+    int padding = width - (builder.length() - start);
+    if(padding <= 0) {
+      return;
+    }
+    if((flags & FLAG_LEFT) != 0) {
+      for(int i = 0; i < padding; ++i) {
+        builder.append(' ');
+      }
+      return;
+    }
+    char c = ' ';
+    if((flags & FLAG_ZERO) != 0) {
+      c = '0';
+      start += prefix;
+    }
+    for(int i = 0; i < padding; ++i) {
+      builder.insert(start, c);
+    }
+  }
+
+  /**
+   * Append sign for a number, depending on specifier flags.
+   *
+   * @param builder string builder,
+   * @param negative number is negative,
+   * @param flags specifier flags.
+   * @return sign length.
+   */
+  private static int sign(StringBuilder builder, boolean negative, int flags)
+  {
+    if(negative) {
+      builder.append('-');
+      return 1;
+    }
+    if((flags & FLAG_PLUS) != 0) {
+      builder.append('+');
+      return 1;
+    }
+    if((flags & FLAG_SPACE) != 0) {
+      builder.append(' ');
+      return 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Append absolute value of a double in fixed point notation, rounded half up to requested precision. Digits are
+   * taken from {@link Double#toString(double)}, as {@link Formatter} does.
+   *
+   * @param builder string builder,
+   * @param value finite, non negative double value,
+   * @param precision number of fraction digits.
+   */
+  private static void fixed(StringBuilder builder, double value, int precision)
+  {
+    String s = Double.toString(value);
+
+    // decimal representation as digits and position of decimal point relative to first digit
+    int exponentIndex = s.indexOf('E');
+    int end = exponentIndex != -1 ? exponentIndex : s.length();
+    int pointIndex = s.indexOf('.');
+    int point = pointIndex + (exponentIndex != -1 ? Integer.parseInt(s.substring(exponentIndex + 1)) : 0);
+    int digitsCount = end - 1;
+
+    int start = builder.length();
+    if(point <= 0) {
+      builder.append('0');
+    }
+    for(int i = 0; i < point; ++i) {
+      builder.append(digit(s, pointIndex, digitsCount, i));
+    }
+    if(precision > 0) {
+      builder.append('.');
+    }
+    for(int i = point; i < point + precision; ++i) {
+      builder.append(digit(s, pointIndex, digitsCount, i));
+    }
+
+    // round half up using first discarded digit
+    if(digit(s, pointIndex, digitsCount, point + precision) < '5') {
+      return;
+    }
+    for(int i = builder.length() - 1; i >= start; --i) {
+      char c = builder.charAt(i);
+      if(c == '.') {
+        continue;
+      }
+      if(c != '9') {
+        builder.setCharAt(i, (char)(c + 1));
+        return;
+      }
+      builder.setCharAt(i, '0');
+    }
+    builder.insert(start, '1');
+  }
+
+  /**
+   * Get decimal digit at given position from double string representation, skipping decimal point. Positions outside
+   * available digits are zero.
+   *
+   * @param s double string representation,
+   * @param pointIndex index of decimal point,
+   * @param digitsCount number of digits,
+   * @param position digit position.
+   * @return decimal digit.
+   */
+  private static char digit(String s, int pointIndex, int digitsCount, int position)
+  {
+    if(position < 0 || position >= digitsCount) {
+      return '0';
+    }
+    return s.charAt(position < pointIndex ? position : position + 1);
+  }
+
+  /**
+   * Format specifier. Specifier is compiled if its conversion, flags, width and precision are supported by this class;
+   * otherwise it is delegated to a {@link Formatter}, including its validation.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Specifier
+  {
+    /** Specifier source text, including leading <code>%</code>. */
+    final String text;
+    /** Conversion character. */
+    final char conversion;
+    /** Flags bit mask. */
+    final int flags;
+    /** Minimum width or -1 if not specified. */
+    final int width;
+    /** Precision or -1 if not specified. */
+    final int precision;
+    /** Specifier uses explicit or relative argument index. */
+    final boolean indexed;
+    /** Specifier is formatted by this class. */
+    final boolean compiled;
+
+    /**
+     * Parse specifier starting at given position, using {@link Formatter} specifier syntax.
+     *
+     * @param format format string,
+     * @param start index of <code>%</code> character.
+     * @return specifier or null if specifier is not valid.
+     */
+    static Specifier parse(String format, int start)
+    {
+      int i = start + 1;
+
+      // explicit argument index, digits followed by '$'
+      boolean indexed = false;
+      int digitsEnd = digits(format, i);
+      if(digitsEnd < format.length() && digitsEnd > i && format.charAt(digitsEnd) == '$') {
+        indexed = true;
+        i = digitsEnd + 1;
+      }
+
+      int flags = 0;
+      for(; i < format.length(); ++i) {
+        int flagIndex = FLAGS.indexOf(format.charAt(i));
+        if(flagIndex == -1) {
+          break;
+        }
+        flags |= 1 << flagIndex;
+      }
+      if((flags & FLAG_PREVIOUS) != 0) {
+        indexed = true;
+      }
+
+      int width = -1;
+      digitsEnd = digits(format, i);
+      if(digitsEnd > i) {
+        width = Integer.parseInt(format.substring(i, digitsEnd));
+        i = digitsEnd;
+      }
+
+      int precision = -1;
+      if(i < format.length() && format.charAt(i) == '.') {
+        digitsEnd = digits(format, i + 1);
+        if(digitsEnd == i + 1) {
+          return null;
+        }
+        precision = Integer.parseInt(format.substring(i + 1, digitsEnd));
+        i = digitsEnd;
+      }
+
+      if(i == format.length()) {
+        return null;
+      }
+      char conversion = format.charAt(i);
+      if(conversion == 't' || conversion == 'T') {
+        // date/time conversion suffix is validated by formatter
+        if(++i == format.length()) {
+          return null;
+        }
+      }
+      else if(CONVERSIONS.indexOf(conversion) == -1) {
+        return null;
+      }
+
+      return new Specifier(format.substring(start, i + 1), conversion, flags, width, precision, indexed);
+    }
+
+    private static int digits(String format, int i)
+    {
+      while(i < format.length() && Character.isDigit(format.charAt(i))) {
+        ++i;
+      }
+      return i;
+    }
+
+    private Specifier(String text, char conversion, int flags, int width, int precision, boolean indexed)
+    {
+      this.text = text;
+      this.conversion = conversion;
+      this.flags = flags;
+      this.width = width;
+      this.precision = precision;
+      this.indexed = indexed;
+      this.compiled = !indexed && isSupported();
+    }
+
+    /**
+     * Test if this specifier is supported by this class. Flags combinations not valid for conversion are reported as
+     * not supported, so that {@link Formatter} can signal them.
+     *
+     * @return true if this specifier is supported.
+     */
+    private boolean isSupported()
+    {
+      boolean padding = (flags & (FLAG_LEFT | FLAG_ZERO)) == 0 || (width != -1 && (flags & (FLAG_LEFT | FLAG_ZERO)) != (FLAG_LEFT | FLAG_ZERO));
+      switch(conversion) {
+      case '%':
+      case 'n':
+        return flags == 0 && width == -1 && precision == -1;
+
+      case 's':
+        return (flags & ~FLAG_LEFT) == 0 && padding;
+
+      case 'd':
+        return (flags & ~(FLAG_LEFT | FLAG_ZERO | FLAG_PLUS | FLAG_SPACE)) == 0 && padding && precision == -1 && (flags & (FLAG_PLUS | FLAG_SPACE)) != (FLAG_PLUS | FLAG_SPACE);
+
+      case 'x':
+      case 'X':
+        return (flags & ~(FLAG_LEFT | FLAG_ZERO | FLAG_ALTERNATE)) == 0 && padding && precision == -1;
+
+      case 'f':
+        return (flags & ~(FLAG_LEFT | FLAG_ZERO | FLAG_PLUS | FLAG_SPACE)) == 0 && padding && (flags & (FLAG_PLUS | FLAG_SPACE)) != (FLAG_PLUS | FLAG_SPACE);
+
+      default:
+        return false;
+      }
+    }
+
+    /**
+     * Append formatted argument to string builder.
+     *
+     * @param builder string builder,
+     * @param arg format argument, possible null.
+     * @return true if format succeeds.
+     */
+    boolean format(StringBuilder builder, Object arg)
+    {
+      if(!compiled) {
+        return delegate(builder, text, PrimitiveArgument.box(arg));
+      }
+
+      int start = builder.length();
+      switch(conversion) {
+      case 's':
+        if(arg instanceof Formattable) {
+          return delegate(builder, text, arg);
+        }
+        if(precision == -1) {
+          ArgumentRenderers.render(builder, arg);
+        }
+        else {
+          String s = String.valueOf(arg);
+          builder.append(s, 0, Math.min(precision, s.length()));
+        }
+        pad(builder, start, 0, width, flags);
+        return true;
+
+      case 'd':
+        if(!isInteger(arg) || !isPlainLocale()) {
+          return delegate(builder, text, PrimitiveArgument.box(arg));
+        }
+        long value = ((Number)arg).longValue();
+        int prefix = sign(builder, value < 0, flags);
+        if(value == Long.MIN_VALUE) {
+          builder.append("9223372036854775808");
+        }
+        else {
+          builder.append(Math.abs(value));
+        }
+        pad(builder, start, prefix, width, flags);
+        return true;
+
+      case 'x':
+      case 'X':
+        if(!isInteger(arg)) {
+          return delegate(builder, text, PrimitiveArgument.box(arg));
+        }
+        prefix = 0;
+        if((flags & FLAG_ALTERNATE) != 0) {
+          builder.append(conversion == 'x' ? "0x" : "0X");
+          prefix = 2;
+        }
+        int digitsStart = builder.length();
+        builder.append(hex(arg));
+        if(conversion == 'X') {
+          for(int i = digitsStart; i < builder.length(); ++i) {
+            builder.setCharAt(i, Character.toUpperCase(builder.charAt(i)));
+          }
+        }
+        pad(builder, start, prefix, width, flags);
+        return true;
+
+      case 'f':
+        if(!isFloating(arg) || !isPlainLocale()) {
+          return delegate(builder, text, PrimitiveArgument.box(arg));
+        }
+        double number = ((Number)arg).doubleValue();
+        if(Double.isNaN(number) || Double.isInfinite(number)) {
+          return delegate(builder, text, PrimitiveArgument.box(arg));
+        }
+        prefix = sign(builder, Double.compare(number, 0.0) < 0, flags);
+        fixed(builder, Math.abs(number), precision != -1 ? precision : 6);
+        pad(builder, start, prefix, width, flags);
+        return true;
+
+      default:
+        return delegate(builder, text, PrimitiveArgument.box(arg));
+      }
+    }
+
+    private static boolean isInteger(Object arg)
+    {
+      if(arg instanceof PrimitiveArgument) {
+        return ((PrimitiveArgument)arg).isIntegral();
+      }
+      return arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte;
+    }
+
+    private static boolean isFloating(Object arg)
+    {
+      if(arg instanceof PrimitiveArgument) {
+        return ((PrimitiveArgument)arg).isDouble();
+      }
+      return arg instanceof Double || arg instanceof Float;
+    }
+
+    /**
+     * Get hexadecimal representation of integer argument, as unsigned value of argument type size.
+     *
+     * @param arg integer argument.
+     * @return hexadecimal digits.
+     */
+    private static String hex(Object arg)
+    {
+      if(arg instanceof PrimitiveArgument) {
+        return ((PrimitiveArgument)arg).toHexString();
+      }
+      if(arg instanceof Long) {
+        return Long.toHexString((Long)arg);
+      }
+      if(arg instanceof Integer) {
+        return Integer.toHexString((Integer)arg);
+      }
+      if(arg instanceof Short) {
+        return Integer.toHexString(((Short)arg) & 0xFFFF);
+      }
+      return Integer.toHexString(((Byte)arg) & 0xFF);
+    }
+  }
+
+  /**
+   * Cached result of plain locale test, see {@link FormatTemplate#isPlainLocale()}.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class LocaleSymbols
+  {
+    final Locale locale;
+    final boolean plain;
+
+    LocaleSymbols(Locale locale)
+    {
+      DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+      this.locale = locale;
+      this.plain = symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.';
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.jslib.log4j;
+
+import java.util.Arrays;
+
+/**
+ * Spill journal position of the next journal reader and accounting of journal records lost for it. Next reader is the
+ * first console connecting after a period without consoles or, in push mode, the next collector connection. While
+ * there is no reader, records overwritten by journal append are lost for the next reader and are reported to it as
+ * dropped messages when it attaches.
+ * <p>
+ * In push mode records sent on lost collector connection may not have reached collector. If such records are
+ * overwritten before collector reconnects, their journal positions are remembered; on reconnect, those after the
+ * sequence acknowledged by collector are reported as dropped too, see {@link #resume(RemoteConsoleClient, long, long)}.
+ * <p>
+ * Cursor is created detached at journal start, since there is no reader before the first console or collector
+ * connection.
+ * <p>
+ * This class is not thread safe; it is used only by remote console I/O thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class JournalCursor
+{
+  /** Initial capacity of unacknowledged records tracking arrays. */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Journal position of the first record spilled since the last reader detached. */
+  private long spillStart;
+
+  /**
+   * Journal position from which records overwritten by journal append are lost for the next reader;
+   * {@link Long#MAX_VALUE} while reader is attached.
+   */
+  private long lostPosition;
+
+  /** Overwritten records lost for the next reader, per level code, reported to it as dropped messages. */
+  private final long[] lostCounts = new long[ConsoleRecord.LEVELS_COUNT];
+
+  /** Push mode journal position the last collector connection resumed from. */
+  private long resumePosition = Long.MAX_VALUE;
+
+  /**
+   * Push mode journal position of the first record sent on lost collector connection; records from this position up
+   * to {@link #lostPosition} were sent but not acknowledged. {@link Long#MAX_VALUE} if there are no such records.
+   */
+  private long unacknowledgedPosition = Long.MAX_VALUE;
+
+  /** Journal positions of overwritten records sent on lost collector connection, in journal order. */
+  private long[] unacknowledgedPositions = new long[INITIAL_CAPACITY];
+
+  /** Level codes of overwritten records sent on lost collector connection, parallel to positions. */
+  private byte[] unacknowledgedLevels = new byte[INITIAL_CAPACITY];
+
+  /** The number of overwritten records sent on lost collector connection. */
+  private int unacknowledgedCount;
+
+  /**
+   * Get journal position of the first record spilled since the last reader detached.
+   *
+   * @return spill start position.
+   */
+  long getSpillStart()
+  {
+    return spillStart;
+  }
+
+  /**
+   * Get the number of records, of given level, lost for the next reader.
+   *
+   * @param level level code.
+   * @return lost records count.
+   */
+  long getLostCount(int level)
+  {
+    return lostCounts[level];
+  }
+
+  /**
+   * Start tracking records lost for the next reader, after reader detached. Records from given position on are lost
+   * if overwritten; in push mode records before given position, sent since last resume, are remembered if
+   * overwritten. Nothing changes if reader is already detached, e.g. collector connection was lost before collector
+   * acknowledged it.
+   *
+   * @param position journal position of the first record not read by detached reader.
+   */
+  void detach(long position)
+  {
+    if(lostPosition != Long.MAX_VALUE) {
+      return;
+    }
+    spillStart = position;
+    lostPosition = position;
+    unacknowledgedPosition = resumePosition;
+  }
+
+  /**
+   * Account spill journal record overwritten by append. Record is lost for the next reader if not before lost
+   * position; in push mode, record sent on lost collector connection is remembered.
+   *
+   * @param position record journal position,
+   * @param level record level code.
+   */
+  void evicted(long position, int level)
+  {
+    if(position >= lostPosition) {
+      ++lostCounts[level];
+      return;
+    }
+    if(position >= unacknowledgedPosition) {
+      if(unacknowledgedCount == unacknowledgedPositions.length) {
+        unacknowledgedPositions = Arrays.copyOf(unacknowledgedPositions, 2 * unacknowledgedCount);
+        unacknowledgedLevels = Arrays.copyOf(unacknowledgedLevels, 2 * unacknowledgedCount);
+      }
+      unacknowledgedPositions[unacknowledgedCount] = position;
+      unacknowledgedLevels[unacknowledgedCount] = (byte)level;
+      ++unacknowledgedCount;
+    }
+  }
+
+  /**
+   * Attach next reader: records lost meanwhile are added to reader dropped messages and tracking stops.
+   *
+   * @param client attaching console.
+   */
+  void attach(RemoteConsoleClient client)
+  {
+    client.drop(lostCounts);
+    Arrays.fill(lostCounts, 0);
+    lostPosition = Long.MAX_VALUE;
+    unacknowledgedPosition = Long.MAX_VALUE;
+    unacknowledgedCount = 0;
+  }
+
+  /**
+   * Attach push mode collector connection resuming from given journal position. Records sent on lost collector
+   * connection and overwritten before collector received them, that is, after acknowledged sequence, are reported as
+   * dropped, together with records lost meanwhile.
+   *
+   * @param client collector connection,
+   * @param sequence sequence acknowledged by collector,
+   * @param position journal position stream resumes from.
+   */
+  void resume(RemoteConsoleClient client, long sequence, long position)
+  {
+    for(int i = 0; i < unacknowledgedCount; ++i) {
+      if(unacknowledgedPositions[i] > sequence) {
+        ++lostCounts[unacknowledgedLevels[i]];
+      }
+    }
+    attach(client);
+    resumePosition = position;
+  }
+}
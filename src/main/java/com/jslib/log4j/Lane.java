@@ -0,0 +1,55 @@
+package com.jslib.log4j;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Remote console messages lane, grouping levels by severity class. Every lane has its own messages buffer, with
+ * independent capacity, so that a flood of low severity messages never delays or drops high severity ones. I/O thread
+ * drains lanes in weighted round robin: on every round it takes up to {@link #weight} records from every lane, most
+ * severe lane first.
+ *
+ * @author Iulian Rotaru
+ */
+enum Lane
+{
+  /** FATAL and ERROR messages; sent as soon as possible, bypassing outbound batching. */
+  URGENT(8),
+  /** WARN and INFO messages; also characters written with writer methods. */
+  NORMAL(4),
+  /** DEBUG and TRACE messages. */
+  VERBOSE(1);
+
+  /** Cached lanes, in drain order. */
+  static final Lane[] VALUES = values();
+
+  /** Level code of the least severe level routed to urgent lane. */
+  private static final int URGENT_LEVEL = ConsoleRecord.code(Level.ERROR);
+
+  /** Level code of the least severe level routed to normal lane. */
+  private static final int NORMAL_LEVEL = ConsoleRecord.code(Level.INFO);
+
+  /** The maximum number of records taken from this lane on a drain round. */
+  final int weight;
+
+  private Lane(int weight)
+  {
+    this.weight = weight;
+  }
+
+  /**
+   * Get the lane for a level code.
+   *
+   * @param level level code, see {@link ConsoleRecord#code(Level)}.
+   * @return level lane.
+   */
+  static Lane of(int level)
+  {
+    if(level <= URGENT_LEVEL) {
+      return URGENT;
+    }
+    if(level <= NORMAL_LEVEL) {
+      return NORMAL;
+    }
+    return VERBOSE;
+  }
+}
@@ -41,4 +41,37 @@ public interface Log4jMXBean
    * @return logger level, possible null.
    */
   String getLevel(String name);
+
+  /**
+   * Get the number of message arguments and messages truncated because they exceeded their render budget. A high value
+   * signals arguments with huge string representation; see <code>js.log4j.maxArgumentLength</code> and
+   * <code>js.log4j.maxMessageLength</code> log4j component properties.
+   * 
+   * @return truncations count.
+   */
+  long getTruncationsCount();
+
+  /**
+   * Get compression ratio, that is, uncompressed bytes divided by compressed bytes, aggregated over all remote consoles
+   * currently connected with deflate compression, see {@link RemoteConsoleWriter}.
+   * 
+   * @return aggregated compression ratio or 0 if there is no compressed remote console.
+   */
+  double getCompressionRatio();
+
+  /**
+   * Get compression CPU cost, that is, remote console I/O thread compression time in nanoseconds for every uncompressed
+   * megabyte, aggregated over all remote consoles currently connected with deflate compression.
+   * 
+   * @return aggregated compression cost or 0 if there is no compressed remote console.
+   */
+  long getCompressionCost();
+
+  /**
+   * Get compression statistics for every remote console currently connected with deflate compression, one line per
+   * console: address, uncompressed and compressed bytes, compression ratio and cost per megabyte.
+   * 
+   * @return compression statistics lines, possible empty.
+   */
+  String[] getCompressionStats();
 }
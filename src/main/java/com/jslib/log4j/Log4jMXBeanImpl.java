@@ -3,6 +3,7 @@ package com.jslib.log4j;
 import static java.lang.String.format;
 
 import java.lang.management.ManagementFactory;
+import java.util.List;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
@@ -95,6 +96,53 @@ public class Log4jMXBeanImpl implements Log4jMXBean
     return name != null ? getLevel(LogManager.getLogger(name)) : null;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public long getTruncationsCount()
+  {
+    return RenderBudget.getTruncationsCount();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double getCompressionRatio()
+  {
+    return compressionTotal().getRatio();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getCompressionCost()
+  {
+    return compressionTotal().getCostPerMegabyte();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String[] getCompressionStats()
+  {
+    List<CompressionStats> stats = RemoteConsoleWriter.getAllCompressionStats();
+    String[] lines = new String[stats.size()];
+    for(int i = 0; i < lines.length; ++i) {
+      lines[i] = stats.get(i).toString();
+    }
+    return lines;
+  }
+
+  /**
+   * Aggregate compression statistics of all remote consoles using deflate compression.
+   * 
+   * @return aggregated compression statistics.
+   */
+  private static CompressionStats compressionTotal()
+  {
+    CompressionStats total = new CompressionStats("total");
+    for(CompressionStats stats : RemoteConsoleWriter.getAllCompressionStats()) {
+      total.add(stats);
+    }
+    return total;
+  }
+
   /**
    * Set underlying <code>log4j</code> logger level. Logger level should be a valid {@link LogLevel} name. If logger or
    * level arguments are null or invalid log level name this method does nothing.
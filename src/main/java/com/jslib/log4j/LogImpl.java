@@ -1,107 +1,570 @@
 package com.jslib.log4j;
 
-import java.io.File;
-import java.lang.reflect.Array;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Formattable;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.util.Constants;
+import org.apache.logging.log4j.util.PropertiesUtil;
+import org.apache.logging.log4j.util.StringBuilders;
 
 import com.jslib.api.log.Log;
 
 /**
- * Thin wrapper on Apache log4j {@link Logger}, implementing j(s)-lib {@link Log} interface. Apache log4j engine should
- * be properly initialized for this class to actually record any logging message.
+ * Thin wrapper on Apache log4j {@link Logger}, implementing j(s)-lib {@link Log} interface and its {@link ExtendedLog}
+ * extension. Apache log4j engine should be properly initialized for this class to actually record any logging message.
+ * <p>
+ * Messages with arguments are not formatted by this class; template and arguments are handed to log4j and formatted only
+ * when log4j asks for message text. By default this class uses a reusable {@link LogMessage} so that steady state
+ * logging does not create garbage. If deferred formatting is enabled, see {@link #DEFERRED_FORMATTING}, this class
+ * creates a {@link DeferredMessage} with arguments snapshot for every logging call; log4j asynchronous loggers and
+ * appenders are then able to format it on their background thread.
+ * <p>
+ * Expensive arguments can be passed as {@link Supplier}; supplier is invoked only if logging level is enabled and its
+ * placeholder is actually rendered. A supplier returning a throwable is rendered as throwable summary by Java format
+ * specifiers, see {@link #format(StringBuilder, FormatTemplate, Object...)}.
+ * 
+ * <pre>
+ * log.debug("Request body: {body}", (Supplier&lt;String&gt;)() -&gt; serialize(request));
+ * </pre>
  * 
  * @author Iulian Rotaru
  */
-final class LogImpl implements Log
+final class LogImpl implements ExtendedLog
 {
+  /**
+   * Use {@link DeferredMessage} instead of reusable message. Configured by <code>js.log4j.deferredFormatting</code>
+   * property; enabled by default if log4j thread locals are disabled, in which case reusable message is not reused.
+   */
+  private static final boolean DEFERRED_FORMATTING = PropertiesUtil.getProperties().getBooleanProperty("js.log4j.deferredFormatting", !Constants.ENABLE_THREADLOCALS);
+
+  /** Level bit for {@link Level#TRACE} into enabled levels gate. */
+  private static final int TRACE_ENABLED = 1;
+  /** Level bit for {@link Level#DEBUG} into enabled levels gate. */
+  private static final int DEBUG_ENABLED = 2;
+  /** Level bit for {@link Level#INFO} into enabled levels gate. */
+  private static final int INFO_ENABLED = 4;
+  /** Level bit for {@link Level#WARN} into enabled levels gate. */
+  private static final int WARN_ENABLED = 8;
+  /** Level bit for {@link Level#ERROR} into enabled levels gate. */
+  private static final int ERROR_ENABLED = 16;
+  /** Level bit for {@link Level#FATAL} into enabled levels gate. */
+  private static final int FATAL_ENABLED = 32;
+  /** Gate bit signaling that levels are not cached and log4j logger should be asked on every call. */
+  private static final int NOT_CACHED = 64;
+
+  /**
+   * Global generation of logging levels, incremented whenever logging configuration changes, see
+   * {@link #invalidateLevels()}. Generation is never zero so that initial gate is not valid.
+   */
+  private static final AtomicInteger GENERATION = new AtomicInteger(1);
+
+  /** Log4j contexts already listened for configuration changes. */
+  private static final Set<LoggerContext> CONTEXTS = Collections.newSetFromMap(new WeakHashMap<LoggerContext, Boolean>());
+
+  /**
+   * Signal that logging configuration may have changed and cached levels gates should be recomputed. This method is
+   * invoked automatically on log4j configuration changes, including
+   * {@link org.apache.logging.log4j.core.config.Configurator} level setters. Level changed directly on a log4j core
+   * logger does not notify configuration change; it is detected by gate level check, see
+   * {@link #isEnabled(Level, int)}.
+   */
+  static void invalidateLevels()
+  {
+    int generation;
+    do {
+      generation = GENERATION.incrementAndGet();
+    } while(generation == 0);
+  }
+
   /** Underlying Apache log4j logger delegated for actual logging record writing. */
   private final Logger logger;
 
+  /** Underlying logger as log4j core logger, whose enabled levels can be cached, or null if not a core logger. */
+  private final org.apache.logging.log4j.core.Logger coreLogger;
+
+  /**
+   * Cached enabled levels for underlying logger, see {@link #isEnabled(Level, int)}. Plain field; racy updates are
+   * benign since gate is immutable and every thread computes the same gate for a given generation and logger level.
+   */
+  private Gate gate = Gate.INVALID;
+
   public LogImpl(Logger logger)
   {
     this.logger = logger;
+    this.coreLogger = logger instanceof org.apache.logging.log4j.core.Logger ? (org.apache.logging.log4j.core.Logger)logger : null;
+    if(coreLogger != null) {
+      listen(coreLogger.getContext());
+    }
   }
 
   @Override
   public void trace(String message, Object... args)
   {
-    if(logger.isEnabled(Level.TRACE)) {
-      logger.trace(message(message, args));
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, args);
+    }
+  }
+
+  @Override
+  public void trace(String message, Object arg)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg);
+    }
+  }
+
+  @Override
+  public void trace(String message, Object arg1, Object arg2)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg1, arg2);
+    }
+  }
+
+  @Override
+  public void trace(String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg1, arg2, arg3);
+    }
+  }
+
+  @Override
+  public void trace(String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg1, arg2, arg3, arg4);
+    }
+  }
+
+  @Override
+  public void trace(String message, int arg)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg);
+    }
+  }
+
+  @Override
+  public void trace(String message, long arg)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg);
+    }
+  }
+
+  @Override
+  public void trace(String message, double arg)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg);
+    }
+  }
+
+  @Override
+  public void trace(String message, boolean arg)
+  {
+    if(isEnabled(Level.TRACE, TRACE_ENABLED)) {
+      log(Level.TRACE, message, arg);
     }
   }
 
   @Override
   public void debug(String message, Object... args)
   {
-    if(logger.isEnabled(Level.DEBUG)) {
-      logger.debug(message(message, args));
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, args);
+    }
+  }
+
+  @Override
+  public void debug(String message, Object arg)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg);
+    }
+  }
+
+  @Override
+  public void debug(String message, Object arg1, Object arg2)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg1, arg2);
+    }
+  }
+
+  @Override
+  public void debug(String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg1, arg2, arg3);
+    }
+  }
+
+  @Override
+  public void debug(String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg1, arg2, arg3, arg4);
+    }
+  }
+
+  @Override
+  public void debug(String message, int arg)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg);
+    }
+  }
+
+  @Override
+  public void debug(String message, long arg)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg);
+    }
+  }
+
+  @Override
+  public void debug(String message, double arg)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg);
+    }
+  }
+
+  @Override
+  public void debug(String message, boolean arg)
+  {
+    if(isEnabled(Level.DEBUG, DEBUG_ENABLED)) {
+      log(Level.DEBUG, message, arg);
     }
   }
 
   @Override
   public void info(String message, Object... args)
   {
-    if(logger.isEnabled(Level.INFO)) {
-      logger.info(message(message, args));
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, args);
+    }
+  }
+
+  @Override
+  public void info(String message, Object arg)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg);
+    }
+  }
+
+  @Override
+  public void info(String message, Object arg1, Object arg2)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg1, arg2);
+    }
+  }
+
+  @Override
+  public void info(String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg1, arg2, arg3);
+    }
+  }
+
+  @Override
+  public void info(String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg1, arg2, arg3, arg4);
+    }
+  }
+
+  @Override
+  public void info(String message, int arg)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg);
+    }
+  }
+
+  @Override
+  public void info(String message, long arg)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg);
+    }
+  }
+
+  @Override
+  public void info(String message, double arg)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg);
+    }
+  }
+
+  @Override
+  public void info(String message, boolean arg)
+  {
+    if(isEnabled(Level.INFO, INFO_ENABLED)) {
+      log(Level.INFO, message, arg);
     }
   }
 
   @Override
   public void warn(String message, Object... args)
   {
-    if(logger.isEnabled(Level.WARN)) {
-      logger.warn(message(message, args));
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, args);
+    }
+  }
+
+  @Override
+  public void warn(String message, Object arg)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg);
+    }
+  }
+
+  @Override
+  public void warn(String message, Object arg1, Object arg2)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg1, arg2);
+    }
+  }
+
+  @Override
+  public void warn(String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg1, arg2, arg3);
+    }
+  }
+
+  @Override
+  public void warn(String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg1, arg2, arg3, arg4);
+    }
+  }
+
+  @Override
+  public void warn(String message, int arg)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg);
+    }
+  }
+
+  @Override
+  public void warn(String message, long arg)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg);
+    }
+  }
+
+  @Override
+  public void warn(String message, double arg)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg);
+    }
+  }
+
+  @Override
+  public void warn(String message, boolean arg)
+  {
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, message, arg);
     }
   }
 
   @Override
   public void warn(Throwable throwable)
   {
-    if(logger.isEnabled(Level.WARN)) {
-      logger.warn(throwable(throwable));
+    if(isEnabled(Level.WARN, WARN_ENABLED)) {
+      log(Level.WARN, throwable);
     }
   }
 
   @Override
   public void error(String message, Object... args)
   {
-    if(logger.isEnabled(Level.ERROR)) {
-      logger.error(message(message, args));
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, args);
+    }
+  }
+
+  @Override
+  public void error(String message, Object arg)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg);
+    }
+  }
+
+  @Override
+  public void error(String message, Object arg1, Object arg2)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg1, arg2);
+    }
+  }
+
+  @Override
+  public void error(String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg1, arg2, arg3);
+    }
+  }
+
+  @Override
+  public void error(String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg1, arg2, arg3, arg4);
+    }
+  }
+
+  @Override
+  public void error(String message, int arg)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg);
+    }
+  }
+
+  @Override
+  public void error(String message, long arg)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg);
+    }
+  }
+
+  @Override
+  public void error(String message, double arg)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg);
+    }
+  }
+
+  @Override
+  public void error(String message, boolean arg)
+  {
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, message, arg);
     }
   }
 
   @Override
   public void error(Throwable throwable)
   {
-    if(logger.isEnabled(Level.ERROR)) {
-      logger.error(throwable(throwable));
+    if(isEnabled(Level.ERROR, ERROR_ENABLED)) {
+      log(Level.ERROR, throwable);
     }
   }
 
   @Override
   public void fatal(String message, Object... args)
   {
-    if(logger.isEnabled(Level.FATAL)) {
-      logger.fatal(message(message, args));
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, args);
+    }
+  }
+
+  @Override
+  public void fatal(String message, Object arg)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg);
+    }
+  }
+
+  @Override
+  public void fatal(String message, Object arg1, Object arg2)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg1, arg2);
+    }
+  }
+
+  @Override
+  public void fatal(String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg1, arg2, arg3);
+    }
+  }
+
+  @Override
+  public void fatal(String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg1, arg2, arg3, arg4);
+    }
+  }
+
+  @Override
+  public void fatal(String message, int arg)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg);
+    }
+  }
+
+  @Override
+  public void fatal(String message, long arg)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg);
+    }
+  }
+
+  @Override
+  public void fatal(String message, double arg)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg);
+    }
+  }
+
+  @Override
+  public void fatal(String message, boolean arg)
+  {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, message, arg);
     }
   }
 
   @Override
   public void fatal(Throwable throwable)
   {
-    if(logger.isEnabled(Level.FATAL)) {
-      logger.fatal(throwable(throwable));
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
+      log(Level.FATAL, throwable);
     }
   }
 
   @Override
   public void dump(Throwable throwable)
   {
-    if(logger.isEnabled(Level.FATAL)) {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
       logger.fatal("Stack trace dump:", throwable);
     }
   }
@@ -109,30 +572,304 @@ final class LogImpl implements Log
   @Override
   public void dump(String message, Throwable throwable)
   {
-    if(logger.isEnabled(Level.FATAL)) {
+    if(isEnabled(Level.FATAL, FATAL_ENABLED)) {
       logger.fatal(message, throwable);
     }
   }
 
-  private static String message(String message, Object... arguments)
+  /**
+   * Test if logging level is enabled using cached levels gate. Levels are cached only for log4j core loggers; any
+   * other logger is asked on every call since its configuration changes are not observable.
+   * <p>
+   * Gate is valid if its generation is current and its level is the core logger level. Generation covers log4j
+   * configuration changes, see {@link #invalidateLevels()}. Core logger level check is needed for a level set directly
+   * with core {@link org.apache.logging.log4j.core.Logger#setLevel(Level)}, which fires no configuration change but
+   * replaces the level returned by core logger {@link org.apache.logging.log4j.core.Logger#getLevel()}. If gate is
+   * valid, a disabled level costs a volatile read, a field read and two compares; otherwise gate is recomputed from
+   * log4j logger.
+   * 
+   * @param level logging level,
+   * @param levelBit level bit into levels gate.
+   * @return true if logging level is enabled.
+   */
+  private boolean isEnabled(Level level, int levelBit)
   {
-    if(message == null) {
-      return null;
+    if(coreLogger == null) {
+      return logger.isEnabled(level);
     }
-    if(arguments.length == 0) {
-      return message;
+    Gate gate = this.gate;
+    if(gate.generation == GENERATION.get() && gate.level == coreLogger.getLevel()) {
+      return (gate.levels & NOT_CACHED) == 0 ? (gate.levels & levelBit) != 0 : logger.isEnabled(level);
     }
+    return updateGate(level, levelBit);
+  }
 
-    StringBuilder messageBuilder = new StringBuilder();
+  /**
+   * Recompute core logger levels gate for current generation and logger level and test if given level is enabled.
+   * Levels are not cached if log4j configuration has a context wide filter, whose decision may depend on more than
+   * logging level.
+   * 
+   * @param level logging level,
+   * @param levelBit level bit into levels gate.
+   * @return true if logging level is enabled.
+   */
+  private boolean updateGate(Level level, int levelBit)
+  {
+    // generation and logger level are read before levels so that a concurrent change invalidates computed gate
+    int generation = GENERATION.get();
+    Level loggerLevel = coreLogger.getLevel();
+    if(coreLogger.getContext().getConfiguration().getFilter() != null) {
+      gate = new Gate(generation, loggerLevel, NOT_CACHED);
+      return logger.isEnabled(level);
+    }
+
+    int levels = 0;
+    levels |= logger.isEnabled(Level.TRACE) ? TRACE_ENABLED : 0;
+    levels |= logger.isEnabled(Level.DEBUG) ? DEBUG_ENABLED : 0;
+    levels |= logger.isEnabled(Level.INFO) ? INFO_ENABLED : 0;
+    levels |= logger.isEnabled(Level.WARN) ? WARN_ENABLED : 0;
+    levels |= logger.isEnabled(Level.ERROR) ? ERROR_ENABLED : 0;
+    levels |= logger.isEnabled(Level.FATAL) ? FATAL_ENABLED : 0;
+    gate = new Gate(generation, loggerLevel, levels);
+    return (levels & levelBit) != 0;
+  }
+
+  /**
+   * Listen log4j context for configuration changes, if not already listened, and invalidate cached levels on change.
+   * 
+   * @param context log4j context.
+   */
+  private static void listen(LoggerContext context)
+  {
+    synchronized(CONTEXTS) {
+      if(CONTEXTS.add(context)) {
+        context.addPropertyChangeListener(event -> invalidateLevels());
+      }
+    }
+  }
+
+  /**
+   * Send message with arguments to log4j logger, as reusable or deferred message. If message is null or there are no
+   * arguments, message is passed as it is.
+   * 
+   * @param level logging level, already enabled,
+   * @param message message template, possible null,
+   * @param args variable number of message arguments.
+   */
+  private void log(Level level, String message, Object... args)
+  {
+    if(message == null || args.length == 0) {
+      logger.log(level, message);
+      return;
+    }
+    if(DEFERRED_FORMATTING) {
+      logger.log(level, DeferredMessage.create(message, args));
+      return;
+    }
+    log(level, LogMessage.acquire(message, args));
+  }
+
+  /**
+   * Send message with one argument to log4j logger, without creating arguments array for reusable message. See
+   * {@link #log(Level, String, Object...)}.
+   * 
+   * @param level logging level, already enabled,
+   * @param message message template, possible null,
+   * @param arg message argument.
+   */
+  private void log(Level level, String message, Object arg)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg));
+  }
+
+  private void log(Level level, String message, Object arg1, Object arg2)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg1, arg2
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg1, arg2));
+  }
+
+  private void log(Level level, String message, Object arg1, Object arg2, Object arg3)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg1, arg2, arg3
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg1, arg2, arg3));
+  }
+
+  private void log(Level level, String message, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg1, arg2, arg3, arg4
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg1, arg2, arg3, arg4));
+  }
+
+  /**
+   * Send message with primitive argument to log4j logger. Argument is boxed only if deferred formatting is enabled,
+   * since deferred message needs an arguments snapshot. See {@link #log(Level, String, Object...)}.
+   * 
+   * @param level logging level, already enabled,
+   * @param message message template, possible null,
+   * @param arg message argument.
+   */
+  private void log(Level level, String message, int arg)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg));
+  }
+
+  private void log(Level level, String message, long arg)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg));
+  }
+
+  private void log(Level level, String message, double arg)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg));
+  }
+
+  private void log(Level level, String message, boolean arg)
+  {
+    if(message == null || DEFERRED_FORMATTING) {
+      log(level, message, new Object[]
+      {
+          arg
+      });
+      return;
+    }
+    log(level, LogMessage.acquire(message, arg));
+  }
+
+  /**
+   * Send throwable summary to log4j logger, as reusable or deferred message. Null throwable is passed as null message.
+   * 
+   * @param level logging level, already enabled,
+   * @param throwable throwable to log, possible null.
+   */
+  private void log(Level level, Throwable throwable)
+  {
+    if(throwable == null) {
+      logger.log(level, (String)null);
+      return;
+    }
+    if(DEFERRED_FORMATTING) {
+      logger.log(level, DeferredMessage.create(throwable));
+      return;
+    }
+    log(level, LogMessage.acquire(throwable));
+  }
+
+  /**
+   * Send reusable message to log4j logger and release it after logging call completes.
+   * 
+   * @param level logging level, already enabled,
+   * @param message reusable message, already acquired.
+   */
+  private void log(Level level, LogMessage message)
+  {
+    try {
+      logger.log(level, message);
+    }
+    finally {
+      message.release();
+    }
+  }
+
+  /**
+   * Append message with arguments injected to given string builder. This method handles both <code>{}</code>
+   * placeholders, with optional parameter name, and Java format specifiers; see
+   * {@link #format(StringBuilder, FormatTemplate, Object...)}.
+   * <p>
+   * Constant templates are formatted from their cached {@link MessageTemplate compiled form}. Templates not in cache,
+   * most probably built dynamically, are formatted by scanning template characters.
+   * <p>
+   * Formatted message is limited to {@link RenderBudget#MAX_MESSAGE_LENGTH}; formatting stops as soon as budget is
+   * exceeded and message is truncated.
+   * 
+   * @param builder target string builder,
+   * @param message message template, not null,
+   * @param arguments message arguments, not empty.
+   */
+  static void message(StringBuilder builder, String message, Object... arguments)
+  {
+    message(builder, message, arguments, null);
+  }
+
+  /**
+   * Append message with arguments injected to given string builder, taking <code>{}</code> placeholders replacement
+   * from arguments already rendered, if any. Rendered arguments are NUL terminated, in arguments order, one for every
+   * argument; they are used only for templates without Java format specifiers. See
+   * {@link #message(StringBuilder, String, Object...)}.
+   * 
+   * @param builder target string builder,
+   * @param message message template, not null,
+   * @param arguments message arguments, not empty,
+   * @param rendered rendered arguments or null to render arguments.
+   */
+  static void message(StringBuilder builder, String message, Object[] arguments, CharSequence rendered)
+  {
+    int start = builder.length();
+    MessageTemplate template = MessageTemplate.lookup(message);
+    if(template != null) {
+      template.format(builder, arguments, rendered);
+      if(template.getFormat() != null && !RenderBudget.isMessageFull(builder, start)) {
+        format(builder, template.getFormat(), arguments);
+      }
+      RenderBudget.truncateMessage(builder, start);
+      return;
+    }
 
     // flag true while state machine is inside parameter, detected by '{' and lasting till '}'
     boolean parameter = false;
+    // index of the next rendered argument, if rendered arguments are present
+    int renderedIndex = 0;
 
-    for(int i = 0, argumentIndex = 0; i < message.length(); ++i) {
+    for(int i = 0, argumentIndex = 0; i < message.length() && !RenderBudget.isMessageFull(builder, start); ++i) {
       char c = message.charAt(i);
 
       if(c == '%') {
-        messageBuilder.append(format(message.substring(i), arguments));
+        format(builder, new FormatTemplate(message.substring(i)), arguments);
         break;
       }
 
@@ -142,7 +879,7 @@ final class LogImpl implements Log
           parameter = false;
           // parameter without argument just print original text
           if(argumentIndex++ >= arguments.length) {
-            messageBuilder.append(c);
+            builder.append(c);
           }
         }
         continue;
@@ -152,40 +889,80 @@ final class LogImpl implements Log
         parameter = true;
         if(argumentIndex < arguments.length) {
           // if argument is present replace {} with argument string representation
-          messageBuilder.append(arguments[argumentIndex]);
+          if(rendered != null) {
+            renderedIndex = rendered(builder, rendered, renderedIndex);
+          }
+          else {
+            ArgumentRenderers.render(builder, value(arguments[argumentIndex]));
+          }
         }
         else {
           // otherwise append {
-          messageBuilder.append(c);
+          builder.append(c);
         }
         continue;
       }
 
       // text content
-      messageBuilder.append(c);
+      builder.append(c);
     }
-
-    return messageBuilder.toString();
+    RenderBudget.truncateMessage(builder, start);
   }
 
-  private static String throwable(Throwable throwable)
+  /**
+   * Append rendered argument starting at given index, up to its NUL terminator, to given string builder.
+   * 
+   * @param builder target string builder,
+   * @param rendered rendered arguments, NUL terminated,
+   * @param index rendered argument start index.
+   * @return start index of the next rendered argument.
+   */
+  static int rendered(StringBuilder builder, CharSequence rendered, int index)
   {
-    if(throwable == null) {
-      return null;
+    int end = index;
+    while(rendered.charAt(end) != 0) {
+      ++end;
     }
+    builder.append(rendered, index, end);
+    return end + 1;
+  }
+
+  /**
+   * Get argument value to be rendered. {@link Supplier} argument is invoked and its result returned, so that expensive
+   * arguments are computed only when message is actually formatted and only if their placeholder is rendered. Any other
+   * argument is returned as it is.
+   * 
+   * @param argument message argument, possible null.
+   * @return argument value, possible null.
+   */
+  static Object value(Object argument)
+  {
+    return argument instanceof Supplier ? ((Supplier<?>)argument).get() : argument;
+  }
+
+  /**
+   * Append throwable summary to given string builder. If throwable has no cause append its message or class canonical
+   * name if message is null. Otherwise append the chain of causes class names, up to 8 nesting levels, followed by root
+   * cause message.
+   * 
+   * @param builder target string builder,
+   * @param throwable throwable instance, not null.
+   */
+  static void throwable(StringBuilder builder, Throwable throwable)
+  {
     if(throwable.getCause() == null) {
       String s = throwable.getMessage();
-      return s != null? s: throwable.getClass().getCanonicalName();
+      builder.append(s != null ? s : throwable.getClass().getCanonicalName());
+      return;
     }
 
     int nestingLevel = 0;
-    StringBuilder sb = new StringBuilder();
     for(;;) {
-      sb.append(throwable.getClass().getName());
-      sb.append(":");
-      sb.append(" ");
+      builder.append(throwable.getClass().getName());
+      builder.append(":");
+      builder.append(" ");
       if(++nestingLevel == 8) {
-        sb.append("...");
+        builder.append("...");
         break;
       }
       if(throwable.getCause() == null) {
@@ -193,188 +970,180 @@ final class LogImpl implements Log
         if(s == null) {
           s = throwable.getClass().getCanonicalName();
         }
-        sb.append(s);
+        builder.append(s);
         break;
       }
       throwable = throwable.getCause();
     }
-    return sb.toString();
   }
   
   /**
-   * Return formatted string with arguments injected or original message if format or arguments are invalid. This method
-   * does not throw exception on bad format; it simply returns original message.
+   * Append formatted string with arguments injected or original format if format or arguments are invalid. This method
+   * does not throw exception on bad format; it simply appends original format.
    * <p>
-   * This method takes care to pre-process arguments as follow:
-   * <ul>
-   * <li>replace {@link Class} with its canonical name,
-   * <li>replace {@link Throwable} with exception message or exception class canonical name if null message,
-   * <li>replace {@link Thread} with concatenation of thread name and thread ID,
-   * <li>replace {@link File} with file absolute path,
-   * <li>dump first 3 items from arrays like argument.
-   * </ul>
-   * All pre-processed arguments are replaced with string value and format specifier should be also string (%s).
+   * This method takes care to pre-process arguments: {@link Supplier} is replaced with its value and arguments with a
+   * renderer, e.g. {@link Class}, {@link Throwable} or arrays, are replaced with rendered string; see
+   * {@link ArgumentRenderers}. Pre-processed arguments are replaced with string value and format specifier should be
+   * also string (%s). Arguments consumed by plain <code>%s</code> specifiers are rendered by format template straight
+   * into target builder, see {@link FormatTemplate#isRendered(int)}, and are not pre-rendered.
+   * <p>
+   * Pre-processed arguments and rendered strings are kept into {@link FormatArguments} reused by current thread, so that
+   * formatting does not create arguments array copies or string builders.
    * 
-   * @param message formatted message,
+   * @param builder target string builder,
+   * @param format compiled format,
    * @param args variable number of formatting arguments.
-   * @return built string or original message if format or arguments are not valid.
    */
-  private static final String format(String message, Object... args)
+  private static final void format(StringBuilder builder, FormatTemplate format, Object... args)
   {
-    if(message == null) {
-      return null;
-    }
-    if(message.isEmpty()) {
-      return "";
-    }
-    if(args.length == 0) {
-      return message;
+    // pre-process only arguments consumed by format specifiers so that suppliers for missing specifiers are not invoked
+    int argumentsCount = format.getArgumentsCount();
+    if(argumentsCount == -1 || argumentsCount > args.length) {
+      argumentsCount = args.length;
     }
 
-    for(int i = 0; i < args.length; i++) {
-      // at this point args[i] could be null
-      if(args[i] == null) {
-        continue;
-      }
+    FormatArguments formatArguments = FormatArguments.acquire();
+    try {
+      // arguments array is owned by logging call and message can be formatted more than once
+      // pre-processed arguments are stored into a copy, taken only if there are arguments to pre-process
+      Object[] formatArgs = args;
+      for(int i = 0; i < argumentsCount; i++) {
+        Object value = value(args[i]);
+        if(ArgumentRenderers.get(value) != null && (!format.isRendered(i) || value instanceof Formattable)) {
+          value = formatArguments.render(value);
+        }
 
-      if(args[i] instanceof Class) {
-        args[i] = ((Class<?>)args[i]).getCanonicalName();
-      }
-      else if(args[i] instanceof Throwable) {
-        String s = ((Throwable)args[i]).getMessage();
-        if(s == null) {
-          s = args[i].getClass().getCanonicalName();
+        if(value == args[i]) {
+          continue;
         }
-        args[i] = s;
-      }
-      else if(args[i] instanceof Thread) {
-        Thread thread = (Thread)args[i];
-        StringBuilder sb = new StringBuilder();
-        sb.append(thread.getName());
-        sb.append(':');
-        sb.append(thread.getId());
-        args[i] = sb.toString();
-      }
-      else if(args[i] instanceof File) {
-        args[i] = ((File)args[i]).getAbsolutePath();
-      }
-      else if(isArrayLike(args[i])) {
-        StringBuilder sb = new StringBuilder();
-        sb.append('[');
-        int index = 0;
-        for(Object object : iterable(args[i])) {
-          if(object == null) {
-            continue;
-          }
-          String value = object instanceof String ? (String)object : object.toString();
-          if(value.isEmpty()) {
-            continue;
-          }
-          if(index++ > 0) {
-            sb.append(',');
-          }
-          if(index == 4) {
-            sb.append("...");
-            break;
-          }
-          sb.append(object);
+        if(formatArgs == args) {
+          formatArgs = formatArguments.copy(args);
         }
-        sb.append(']');
-        args[i] = sb.toString();
+        formatArgs[i] = value;
       }
-    }
 
-    try {
-      return String.format(message, args);
+      format.format(builder, formatArgs);
     }
-    catch(Throwable unused) {
-      // return unformatted message if format fails
-      return message;
+    finally {
+      formatArguments.release();
     }
   }
 
-  /** Ellipsis constant. */
-  private static final String ELLIPSIS = "...";
-
   /**
-   * Ensure message is not larger than requested maximum length. If message length is larger than allowed size shorten
-   * it and append ellipsis. This method guarantee maximum length is not exceed also when ellipsis is appended.
-   * <p>
-   * This method returns given <code>message</code> argument if smaller that requested maximum length or a new created
-   * string with trailing ellipsis if larger.
-   * 
-   * @param message message string, possible null,
-   * @param maxLength maximum allowed space.
-   * @return given <code>message</code> argument if smaller that requested maximum length or new created string with
-   *         trailing ellipsis.
+   * Enabled levels cached for a logging configuration generation and core logger level. Gate is immutable so that it is
+   * safely published by a plain field write.
+   *
+   * @author Iulian Rotaru
    */
-  protected static final String ellipsis(String message, int maxLength)
+  private static final class Gate
   {
-    if(message == null) {
-      return "null";
+    /** Initial gate of core loggers, never valid since global generation is never zero. */
+    static final Gate INVALID = new Gate(0, null, 0);
+
+    /** Logging configuration generation this gate was computed for. */
+    final int generation;
+    /** Core logger level this gate was computed for. */
+    final Level level;
+    /** Enabled level bits and {@link LogImpl#NOT_CACHED} flag. */
+    final int levels;
+
+    Gate(int generation, Level level, int levels)
+    {
+      this.generation = generation;
+      this.level = level;
+      this.levels = levels;
     }
-    return message.length() < maxLength ? message : message.substring(0, maxLength - ELLIPSIS.length()) + ELLIPSIS;
   }
 
   /**
-   * An object is array like if is an actual array or a collection.
-   * 
-   * @param object object to test if array like.
-   * @return true if <code>object</code> argument is array like.
+   * Working storage for {@link LogImpl#format(StringBuilder, FormatTemplate, Object...)}, reused by current thread:
+   * buffer for rendered arguments and arguments arrays copies, one per arguments count. Like {@link LogMessage}, an
+   * instance is reserved while formatting; nested formatting, from inside an argument <code>toString()</code>, uses a
+   * new instance.
+   *
+   * @author Iulian Rotaru
    */
-  private static final boolean isArrayLike(Object object)
+  private static final class FormatArguments
   {
-    return object != null && (object.getClass().isArray() || object instanceof Collection);
-  }
+    /** Initial capacity of the buffer used for rendered arguments. */
+    private static final int INITIAL_CAPACITY = 128;
 
-  /**
-   * Create an iterator supplied via Iterable interface. If <code>object</code> argument is a collection just returns it
-   * since collection is already iterbale. If is array, create an iterator able to traverse generic arrays.
-   * 
-   * @param object collection or array.
-   * @return Iterable instance.
-   */
-  private static final Iterable<?> iterable(final Object object)
-  {
-    // at this point object cannot be null and is array or collection
+    /** Maximum arguments count for reused arguments arrays; arguments arrays larger than this are cloned. */
+    private static final int MAX_ARGUMENTS = 8;
 
-    if(object instanceof Iterable) {
-      return (Iterable<?>)object;
+    /** Per thread instance or null if log4j thread locals are disabled. */
+    private static final ThreadLocal<FormatArguments> INSTANCE = Constants.ENABLE_THREADLOCALS ? new ThreadLocal<FormatArguments>() : null;
+
+    static FormatArguments acquire()
+    {
+      FormatArguments formatArguments = INSTANCE != null ? INSTANCE.get() : null;
+      if(formatArguments == null) {
+        formatArguments = new FormatArguments();
+        if(INSTANCE != null) {
+          INSTANCE.set(formatArguments);
+        }
+      }
+      else if(formatArguments.reserved) {
+        formatArguments = new FormatArguments();
+      }
+      formatArguments.reserved = true;
+      return formatArguments;
     }
 
-    // at this point object is an array
-    // create a iterator able to traverse generic arrays
+    /** Buffer for rendered argument string. */
+    private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
 
-    return new Iterable<Object>()
-    {
-      private Object array = object;
-      private int index;
+    /** Reused arguments arrays, indexed by arguments count minus one, created on first use. */
+    private final Object[][] arrays = new Object[MAX_ARGUMENTS][];
 
-      @Override
-      public Iterator<Object> iterator()
-      {
-        return new Iterator<Object>()
-        {
-          @Override
-          public boolean hasNext()
-          {
-            return index < Array.getLength(array);
-          }
+    /** Arguments array returned by last {@link #copy(Object[])}, cleared on release. */
+    private Object[] copy;
 
-          @SuppressWarnings("unqualified-field-access")
-          @Override
-          public Object next()
-          {
-            return Array.get(array, index++);
-          }
+    /** Flag true while this instance is used by a format call. */
+    private boolean reserved;
 
-          @Override
-          public void remove()
-          {
-            throw new UnsupportedOperationException("Array iterator has no remove operation.");
-          }
-        };
+    /**
+     * Render argument to string, using reused buffer.
+     *
+     * @param argument argument value, not null.
+     * @return rendered string.
+     */
+    String render(Object argument)
+    {
+      buffer.setLength(0);
+      ArgumentRenderers.render(buffer, argument);
+      return buffer.toString();
+    }
+
+    /**
+     * Copy arguments into reused array of the same length.
+     *
+     * @param args arguments array owned by logging call.
+     * @return arguments copy.
+     */
+    Object[] copy(Object[] args)
+    {
+      if(args.length > MAX_ARGUMENTS) {
+        return args.clone();
       }
-    };
+      copy = arrays[args.length - 1];
+      if(copy == null) {
+        copy = new Object[args.length];
+        arrays[args.length - 1] = copy;
+      }
+      System.arraycopy(args, 0, copy, 0, args.length);
+      return copy;
+    }
+
+    /** Release this instance, clearing references to arguments, in order to not retain them on thread. */
+    void release()
+    {
+      if(copy != null) {
+        Arrays.fill(copy, null);
+        copy = null;
+      }
+      StringBuilders.trimToMaxSize(buffer, Constants.MAX_REUSABLE_MESSAGE_SIZE);
+      reserved = false;
+    }
   }
 }
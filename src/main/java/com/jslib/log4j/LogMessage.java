@@ -0,0 +1,395 @@
+package com.jslib.log4j;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ReusableMessage;
+import org.apache.logging.log4j.util.Constants;
+import org.apache.logging.log4j.util.StringBuilders;
+
+/**
+ * Reusable log4j message used by {@link LogImpl} to hand messages to log4j without garbage. Message keeps references to
+ * message template and arguments and formats them directly into log4j buffers via {@link #formatTo(StringBuilder)};
+ * there is no intermediate buffer and formatting happens only when log4j asks for it.
+ * <p>
+ * There is a message instance per thread, reserved by {@link #acquire(String, Object[])} for the duration of a single
+ * logging call and returned by {@link #release()}. If an argument <code>toString()</code> logs itself on the same
+ * thread, thread message is already reserved and a new instance is created for the nested call. If log4j thread locals
+ * are disabled, e.g. in web applications, every acquire creates a new instance.
+ * <p>
+ * Fixed arity and primitive logging calls store arguments into arrays and primitive holder owned by message instance,
+ * so that neither arguments array nor boxed values are created, see {@link #acquire(String, Object)} and
+ * {@link #acquire(String, long)}.
+ * <p>
+ * When log4j needs to keep the message after logging call returns it takes a {@link #memento()}, which is a
+ * {@link DeferredMessage} with arguments snapshot, so that reused message is never exposed outside its thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class LogMessage implements ReusableMessage
+{
+  private static final long serialVersionUID = -3211826387614283047L;
+
+  /** Initial capacity of the buffer used for formatted message string. */
+  private static final int INITIAL_CAPACITY = 128;
+
+  /** Per thread message instance or null if log4j thread locals are disabled. */
+  private static final ThreadLocal<LogMessage> MESSAGE = Constants.ENABLE_THREADLOCALS ? new ThreadLocal<LogMessage>() : null;
+
+  /**
+   * Acquire message instance for given template and arguments, reusing thread message if thread locals are enabled and
+   * thread message is not already reserved. Caller should invoke {@link #release()} when logging call completes.
+   *
+   * @param format message template, not null,
+   * @param arguments message arguments.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, Object[] arguments)
+  {
+    LogMessage message = acquire();
+    message.format = format;
+    message.arguments = arguments;
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and fixed number of arguments. Arguments are stored into an array owned by
+   * message instance, so that logging call does not need to create one.
+   *
+   * @param format message template, not null,
+   * @param arg message argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, Object arg)
+  {
+    LogMessage message = acquireFixed(format, 1);
+    message.arguments[0] = arg;
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and two arguments. See {@link #acquire(String, Object)}.
+   *
+   * @param format message template, not null,
+   * @param arg1 first argument,
+   * @param arg2 second argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, Object arg1, Object arg2)
+  {
+    LogMessage message = acquireFixed(format, 2);
+    message.arguments[0] = arg1;
+    message.arguments[1] = arg2;
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and three arguments. See {@link #acquire(String, Object)}.
+   *
+   * @param format message template, not null,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, Object arg1, Object arg2, Object arg3)
+  {
+    LogMessage message = acquireFixed(format, 3);
+    message.arguments[0] = arg1;
+    message.arguments[1] = arg2;
+    message.arguments[2] = arg3;
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and four arguments. See {@link #acquire(String, Object)}.
+   *
+   * @param format message template, not null,
+   * @param arg1 first argument,
+   * @param arg2 second argument,
+   * @param arg3 third argument,
+   * @param arg4 fourth argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, Object arg1, Object arg2, Object arg3, Object arg4)
+  {
+    LogMessage message = acquireFixed(format, 4);
+    message.arguments[0] = arg1;
+    message.arguments[1] = arg2;
+    message.arguments[2] = arg3;
+    message.arguments[3] = arg4;
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and a primitive argument. Argument value is stored into a
+   * {@link PrimitiveArgument} holder owned by message instance and is not boxed.
+   *
+   * @param format message template, not null,
+   * @param arg message argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, int arg)
+  {
+    LogMessage message = acquirePrimitive(format);
+    message.primitive.set(arg);
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and a primitive argument. See {@link #acquire(String, int)}.
+   *
+   * @param format message template, not null,
+   * @param arg message argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, long arg)
+  {
+    LogMessage message = acquirePrimitive(format);
+    message.primitive.set(arg);
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and a primitive argument. See {@link #acquire(String, int)}.
+   *
+   * @param format message template, not null,
+   * @param arg message argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, double arg)
+  {
+    LogMessage message = acquirePrimitive(format);
+    message.primitive.set(arg);
+    return message;
+  }
+
+  /**
+   * Acquire message instance for template and a primitive argument. See {@link #acquire(String, int)}.
+   *
+   * @param format message template, not null,
+   * @param arg message argument.
+   * @return message instance.
+   */
+  public static LogMessage acquire(String format, boolean arg)
+  {
+    LogMessage message = acquirePrimitive(format);
+    message.primitive.set(arg);
+    return message;
+  }
+
+  /**
+   * Acquire message instance for throwable summary. See {@link #acquire(String, Object[])}.
+   *
+   * @param throwable throwable instance, not null.
+   * @return message instance.
+   */
+  public static LogMessage acquire(Throwable throwable)
+  {
+    LogMessage message = acquire();
+    message.throwable = throwable;
+    return message;
+  }
+
+  private static LogMessage acquireFixed(String format, int argumentsCount)
+  {
+    LogMessage message = acquire();
+    message.format = format;
+    message.arguments = message.fixedArguments[argumentsCount - 1];
+    return message;
+  }
+
+  private static LogMessage acquirePrimitive(String format)
+  {
+    LogMessage message = acquire();
+    message.format = format;
+    message.arguments = message.primitiveArguments;
+    return message;
+  }
+
+  private static LogMessage acquire()
+  {
+    LogMessage message = MESSAGE != null ? MESSAGE.get() : null;
+    if(message == null) {
+      message = new LogMessage();
+      if(MESSAGE != null) {
+        MESSAGE.set(message);
+      }
+    }
+    else if(message.reserved) {
+      // nested logging from inside an argument toString(), thread message is in use
+      message = new LogMessage();
+    }
+    message.reserved = true;
+    return message;
+  }
+
+  /** Buffer for formatted message string, used only when log4j asks for formatted string. */
+  private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+
+  /** Arguments arrays owned by this message instance, for fixed arity logging calls with 1 to 4 arguments. */
+  private final transient Object[][] fixedArguments = new Object[][]
+  {
+      new Object[1], new Object[2], new Object[3], new Object[4]
+  };
+
+  /** Holder for primitive argument, reused by primitive logging calls. */
+  private final transient PrimitiveArgument primitive = new PrimitiveArgument();
+
+  /** Arguments array with primitive holder as single argument. */
+  private final transient Object[] primitiveArguments = new Object[]
+  {
+      primitive
+  };
+
+  /** Message template or null if this message is a throwable summary. */
+  private String format;
+
+  /** Message arguments, owned by logging call or by this message instance for fixed arity and primitive calls. */
+  private transient Object[] arguments = Constants.EMPTY_OBJECT_ARRAY;
+
+  /** Throwable for throwable summary message, null if this message has a template. */
+  private transient Throwable throwable;
+
+  /** Arguments already rendered by an appender, NUL terminated, or null if arguments were not rendered. */
+  private transient CharSequence rendered;
+
+  /** Flag true while this message instance is used by a logging call. */
+  private transient boolean reserved;
+
+  private LogMessage()
+  {
+  }
+
+  /**
+   * Release this message instance after logging call completes so that it can be reused. References to template and
+   * arguments are cleared, in order to not retain them on thread, and oversized buffer is trimmed to log4j maximum
+   * reusable message size.
+   */
+  public void release()
+  {
+    format = null;
+    if(arguments.length > 0 && arguments.length <= fixedArguments.length && arguments == fixedArguments[arguments.length - 1]) {
+      Arrays.fill(arguments, null);
+    }
+    arguments = Constants.EMPTY_OBJECT_ARRAY;
+    throwable = null;
+    rendered = null;
+    StringBuilders.trimToMaxSize(buffer, Constants.MAX_REUSABLE_MESSAGE_SIZE);
+    reserved = false;
+  }
+
+  @Override
+  public String getFormattedMessage()
+  {
+    buffer.setLength(0);
+    formatTo(buffer);
+    return buffer.toString();
+  }
+
+  /**
+   * Get message template. Returns null if this message is a throwable summary.
+   *
+   * @return message template, possible null.
+   */
+  @Override
+  public String getFormat()
+  {
+    return format;
+  }
+
+  /**
+   * Get message arguments, not copied; primitive argument is kept into its holder. Returned array is owned by logging
+   * call or by this message and should not be retained after logging call returns.
+   *
+   * @return message arguments.
+   */
+  Object[] getArguments()
+  {
+    return arguments;
+  }
+
+  /**
+   * Record arguments rendered by an appender so that message text is formatted from them, without rendering arguments
+   * again. Rendered arguments are NUL terminated, one for every argument, and should not change till logging call
+   * returns; they are used only if template has no Java format specifiers.
+   *
+   * @param rendered rendered arguments.
+   */
+  void setRendered(CharSequence rendered)
+  {
+    this.rendered = rendered;
+  }
+
+  @Override
+  public Object[] getParameters()
+  {
+    Object[] parameters = arguments.clone();
+    if(arguments == primitiveArguments) {
+      parameters[0] = primitive.box();
+    }
+    return parameters;
+  }
+
+  @Override
+  public Throwable getThrowable()
+  {
+    return null;
+  }
+
+  @Override
+  public void formatTo(StringBuilder builder)
+  {
+    if(throwable != null) {
+      LogImpl.throwable(builder, throwable);
+    }
+    else if(format != null) {
+      LogImpl.message(builder, format, arguments, rendered);
+    }
+  }
+
+  /**
+   * Copy arguments into given array and return it, or a new array if arguments does not fit. Arguments array is owned
+   * by logging call or by this message and is never handed to log4j.
+   * <p>
+   * Primitive argument is not exposed, since log4j calls this method on every reusable message and boxing would defeat
+   * primitive logging; given array is returned unchanged and {@link #getParameterCount()} is zero. Primitive argument is
+   * still available as boxed value from {@link #getParameters()} and {@link #memento()}.
+   *
+   * @param emptyReplacement reusable parameters array from log4j.
+   * @return parameters array.
+   */
+  @Override
+  public Object[] swapParameters(Object[] emptyReplacement)
+  {
+    if(arguments == primitiveArguments) {
+      return emptyReplacement;
+    }
+    if(arguments.length > emptyReplacement.length) {
+      return arguments.clone();
+    }
+    System.arraycopy(arguments, 0, emptyReplacement, 0, arguments.length);
+    for(int i = arguments.length; i < emptyReplacement.length; ++i) {
+      emptyReplacement[i] = null;
+    }
+    return emptyReplacement;
+  }
+
+  @Override
+  public short getParameterCount()
+  {
+    return arguments == primitiveArguments ? 0 : (short)arguments.length;
+  }
+
+  @Override
+  public Message memento()
+  {
+    return throwable != null ? DeferredMessage.create(throwable) : DeferredMessage.create(format, arguments);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getFormattedMessage();
+  }
+}
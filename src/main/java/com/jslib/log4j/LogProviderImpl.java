@@ -1,9 +1,14 @@
 package com.jslib.log4j;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.util.PropertiesUtil;
 
-import com.jslib.api.log.Log;
 import com.jslib.api.log.LogConfig;
 import com.jslib.api.log.LogContext;
 import com.jslib.api.log.LogProvider;
@@ -13,6 +18,11 @@ import com.jslib.lang.Config;
  * Implementation for {@link LogProvider} interface. This implementation is rather simple: it is a factory for loggers
  * and log contexts.
  * <p>
+ * Loggers are cached by name and {@link #getLogger(String)} returns the same instance for the same name; cache lookup
+ * is a lock free map get. In class loader heavy containers loggers can be cached with weak references, so that loggers
+ * no longer in use can be garbage collected; weak mode is enabled by <code>js.log4j.weakLoggers</code> log4j component
+ * property.
+ * <p>
  * Current implementation uses underlying <code>log4j.properties</code> configuration; therefore {@link #config(Config)}
  * is not used, that is, is empty.
  * 
@@ -23,16 +33,90 @@ public final class LogProviderImpl implements LogProvider
   /** Reusable log context instance. */
   private final LogContext logContext;
 
+  /** Cache loggers with weak references. */
+  private final boolean weakLoggers;
+
+  /** Loggers cache used when weak mode is disabled. */
+  private final ConcurrentMap<String, ExtendedLog> loggers = new ConcurrentHashMap<>();
+
+  /** Loggers cache used in weak mode; references cleared by garbage collector are removed on next cache miss. */
+  private final ConcurrentMap<String, LoggerReference> loggerReferences = new ConcurrentHashMap<>();
+
+  /** Queue for logger references cleared by garbage collector. */
+  private final ReferenceQueue<ExtendedLog> referenceQueue = new ReferenceQueue<>();
+
   public LogProviderImpl()
+  {
+    this(PropertiesUtil.getProperties().getBooleanProperty("js.log4j.weakLoggers", false));
+  }
+
+  /**
+   * Test constructor.
+   * 
+   * @param weakLoggers cache loggers with weak references.
+   */
+  LogProviderImpl(boolean weakLoggers)
   {
     this.logContext = new LogContextImpl();
+    this.weakLoggers = weakLoggers;
     Log4jMXBeanImpl.create();
   }
 
+  /**
+   * Get cached logger for given name, creating it on first request. Null logger name is passed to log4j as it is and
+   * returned logger is not cached.
+   * 
+   * @param loggerName logger name, possible null.
+   * @return logger instance.
+   */
   @Override
-  public Log getLogger(String loggerName)
+  public ExtendedLog getLogger(String loggerName)
   {
-    return new LogImpl(LogManager.getLogger(loggerName));
+    if(loggerName == null) {
+      return new LogImpl(LogManager.getLogger(loggerName));
+    }
+    if(weakLoggers) {
+      return getWeakLogger(loggerName);
+    }
+    ExtendedLog log = loggers.get(loggerName);
+    if(log == null) {
+      log = loggers.computeIfAbsent(loggerName, name -> new LogImpl(LogManager.getLogger(name)));
+    }
+    return log;
+  }
+
+  private ExtendedLog getWeakLogger(String loggerName)
+  {
+    LoggerReference reference = loggerReferences.get(loggerName);
+    ExtendedLog log = reference != null ? reference.get() : null;
+    if(log != null) {
+      return log;
+    }
+
+    for(;;) {
+      reference = (LoggerReference)referenceQueue.poll();
+      if(reference == null) {
+        break;
+      }
+      loggerReferences.remove(reference.loggerName, reference);
+    }
+
+    log = new LogImpl(LogManager.getLogger(loggerName));
+    LoggerReference newReference = new LoggerReference(loggerName, log, referenceQueue);
+    for(;;) {
+      reference = loggerReferences.putIfAbsent(loggerName, newReference);
+      if(reference == null) {
+        return log;
+      }
+      // concurrent request for the same logger name, possible already cleared by garbage collector
+      ExtendedLog cachedLog = reference.get();
+      if(cachedLog != null) {
+        return cachedLog;
+      }
+      if(loggerReferences.replace(loggerName, reference, newReference)) {
+        return log;
+      }
+    }
   }
 
   @Override
@@ -50,6 +134,24 @@ public final class LogProviderImpl implements LogProvider
   @Override
   public void close()
   {
+    loggers.clear();
+    loggerReferences.clear();
     LoggerContext.getContext(false).stop();
   }
+
+  /**
+   * Weak reference to cached logger, keeping logger name for cache cleanup.
+   * 
+   * @author Iulian Rotaru
+   */
+  private static final class LoggerReference extends WeakReference<ExtendedLog>
+  {
+    final String loggerName;
+
+    LoggerReference(String loggerName, ExtendedLog log, ReferenceQueue<ExtendedLog> queue)
+    {
+      super(log, queue);
+      this.loggerName = loggerName;
+    }
+  }
 }
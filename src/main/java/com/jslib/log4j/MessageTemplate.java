@@ -0,0 +1,233 @@
+package com.jslib.log4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compiled message template for <code>{}</code> placeholders. A template is parsed once into literal segments and
+ * argument slots, with parameter names recorded; Java format tail, that is, template text starting with the first
+ * <code>%</code> character, is kept separately as {@link FormatTemplate compiled format}. Formatting a compiled template
+ * does not scan template characters anymore, it just appends literals and arguments.
+ * <p>
+ * Compiled templates are cached into a bounded, 2-way set associative cache keyed by template identity. Since logging
+ * templates are mostly compile time constants, the same string instance is used on every logging call. On the other
+ * hand dynamic templates, e.g. built by string concatenation, are a new instance on every call and would only pollute
+ * the cache; for this reason a template is compiled and cached only the second time it is seen, see
+ * {@link #lookup(String)}. Caller should fall back to interpretive formatting when lookup returns null.
+ *
+ * @author Iulian Rotaru
+ */
+final class MessageTemplate
+{
+  /** Cache size, in number of templates. Should be a power of 2. */
+  private static final int CACHE_SIZE = 1024;
+
+  /** Mask for cache set computed from template identity hash code; every set has two ways, adjacent in cache. */
+  private static final int SET_MASK = CACHE_SIZE / 2 - 1;
+
+  /** Compiled templates cache. Way 0 of every set holds the most recently compiled template. */
+  private static final AtomicReferenceArray<MessageTemplate> CACHE = new AtomicReferenceArray<>(CACHE_SIZE);
+
+  /** Templates seen once, candidates for compiling on next sighting. Uses the same sets as {@link #CACHE}. */
+  private static final AtomicReferenceArray<String> CANDIDATES = new AtomicReferenceArray<>(CACHE_SIZE);
+
+  /**
+   * Get cached compiled template or null if template is not cached. If template is not cached but is one of the last
+   * two candidates seen on its cache set it is compiled and cached, evicting the least recently compiled template of
+   * the set. Otherwise template is recorded as candidate and this method returns null. So two templates sharing a cache
+   * set are both cached, even if used alternately, and candidates never evict a compiled template before being seen
+   * twice.
+   *
+   * @param template message template, not null.
+   * @return compiled template or null if template is not cached.
+   */
+  public static MessageTemplate lookup(String template)
+  {
+    int index = set(template) * 2;
+    MessageTemplate compiled = CACHE.get(index);
+    if(compiled != null && compiled.template == template) {
+      return compiled;
+    }
+    compiled = CACHE.get(index + 1);
+    if(compiled != null && compiled.template == template) {
+      return compiled;
+    }
+    if(CANDIDATES.get(index) != template && CANDIDATES.get(index + 1) != template) {
+      CANDIDATES.set(index + 1, CANDIDATES.get(index));
+      CANDIDATES.set(index, template);
+      return null;
+    }
+    compiled = new MessageTemplate(template);
+    CACHE.set(index + 1, CACHE.get(index));
+    CACHE.set(index, compiled);
+    return compiled;
+  }
+
+  /**
+   * Get cache set of the given template.
+   *
+   * @param template message template, not null.
+   * @return template cache set.
+   */
+  static int set(String template)
+  {
+    return System.identityHashCode(template) & SET_MASK;
+  }
+
+  /** Source template, used as cache key. */
+  private final String template;
+
+  /** Literal segments; there is a literal before every argument slot and one after the last one, possible empty. */
+  private final String[] literals;
+
+  /** Parameter names for argument slots, in order. Parameter name is empty for <code>{}</code> placeholder. */
+  private final String[] names;
+
+  /** Last parameter is closed by <code>}</code>. It can be opened only if its name extends to template end. */
+  private final boolean closed;
+
+  /** Java format tail, starting with first <code>%</code> character, or null if template has no format specifiers. */
+  private final FormatTemplate format;
+
+  /**
+   * Parse template. This constructor follows the same rules as interpretive formatting from {@link LogImpl}.
+   *
+   * @param template message template, not null.
+   */
+  MessageTemplate(String template)
+  {
+    this.template = template;
+
+    List<String> literals = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+
+    // index of parameter name start while parser is inside parameter, detected by '{' and lasting till '}'
+    int nameIndex = -1;
+
+    int i = 0;
+    for(; i < template.length(); ++i) {
+      char c = template.charAt(i);
+
+      if(c == '%') {
+        break;
+      }
+
+      if(nameIndex != -1) {
+        if(c == '}') {
+          names.add(template.substring(nameIndex, i));
+          nameIndex = -1;
+        }
+        continue;
+      }
+
+      if(c == '{') {
+        literals.add(literal.toString());
+        literal.setLength(0);
+        nameIndex = i + 1;
+        continue;
+      }
+
+      literal.append(c);
+    }
+
+    if(nameIndex != -1) {
+      names.add(template.substring(nameIndex, i));
+    }
+    literals.add(literal.toString());
+
+    this.literals = literals.toArray(new String[literals.size()]);
+    this.names = names.toArray(new String[names.size()]);
+    this.closed = nameIndex == -1;
+    this.format = i < template.length() ? new FormatTemplate(template.substring(i)) : null;
+  }
+
+  /**
+   * Append template literals and arguments to given string builder. A parameter without argument is replaced by
+   * <code>{}</code>, or <code>{</code> if parameter is not closed. Java format tail, if any, is not processed by this
+   * method; see {@link #getFormat()}.
+   * <p>
+   * Formatting stops as soon as appended text exceeds {@link RenderBudget#MAX_MESSAGE_LENGTH}, so that remaining
+   * arguments are not rendered; truncating message is caller responsibility.
+   *
+   * @param builder target string builder,
+   * @param arguments message arguments.
+   */
+  public void format(StringBuilder builder, Object[] arguments)
+  {
+    format(builder, arguments, null);
+  }
+
+  /**
+   * Append template literals and arguments to given string builder, taking arguments from their NUL terminated
+   * rendered form, if present, instead of rendering them again. See {@link #format(StringBuilder, Object[])}.
+   *
+   * @param builder target string builder,
+   * @param arguments message arguments,
+   * @param rendered rendered arguments, one for every argument, or null to render arguments.
+   */
+  public void format(StringBuilder builder, Object[] arguments, CharSequence rendered)
+  {
+    int start = builder.length();
+    int renderedIndex = 0;
+    int lastIndex = names.length - 1;
+    for(int i = 0; i <= lastIndex; ++i) {
+      builder.append(literals[i]);
+      if(RenderBudget.isMessageFull(builder, start)) {
+        return;
+      }
+      if(i < arguments.length) {
+        if(rendered != null) {
+          renderedIndex = LogImpl.rendered(builder, rendered, renderedIndex);
+        }
+        else {
+          ArgumentRenderers.render(builder, LogImpl.value(arguments[i]));
+        }
+        continue;
+      }
+      builder.append('{');
+      if(i < lastIndex || closed) {
+        builder.append('}');
+      }
+    }
+    builder.append(literals[names.length]);
+  }
+
+  /**
+   * Get the number of parameters declared by this template.
+   *
+   * @return parameters count.
+   */
+  public int getParametersCount()
+  {
+    return names.length;
+  }
+
+  /**
+   * Get the name of parameter at given index; name is empty for <code>{}</code> placeholder.
+   *
+   * @param index parameter index.
+   * @return parameter name, possible empty.
+   */
+  public String getParameterName(int index)
+  {
+    return names[index];
+  }
+
+  /**
+   * Get Java format tail, starting with first <code>%</code> character, or null if template has no format specifiers.
+   *
+   * @return Java format tail, possible null.
+   */
+  public FormatTemplate getFormat()
+  {
+    return format;
+  }
+
+  @Override
+  public String toString()
+  {
+    return template;
+  }
+}
@@ -0,0 +1,173 @@
+package com.jslib.log4j;
+
+/**
+ * Mutable holder for a primitive message argument, used by primitive specialized methods from {@link ExtendedLog} to
+ * carry argument value without boxing. Every {@link LogMessage} owns a holder instance reused on every logging call;
+ * for this reason holder should never escape logging call, see {@link #box(Object)}.
+ * <p>
+ * Formatting code recognizes holder and writes primitive value straight into string builder. Holder extends
+ * {@link Number} so that numeric format specifiers can read its value.
+ *
+ * @author Iulian Rotaru
+ */
+final class PrimitiveArgument extends Number
+{
+  private static final long serialVersionUID = 8270412351726004392L;
+
+  /**
+   * Replace primitive holder with boxed value, if given argument is a holder. Any other argument is returned as it is.
+   *
+   * @param argument message argument, possible null.
+   * @return boxed value if argument is a holder, otherwise argument itself.
+   */
+  public static Object box(Object argument)
+  {
+    return argument instanceof PrimitiveArgument ? ((PrimitiveArgument)argument).box() : argument;
+  }
+
+  /**
+   * Primitive type of current value.
+   *
+   * @author Iulian Rotaru
+   */
+  private enum Type
+  {
+    INT, LONG, DOUBLE, BOOLEAN
+  }
+
+  /** Primitive type of current value. */
+  private Type type = Type.INT;
+
+  /** Current value for integral and boolean types; boolean true is stored as 1. */
+  private long longValue;
+
+  /** Current value for double type. */
+  private double doubleValue;
+
+  public void set(int value)
+  {
+    type = Type.INT;
+    longValue = value;
+  }
+
+  public void set(long value)
+  {
+    type = Type.LONG;
+    longValue = value;
+  }
+
+  public void set(double value)
+  {
+    type = Type.DOUBLE;
+    doubleValue = value;
+  }
+
+  public void set(boolean value)
+  {
+    type = Type.BOOLEAN;
+    longValue = value ? 1 : 0;
+  }
+
+  /**
+   * Test if current value has an integral type, that is, int or long.
+   *
+   * @return true if value is integral.
+   */
+  public boolean isIntegral()
+  {
+    return type == Type.INT || type == Type.LONG;
+  }
+
+  /**
+   * Test if current value is a double.
+   *
+   * @return true if value is a double.
+   */
+  public boolean isDouble()
+  {
+    return type == Type.DOUBLE;
+  }
+
+  /**
+   * Get hexadecimal representation of integral value, as unsigned value of its type size.
+   *
+   * @return hexadecimal digits.
+   */
+  public String toHexString()
+  {
+    return type == Type.INT ? Integer.toHexString((int)longValue) : Long.toHexString(longValue);
+  }
+
+  /**
+   * Append current value to string builder, with the same string representation as its boxed value.
+   *
+   * @param builder string builder.
+   */
+  public void appendTo(StringBuilder builder)
+  {
+    switch(type) {
+    case DOUBLE:
+      builder.append(doubleValue);
+      break;
+
+    case BOOLEAN:
+      builder.append(longValue != 0);
+      break;
+
+    default:
+      builder.append(longValue);
+    }
+  }
+
+  /**
+   * Get boxed current value.
+   *
+   * @return boxed value.
+   */
+  public Object box()
+  {
+    switch(type) {
+    case INT:
+      return (int)longValue;
+
+    case LONG:
+      return longValue;
+
+    case DOUBLE:
+      return doubleValue;
+
+    default:
+      return longValue != 0;
+    }
+  }
+
+  @Override
+  public int intValue()
+  {
+    return type == Type.DOUBLE ? (int)doubleValue : (int)longValue;
+  }
+
+  @Override
+  public long longValue()
+  {
+    return type == Type.DOUBLE ? (long)doubleValue : longValue;
+  }
+
+  @Override
+  public float floatValue()
+  {
+    return (float)doubleValue();
+  }
+
+  @Override
+  public double doubleValue()
+  {
+    return type == Type.DOUBLE ? doubleValue : longValue;
+  }
+
+  @Override
+  public String toString()
+  {
+    return box().toString();
+  }
+}
@@ -0,0 +1,859 @@
+package com.jslib.log4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Remote console aggregator merging streams of many {@link RemoteConsoleWriter remote console writers}, named nodes,
+ * into a single time ordered stream. Aggregator connects to every node endpoint and switches it to framed protocol, so
+ * that every record carries its timestamp. Merged records are sent to all downstream consoles connected to aggregator
+ * port, as text lines tagged with node name, e.g. <code>[node1] Service started.</code>; every line of a multi-line
+ * record is tagged.
+ * <p>
+ * Records wait in a merge queue, ordered by timestamp, for a bounded reorder window. A record is emitted as soon as all
+ * connected nodes sent records not older than it, or after it waited reorder window, or when merge queue exceeds
+ * {@link #MAX_PENDING_BYTES}. As a result records are emitted in timestamp order, except records arriving later than
+ * reorder window, which are emitted as soon as possible. Node clocks are never compared with aggregator clock.
+ * <p>
+ * Buffering is bounded everywhere: nodes input buffers, merge queue and downstream consoles outbound buffers.
+ * Aggregator never stops reading nodes; a downstream console that does not keep up loses lines, counted by
+ * {@link #getDroppedCount()}. Lost node connections are retried every {@link #RECONNECT_DELAY} nanoseconds. Lines
+ * received from a node before framed protocol is active have no timestamp and are emitted immediately.
+ * <p>
+ * Aggregator runs a single I/O thread with a selector for nodes, downstream consoles and server socket. It can be
+ * started standalone, see {@link #main(String...)}.
+ *
+ * @author Iulian Rotaru
+ */
+public class RemoteConsoleAggregator implements Runnable, Closeable
+{
+  /** Default downstream consoles port. */
+  public static final int DEFAULT_PORT = 8002;
+
+  /** Default reorder window, in milliseconds. */
+  public static final int DEFAULT_REORDER_WINDOW = 500;
+
+  /** Maximum size, in bytes, of records text waiting in merge queue. */
+  static final int MAX_PENDING_BYTES = 8 * 1024 * 1024;
+
+  /** I/O thread stop timeout. */
+  private static final int SHUTDOWN_TIMEOUT = 2000;
+
+  /** Delay, in nanoseconds, before reconnecting to a node. */
+  private static final long RECONNECT_DELAY = TimeUnit.SECONDS.toNanos(1);
+
+  /** Size of node input buffer, larger than the largest record a writer sends. */
+  private static final int NODE_BUFFER_SIZE = 512 * 1024;
+
+  /** Size of outbound buffer allocated for every downstream console. */
+  private static final int CLIENT_BUFFER_SIZE = 256 * 1024;
+
+  /** Size of frame length prefix, in bytes. */
+  private static final int FRAME_LENGTH_SIZE = 4;
+
+  /** Command switching node to framed protocol. */
+  private static final byte[] FRAMED_COMMAND = "FRAMED\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  /** Maximum time, in nanoseconds, a record waits in merge queue. */
+  private final long reorderWindow;
+
+  /** Remote console writers endpoints. */
+  private final List<Node> nodes = new ArrayList<>();
+
+  /** Connected downstream consoles. This list is accessed only from I/O thread. */
+  private final List<Client> clients = new ArrayList<>();
+
+  /** Merge queue, ordered by record timestamp then by arrival order. */
+  private final PriorityQueue<Entry> pending = new PriorityQueue<>();
+
+  /** Text size, in bytes, of records from merge queue. */
+  private int pendingBytes;
+
+  /** Arrival counter, used to keep arrival order of records with the same timestamp. */
+  private long arrivals;
+
+  /** Reusable buffer for tagged lines of the emitted record; grows as needed. */
+  private ByteBuffer lines = ByteBuffer.allocate(4 * 1024);
+
+  /** Buffer for bytes received from downstream consoles, discarded. */
+  private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+  /** Earliest time, in nanoseconds, I/O thread should wake up for merge queue or nodes reconnect. */
+  private long deadline = Long.MAX_VALUE;
+
+  /** Server socket listening port. It is the actual bound port if aggregator was created with port 0. */
+  private final int port;
+
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final Thread thread;
+  private volatile boolean running;
+
+  /** The number of connected downstream consoles, updated by I/O thread. */
+  private volatile int clientsCount;
+
+  /** The number of nodes with open connection, updated by I/O thread. */
+  private volatile int nodesCount;
+
+  /** Lines dropped because a downstream console outbound buffer was full, updated by I/O thread. */
+  private volatile long droppedCount;
+
+  /**
+   * Create aggregator and start I/O thread. Node endpoint is <code>host:port</code>, optionally prefixed by node name
+   * and equal sign, e.g. <code>api=10.0.0.5:8001</code>; if name is missing endpoint is used as node name.
+   *
+   * @param port downstream consoles port, 0 for an ephemeral port, see {@link #getPort()},
+   * @param reorderWindow reorder window, in milliseconds,
+   * @param nodes nodes endpoints.
+   * @throws IOException if server socket creation fails.
+   * @throws IllegalArgumentException if a node endpoint is not valid.
+   */
+  public RemoteConsoleAggregator(int port, int reorderWindow, String... nodes) throws IOException, IllegalArgumentException
+  {
+    this.reorderWindow = TimeUnit.MILLISECONDS.toNanos(Math.max(0, reorderWindow));
+    for(String node : nodes) {
+      this.nodes.add(new Node(node));
+    }
+
+    Selector selector = Selector.open();
+    ServerSocketChannel server = null;
+    try {
+      server = ServerSocketChannel.open();
+      server.configureBlocking(false);
+      server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      server.bind(new InetSocketAddress(port));
+      server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    catch(IOException e) {
+      close(server);
+      close(selector);
+      throw e;
+    }
+
+    this.port = server.socket().getLocalPort();
+    this.selector = selector;
+    this.server = server;
+    this.running = true;
+    this.thread = new Thread(this, "RemoteConsoleAggregator");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Get server socket listening port.
+   *
+   * @return listening port.
+   */
+  public int getPort()
+  {
+    return port;
+  }
+
+  /**
+   * Get the number of connected downstream consoles.
+   *
+   * @return connected consoles count.
+   */
+  public int getClientsCount()
+  {
+    return clientsCount;
+  }
+
+  /**
+   * Get the number of nodes with open connection.
+   *
+   * @return connected nodes count.
+   */
+  public int getNodesCount()
+  {
+    return nodesCount;
+  }
+
+  /**
+   * Get the total number of lines dropped because a downstream console outbound buffer was full.
+   *
+   * @return dropped lines count.
+   */
+  public long getDroppedCount()
+  {
+    return droppedCount;
+  }
+
+  /** Stop I/O thread and close all connections. Records from merge queue are sent before closing. */
+  @Override
+  public void close()
+  {
+    running = false;
+    selector.wakeup();
+    try {
+      thread.join(SHUTDOWN_TIMEOUT);
+    }
+    catch(InterruptedException unused) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Implement runnable interface.
+   */
+  @Override
+  public void run()
+  {
+    debug("Open remote console aggregator on port |%d| for |%d| nodes.", port, nodes.size());
+    while(running) {
+      long now = System.nanoTime();
+      connect(now);
+      merge(now);
+      try {
+        select();
+      }
+      catch(IOException e) {
+        error(e);
+        break;
+      }
+
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while(keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        if(!key.isValid()) {
+          continue;
+        }
+        if(key.isAcceptable()) {
+          accept();
+          continue;
+        }
+        Object attachment = key.attachment();
+        if(attachment instanceof Node) {
+          Node node = (Node)attachment;
+          if(key.isConnectable()) {
+            node.connected();
+          }
+          else if(key.isReadable()) {
+            node.read();
+          }
+          continue;
+        }
+        Client client = (Client)attachment;
+        if(key.isReadable()) {
+          client.read(discard);
+        }
+        if(key.isValid() && key.isWritable()) {
+          client.send();
+        }
+      }
+      count();
+    }
+
+    while(!pending.isEmpty()) {
+      emit(pending.poll());
+    }
+    send();
+    for(Node node : nodes) {
+      node.close(0);
+    }
+    for(Client client : clients) {
+      client.close();
+    }
+    clients.clear();
+    count();
+    close(server);
+    close(selector);
+    debug("Remote console aggregator thread |%s| finished.", Thread.currentThread().getId());
+  }
+
+  /**
+   * Wait for selector events up to the earliest merge queue or reconnect deadline.
+   *
+   * @throws IOException if selector fails.
+   */
+  private void select() throws IOException
+  {
+    if(deadline == Long.MAX_VALUE) {
+      selector.select();
+      return;
+    }
+    long remaining = deadline - System.nanoTime();
+    if(remaining <= 0) {
+      selector.selectNow();
+      return;
+    }
+    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+  }
+
+  /**
+   * Start connection to disconnected nodes whose reconnect time is reached. Update deadline with the earliest
+   * reconnect time.
+   *
+   * @param now current time, in nanoseconds.
+   */
+  private void connect(long now)
+  {
+    deadline = Long.MAX_VALUE;
+    for(Node node : nodes) {
+      if(node.channel == null && now - node.reconnectTime >= 0) {
+        node.connect(now);
+      }
+      if(node.channel == null) {
+        deadline = Math.min(deadline, node.reconnectTime);
+      }
+    }
+  }
+
+  /**
+   * Emit records from merge queue head while they are due: record timestamp is not newer than merge watermark,
+   * record waited reorder window or merge queue exceeds its maximum size. Send downstream consoles outbound buffers and
+   * update deadline with head record reorder window expiration.
+   *
+   * @param now current time, in nanoseconds.
+   */
+  private void merge(long now)
+  {
+    long watermark = watermark();
+    for(Entry entry = pending.peek(); entry != null; entry = pending.peek()) {
+      if(entry.time > watermark && now - entry.arrival < reorderWindow && pendingBytes <= MAX_PENDING_BYTES) {
+        deadline = Math.min(deadline, entry.arrival + reorderWindow);
+        break;
+      }
+      pending.poll();
+      pendingBytes -= entry.text.length;
+      emit(entry);
+    }
+    send();
+  }
+
+  /**
+   * Get merge watermark, that is, the oldest of the newest timestamps received from every connected node in framed
+   * protocol. No connected node will send a record older than watermark, except records out of order on node itself.
+   *
+   * @return merge watermark or {@link Long#MAX_VALUE} if there is no connected node.
+   */
+  private long watermark()
+  {
+    long watermark = Long.MAX_VALUE;
+    for(Node node : nodes) {
+      if(node.connected) {
+        watermark = Math.min(watermark, node.lastTime);
+      }
+    }
+    return watermark;
+  }
+
+  /**
+   * Copy record text to all downstream consoles outbound buffers, every line prefixed by node tag.
+   *
+   * @param entry merged record.
+   */
+  private void emit(Entry entry)
+  {
+    byte[] tag = entry.node.tag;
+    byte[] text = entry.text;
+    int required = text.length + 2;
+    for(byte b : text) {
+      if(b == '\n') {
+        required += tag.length;
+      }
+    }
+    required += tag.length;
+    if(lines.capacity() < required) {
+      lines = ByteBuffer.allocate(Math.max(required, 2 * lines.capacity()));
+    }
+    lines.clear();
+    int lineStart = 0;
+    for(int i = 0; i < text.length; ++i) {
+      if(text[i] == '\n') {
+        lines.put(tag).put(text, lineStart, i + 1 - lineStart);
+        lineStart = i + 1;
+      }
+    }
+    if(lineStart < text.length) {
+      lines.put(tag).put(text, lineStart, text.length - lineStart).put((byte)'\r').put((byte)'\n');
+    }
+    lines.flip();
+    for(int i = 0; i < clients.size(); ++i) {
+      if(!clients.get(i).offer(lines)) {
+        ++droppedCount;
+      }
+    }
+  }
+
+  /** Send downstream consoles outbound buffers and remove consoles closed meanwhile. */
+  private void send()
+  {
+    clients.removeIf(client -> !client.send());
+  }
+
+  /** Update connection counters read by other threads. */
+  private void count()
+  {
+    int nodesCount = 0;
+    for(Node node : nodes) {
+      if(node.connected) {
+        ++nodesCount;
+      }
+    }
+    this.nodesCount = nodesCount;
+    this.clientsCount = clients.size();
+  }
+
+  /** Accept pending downstream console connection and register it with selector for reading. */
+  private void accept()
+  {
+    SocketChannel channel = null;
+    try {
+      channel = server.accept();
+      if(channel == null) {
+        return;
+      }
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      Client client = new Client(channel, key);
+      key.attach(client);
+      clients.add(client);
+      debug("Open connection with remote console from |%s|.", client.address);
+    }
+    catch(IOException e) {
+      error(e);
+      close(channel);
+    }
+  }
+
+  /**
+   * Add a record to merge queue.
+   *
+   * @param node record node,
+   * @param time record timestamp, milliseconds since epoch,
+   * @param text record text.
+   */
+  private void add(Node node, long time, byte[] text)
+  {
+    pending.add(new Entry(node, time, System.nanoTime(), arrivals++, text));
+    pendingBytes += text.length;
+  }
+
+  /**
+   * Record waiting in merge queue.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Entry implements Comparable<Entry>
+  {
+    final Node node;
+
+    /** Record timestamp, milliseconds since epoch. */
+    final long time;
+
+    /** Time, in nanoseconds, when record was received. */
+    final long arrival;
+
+    /** Arrival order. */
+    final long order;
+
+    /** Record text, that is, layout output. */
+    final byte[] text;
+
+    Entry(Node node, long time, long arrival, long order, byte[] text)
+    {
+      this.node = node;
+      this.time = time;
+      this.arrival = arrival;
+      this.order = order;
+      this.text = text;
+    }
+
+    @Override
+    public int compareTo(Entry other)
+    {
+      if(time != other.time) {
+        return time < other.time ? -1 : 1;
+      }
+      return Long.compare(order, other.order);
+    }
+  }
+
+  /**
+   * Remote console writer endpoint. Node connection is opened by I/O thread and switched to framed protocol; bytes
+   * received before first frame are text lines. A frame length starts with a zero byte, since records are much
+   * smaller than 16 MB, while a text line never does, so that protocol switch is detected without ambiguity.
+   *
+   * @author Iulian Rotaru
+   */
+  private final class Node
+  {
+    private final String name;
+
+    /** Node endpoint, resolved on every connection attempt. */
+    private final InetSocketAddress address;
+
+    /** Node tag prefixing every line, UTF-8 encoded. */
+    final byte[] tag;
+
+    /** Input buffer, in fill mode. */
+    private final ByteBuffer input = ByteBuffer.allocate(NODE_BUFFER_SIZE);
+
+    /** Node channel, connected or with connection in progress; null if disconnected. */
+    SocketChannel channel;
+
+    private SelectionKey key;
+
+    /** True if node connection is established. */
+    boolean connected;
+
+    /** True after the first frame was received. */
+    private boolean framed;
+
+    /** Newest record timestamp received since connection was opened. */
+    long lastTime = Long.MIN_VALUE;
+
+    /** Time, in nanoseconds, of next connection attempt. */
+    long reconnectTime = System.nanoTime();
+
+    /**
+     * Create node from endpoint specification, <code>[name=]host:port</code>.
+     *
+     * @param node node endpoint.
+     * @throws IllegalArgumentException if node endpoint is not valid.
+     */
+    Node(String node) throws IllegalArgumentException
+    {
+      int separator = node.indexOf('=');
+      String endpoint = node.substring(separator + 1);
+      this.name = separator > 0 ? node.substring(0, separator) : endpoint;
+      int portSeparator = endpoint.lastIndexOf(':');
+      if(portSeparator == -1) {
+        throw new IllegalArgumentException("Missing port on node endpoint: " + node);
+      }
+      this.address = InetSocketAddress.createUnresolved(endpoint.substring(0, portSeparator), Integer.parseInt(endpoint.substring(portSeparator + 1)));
+      this.tag = ("[" + name + "] ").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Start non-blocking connection to node. On failure next attempt is scheduled.
+     *
+     * @param now current time, in nanoseconds.
+     */
+    void connect(long now)
+    {
+      try {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        if(channel.connect(new InetSocketAddress(address.getHostString(), address.getPort()))) {
+          connected();
+        }
+      }
+      catch(IOException | RuntimeException e) {
+        debug("Fail to connect remote console node |%s|. Root cause: %s", name, e);
+        close(now);
+      }
+    }
+
+    /** Complete node connection and request framed protocol. */
+    void connected()
+    {
+      try {
+        if(!channel.finishConnect()) {
+          return;
+        }
+        // command is small enough to be accepted by a new socket send buffer
+        channel.write(ByteBuffer.wrap(FRAMED_COMMAND));
+        key.interestOps(SelectionKey.OP_READ);
+        connected = true;
+        debug("Open connection with remote console node |%s|.", name);
+      }
+      catch(IOException e) {
+        debug("Fail to connect remote console node |%s|. Root cause: %s", name, e);
+        close(System.nanoTime());
+      }
+    }
+
+    /** Read available bytes from node and add received records to merge queue. */
+    void read()
+    {
+      try {
+        int count;
+        while((count = channel.read(input)) > 0) {
+          input.flip();
+          parse();
+          input.compact();
+        }
+        if(count == -1) {
+          debug("Remote console node |%s| has been closed.", name);
+          close(System.nanoTime());
+        }
+      }
+      catch(IOException | IllegalStateException e) {
+        debug("Remote console node |%s| has been closed. Root cause: %s", name, e);
+        close(System.nanoTime());
+      }
+    }
+
+    /**
+     * Parse complete text lines and frames from input buffer, in drain mode. On return input position is at the first
+     * incomplete line or frame.
+     *
+     * @throws IllegalStateException if frame length is not valid.
+     */
+    private void parse() throws IllegalStateException
+    {
+      while(input.hasRemaining()) {
+        int start = input.position();
+        if(!framed && input.get(start) != 0) {
+          int end = lineEnd(start);
+          if(end == -1) {
+            return;
+          }
+          // line without timestamp is not reordered
+          emit(new Entry(this, 0, 0, 0, bytes(start, end)));
+          input.position(end);
+          continue;
+        }
+        framed = true;
+        if(input.remaining() < FRAME_LENGTH_SIZE) {
+          return;
+        }
+        int length = input.getInt(start);
+        if(length <= 0 || length > input.capacity() - FRAME_LENGTH_SIZE) {
+          throw new IllegalStateException("Invalid frame length: " + length);
+        }
+        if(input.remaining() < FRAME_LENGTH_SIZE + length) {
+          return;
+        }
+        int end = start + FRAME_LENGTH_SIZE + length;
+        int limit = input.limit();
+        input.limit(end).position(start + FRAME_LENGTH_SIZE);
+        long time = ConsoleRecord.getTime(input);
+        int textStart = ConsoleRecord.getTextStart(input);
+        input.limit(limit);
+        lastTime = Math.max(lastTime, time);
+        add(this, time, bytes(textStart, end));
+        input.position(end);
+      }
+    }
+
+    /** Get the end index of the line starting at given index, line feed included, or -1 if line is not complete. */
+    private int lineEnd(int start)
+    {
+      for(int i = start; i < input.limit(); ++i) {
+        if(input.get(i) == '\n') {
+          return i + 1;
+        }
+      }
+      // line longer than input buffer is split
+      return input.limit() - start == input.capacity() ? input.limit() : -1;
+    }
+
+    private byte[] bytes(int start, int end)
+    {
+      byte[] bytes = new byte[end - start];
+      for(int i = 0; i < bytes.length; ++i) {
+        bytes[i] = input.get(start + i);
+      }
+      return bytes;
+    }
+
+    /**
+     * Close node connection, if any, and schedule next connection attempt.
+     *
+     * @param now current time, in nanoseconds.
+     */
+    void close(long now)
+    {
+      if(key != null) {
+        key.cancel();
+      }
+      RemoteConsoleAggregator.close(channel);
+      channel = null;
+      key = null;
+      connected = false;
+      input.clear();
+      framed = false;
+      lastTime = Long.MIN_VALUE;
+      reconnectTime = now + RECONNECT_DELAY;
+    }
+  }
+
+  /**
+   * Connected downstream console with its own outbound buffer. All methods are invoked from I/O thread.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Client
+  {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Object address;
+
+    /** Outbound buffer, always in fill mode. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(CLIENT_BUFFER_SIZE);
+
+    private boolean closed;
+
+    Client(SocketChannel channel, SelectionKey key) throws IOException
+    {
+      this.channel = channel;
+      this.key = key;
+      this.address = channel.getRemoteAddress();
+    }
+
+    /**
+     * Append lines to outbound buffer, all or nothing. Lines position is not changed.
+     *
+     * @param lines lines bytes.
+     * @return false if there is no room for lines.
+     */
+    boolean offer(ByteBuffer lines)
+    {
+      if(closed) {
+        return true;
+      }
+      if(buffer.remaining() < lines.remaining()) {
+        return false;
+      }
+      int position = lines.position();
+      buffer.put(lines);
+      lines.position(position);
+      return true;
+    }
+
+    /**
+     * Write as much of outbound buffer as socket accepts without blocking. Keep interest on socket writable event while
+     * there are bytes left in buffer.
+     *
+     * @return false if connection is closed.
+     */
+    boolean send()
+    {
+      if(closed) {
+        return false;
+      }
+      if(buffer.position() == 0) {
+        return true;
+      }
+      buffer.flip();
+      try {
+        channel.write(buffer);
+      }
+      catch(IOException e) {
+        debug("Remote console |%s| has been closed. Stop messages transmission.", address);
+        close();
+        return false;
+      }
+      finally {
+        buffer.compact();
+      }
+      key.interestOps(buffer.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      return true;
+    }
+
+    /**
+     * Read and discard bytes sent by remote console, detecting connection close.
+     *
+     * @param discard buffer for read bytes.
+     */
+    void read(ByteBuffer discard)
+    {
+      try {
+        int count;
+        do {
+          discard.clear();
+          count = channel.read(discard);
+        } while(count > 0);
+        if(count == -1) {
+          debug("Remote console |%s| has been closed.", address);
+          close();
+        }
+      }
+      catch(IOException e) {
+        debug("Remote console |%s| has been closed. Root cause: %s", address, e);
+        close();
+      }
+    }
+
+    void close()
+    {
+      if(closed) {
+        return;
+      }
+      closed = true;
+      key.cancel();
+      RemoteConsoleAggregator.close(channel);
+    }
+  }
+
+  /**
+   * Start aggregator standalone and wait forever. Command line arguments are optional <code>-port</code> and
+   * <code>-window</code> options, with downstream consoles port and reorder window in milliseconds, followed by nodes
+   * endpoints, see {@link #RemoteConsoleAggregator(int, int, String...)}. Sample usage:
+   *
+   * <pre>
+   * java com.jslib.log4j.RemoteConsoleAggregator -port 8002 -window 500 api=10.0.0.5:8001 db=10.0.0.6:8001
+   * </pre>
+   *
+   * @param args command line arguments.
+   * @throws Exception if aggregator start fails.
+   */
+  public static void main(String... args) throws Exception
+  {
+    int port = DEFAULT_PORT;
+    int window = DEFAULT_REORDER_WINDOW;
+    List<String> nodes = new ArrayList<>();
+    for(int i = 0; i < args.length; ++i) {
+      if("-port".equals(args[i]) && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      }
+      else if("-window".equals(args[i]) && i + 1 < args.length) {
+        window = Integer.parseInt(args[++i]);
+      }
+      else {
+        nodes.add(args[i]);
+      }
+    }
+    if(nodes.isEmpty()) {
+      System.err.println("Usage: RemoteConsoleAggregator [-port port] [-window millis] [name=]host:port...");
+      return;
+    }
+    RemoteConsoleAggregator aggregator = new RemoteConsoleAggregator(port, window, nodes.toArray(new String[0]));
+    aggregator.thread.join();
+  }
+
+  private static void close(Closeable closeable)
+  {
+    if(closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch(IOException e) {
+        error(e);
+      }
+    }
+  }
+
+  // internal logging helpers
+
+  private static void debug(String message, Object... args)
+  {
+    StatusLogger.getLogger().debug(String.format(message, args));
+  }
+
+  private static void error(Object message, Object... args)
+  {
+    StatusLogger.getLogger().error(String.format(message.toString(), args));
+  }
+}
@@ -2,7 +2,6 @@ package com.jslib.log4j;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.Writer;
 
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Core;
@@ -19,14 +18,41 @@ import org.apache.logging.log4j.core.layout.PatternLayout;
 
 /**
  * Log4j appender used to send events to a remote console server. Instance of this appender obtain a remote console
- * {@link RemoteConsoleWriter writer} reference then simply write the formatted event. This appender support
- * <code>Port</code> property; below is a configuration example for log4j.properties:
+ * {@link RemoteConsoleWriter writer} reference then simply write the event, encoded by layout straight into writer
+ * messages buffer. Remote console receives bytes encoded with layout charset. This appender support next
+ * attributes, see {@link RemoteConsoleConfig}:
+ * <ul>
+ * <li><code>port</code> - socket server listening port, default 8001,
+ * <li><code>bufferSize</code> - WARN and INFO messages buffer capacity in bytes, default 1 MB,
+ * <li><code>urgentBufferSize</code> - FATAL and ERROR messages buffer capacity in bytes, default 256 KB,
+ * <li><code>verboseBufferSize</code> - DEBUG and TRACE messages buffer capacity in bytes, default 1 MB,
+ * <li><code>directBuffer</code> - allocate messages buffer off-heap, default false,
+ * <li><code>waitStrategy</code> - BLOCKING, SLEEPING or YIELDING, default BLOCKING,
+ * <li><code>batchSize</code> - console outbound buffer is sent when reaches this size in bytes, default 16 KB,
+ * <li><code>lingerTime</code> - maximum milliseconds a message waits for batch completion, default 10,
+ * <li><code>overflowPolicy</code> - DROP_NEWEST, DROP_OLDEST, BLOCK or DROP_BY_LEVEL, default DROP_NEWEST,
+ * <li><code>blockTimeout</code> - maximum milliseconds a logging thread waits for free space with BLOCK policy, default 100,
+ * <li><code>dropReportPeriod</code> - milliseconds between dropped messages markers, 0 to disable, default 1000,
+ * <li><code>journalFile</code> - memory mapped spill journal file path, default none, that is, spill journal disabled,
+ * <li><code>journalSize</code> - spill journal capacity in bytes, default 16 MB,
+ * <li><code>compressionLevel</code> - deflate level, 1 to 9, for consoles requesting compression, 0 to disable, default 1,
+ * <li><code>collector</code> - collector <code>host:port</code> for push mode, default none, that is, listen on port,
+ * <li><code>reconnectDelay</code> - initial milliseconds before reconnecting to collector, doubled on failure, default 100,
+ * <li><code>maxReconnectDelay</code> - maximum milliseconds before reconnecting to collector, default 30000,
+ * <li><code>datagram</code> - UDP target <code>host:port</code> for datagram mode, default none; ignored in push mode,
+ * <li><code>packetSize</code> - datagram packet size in bytes, default 1472,
+ * <li><code>sendBufferSize</code> - datagram socket send buffer size in bytes, 0 for system default, default 0.
+ * </ul>
+ * Below is a configuration example for log4j2.properties:
  * 
  * <pre>
- * log4j.appender.CON=js.log.RemoteConsoleAppender
- * log4j.appender.CON.Port=8001
- * log4j.appender.CON.layout=org.apache.log4j.PatternLayout
- * log4j.appender.CON.layout.ConversionPattern=%d{dd HH:mm:ss,SSS} %-5p %c %x- %m%n
+ * appender.console.type=RemoteConsoleAppender
+ * appender.console.name=CON
+ * appender.console.port=8001
+ * appender.console.bufferSize=4194304
+ * appender.console.overflowPolicy=DROP_BY_LEVEL
+ * appender.console.layout.type=PatternLayout
+ * appender.console.layout.pattern=%d{dd HH:mm:ss,SSS} %-5p %c %x- %m%n
  * </pre>
  * 
  * @author Iulian Rotaru
@@ -39,7 +65,27 @@ public class RemoteConsoleAppender extends AbstractAppender
       @PluginAttribute("name") String name, //
       @PluginElement("Layout") Layout<? extends Serializable> layout, //
       @PluginElement("Filter") final Filter filter, //
-      @PluginAttribute("otherAttribute") String otherAttribute)
+      @PluginAttribute("otherAttribute") String otherAttribute, //
+      @PluginAttribute(value = "port", defaultInt = RemoteConsoleConfig.DEFAULT_PORT) int port, //
+      @PluginAttribute(value = "bufferSize", defaultInt = RemoteConsoleConfig.DEFAULT_BUFFER_SIZE) int bufferSize, //
+      @PluginAttribute(value = "urgentBufferSize", defaultInt = RemoteConsoleConfig.DEFAULT_URGENT_BUFFER_SIZE) int urgentBufferSize, //
+      @PluginAttribute(value = "verboseBufferSize", defaultInt = RemoteConsoleConfig.DEFAULT_VERBOSE_BUFFER_SIZE) int verboseBufferSize, //
+      @PluginAttribute("directBuffer") boolean directBuffer, //
+      @PluginAttribute("waitStrategy") String waitStrategy, //
+      @PluginAttribute(value = "batchSize", defaultInt = RemoteConsoleConfig.DEFAULT_BATCH_SIZE) int batchSize, //
+      @PluginAttribute(value = "lingerTime", defaultInt = RemoteConsoleConfig.DEFAULT_LINGER_TIME) int lingerTime, //
+      @PluginAttribute("overflowPolicy") String overflowPolicy, //
+      @PluginAttribute(value = "blockTimeout", defaultInt = RemoteConsoleConfig.DEFAULT_BLOCK_TIMEOUT) int blockTimeout, //
+      @PluginAttribute(value = "dropReportPeriod", defaultInt = RemoteConsoleConfig.DEFAULT_DROP_REPORT_PERIOD) int dropReportPeriod, //
+      @PluginAttribute("journalFile") String journalFile, //
+      @PluginAttribute(value = "journalSize", defaultInt = RemoteConsoleConfig.DEFAULT_JOURNAL_SIZE) int journalSize, //
+      @PluginAttribute(value = "compressionLevel", defaultInt = RemoteConsoleConfig.DEFAULT_COMPRESSION_LEVEL) int compressionLevel, //
+      @PluginAttribute("collector") String collector, //
+      @PluginAttribute(value = "reconnectDelay", defaultInt = RemoteConsoleConfig.DEFAULT_RECONNECT_DELAY) int reconnectDelay, //
+      @PluginAttribute(value = "maxReconnectDelay", defaultInt = RemoteConsoleConfig.DEFAULT_MAX_RECONNECT_DELAY) int maxReconnectDelay, //
+      @PluginAttribute("datagram") String datagram, //
+      @PluginAttribute(value = "packetSize", defaultInt = RemoteConsoleConfig.DEFAULT_PACKET_SIZE) int packetSize, //
+      @PluginAttribute("sendBufferSize") int sendBufferSize)
   {
     if(name == null) {
       LOGGER.error("There is no name provided for MyCustomAppender");
@@ -48,17 +94,51 @@ public class RemoteConsoleAppender extends AbstractAppender
     if(layout == null) {
       layout = PatternLayout.createDefaultLayout();
     }
-    return new RemoteConsoleAppender(name, filter, layout, true);
-  }
 
-  /** Socket server listening port. */
-  private static final int DEFAULT_PORT = 8001;
+    RemoteConsoleAppender appender = new RemoteConsoleAppender(name, filter, layout, true);
+    RemoteConsoleConfig config = appender.config;
+    config.setPort(port);
+    config.setBufferSize(bufferSize);
+    config.setUrgentBufferSize(urgentBufferSize);
+    config.setVerboseBufferSize(verboseBufferSize);
+    config.setDirectBuffer(directBuffer);
+    config.setBatchSize(batchSize);
+    config.setLingerTime(lingerTime);
+    config.setBlockTimeout(blockTimeout);
+    config.setDropReportPeriod(dropReportPeriod);
+    config.setJournalFile(journalFile);
+    config.setJournalSize(journalSize);
+    config.setCompressionLevel(compressionLevel);
+    config.setCollector(collector);
+    config.setReconnectDelay(reconnectDelay);
+    config.setMaxReconnectDelay(maxReconnectDelay);
+    config.setDatagram(datagram);
+    config.setPacketSize(packetSize);
+    config.setSendBufferSize(sendBufferSize);
+    if(waitStrategy != null) {
+      try {
+        config.setWaitStrategy(RemoteConsoleConfig.WaitStrategy.valueOf(waitStrategy.toUpperCase()));
+      }
+      catch(IllegalArgumentException e) {
+        LOGGER.error("Invalid remote console wait strategy |{}|. Use default |{}|.", waitStrategy, config.getWaitStrategy());
+      }
+    }
+    if(overflowPolicy != null) {
+      try {
+        config.setOverflowPolicy(RemoteConsoleConfig.OverflowPolicy.valueOf(overflowPolicy.toUpperCase()));
+      }
+      catch(IllegalArgumentException e) {
+        LOGGER.error("Invalid remote console overflow policy |{}|. Use default |{}|.", overflowPolicy, config.getOverflowPolicy());
+      }
+    }
+    return appender;
+  }
 
-  /** Remote console writer port. Use this value to initialize remote console {@link RemoteConsoleWriter writer}. */
-  private int port = DEFAULT_PORT;
+  /** Remote console configuration. Use it to initialize remote console {@link RemoteConsoleWriter writer}. */
+  private final RemoteConsoleConfig config = new RemoteConsoleConfig();
 
-  /** Remote console writer. */
-  private Writer writer;
+  /** Remote console writer, created on appender start, before appender is visible to logging threads. */
+  private volatile RemoteConsoleWriter writer;
 
   protected RemoteConsoleAppender(String name, Filter filter, Layout<?> layout, boolean ignoreExceptions)
   {
@@ -78,7 +158,7 @@ public class RemoteConsoleAppender extends AbstractAppender
    */
   public int getPort()
   {
-    return this.port;
+    return config.getPort();
   }
 
   /**
@@ -88,7 +168,25 @@ public class RemoteConsoleAppender extends AbstractAppender
    */
   public void setPort(int port)
   {
-    this.port = port;
+    config.setPort(port);
+  }
+
+  RemoteConsoleWriter getWriter()
+  {
+    return writer;
+  }
+
+  /**
+   * Create remote console writer from configuration, if not already injected. Log4j starts appender before publishing
+   * it to loggers so that all logging threads see the same writer instance.
+   */
+  @Override
+  public void start()
+  {
+    if(writer == null) {
+      writer = new RemoteConsoleWriter(config);
+    }
+    super.start();
   }
 
   /**
@@ -103,16 +201,12 @@ public class RemoteConsoleAppender extends AbstractAppender
       error("No layout for appender " + getName());
       return;
     }
+    RemoteConsoleWriter writer = this.writer;
     if(writer == null) {
-      writer = new RemoteConsoleWriter(port);
-    }
-    try {
-      writer.write(new String(getLayout().toByteArray(event)));
-      writer.flush();
-    }
-    catch(IOException e) {
-      error(e.getMessage());
+      error("Appender " + getName() + " not started");
+      return;
     }
+    writer.write(event, getLayout());
   }
 
   /**
@@ -129,5 +223,6 @@ public class RemoteConsoleAppender extends AbstractAppender
         error(e.getMessage());
       }
     }
+    super.stop();
   }
 }
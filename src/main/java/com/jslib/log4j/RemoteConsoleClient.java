@@ -0,0 +1,707 @@
+package com.jslib.log4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Remote console connection with its own outbound buffer of {@link #BUFFER_SIZE} bytes. All methods are invoked from
+ * remote console I/O thread.
+ * <p>
+ * Console keeps track of messages it missed, per level: messages dropped because its outbound buffer was full and
+ * messages dropped by messages buffer overflow since previous report. Missed messages are reported in-stream by a
+ * marker line.
+ *
+ * @author Iulian Rotaru
+ */
+final class RemoteConsoleClient
+{
+  /** Size of outbound buffer allocated for every connected remote console. */
+  static final int BUFFER_SIZE = 256 * 1024;
+
+  /** Console outbound buffer space reserved for urgent lane messages. */
+  static final int URGENT_RESERVE = BUFFER_SIZE / 8;
+
+  /** Size of compressed outbound buffer, larger than deflate worst case output for a full outbound buffer. */
+  private static final int COMPRESSED_BUFFER_SIZE = BUFFER_SIZE + BUFFER_SIZE / 4;
+
+  /** Prefix for dropped messages marker line. */
+  private static final String MARKER = "[remote console] ";
+
+  /** Logger name of dropped messages marker records. */
+  private static final String MARKER_LOGGER = RemoteConsoleWriter.class.getName();
+
+  /** Command requesting spill journal messages since a given time. */
+  private static final String SINCE_COMMAND = "SINCE ";
+
+  /** Command switching console to framed protocol. */
+  private static final String FRAMED_COMMAND = "FRAMED";
+
+  /** Command replacing console subscription. */
+  private static final String SUBSCRIBE_COMMAND = "SUBSCRIBE";
+
+  /** Command switching console to compact stream. */
+  private static final String COMPACT_COMMAND = "COMPACT";
+
+  /** Command requesting deflate compression. */
+  private static final String DEFLATE_COMMAND = "DEFLATE";
+
+  /** Marker text acknowledging deflate compression; bytes following marker are compressed. */
+  private static final String DEFLATE_MARKER = "deflate";
+
+  /** Command sent to collector on push mode connection, with writer session. */
+  private static final String PUSH_COMMAND = "PUSH ";
+
+  /** Collector command acknowledging the last sequence received, in push mode. */
+  private static final String ACK_COMMAND = "ACK ";
+
+  /** Maximum command line length; longer lines are ignored. */
+  private static final int MAX_COMMAND_LENGTH = 1024;
+
+  /** Size of frame length prefix, in bytes. */
+  private static final int FRAME_LENGTH_SIZE = 4;
+
+  /** Size of record sequence number, sent in push mode, in bytes. */
+  private static final int SEQUENCE_SIZE = 8;
+
+  /** Sequence number of records not stored on journal, e.g. markers. */
+  private static final long NO_SEQUENCE = -1;
+
+  /** Value of {@link #since} when there is no pending request. */
+  static final long NO_REQUEST = Long.MIN_VALUE;
+
+  /** Requested journal replay start time, or {@link #NO_REQUEST}. */
+  long since = NO_REQUEST;
+
+  /** Sequence acknowledged by collector and not yet handled, or {@link #NO_REQUEST}. */
+  long acknowledged = NO_REQUEST;
+
+  /** True if this is the collector connection opened by writer in push mode. */
+  boolean push;
+
+  /** True if collector acknowledged push mode connection and stream resumed. */
+  private boolean resumed;
+
+  /** Command line received from console, not yet complete. */
+  private final StringBuilder command = new StringBuilder();
+
+  /** True while console receives spill journal records instead of new messages; always true in push mode. */
+  boolean replaying;
+
+  /** True while replay is stopped by full outbound buffer and there are journal records left to replay. */
+  boolean behind;
+
+  /** Journal position of the next replayed record. */
+  private long replayPosition;
+
+  /** Replay skips journal records older than this timestamp. */
+  private long replaySince;
+
+  /** True if console uses framed protocol. */
+  private boolean framed;
+
+  /** Compact stream encoder or null if console does not use compact stream. */
+  CompactEncoder compact;
+
+  /** Deflate compression level; 0 if compression is disabled. */
+  private final int compressionLevel;
+
+  /** True if console requested compression and compression marker was not yet sent. */
+  boolean deflateRequested;
+
+  /** Compressor, reused for all batches, or null if console does not use compression. */
+  private Deflater deflater;
+
+  /** Compressed outbound bytes, in drain mode; null if console does not use compression. */
+  private ByteBuffer compressed;
+
+  /** Outbound buffer bytes, compression marker included, sent uncompressed before compressed stream. */
+  private int rawLength;
+
+  /** Compression statistics or null if console does not use compression. */
+  CompressionStats stats;
+
+  /** Records filter; null if console receives all records. */
+  private Subscription subscription;
+
+  private final SocketChannel channel;
+  private final SelectionKey key;
+  final Object address;
+
+  /** Outbound buffer, always in fill mode. */
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  /** Messages dropped because outbound buffer was full, per level code, not yet reported. */
+  private final long[] droppedCounts = new long[ConsoleRecord.LEVELS_COUNT];
+
+  /** Messages buffer dropped counters, per level code, at last report. */
+  private final long[] reportedCounts = new long[ConsoleRecord.LEVELS_COUNT];
+
+  /** Total number of messages dropped because outbound buffer was full, for console close diagnostic. */
+  private long droppedCount;
+
+  /** Reusable builder for dropped messages marker. */
+  private final StringBuilder marker = new StringBuilder();
+
+  /** Reusable record for dropped messages marker. */
+  private final ByteBuffer markerRecord = ByteBuffer.allocate(1024);
+
+  /** Time, in nanoseconds, when the oldest pending outbound byte was buffered. */
+  long pendingTime;
+
+  /** True while outbound bytes are not accepted by socket and wait for writable event. */
+  boolean writing;
+
+  private boolean closed;
+
+  /**
+   * Create connected console. Messages dropped by messages buffer overflow before console connection are not
+   * reported to console.
+   *
+   * @param channel console socket channel,
+   * @param key console selection key,
+   * @param ringDroppedCounts messages buffer dropped counters, per level code,
+   * @param compressionLevel deflate compression level, 0 if compression is disabled.
+   * @throws IOException if console remote address cannot be obtained.
+   */
+  RemoteConsoleClient(SocketChannel channel, SelectionKey key, LongAdder[] ringDroppedCounts, int compressionLevel) throws IOException
+  {
+    this.channel = channel;
+    this.key = key;
+    this.address = channel.getRemoteAddress();
+    this.compressionLevel = compressionLevel;
+    for(int i = 0; i < reportedCounts.length; ++i) {
+      reportedCounts[i] = ringDroppedCounts[i].sum();
+    }
+  }
+
+  /**
+   * Append message to outbound buffer, if it matches console subscription, or drop message if there is no room for
+   * it. Only urgent lane messages may use the last {@link #URGENT_RESERVE} bytes of outbound buffer. Message position
+   * is not changed.
+   *
+   * @param message message record,
+   * @param now current time, in nanoseconds.
+   */
+  void offer(ByteBuffer message, long now)
+  {
+    if(closed || (subscription != null && !subscription.accept(message))) {
+      return;
+    }
+    int level = ConsoleRecord.getLevel(message);
+    int reserve = Lane.of(level) == Lane.URGENT ? 0 : URGENT_RESERVE;
+    if(!put(message, NO_SEQUENCE, reserve, now)) {
+      ++droppedCounts[level];
+      ++droppedCount;
+    }
+  }
+
+  /**
+   * Append record to outbound buffer, encoded for console protocol: compact stream frames, for compact stream, a frame
+   * with length prefix and whole record, for framed protocol, or only record text otherwise. In push mode sequence
+   * number is inserted between frame length and record. Record position is not changed.
+   *
+   * @param record record bytes,
+   * @param sequence record sequence number, used only in push mode,
+   * @param reserve outbound buffer bytes record should not use,
+   * @param now current time, in nanoseconds.
+   * @return false if there is no room for record.
+   */
+  private boolean put(ByteBuffer record, long sequence, int reserve, long now)
+  {
+    if(compact != null) {
+      int pending = buffer.position();
+      if(!compact.encode(record, buffer, reserve)) {
+        return false;
+      }
+      if(pending == 0) {
+        pendingTime = now;
+      }
+      return true;
+    }
+    int position = record.position();
+    int start = framed ? position : ConsoleRecord.getTextStart(record);
+    int length = record.limit() - start;
+    if(push) {
+      length += SEQUENCE_SIZE;
+    }
+    if(buffer.remaining() - reserve < (framed ? FRAME_LENGTH_SIZE + length : length)) {
+      return false;
+    }
+    if(buffer.position() == 0) {
+      pendingTime = now;
+    }
+    if(framed) {
+      buffer.putInt(length);
+    }
+    if(push) {
+      buffer.putLong(sequence);
+    }
+    record.position(start);
+    buffer.put(record);
+    record.position(position);
+    return true;
+  }
+
+  /**
+   * Append dropped messages marker to outbound buffer, if this console missed messages since previous report. Marker
+   * is a WARN record, not subject to console subscription, with this class name as logger name. Marker line contains
+   * the total number of missed messages and counts per level, e.g.
+   * <code>[remote console] 42 messages dropped: DEBUG=40 ERROR=2</code>. If there is no room for marker, report is
+   * postponed.
+   *
+   * @param ringDroppedCounts messages buffer dropped counters, per level code,
+   * @param now current time, in nanoseconds.
+   */
+  void reportDropped(LongAdder[] ringDroppedCounts, long now)
+  {
+    if(closed || (push && !resumed)) {
+      return;
+    }
+    long total = 0;
+    marker.setLength(0);
+    for(int i = 0; i < droppedCounts.length; ++i) {
+      long ringDroppedCount = ringDroppedCounts[i].sum();
+      long count = droppedCounts[i] + ringDroppedCount - reportedCounts[i];
+      if(count > 0) {
+        marker.append(' ').append(ConsoleRecord.level(i)).append('=').append(count);
+        total += count;
+      }
+    }
+    if(total == 0) {
+      return;
+    }
+    marker.insert(0, " messages dropped:").insert(0, total);
+    if(!putMarker(Level.WARN, marker, now)) {
+      return;
+    }
+    for(int i = 0; i < droppedCounts.length; ++i) {
+      reportedCounts[i] = ringDroppedCounts[i].sum();
+      droppedCounts[i] = 0;
+    }
+  }
+
+  /**
+   * Test if this console missed messages not yet reported, see {@link #reportDropped(LongAdder[], long)}.
+   *
+   * @param ringDroppedCounts messages buffer dropped counters, per level code.
+   * @return true if dropped messages marker is pending.
+   */
+  boolean hasDropped(LongAdder[] ringDroppedCounts)
+  {
+    if(closed || (push && !resumed)) {
+      return false;
+    }
+    for(int i = 0; i < droppedCounts.length; ++i) {
+      if(droppedCounts[i] + ringDroppedCounts[i].sum() - reportedCounts[i] > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Append a marker line to outbound buffer. Marker is a record with this class name as logger name and
+   * {@link #MARKER} prefixed text.
+   *
+   * @param level marker level,
+   * @param text marker text, without prefix and line terminator,
+   * @param now current time, in nanoseconds.
+   * @return false if there is no room for marker.
+   */
+  private boolean putMarker(Level level, CharSequence text, long now)
+  {
+    markerRecord.clear();
+    ConsoleRecord.putHeader(markerRecord, ConsoleRecord.code(level), System.currentTimeMillis(), MARKER_LOGGER, "", "");
+    Utf8.encode(MARKER, 0, MARKER.length(), markerRecord);
+    Utf8.encode(text, 0, text.length(), markerRecord);
+    markerRecord.put((byte)'\r').put((byte)'\n');
+    markerRecord.flip();
+    return put(markerRecord, NO_SEQUENCE, 0, now);
+  }
+
+  /**
+   * Start deflate compression: append compression marker, in console protocol, and compress all outbound bytes
+   * following it. Bytes already in outbound buffer, marker included, are sent uncompressed. If there is no room for
+   * marker compression start is postponed.
+   *
+   * @param now current time, in nanoseconds.
+   * @return true if compression started.
+   */
+  boolean deflate(long now)
+  {
+    if(closed || (push && !resumed) || !putMarker(Level.INFO, DEFLATE_MARKER, now)) {
+      return false;
+    }
+    deflateRequested = false;
+    rawLength = buffer.position();
+    deflater = new Deflater(compressionLevel);
+    compressed = ByteBuffer.allocate(COMPRESSED_BUFFER_SIZE);
+    compressed.flip();
+    stats = new CompressionStats(address.toString());
+    return true;
+  }
+
+  /**
+   * Test if outbound buffer has pending bytes waiting for batch completion, that is, there is no write in progress,
+   * batch size is not reached and linger time is not expired.
+   *
+   * @param now current time, in nanoseconds,
+   * @param batchSize batch size, in bytes,
+   * @param lingerTime linger time, in nanoseconds.
+   * @return true if outbound buffer sending should be delayed.
+   */
+  boolean isLingering(long now, int batchSize, long lingerTime)
+  {
+    int pending = buffer.position();
+    return !closed && !writing && pending > 0 && pending < batchSize && now - pendingTime < lingerTime;
+  }
+
+  /**
+   * Write as much of outbound buffer as socket accepts without blocking. Keep interest on socket writable event while
+   * there are bytes left in buffer.
+   * <p>
+   * If console uses compression, outbound buffer is compressed as a batch, ended by a sync flush, only after previous
+   * compressed batch was completely sent; meanwhile outbound buffer accumulates messages.
+   *
+   * @return false if connection is closed.
+   */
+  boolean send()
+  {
+    if(closed) {
+      return false;
+    }
+    if(buffer.position() == 0 && (compressed == null || !compressed.hasRemaining())) {
+      return true;
+    }
+    try {
+      if(deflater == null) {
+        write(buffer.position());
+      }
+      else {
+        if(rawLength > 0) {
+          rawLength -= write(rawLength);
+        }
+        if(rawLength == 0) {
+          if(!compressed.hasRemaining() && buffer.position() > 0) {
+            compress();
+          }
+          channel.write(compressed);
+        }
+      }
+    }
+    catch(IOException e) {
+      debug("Remote console |%s| has been closed. Stop messages transmission.", address);
+      close();
+      return false;
+    }
+    writing = buffer.position() > 0 || (compressed != null && compressed.hasRemaining());
+    key.interestOps(writing ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    return true;
+  }
+
+  /**
+   * Write outbound buffer head to socket, as much as socket accepts without blocking, and remove written bytes from
+   * outbound buffer.
+   *
+   * @param length the number of outbound buffer bytes to write.
+   * @return the number of written bytes.
+   * @throws IOException if socket write fails.
+   */
+  private int write(int length) throws IOException
+  {
+    int end = buffer.position();
+    buffer.flip();
+    buffer.limit(length);
+    try {
+      return channel.write(buffer);
+    }
+    finally {
+      buffer.limit(end);
+      buffer.compact();
+    }
+  }
+
+  /** Compress the whole outbound buffer into compressed buffer, ended by a sync flush, and clear outbound buffer. */
+  private void compress()
+  {
+    long start = System.nanoTime();
+    int length = buffer.position();
+    deflater.setInput(buffer.array(), 0, length);
+    compressed.clear();
+    // compressed buffer is larger than worst case output; loop only for the rare output equal to available space
+    int count;
+    int space;
+    do {
+      space = compressed.remaining();
+      count = deflater.deflate(compressed.array(), compressed.position(), space, Deflater.SYNC_FLUSH);
+      compressed.position(compressed.position() + count);
+    } while(count == space && space > 0);
+    compressed.flip();
+    buffer.clear();
+    stats.update(length, compressed.remaining(), System.nanoTime() - start);
+  }
+
+  /**
+   * Make this console the collector connection of push mode: framed protocol with sequence numbers, records taken
+   * only from journal, starting after collector acknowledges. Append <code>PUSH</code> command line to outbound buffer.
+   *
+   * @param session writer session,
+   * @param now current time, in nanoseconds.
+   */
+  void push(long session, long now)
+  {
+    push = true;
+    framed = true;
+    replaying = true;
+    String command = PUSH_COMMAND + session + "\r\n";
+    Utf8.encode(command, 0, command.length(), buffer);
+    pendingTime = now;
+  }
+
+  /**
+   * Count spill journal record overwritten before this console read it as dropped. Record is ignored if console is
+   * not replaying journal, record is already read or it would have been skipped by replay.
+   *
+   * @param position record journal position,
+   * @param record overwritten record.
+   */
+  void evicted(long position, ByteBuffer record)
+  {
+    if(!replaying || (push && !resumed) || position < replayPosition) {
+      return;
+    }
+    if(ConsoleRecord.getTime(record) < replaySince || (subscription != null && !subscription.accept(record))) {
+      return;
+    }
+    ++droppedCounts[ConsoleRecord.getLevel(record)];
+  }
+
+  /**
+   * Add messages lost before this console connection to dropped counters, so that they are reported by the next
+   * dropped messages marker.
+   *
+   * @param lostCounts lost messages counters, per level code.
+   */
+  void drop(long[] lostCounts)
+  {
+    for(int i = 0; i < droppedCounts.length; ++i) {
+      droppedCounts[i] += lostCounts[i];
+    }
+  }
+
+  /**
+   * Get journal position of the next replayed record. In push mode, records before this position were sent to
+   * collector.
+   *
+   * @return replay position.
+   */
+  long getReplayPosition()
+  {
+    return replayPosition;
+  }
+
+  /**
+   * Resume push mode stream from given journal position.
+   *
+   * @param position journal position.
+   */
+  void resume(long position)
+  {
+    resumed = true;
+    replay(position, Long.MIN_VALUE);
+  }
+
+  /**
+   * Start spill journal replay from given position, skipping records older than given time.
+   *
+   * @param position journal position,
+   * @param since timestamp of the oldest replayed record.
+   */
+  void replay(long position, long since)
+  {
+    replaying = true;
+    replayPosition = position;
+    replaySince = since;
+  }
+
+  /**
+   * Copy journal records, starting from replay position, to outbound buffer while it has room. Records not matching
+   * console subscription or larger than outbound buffer are skipped. Replay ends when journal tail is reached, except
+   * in push mode where console keeps taking records from journal, and only after collector acknowledged connection.
+   *
+   * @param journal spill journal,
+   * @param now current time, in nanoseconds.
+   * @return true if replay ended.
+   */
+  boolean replay(SpillJournal journal, long now)
+  {
+    if(push && !resumed) {
+      return false;
+    }
+    for(long position = journal.first(replayPosition); position < journal.getTail(); position = journal.next(position)) {
+      ByteBuffer record = journal.get(position);
+      if(ConsoleRecord.getTime(record) < replaySince || (subscription != null && !subscription.accept(record))) {
+        continue;
+      }
+      if((compact != null ? CompactEncoder.maxLength(record) : FRAME_LENGTH_SIZE + SEQUENCE_SIZE + record.remaining()) > buffer.capacity()) {
+        ++droppedCounts[ConsoleRecord.getLevel(record)];
+        continue;
+      }
+      if(!put(record, position, 0, now)) {
+        replayPosition = position;
+        behind = true;
+        return false;
+      }
+    }
+    behind = false;
+    if(push) {
+      replayPosition = journal.getTail();
+      return false;
+    }
+    replaying = false;
+    return true;
+  }
+
+  /**
+   * Read bytes sent by remote console and detect connection close. Remote console may send command lines:
+   * <ul>
+   * <li><code>SINCE &lt;epoch millis&gt;</code> - sets {@link #since} request,
+   * <li><code>FRAMED</code> - switch to framed protocol,
+   * <li><code>COMPACT</code> - switch to compact stream, see {@link CompactEncoder}; stream dictionary starts empty,
+   * <li><code>DEFLATE</code> - request deflate compression; ignored if compression is disabled or already active,
+   * <li><code>SUBSCRIBE [arguments]</code> - replace console subscription, see {@link Subscription}; without
+   * arguments console receives all records,
+   * <li><code>ACK &lt;sequence&gt;</code> - collector acknowledgment, sets {@link #acknowledged} on push mode
+   * connection not yet resumed.
+   * </ul>
+   * Push mode connection ignores <code>SINCE</code>, <code>FRAMED</code> and <code>COMPACT</code> commands. Other
+   * bytes are discarded.
+   *
+   * @param discard buffer for read bytes.
+   */
+  void read(ByteBuffer discard)
+  {
+    try {
+      int count;
+      do {
+        discard.clear();
+        count = channel.read(discard);
+        discard.flip();
+        while(discard.hasRemaining()) {
+          parse(discard.get());
+        }
+      } while(count > 0);
+      if(count == -1) {
+        debug("Remote console |%s| has been closed.", address);
+        close();
+      }
+    }
+    catch(IOException e) {
+      debug("Remote console |%s| has been closed. Root cause: %s", address, e);
+      close();
+    }
+  }
+
+  /**
+   * Append received byte to command line and handle command on line feed.
+   *
+   * @param b received byte.
+   */
+  private void parse(byte b)
+  {
+    if(b != '\n') {
+      if(command.length() <= MAX_COMMAND_LENGTH) {
+        command.append((char)b);
+      }
+      return;
+    }
+    if(command.length() > 0 && command.charAt(command.length() - 1) == '\r') {
+      command.setLength(command.length() - 1);
+    }
+    try {
+      if(command.length() > MAX_COMMAND_LENGTH) {
+        debug("Remote console |%s| command too long. Ignore it.", address);
+      }
+      else if(command.indexOf(ACK_COMMAND) == 0) {
+        if(push && !resumed) {
+          acknowledged = Long.parseLong(command.substring(ACK_COMMAND.length()).trim());
+        }
+      }
+      else if(push && (command.indexOf(SINCE_COMMAND) == 0 || FRAMED_COMMAND.contentEquals(command) || COMPACT_COMMAND.contentEquals(command))) {
+        debug("Remote console collector |%s| command |%s| not supported. Ignore it.", address, command);
+      }
+      else if(command.indexOf(SINCE_COMMAND) == 0) {
+        since = Long.parseLong(command.substring(SINCE_COMMAND.length()).trim());
+      }
+      else if(FRAMED_COMMAND.contentEquals(command)) {
+        framed = true;
+      }
+      else if(COMPACT_COMMAND.contentEquals(command)) {
+        compact = new CompactEncoder();
+      }
+      else if(DEFLATE_COMMAND.contentEquals(command)) {
+        deflateRequested = compressionLevel > 0 && deflater == null;
+      }
+      else if(command.indexOf(SUBSCRIBE_COMMAND) == 0) {
+        subscription = Subscription.parse(command.substring(SUBSCRIBE_COMMAND.length()));
+      }
+    }
+    catch(IllegalArgumentException e) {
+      debug("Invalid remote console |%s| command |%s|. Root cause: %s", address, command, e);
+    }
+    command.setLength(0);
+  }
+
+  void close()
+  {
+    if(closed) {
+      return;
+    }
+    closed = true;
+    key.cancel();
+    try {
+      channel.close();
+    }
+    catch(IOException e) {
+      error(e);
+    }
+    if(droppedCount > 0) {
+      debug("Remote console |%s| dropped |%d| messages because of slow reading.", address, droppedCount);
+    }
+    if(deflater != null) {
+      deflater.end();
+      debug("Remote console compression statistics |%s|.", stats);
+    }
+  }
+
+  // internal logging helpers
+
+  /**
+   * Internal debug message.
+   *
+   * @param message debug message,
+   * @param args optional formatted message arguments.
+   */
+  private static void debug(String message, Object... args)
+  {
+    StatusLogger.getLogger().debug(String.format(message, args));
+  }
+
+  /**
+   * Internal error message.
+   *
+   * @param message error message,
+   * @param args optional formatted message arguments.
+   */
+  private static void error(Object message, Object... args)
+  {
+    StatusLogger.getLogger().error(String.format(message.toString(), args));
+  }
+}
@@ -0,0 +1,342 @@
+package com.jslib.log4j;
+
+/**
+ * Remote console writer configuration. Properties are initialized from {@link RemoteConsoleAppender} plugin
+ * attributes; all have sensible defaults so that an appender without attributes behaves like before.
+ *
+ * @author Iulian Rotaru
+ */
+public class RemoteConsoleConfig
+{
+  /** Default socket server listening port. */
+  public static final int DEFAULT_PORT = 8001;
+
+  /** Default messages buffer capacity, in bytes. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  /** Default FATAL and ERROR messages buffer capacity, in bytes. */
+  public static final int DEFAULT_URGENT_BUFFER_SIZE = 256 * 1024;
+
+  /** Default DEBUG and TRACE messages buffer capacity, in bytes. */
+  public static final int DEFAULT_VERBOSE_BUFFER_SIZE = 1024 * 1024;
+
+  /** Default outbound batch size, in bytes. */
+  public static final int DEFAULT_BATCH_SIZE = 16 * 1024;
+
+  /** Default outbound linger time, in milliseconds. */
+  public static final int DEFAULT_LINGER_TIME = 10;
+
+  /** Default time, in milliseconds, logging thread waits for free space with {@link OverflowPolicy#BLOCK} policy. */
+  public static final int DEFAULT_BLOCK_TIMEOUT = 100;
+
+  /** Default period, in milliseconds, of dropped messages markers sent to remote consoles. */
+  public static final int DEFAULT_DROP_REPORT_PERIOD = 1000;
+
+  /** Default spill journal capacity, in bytes. */
+  public static final int DEFAULT_JOURNAL_SIZE = 16 * 1024 * 1024;
+
+  /** Default deflate compression level, favoring speed over ratio for low latency. */
+  public static final int DEFAULT_COMPRESSION_LEVEL = 1;
+
+  /** Default initial delay, in milliseconds, before reconnecting to collector. */
+  public static final int DEFAULT_RECONNECT_DELAY = 100;
+
+  /** Default maximum delay, in milliseconds, before reconnecting to collector. */
+  public static final int DEFAULT_MAX_RECONNECT_DELAY = 30000;
+
+  /** Default datagram packet size, in bytes, fitting an Ethernet MTU with IPv4 and UDP headers. */
+  public static final int DEFAULT_PACKET_SIZE = 1472;
+
+  /**
+   * Strategy used by remote console I/O thread to wait for new messages.
+   *
+   * @author Iulian Rotaru
+   */
+  public enum WaitStrategy
+  {
+    /** I/O thread blocks on selector and logging threads wake it up; lowest CPU usage, default strategy. */
+    BLOCKING,
+    /** I/O thread polls messages buffer every millisecond; logging threads never issue wake up system calls. */
+    SLEEPING,
+    /** I/O thread polls messages buffer continuously, yielding processor between polls; lowest latency. */
+    YIELDING
+  }
+
+  /**
+   * Policy applied by logging threads when messages buffer is full. Whatever the policy, dropped messages are counted
+   * per level and reported to remote consoles.
+   *
+   * @author Iulian Rotaru
+   */
+  public enum OverflowPolicy
+  {
+    /** New message is dropped; logging threads never wait, default policy. */
+    DROP_NEWEST,
+    /** Oldest messages are evicted when there is no remote console to drain the buffer, keeping most recent history. */
+    DROP_OLDEST,
+    /** Logging thread waits for free space up to block timeout while a remote console is connected. */
+    BLOCK,
+    /** Low severity messages are shed first: TRACE when buffer is half full, DEBUG when three quarters full. */
+    DROP_BY_LEVEL
+  }
+
+  /** Socket server listening port, 0 for an ephemeral port. */
+  private int port = DEFAULT_PORT;
+
+  /** Messages buffer capacity, in bytes, for WARN and INFO messages and for characters written with writer methods. */
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+  /** FATAL and ERROR messages buffer capacity, in bytes. */
+  private int urgentBufferSize = DEFAULT_URGENT_BUFFER_SIZE;
+
+  /** DEBUG and TRACE messages buffer capacity, in bytes. */
+  private int verboseBufferSize = DEFAULT_VERBOSE_BUFFER_SIZE;
+
+  /** Allocate messages buffer off-heap. */
+  private boolean directBuffer;
+
+  /** Strategy used by I/O thread to wait for new messages. */
+  private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+  /** Console outbound buffer is sent when it reaches this size, in bytes. */
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  /** Maximum time, in milliseconds, a message waits in console outbound buffer for batch completion; 0 to disable batching. */
+  private int lingerTime = DEFAULT_LINGER_TIME;
+
+  /** Policy applied when messages buffer is full. */
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+  /** Maximum time, in milliseconds, logging thread waits for free space with {@link OverflowPolicy#BLOCK} policy. */
+  private int blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+
+  /** Period, in milliseconds, of dropped messages markers sent to remote consoles; 0 to disable markers. */
+  private int dropReportPeriod = DEFAULT_DROP_REPORT_PERIOD;
+
+  /** Path of memory mapped spill journal file; null if spill journal is disabled. */
+  private String journalFile;
+
+  /** Spill journal capacity, in bytes. */
+  private int journalSize = DEFAULT_JOURNAL_SIZE;
+
+  /** Deflate compression level, from 1 to 9, used by consoles requesting compression; 0 to disable compression. */
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+
+  /** Collector address, as <code>host:port</code>, for push mode; null if writer listens for remote consoles. */
+  private String collector;
+
+  /** Initial delay, in milliseconds, before reconnecting to collector; doubled after every failed attempt. */
+  private int reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+  /** Maximum delay, in milliseconds, before reconnecting to collector. */
+  private int maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+
+  /** Datagram target address, as <code>host:port</code>, for datagram mode; null if datagram mode is disabled. */
+  private String datagram;
+
+  /** Datagram packet size, in bytes. */
+  private int packetSize = DEFAULT_PACKET_SIZE;
+
+  /** Datagram socket send buffer size, in bytes; 0 for system default. */
+  private int sendBufferSize;
+
+  public int getPort()
+  {
+    return port;
+  }
+
+  public void setPort(int port)
+  {
+    this.port = port;
+  }
+
+  public int getBufferSize()
+  {
+    return bufferSize;
+  }
+
+  public void setBufferSize(int bufferSize)
+  {
+    this.bufferSize = bufferSize;
+  }
+
+  public int getUrgentBufferSize()
+  {
+    return urgentBufferSize;
+  }
+
+  public void setUrgentBufferSize(int urgentBufferSize)
+  {
+    this.urgentBufferSize = urgentBufferSize;
+  }
+
+  public int getVerboseBufferSize()
+  {
+    return verboseBufferSize;
+  }
+
+  public void setVerboseBufferSize(int verboseBufferSize)
+  {
+    this.verboseBufferSize = verboseBufferSize;
+  }
+
+  public boolean isDirectBuffer()
+  {
+    return directBuffer;
+  }
+
+  public void setDirectBuffer(boolean directBuffer)
+  {
+    this.directBuffer = directBuffer;
+  }
+
+  public WaitStrategy getWaitStrategy()
+  {
+    return waitStrategy;
+  }
+
+  public void setWaitStrategy(WaitStrategy waitStrategy)
+  {
+    this.waitStrategy = waitStrategy;
+  }
+
+  public int getBatchSize()
+  {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize)
+  {
+    this.batchSize = batchSize;
+  }
+
+  public int getLingerTime()
+  {
+    return lingerTime;
+  }
+
+  public void setLingerTime(int lingerTime)
+  {
+    this.lingerTime = lingerTime;
+  }
+
+  public OverflowPolicy getOverflowPolicy()
+  {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+  {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public int getBlockTimeout()
+  {
+    return blockTimeout;
+  }
+
+  public void setBlockTimeout(int blockTimeout)
+  {
+    this.blockTimeout = blockTimeout;
+  }
+
+  public int getDropReportPeriod()
+  {
+    return dropReportPeriod;
+  }
+
+  public void setDropReportPeriod(int dropReportPeriod)
+  {
+    this.dropReportPeriod = dropReportPeriod;
+  }
+
+  public String getJournalFile()
+  {
+    return journalFile;
+  }
+
+  public void setJournalFile(String journalFile)
+  {
+    this.journalFile = journalFile;
+  }
+
+  public int getJournalSize()
+  {
+    return journalSize;
+  }
+
+  public void setJournalSize(int journalSize)
+  {
+    this.journalSize = journalSize;
+  }
+
+  public int getCompressionLevel()
+  {
+    return compressionLevel;
+  }
+
+  public void setCompressionLevel(int compressionLevel)
+  {
+    this.compressionLevel = compressionLevel;
+  }
+
+  public String getCollector()
+  {
+    return collector;
+  }
+
+  public void setCollector(String collector)
+  {
+    this.collector = collector;
+  }
+
+  public int getReconnectDelay()
+  {
+    return reconnectDelay;
+  }
+
+  public void setReconnectDelay(int reconnectDelay)
+  {
+    this.reconnectDelay = reconnectDelay;
+  }
+
+  public int getMaxReconnectDelay()
+  {
+    return maxReconnectDelay;
+  }
+
+  public void setMaxReconnectDelay(int maxReconnectDelay)
+  {
+    this.maxReconnectDelay = maxReconnectDelay;
+  }
+
+  public String getDatagram()
+  {
+    return datagram;
+  }
+
+  public void setDatagram(String datagram)
+  {
+    this.datagram = datagram;
+  }
+
+  public int getPacketSize()
+  {
+    return packetSize;
+  }
+
+  public void setPacketSize(int packetSize)
+  {
+    this.packetSize = packetSize;
+  }
+
+  public int getSendBufferSize()
+  {
+    return sendBufferSize;
+  }
+
+  public void setSendBufferSize(int sendBufferSize)
+  {
+    this.sendBufferSize = sendBufferSize;
+  }
+}
@@ -1,95 +1,523 @@
 package com.jslib.log4j;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.io.PrintStream;
 import java.io.Writer;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.ByteBufferDestinationHelper;
+import org.apache.logging.log4j.core.layout.Encoder;
+import org.apache.logging.log4j.message.Message;
 import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.TriConsumer;
+
+import com.jslib.log4j.RemoteConsoleConfig.OverflowPolicy;
+import com.jslib.log4j.RemoteConsoleConfig.WaitStrategy;
 
 /**
- * Remote console writer. Send logging messages to connected remote console; if none connected messages are stored up to
- * {@link #QUEUE_CAPACITY} then ignored.
+ * Remote console writer. Send logging messages to connected remote consoles; if none connected messages are stored in
+ * messages buffer, up to its capacity, then ignored.
+ * <p>
+ * Although this class is a sender acting like a client is implemented as a server: there is a separated I/O thread
+ * running a non-blocking server socket channel, registered with a selector. The same thread accepts remote console
+ * connections, takes messages from messages buffer and sends them to all connected consoles. There is an Eclipse
+ * plugin enabling server log messages display on IDE console.
+ * <p>
+ * Messages buffer is a multi-producer, single-consumer {@link RingBuffer} of encoded messages, with capacity
+ * configured in bytes and optionally allocated off-heap. Logging threads encode message into a reusable buffer and
+ * publish it without locking or allocation. I/O thread waits for messages according to configured
+ * {@link RemoteConsoleConfig.WaitStrategy}.
+ * <p>
+ * Messages are routed by level on priority {@link Lane lanes}, every lane with its own messages buffer and capacity.
+ * I/O thread drains lanes in weighted round robin, most severe first, and FATAL and ERROR messages are sent without
+ * waiting for batch completion. Also, less severe messages never take the last
+ * {@link RemoteConsoleClient#URGENT_RESERVE} bytes of a console outbound buffer. As a result a flood of DEBUG messages
+ * cannot drop or delay an ERROR.
+ * <p>
+ * Appender uses {@link #write(LogEvent, Encoder)}: layout encodes event straight into a reusable bytes buffer, with
+ * layout charset, and encoded bytes are copied into messages buffer, line terminators normalized to CRLF on the fly.
+ * There is no intermediate string and no bytes to characters conversion. Characters written with {@link Writer} methods
+ * are split into lines on {@link #flush()} and every line is encoded UTF-8 straight from characters buffer into its
+ * messages buffer record.
+ * <p>
+ * I/O thread drains all available messages in one pass into consoles outbound buffers, then sends every buffer with a
+ * single socket write. To further reduce system calls and TCP segments, outbound buffer is sent only after it
+ * accumulates configured batch size bytes or after its oldest message waited configured linger time. While I/O thread
+ * waits for linger time to expire logging threads do not wake it up, unless buffered messages already exceed batch
+ * size.
+ * <p>
+ * Both characters and events are assembled into lines in per thread buffers and every line or event is published on
+ * messages buffer as a single record; concurrent appenders never interleave lines and never wait for each other.
+ * <p>
+ * Every connected console has its own outbound buffer of {@link RemoteConsoleClient#BUFFER_SIZE} bytes and progresses
+ * independently: bytes not accepted by console socket stay in its buffer and are sent when socket becomes writable
+ * again. If a slow console buffer is full new messages are dropped for that console only; neither logging threads nor
+ * other consoles are blocked.
  * <p>
- * Although this class is a sender acting like a client is implemented as a server: there is a separated thread with a
- * socket listening for connections from remote client. When client is connected enter a loop waiting for messages on
- * queue and send them. There is an Eclipse plugin enabling server log messages display on IDE console; note that this
- * server implementation allows only one connection at a time.
- * 
+ * Messages buffer overflow is handled by configured {@link RemoteConsoleConfig.OverflowPolicy}. Every dropped message
+ * is counted per level, see {@link #getDroppedCount(Level)}. Periodically, every console receives a marker line with
+ * the number of messages it missed since previous marker, both from messages buffer overflow and from its own outbound
+ * buffer overflow.
+ * <p>
+ * Optionally, messages are spilled on a memory mapped {@link SpillJournal}, configured by
+ * {@link RemoteConsoleConfig#setJournalFile(String)}. While there is no remote console connected, I/O thread moves
+ * messages to journal every time a lane messages buffer exceeds three quarters of its capacity, instead of applying
+ * overflow policy; messages sent to consoles are appended to journal as well, so that journal keeps recent history.
+ * First console connecting after a period without consoles receives journal messages spilled meanwhile, before new
+ * messages. Also, a console can request journal messages since a given time by sending a
+ * command line <code>SINCE &lt;epoch millis&gt;</code>; messages are replayed starting from a position found in journal
+ * sparse index. While a console replays journal new messages are appended to journal, so that they reach console in
+ * order, after replayed ones.
+ * <p>
+ * By default consoles receive plain text lines terminated by CRLF. A console may switch to framed protocol by sending
+ * <code>FRAMED</code> command line; afterwards every record is sent as a frame: record length, as 4 bytes big endian
+ * integer, followed by record bytes with {@link ConsoleRecord} layout, that is, level, timestamp, logger name, thread
+ * name and context data fields followed by message text. Also, in both protocols a console may send a
+ * <code>SUBSCRIBE</code> command line, see {@link Subscription}, so that I/O thread sends only records matching
+ * console subscription; filtering works on record header bytes and filtered out records are never copied to console
+ * outbound buffer.
+ * <p>
+ * A console may also switch to compact stream by sending <code>COMPACT</code> command line, see {@link CompactEncoder}:
+ * logger names, thread names and message templates are sent once, as dictionary definitions, and events carry only
+ * dictionary IDs, timestamp delta and rendered arguments; console rebuilds messages with {@link CompactDecoder}. While a
+ * compact console is connected, events with a {@link LogImpl} message are published with message template and rendered
+ * arguments on record header. Events with Java format specifiers, throwable, {@link Supplier} arguments or too large
+ * template, and lines written with writer methods, are sent as text, that is, layout output. Compact stream carries
+ * message text, not layout decorations; context data is not sent.
+ * <p>
+ * Independently of protocol, a console may request compression by sending <code>DEFLATE</code> command line, unless
+ * compression is disabled by {@link RemoteConsoleConfig#setCompressionLevel(int)}. I/O thread acknowledges with a marker
+ * line <code>[remote console] deflate</code>, sent in console protocol; all bytes following the marker are a zlib
+ * stream. Every outbound batch is compressed with {@link Deflater#SYNC_FLUSH} right before it is sent, so that console
+ * can inflate whatever it received and compression adds no latency beyond batching; compressor state is kept for the
+ * whole connection and its dictionary spans batches. Compression ratio and cost of every compressed connection are
+ * available from {@link #getCompressionStats()} and, for all writers, from {@link Log4jMXBean}.
+ * <p>
+ * Where consoles cannot reach writer, e.g. containers behind NAT, writer may run in push mode, configured by
+ * {@link RemoteConsoleConfig#setCollector(String)}: instead of listening, I/O thread connects to collector and, on
+ * connection failure or loss, reconnects after a delay doubled on every failed attempt, from configured reconnect delay
+ * up to maximum reconnect delay. Push mode always uses spill journal, on a temporary file if journal file is not
+ * configured, and messages buffer and journal behave exactly as in server mode, collector connection acting as the
+ * single console. Every record sent to collector carries a sequence number, that is, its journal position; sequence
+ * numbers are increasing but not contiguous. On every connection writer sends a <code>PUSH &lt;session&gt;</code>
+ * command line, session being a random number identifying writer instance, and waits for collector to acknowledge with
+ * <code>ACK &lt;sequence&gt;</code> line, where sequence is the last record received from this session or -1. Writer
+ * resumes from the journal record following acknowledged sequence, so that reconnecting neither loses nor duplicates
+ * records, provided they are still in journal. Afterwards records are sent in framed protocol with sequence number
+ * inserted between frame length and record bytes; frame length includes sequence number. Markers have sequence -1.
+ * Collector may send <code>SUBSCRIBE</code> and <code>DEFLATE</code> commands, as any console.
+ * <p>
+ * For high rate sessions where losing messages is preferred to any back-pressure, writer may run in datagram mode,
+ * configured by {@link RemoteConsoleConfig#setDatagram(String)} and ignored in push mode: instead of listening, I/O
+ * thread packs records into UDP packets of configured packet size and sends them to datagram target, with no connection
+ * state. Packet starts with writer session and packet sequence number, both 8 bytes, followed by records, every record
+ * prefixed by its length as 2 bytes unsigned integer; records have {@link ConsoleRecord} layout. Sequence numbers are
+ * contiguous, starting with 0, so that receiver detects lost packets, see {@link DatagramReceiver}. A record larger
+ * than packet payload is sent in a packet of its own, possible fragmented by IP; a record larger than
+ * {@link DatagramPacker#MAX_PACKET_SIZE} is dropped. Partial packet is sent after linger time or immediately for urgent
+ * messages. Datagram socket is non-blocking and not connected: if socket send buffer is full packet is dropped and its
+ * records counted as dropped, so that I/O thread, and in turn logging threads, never wait for a slow or absent
+ * receiver.
+ *
  * @author Iulian Rotaru
  */
 public class RemoteConsoleWriter extends Writer implements Runnable
 {
-  /** Shutdown message used to stop socket server. */
-  private static final String SHUTDOWN = "SD";
-
   /** Socket server thread stop timeout. */
   private static final int SHUTDOWN_TIMEOUT = 2000;
 
-  /** Log messages queue capacity. */
-  private static final int QUEUE_CAPACITY = 1000;
+  /** Selector wait period, in milliseconds, used by {@link WaitStrategy#SLEEPING} strategy. */
+  private static final int SLEEP_PERIOD = 1;
+
+  /** Running writers, for management bean statistics, see {@link #getAllCompressionStats()}. */
+  private static final List<RemoteConsoleWriter> WRITERS = new CopyOnWriteArrayList<>();
+
+  /** Append context data entry to record context field, see {@link ConsoleRecord}. */
+  private static final TriConsumer<String, Object, StringBuilder> CONTEXT_APPENDER = (key, value, context) -> {
+    context.append(key).append('=').append(value).append('\n');
+  };
+
+  /** Per thread lines assemblers, so that concurrent writers neither interleave lines nor contend on a lock. */
+  private final ThreadLocal<Assembler> assemblers = ThreadLocal.withInitial(Assembler::new);
+
+  /** Encoded log messages buffers, one per lane, indexed by lane ordinal. */
+  private final RingBuffer[] rings = new RingBuffer[Lane.VALUES.length];
+
+  /** Strategy used by I/O thread to wait for new messages. */
+  private final WaitStrategy waitStrategy;
+
+  /** Outbound buffer is sent when it reaches this size, in bytes, even if linger time is not expired. */
+  private final int batchSize;
+
+  /** Maximum time, in nanoseconds, a message waits in outbound buffer for batch completion. */
+  private final long lingerTime;
+
+  /** Earliest linger time expiration for consoles with pending outbound bytes, updated by I/O thread. */
+  private long deadline = Long.MAX_VALUE;
+
+  /** Current time, in nanoseconds, of messages dispatching. */
+  private long now;
+
+  /** True while I/O thread waits for linger time expiration. */
+  private volatile boolean lingering;
+
+  /** Records handler copying every record to connected consoles outbound buffers. */
+  private final RingBuffer.Handler dispatcher = this::offer;
+
+  /** Policy applied when messages buffer is full. */
+  private final OverflowPolicy overflowPolicy;
+
+  /** Maximum time, in nanoseconds, logging thread waits for free space, used by {@link OverflowPolicy#BLOCK}. */
+  private final long blockTimeout;
+
+  /** Period, in nanoseconds, of dropped messages markers; 0 if markers are disabled. */
+  private final long dropReportPeriod;
 
-  /** String builder for temporary log messages storage. */
-  private final StringBuilder builder = new StringBuilder();
+  /** Time, in nanoseconds, of the last dropped messages report. */
+  private long reportTime;
 
-  /** Log messages queue. */
-  private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>(QUEUE_CAPACITY);
+  /** Messages dropped on messages buffer overflow, counted per level code. */
+  private final LongAdder[] droppedCounts = new LongAdder[ConsoleRecord.LEVELS_COUNT];
 
-  /** Socket server listening port. */
+  /** Records handler discarding oldest records, used by {@link OverflowPolicy#DROP_OLDEST}. */
+  private final RingBuffer.Handler evictor = record -> droppedCounts[ConsoleRecord.getLevel(record)].increment();
+
+  /** Spill journal keeping messages while there is no remote console connected; null if disabled. */
+  private final SpillJournal journal;
+
+  /** Records handler appending records to spill journal. */
+  private final RingBuffer.Handler spiller = this::spill;
+
+  /** Spill journal position of the next journal reader and records lost for it. */
+  private final JournalCursor cursor = new JournalCursor();
+
+  /** The number of connected remote consoles replaying spill journal. */
+  private int replayingCount;
+
+  /** Deflate compression level for consoles requesting compression; 0 if compression is disabled. */
+  private final int compressionLevel;
+
+  /** Compression statistics of connected consoles using compression. */
+  private final List<CompressionStats> compressionStats = new CopyOnWriteArrayList<>();
+
+  /** Connected remote consoles. This list is accessed only from I/O thread. */
+  private final List<RemoteConsoleClient> clients = new ArrayList<>();
+
+  /** Buffer for bytes received from remote consoles; remote console does not send data so they are discarded. */
+  private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+  /** Set by logging threads when they wake up selector, to avoid a wake up system call for every message. */
+  private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+  /** Socket server listening port. It is the actual bound port if server was created with port 0; -1 in push mode. */
   private final int port;
 
-  /** Server socket waiting for remote client connection. Only one client at a time is accepted. */
-  private final ServerSocket server;
+  /** Push mode collector connector; null if writer is not in push mode. */
+  private final CollectorConnector connector;
+
+  /** Random number identifying this writer instance to collector, so that collector knows sequence numbers origin. */
+  private final long session = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
+  /** Datagram mode packer; null if writer is not in datagram mode. */
+  private final DatagramPacker datagram;
+
+  /** Selector used by I/O thread for server socket and connected consoles. */
+  private final Selector selector;
+
+  /** Server socket channel accepting remote console connections. */
+  private final ServerSocketChannel server;
 
   /** Thread running the server. */
   private final Thread thread;
 
+  /** Server loop running flag. */
+  private volatile boolean running;
+
+  /** The number of connected remote consoles, updated by I/O thread. */
+  private volatile int clientsCount;
+
+  /** The number of connected remote consoles using compact stream, updated by I/O thread. */
+  private volatile int compactCount;
+
   /**
-   * Create remote console writer instance.
-   * 
+   * Create remote console writer instance with default configuration and start I/O thread. Use port 0 to bind server
+   * socket to an ephemeral port, see {@link #getPort()}.
+   *
    * @param port remote console port.
    */
   public RemoteConsoleWriter(int port)
+  {
+    this(config(port));
+  }
+
+  private static RemoteConsoleConfig config(int port)
+  {
+    RemoteConsoleConfig config = new RemoteConsoleConfig();
+    config.setPort(port);
+    return config;
+  }
+
+  /**
+   * Create remote console writer instance and start I/O thread.
+   *
+   * @param config remote console configuration.
+   */
+  public RemoteConsoleWriter(RemoteConsoleConfig config)
   {
     debug("Create remote console server instance.");
+    this.rings[Lane.URGENT.ordinal()] = new RingBuffer(config.getUrgentBufferSize(), config.isDirectBuffer());
+    this.rings[Lane.NORMAL.ordinal()] = new RingBuffer(config.getBufferSize(), config.isDirectBuffer());
+    this.rings[Lane.VERBOSE.ordinal()] = new RingBuffer(config.getVerboseBufferSize(), config.isDirectBuffer());
+    this.waitStrategy = config.getWaitStrategy();
+    this.batchSize = Math.max(1, Math.min(config.getBatchSize(), RemoteConsoleClient.BUFFER_SIZE));
+    this.lingerTime = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getLingerTime()));
+    this.overflowPolicy = config.getOverflowPolicy();
+    this.blockTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getBlockTimeout()));
+    this.dropReportPeriod = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getDropReportPeriod()));
+    this.compressionLevel = Math.max(0, Math.min(config.getCompressionLevel(), Deflater.BEST_COMPRESSION));
+    for(int i = 0; i < droppedCounts.length; ++i) {
+      droppedCounts[i] = new LongAdder();
+    }
+
+    InetSocketAddress collector = address(config.getCollector());
+    InetSocketAddress datagramTarget = collector == null && config.getDatagram() != null ? address(config.getDatagram()) : null;
+    if(datagramTarget != null) {
+      // datagram target is resolved once; there is no connection to re-establish
+      datagramTarget = new InetSocketAddress(datagramTarget.getHostString(), datagramTarget.getPort());
+    }
+
+    SpillJournal journal = null;
+    File journalFile = config.getJournalFile() != null ? new File(config.getJournalFile()) : null;
+    try {
+      if(journalFile == null && collector != null) {
+        // push mode resumes from journal after reconnect
+        journalFile = File.createTempFile("remote-console", ".journal");
+        journalFile.deleteOnExit();
+      }
+      if(journalFile != null) {
+        journal = new SpillJournal(journalFile, config.getJournalSize());
+      }
+    }
+    catch(IOException e) {
+      error("Fail to create remote console spill journal |%s|. Spill journal is disabled. Root cause: %s", journalFile, e);
+    }
+    this.journal = journal;
+    if(journal != null) {
+      journal.setEvictionHandler(this::onEvicted);
+    }
+
+    int port = collector != null || datagramTarget != null ? -1 : config.getPort();
 
-    ServerSocket server = null;
+    Selector selector = null;
+    ServerSocketChannel server = null;
+    CollectorConnector connector = null;
+    DatagramPacker datagram = null;
     Thread thread = null;
     try {
-      server = new ServerSocket();
-      thread = new Thread(this);
+      if(config.getCollector() != null && (collector == null || journal == null)) {
+        throw new IOException("Push mode requires valid collector address and spill journal.");
+      }
+      if(config.getCollector() == null && config.getDatagram() != null && (datagramTarget == null || datagramTarget.isUnresolved())) {
+        throw new UnknownHostException(config.getDatagram());
+      }
+      selector = Selector.open();
+      if(collector != null) {
+        long minReconnectDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getReconnectDelay()));
+        long maxReconnectDelay = Math.max(minReconnectDelay, TimeUnit.MILLISECONDS.toNanos(config.getMaxReconnectDelay()));
+        connector = new CollectorConnector(collector, minReconnectDelay, maxReconnectDelay);
+      }
+      else if(datagramTarget != null) {
+        datagram = new DatagramPacker(datagramTarget, config.getPacketSize(), config.getSendBufferSize(), session, droppedCounts);
+      }
+      else {
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        port = server.socket().getLocalPort();
+      }
+
+      running = true;
+      thread = new Thread(this, "RemoteConsoleWriter");
       thread.setDaemon(true);
-      thread.start();
     }
     catch(IOException e) {
-      error("Error creating the server. Remote console writer is unable to process appender messages.");
+      if(config.getCollector() != null) {
+        error("Fail to initialize remote console push mode to collector |%s|. Remote console writer is unable to process appender messages. Root cause: %s", config.getCollector(), e);
+      }
+      else if(config.getDatagram() != null) {
+        error("Fail to initialize remote console datagram mode to |%s|. Remote console writer is unable to process appender messages. Root cause: %s", config.getDatagram(), e);
+      }
+      else {
+        error("Fail to create remote console server socket on port |%d|. Remote console writer is unable to process appender messages. Root cause: %s", port, e);
+      }
+      close(datagram);
+      close(server);
+      close(selector);
+      selector = null;
+      server = null;
+      connector = null;
+      datagram = null;
     }
 
     this.port = port;
+    this.connector = connector;
+    this.datagram = datagram;
+    this.selector = selector;
     this.server = server;
     this.thread = thread;
+    // start I/O thread only after all fields are initialized
+    if(thread != null) {
+      thread.start();
+      WRITERS.add(this);
+    }
   }
 
   /**
-   * Test constructor.
-   * 
-   * @param server server socket mock.
+   * Parse collector or datagram target address.
+   *
+   * @param address address, as <code>host:port</code>, possible null.
+   * @return unresolved address or null if address is null or not valid.
    */
-  public RemoteConsoleWriter(ServerSocket server)
+  private static InetSocketAddress address(String address)
   {
-    this.port = 0;
-    this.thread = null;
-    this.server = server;
+    if(address == null) {
+      return null;
+    }
+    int separator = address.lastIndexOf(':');
+    try {
+      return InetSocketAddress.createUnresolved(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+    }
+    catch(IllegalArgumentException | IndexOutOfBoundsException e) {
+      error("Invalid remote console address |%s|. Root cause: %s", address, e);
+      return null;
+    }
+  }
+
+  /**
+   * Get normal lane messages buffer, where characters written with writer methods are published. Used by tests.
+   *
+   * @return normal lane messages buffer.
+   */
+  RingBuffer getRing()
+  {
+    return getRing(Lane.NORMAL);
+  }
+
+  /**
+   * Get lane messages buffer. Used by tests.
+   *
+   * @param lane messages lane.
+   * @return lane messages buffer.
+   */
+  RingBuffer getRing(Lane lane)
+  {
+    return rings[lane.ordinal()];
   }
 
-  public BlockingQueue<String> getQueue()
+  /**
+   * Get messages buffer for a level code.
+   *
+   * @param level level code.
+   * @return level lane messages buffer.
+   */
+  private RingBuffer ring(int level)
+  {
+    return rings[Lane.of(level).ordinal()];
+  }
+
+  /**
+   * Get server socket listening port.
+   *
+   * @return listening port or -1 in push or datagram mode.
+   */
+  public int getPort()
+  {
+    return port;
+  }
+
+  /**
+   * Get the number of messages with given level dropped because messages buffer was full. Custom levels are accounted
+   * to the closest standard level. Messages dropped by a slow console outbound buffer are not included.
+   *
+   * @param level messages level.
+   * @return dropped messages count.
+   */
+  public long getDroppedCount(Level level)
+  {
+    return droppedCounts[ConsoleRecord.code(level)].sum();
+  }
+
+  /**
+   * Get the total number of messages dropped because messages buffer was full.
+   *
+   * @return dropped messages count.
+   */
+  public long getDroppedCount()
+  {
+    long count = 0;
+    for(LongAdder droppedCount : droppedCounts) {
+      count += droppedCount.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Get compression statistics of connected remote consoles using deflate compression.
+   *
+   * @return compression statistics, one per compressed connection, possible empty.
+   */
+  public List<CompressionStats> getCompressionStats()
   {
-    return queue;
+    return Collections.unmodifiableList(compressionStats);
+  }
+
+  /**
+   * Get compression statistics of remote consoles using deflate compression, connected to any running writer.
+   *
+   * @return compression statistics, one per compressed connection, possible empty.
+   */
+  static List<CompressionStats> getAllCompressionStats()
+  {
+    List<CompressionStats> stats = new ArrayList<>();
+    for(RemoteConsoleWriter writer : WRITERS) {
+      stats.addAll(writer.compressionStats);
+    }
+    return stats;
+  }
+
+  /**
+   * Get the number of currently connected remote consoles.
+   *
+   * @return connected consoles count.
+   */
+  public int getClientsCount()
+  {
+    return clientsCount;
   }
 
   /**
@@ -98,170 +526,1079 @@ public class RemoteConsoleWriter extends Writer implements Runnable
   @Override
   public void write(char[] cbuf, int off, int len) throws IOException
   {
-    builder.append(cbuf, off, len);
+    assemblers.get().builder.append(cbuf, off, len);
+  }
+
+  /**
+   * Writes a single character. Overridden to avoid writer lock.
+   */
+  @Override
+  public void write(int c) throws IOException
+  {
+    assemblers.get().builder.append((char)c);
+  }
+
+  /**
+   * Writes a portion of a string. Overridden to avoid writer lock and characters copy.
+   */
+  @Override
+  public void write(String str, int off, int len) throws IOException
+  {
+    assemblers.get().builder.append(str, off, off + len);
+  }
+
+  /**
+   * Appends a characters sequence. Overridden to avoid writer lock and string conversion.
+   */
+  @Override
+  public Writer append(CharSequence csq) throws IOException
+  {
+    assemblers.get().builder.append(csq);
+    return this;
   }
 
   /**
-   * Flushes this stream by writing any buffered output to the underlying stream.
+   * Appends a subsequence of a characters sequence. Overridden to avoid writer lock and string conversion.
+   */
+  @Override
+  public Writer append(CharSequence csq, int start, int end) throws IOException
+  {
+    assemblers.get().builder.append(csq == null ? "null" : csq, start, end);
+    return this;
+  }
+
+  /**
+   * Flushes this stream by writing any buffered output to the underlying stream. Publish all complete lines from string
+   * builder, in a single pass, and keep incomplete line for next writes.
+   * <p>
+   * Only line feed ends a line; a carriage return immediately preceding line feed is part of line terminator, even if
+   * they were written by different calls. Scanning resumes from where previous flush stopped and consumed lines are
+   * removed from string builder once per flush, so that flush cost is linear with the number of written characters.
+   * <p>
+   * Characters are assembled into lines per thread: this method publishes only lines written by current thread.
    */
   @Override
   public void flush() throws IOException
   {
-    for(;;) {
-      int index = indexOneOf(builder, '\r', '\n');
-      if(index == -1) {
-        break;
+    Assembler assembler = assemblers.get();
+    StringBuilder builder = assembler.builder;
+    boolean offered = false;
+    assembler.context.setLength(0);
+    assembler.template = "";
+    assembler.arguments.setLength(0);
+    assembler.fields(ConsoleRecord.DEFAULT_LEVEL, System.currentTimeMillis(), "", Thread.currentThread().getName());
+    int lineStart = 0;
+    for(int i = assembler.scanIndex, length = builder.length(); i < length; ++i) {
+      if(builder.charAt(i) != '\n') {
+        continue;
       }
-      // ignore false returned by offer when queue is full
-      queue.offer(builder.substring(0, index));
+      int lineEnd = i > lineStart && builder.charAt(i - 1) == '\r' ? i - 1 : i;
+      // ignore false returned by publish when buffer is full
+      offered |= publish(builder, lineStart, lineEnd, assembler);
+      lineStart = i + 1;
+    }
+    if(lineStart > 0) {
+      builder.delete(0, lineStart);
+    }
+    assembler.scanIndex = builder.length();
+    if(offered) {
+      wakeup(ConsoleRecord.DEFAULT_LEVEL);
+    }
+  }
 
-      if(builder.charAt(index) == '\r') {
-        ++index;
+  /**
+   * Publish a line from characters sequence on messages buffer, followed by CRLF. Line is UTF-8 encoded straight into
+   * claimed record. Line larger than maximum record length is split into many records, without splitting surrogate
+   * pairs.
+   *
+   * @param chars characters sequence,
+   * @param start line start index,
+   * @param end line end index, exclusive, not including line terminator,
+   * @param fields line header fields.
+   * @return false if line, or a part of it, is dropped.
+   */
+  private boolean publish(CharSequence chars, int start, int end, Assembler fields)
+  {
+    RingBuffer ring = ring(fields.level);
+    int maxLength = ring.getMaxRecordLength() - fields.headerLength;
+    boolean published = true;
+    do {
+      int chunkEnd = end;
+      int length = Utf8.length(chars, start, end) + 2;
+      if(length > maxLength) {
+        // a character is encoded in at most 3 bytes, surrogate pairs in 4 bytes
+        chunkEnd = start + maxLength / 3;
+        if(Character.isHighSurrogate(chars.charAt(chunkEnd - 1))) {
+          --chunkEnd;
+        }
+        length = Utf8.length(chars, start, chunkEnd);
+      }
+
+      int offset = claim(ring, fields.headerLength + length, fields.level);
+      if(offset == -1) {
+        published = false;
       }
-      if(builder.charAt(index) != '\n') {
-        throw new IllegalStateException();
+      else {
+        ByteBuffer record = ring.view(offset, fields.headerLength + length);
+        fields.putHeader(record);
+        Utf8.encode(chars, start, chunkEnd, record);
+        if(chunkEnd == end) {
+          record.put((byte)'\r').put((byte)'\n');
+        }
+        ring.commit(offset, fields.headerLength + length);
+      }
+      start = chunkEnd;
+    } while(start < end);
+    return published;
+  }
+
+  /**
+   * Encode logging event with layout, straight into a reusable bytes buffer, and publish encoded bytes on messages
+   * buffer. Line terminators are normalized to CRLF and, if event does not end with a line terminator, CRLF is
+   * appended. This method is safe to be invoked concurrently; every thread uses its own bytes buffer and event is
+   * published as a whole.
+   * <p>
+   * Event level, timestamp, logger name, thread name and context data are stored on record header, so that I/O thread
+   * can filter records on consoles subscriptions without decoding them. If there are compact stream consoles connected
+   * message template and rendered arguments are stored on record header too.
+   *
+   * @param event logging event,
+   * @param layout layout used to encode event.
+   */
+  public void write(LogEvent event, Encoder<LogEvent> layout)
+  {
+    Assembler destination = assemblers.get();
+    destination.context.setLength(0);
+    event.getContextData().forEach(CONTEXT_APPENDER, destination.context);
+    destination.arguments.setLength(0);
+    destination.template = compactCount > 0 && event.getThrown() == null ? template(event.getMessage(), destination.arguments) : "";
+    String logger = event.getLoggerName();
+    destination.fields(ConsoleRecord.code(event.getLevel()), event.getTimeMillis(), logger != null ? logger : "", event.getThreadName());
+    ByteBuffer buffer = destination.getByteBuffer();
+    buffer.clear();
+    try {
+      layout.encode(event, destination);
+    }
+    finally {
+      // rendered arguments are reused by thread assembler; do not expose them to other appenders
+      if(destination.template.length() > 0 && event.getMessage() instanceof LogMessage) {
+        ((LogMessage)event.getMessage()).setRendered(null);
       }
-      ++index;
-      builder.delete(0, index);
+    }
+    buffer = destination.getByteBuffer();
+    buffer.flip();
+    // ignore false returned by publish when buffer is full
+    if(publish(buffer, true, destination)) {
+      wakeup(destination.level);
     }
   }
 
-  private static int indexOneOf(CharSequence string, char... chars)
+  /**
+   * Get template of a {@link LogImpl} message and append its arguments, rendered and NUL terminated, to given builder;
+   * see {@link ConsoleRecord}. Returns empty template if message is not eligible for compact stream: it has Java format
+   * specifiers or {@link Supplier} arguments, since supplier should be invoked only once, or template or rendered
+   * arguments are too large or a rendered argument contains NUL character. In this case arguments builder content is
+   * undefined and should be discarded.
+   * <p>
+   * On success rendered arguments are handed back to message, so that layout formats message text from them and
+   * arguments are rendered only once; reusable message releases them after layout encoding.
+   *
+   * @param message event message,
+   * @param arguments builder for rendered arguments.
+   * @return message template, empty if message is not eligible for compact stream.
+   */
+  private static String template(Message message, StringBuilder arguments)
   {
-    for(int i = 0; i < string.length(); ++i) {
-      for(int j = 0; j < chars.length; ++j) {
-        if(string.charAt(i) == chars[j]) {
-          return i;
+    Object[] args;
+    if(message instanceof LogMessage) {
+      args = ((LogMessage)message).getArguments();
+    }
+    else if(message instanceof DeferredMessage) {
+      args = ((DeferredMessage)message).getArguments();
+    }
+    else {
+      return "";
+    }
+    String template = message.getFormat();
+    if(args == null || template == null || template.length() > ConsoleRecord.MAX_TEMPLATE_LENGTH || template.indexOf('%') != -1) {
+      return "";
+    }
+    for(Object argument : args) {
+      if(argument instanceof Supplier) {
+        return "";
+      }
+      int start = arguments.length();
+      ArgumentRenderers.render(arguments, argument);
+      if(arguments.length() >= ConsoleRecord.MAX_TEMPLATE_LENGTH) {
+        return "";
+      }
+      for(int i = start; i < arguments.length(); ++i) {
+        if(arguments.charAt(i) == 0) {
+          return "";
         }
       }
+      arguments.append('\0');
     }
-    return -1;
+    if(message instanceof LogMessage) {
+      ((LogMessage)message).setRendered(arguments);
+    }
+    else {
+      ((DeferredMessage)message).setRendered(arguments);
+    }
+    return template;
   }
 
   /**
-   * Closes the stream, flushing it first.
+   * Publish encoded bytes, from source position to its limit, on messages buffer. Copy bytes straight into claimed
+   * record, inserting carriage return before every line feed not already preceded by one. Source larger than maximum
+   * record length is split into many records, preferable on line boundaries. On return source position is moved to its
+   * limit.
+   *
+   * @param source encoded bytes,
+   * @param terminate if true ensure that published bytes end with a line terminator,
+   * @param fields source header fields.
+   * @return false if source, or a part of it, is dropped.
+   */
+  private boolean publish(ByteBuffer source, boolean terminate, Assembler fields)
+  {
+    RingBuffer ring = ring(fields.level);
+    int maxLength = ring.getMaxRecordLength() - fields.headerLength;
+    boolean published = true;
+    while(source.hasRemaining()) {
+      int start = source.position();
+      int end = source.limit();
+      int length = normalizedLength(source, start, end, terminate);
+      if(length > maxLength) {
+        // event split into many records is sent as text to compact stream consoles
+        fields.plain();
+        maxLength = ring.getMaxRecordLength() - fields.headerLength;
+        // normalized length is at most twice the source length
+        end = cutPoint(source, start, start + maxLength / 2);
+        length = normalizedLength(source, start, end, false);
+      }
+
+      int offset = claim(ring, fields.headerLength + length, fields.level);
+      if(offset == -1) {
+        published = false;
+      }
+      else {
+        ByteBuffer record = ring.view(offset, fields.headerLength + length);
+        fields.putHeader(record);
+        normalize(source, start, end, record);
+        if(record.hasRemaining()) {
+          record.put((byte)'\r').put((byte)'\n');
+        }
+        ring.commit(offset, fields.headerLength + length);
+      }
+      source.position(end);
+    }
+    return published;
+  }
+
+  /**
+   * Claim messages buffer space for a record, applying overflow policy. Dropped record is counted on its level.
+   * <ul>
+   * <li>{@link OverflowPolicy#DROP_NEWEST} - record is dropped if messages buffer is full,
+   * <li>{@link OverflowPolicy#DROP_OLDEST} - I/O thread evicts oldest records when messages buffer usage exceeds high
+   * watermark; record is dropped only if buffer fills faster than eviction,
+   * <li>{@link OverflowPolicy#BLOCK} - while there are connected consoles wait for free space up to block timeout then
+   * drop record; if no console is connected record is dropped immediately,
+   * <li>{@link OverflowPolicy#DROP_BY_LEVEL} - TRACE records are dropped when messages buffer is half full, DEBUG when
+   * it exceeds high watermark and all other levels only when buffer is full.
+   * </ul>
+   *
+   * @param ring record lane messages buffer,
+   * @param length record length, header included,
+   * @param level record level code.
+   * @return claimed record offset or -1 if record is dropped.
+   */
+  private int claim(RingBuffer ring, int length, byte level)
+  {
+    if(overflowPolicy == OverflowPolicy.DROP_BY_LEVEL && isShed(ring, level)) {
+      droppedCounts[level].increment();
+      return -1;
+    }
+
+    int offset = ring.claim(length);
+    if(offset == -1 && overflowPolicy == OverflowPolicy.BLOCK && (clientsCount > 0 || datagram != null)) {
+      offset = await(ring, length);
+    }
+    if(offset == -1) {
+      droppedCounts[level].increment();
+      return -1;
+    }
+    if((overflowPolicy == OverflowPolicy.DROP_OLDEST || journal != null) && selector != null && clientsCount == 0 && ring.size() > highWatermark(ring) //
+        && wakeupPending.compareAndSet(false, true)) {
+      // there is no console to drain messages buffer; let I/O thread spill or evict oldest records
+      selector.wakeup();
+    }
+    return offset;
+  }
+
+  /**
+   * Test if a record with given level should be shed, considering current messages buffer usage.
+   *
+   * @param ring record lane messages buffer,
+   * @param level record level code.
+   * @return true if record should be dropped.
+   */
+  private static boolean isShed(RingBuffer ring, byte level)
+  {
+    if(level >= ConsoleRecord.code(Level.TRACE)) {
+      return ring.size() > ring.getCapacity() / 2;
+    }
+    if(level == ConsoleRecord.code(Level.DEBUG)) {
+      return ring.size() > highWatermark(ring);
+    }
+    return false;
+  }
+
+  /**
+   * Get messages buffer usage above which oldest records are evicted or low severity records shed.
+   *
+   * @param ring messages buffer.
+   * @return high watermark, in bytes.
+   */
+  private static int highWatermark(RingBuffer ring)
+  {
+    return ring.getCapacity() / 4 * 3;
+  }
+
+  /**
+   * Wait for messages buffer free space, up to block timeout. Wake up I/O thread and park with increasing periods,
+   * from 10 microseconds up to one millisecond, retrying space claim after every park.
+   *
+   * @param ring record lane messages buffer,
+   * @param length record length, header included.
+   * @return claimed record offset or -1 if timeout expired.
+   */
+  private int await(RingBuffer ring, int length)
+  {
+    long deadline = System.nanoTime() + blockTimeout;
+    long park = TimeUnit.MICROSECONDS.toNanos(10);
+    for(;;) {
+      if(wakeupPending.compareAndSet(false, true)) {
+        selector.wakeup();
+      }
+      long remaining = deadline - System.nanoTime();
+      if(remaining <= 0) {
+        return -1;
+      }
+      LockSupport.parkNanos(Math.min(park, remaining));
+      park = Math.min(2 * park, TimeUnit.MILLISECONDS.toNanos(1));
+
+      int offset = ring.claim(length);
+      if(offset != -1) {
+        return offset;
+      }
+    }
+  }
+
+  /**
+   * Get the length of source bytes range after line terminators normalization.
+   *
+   * @param source source bytes,
+   * @param start range start index,
+   * @param end range end index, exclusive,
+   * @param terminate if true count CRLF appended to range not ended by line feed.
+   * @return normalized length.
+   */
+  private static int normalizedLength(ByteBuffer source, int start, int end, boolean terminate)
+  {
+    int length = end - start;
+    for(int i = start; i < end; ++i) {
+      if(source.get(i) == '\n' && (i == 0 || source.get(i - 1) != '\r')) {
+        ++length;
+      }
+    }
+    if(terminate && (end == start || source.get(end - 1) != '\n')) {
+      length += 2;
+    }
+    return length;
+  }
+
+  /**
+   * Get the end index of a source part not larger than requested maximum, moved back after the last line feed, if
+   * any.
+   *
+   * @param source source bytes,
+   * @param start part start index,
+   * @param max maximum part end index.
+   * @return part end index.
+   */
+  private static int cutPoint(ByteBuffer source, int start, int max)
+  {
+    for(int i = max - 1; i > start; --i) {
+      if(source.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Copy source bytes range to target, inserting carriage return before line feeds not preceded by one. Source
+   * position and limit are restored.
+   *
+   * @param source source bytes,
+   * @param start range start index,
+   * @param end range end index, exclusive,
+   * @param target target buffer.
+   */
+  private static void normalize(ByteBuffer source, int start, int end, ByteBuffer target)
+  {
+    int limit = source.limit();
+    int segment = start;
+    for(int i = start; i < end; ++i) {
+      if(source.get(i) == '\n' && (i == 0 || source.get(i - 1) != '\r')) {
+        source.limit(i).position(segment);
+        target.put(source);
+        target.put((byte)'\r');
+        segment = i;
+        source.limit(limit);
+      }
+    }
+    source.limit(end).position(segment);
+    target.put(source);
+    source.limit(limit);
+  }
+
+  /**
+   * Wake up I/O thread blocked on selector. Selector is waked up only for {@link WaitStrategy#BLOCKING} strategy and
+   * not if there is no remote console connected, except in datagram mode, or if a wake up is already pending. Also I/O
+   * thread waiting for linger time expiration is not waked up if buffered messages are less than batch size, unless
+   * published message is on urgent lane.
+   *
+   * @param level published message level code.
+   */
+  private void wakeup(byte level)
+  {
+    if(waitStrategy != WaitStrategy.BLOCKING || selector == null || (clientsCount == 0 && datagram == null)) {
+      return;
+    }
+    if(lingering && Lane.of(level) != Lane.URGENT && size() < batchSize) {
+      return;
+    }
+    if(wakeupPending.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Get the number of bytes used by records on all lanes messages buffers.
+   *
+   * @return used bytes.
+   */
+  private int size()
+  {
+    int size = 0;
+    for(RingBuffer ring : rings) {
+      size += ring.size();
+    }
+    return size;
+  }
+
+  /**
+   * Closes the stream, stopping I/O thread. Messages already queued are sent to connected consoles, as much as
+   * consoles sockets accept without blocking.
    */
   @Override
   public void close() throws IOException
   {
     debug("Dispose remote console server.");
-    // this method tries its best and as a least resort uses thread interruption
-    synchronized(this) {
+    if(thread == null) {
+      return;
+    }
+    WRITERS.remove(this);
+    running = false;
+    selector.wakeup();
+    try {
+      thread.join(SHUTDOWN_TIMEOUT);
+    }
+    catch(InterruptedException unused) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Implement runnable interface.
+   */
+  @Override
+  public void run()
+  {
+    if(connector != null) {
+      debug("Start remote console push mode to collector |%s|.", connector.getCollector());
+    }
+    else if(datagram != null) {
+      debug("Start remote console datagram mode to |%s|.", datagram.getTarget());
+    }
+    else {
+      debug("Open remote console server for listening on port |%d|. Waiting for console clients.", port);
+    }
+    while(running) {
+      if(connector != null) {
+        reconnect();
+      }
       try {
-        // try to break server.accept in order to force queue reading on thread
-        Socket socket = new Socket();
-        socket.connect(new InetSocketAddress(port), 500);
-        socket.close();
+        select();
       }
       catch(IOException e) {
         error(e);
+        break;
       }
+      // reset pending flag before buffer reading so that a message published after buffer drain wakes up next select
+      wakeupPending.set(false);
 
-      queue.clear();
-      queue.offer(SHUTDOWN);
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while(keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        if(!key.isValid()) {
+          continue;
+        }
+        if(key.isAcceptable()) {
+          accept();
+          continue;
+        }
+        if(key.isConnectable()) {
+          if(connector.finishConnect(key, System.nanoTime())) {
+            push(key);
+          }
+          continue;
+        }
+        RemoteConsoleClient client = (RemoteConsoleClient)key.attachment();
+        if(key.isReadable()) {
+          client.read(discard);
+          if(client.since != RemoteConsoleClient.NO_REQUEST) {
+            request(client);
+          }
+          if(client.acknowledged != RemoteConsoleClient.NO_REQUEST) {
+            resume(client);
+          }
+          // console may have switched to compact stream
+          count();
+        }
+        if(key.isValid() && key.isWritable()) {
+          client.send();
+        }
+      }
+
+      dispatch(false);
+      evict();
+    }
+
+    // best effort to send messages queued before close
+    dispatch(true);
+    for(RemoteConsoleClient client : clients) {
+      client.close();
+    }
+    clients.clear();
+    compressionStats.clear();
+    count();
+    close(connector);
+    close(datagram);
+    close(server);
+    close(selector);
+    close(journal);
+    debug("Remote console server thread |%s| finished.", Thread.currentThread().getId());
+  }
 
+  /**
+   * Wait for selector events or new messages, according to configured wait strategy. Wait is limited by the earliest
+   * linger time expiration, if any console has outbound bytes waiting for batch completion.
+   *
+   * @throws IOException if selector fails.
+   */
+  private void select() throws IOException
+  {
+    long timeout = 0;
+    if(deadline != Long.MAX_VALUE) {
+      long remaining = deadline - System.nanoTime();
+      if(remaining <= 0) {
+        selector.selectNow();
+        return;
+      }
+      timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    switch(waitStrategy) {
+    case SLEEPING:
+      selector.select(timeout > 0 ? Math.min(timeout, SLEEP_PERIOD) : SLEEP_PERIOD);
+      break;
+
+    case YIELDING:
+      if(selector.selectNow() == 0 && (clients.isEmpty() || size() == 0)) {
+        Thread.yield();
+      }
+      break;
+
+    default:
+      if(timeout == 0) {
+        selector.select();
+        break;
+      }
+      lingering = true;
       try {
-        wait(SHUTDOWN_TIMEOUT);
+        selector.select(timeout);
       }
-      catch(InterruptedException unused) {
-        thread.interrupt();
+      finally {
+        lingering = false;
       }
     }
   }
 
   /**
-   * Implement runnable interface.
+   * Make room on messages buffers while there is no remote console connected. If spill journal is enabled and any lane
+   * messages buffer usage exceeds high watermark, all lanes are drained into journal. Otherwise, if overflow policy is
+   * {@link OverflowPolicy#DROP_OLDEST}, oldest records are evicted down to half of messages buffer capacity; every lane
+   * messages buffer is evicted independently, only if its usage exceeds high watermark.
    */
-  @Override
-  public void run()
+  private void evict()
   {
-    debug("Start remote console thread |%s|.", Thread.currentThread().getId());
+    if(!clients.isEmpty()) {
+      return;
+    }
+    if(journal != null) {
+      for(RingBuffer ring : rings) {
+        if(ring.size() > highWatermark(ring)) {
+          drain(spiller);
+          break;
+        }
+      }
+      return;
+    }
+    if(overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+      return;
+    }
+    for(RingBuffer ring : rings) {
+      if(ring.size() <= highWatermark(ring)) {
+        continue;
+      }
+      int lowWatermark = ring.getCapacity() / 2;
+      while(ring.size() > lowWatermark && ring.read(evictor, 1) > 0) {
+      }
+    }
+  }
 
+  /** Accept pending remote console connection and register it with selector for reading. */
+  private void accept()
+  {
+    SocketChannel channel = null;
     try {
-      server.setReuseAddress(true);
-      server.bind(new InetSocketAddress(port));
+      channel = server.accept();
+      if(channel == null) {
+        return;
+      }
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      RemoteConsoleClient client = new RemoteConsoleClient(channel, key, droppedCounts, compressionLevel);
+      if(journal != null && clients.isEmpty()) {
+        if(journal.first(cursor.getSpillStart()) < journal.getTail()) {
+          // first console after a period without consoles receives messages spilled meanwhile
+          client.replay(cursor.getSpillStart(), Long.MIN_VALUE);
+          ++replayingCount;
+        }
+        // spilled messages overwritten before console connection are reported as dropped
+        cursor.attach(client);
+      }
+      key.attach(client);
+      clients.add(client);
+      count();
+      debug("Open connection with remote console from |%s|.", client.address);
     }
     catch(IOException e) {
-      throw new IllegalStateException(String.format("Fail to create remote console server socket on port |%d|. Abort execution thread.", port));
+      error(e);
+      close(channel);
     }
+  }
 
-    debug("Open remote console server for listening on |%s:%d|. Waiting for console client.", server.getInetAddress(), port);
-    SERVER_LOOP: for(;;) {
-      if(Thread.interrupted()) {
-        debug("Server thread has been interrupted. Exit server loop.");
-        break;
-      }
+  /**
+   * Maintain push mode collector connection, see {@link CollectorConnector#reconnect(Selector, long)}. Selector wait is
+   * limited to the next connection event.
+   */
+  private void reconnect()
+  {
+    SelectionKey key = connector.reconnect(selector, System.nanoTime());
+    if(key != null) {
+      push(key);
+    }
+    deadline = Math.min(deadline, connector.getDeadline());
+  }
 
-      Socket client;
-      try {
-        client = server.accept();
-      }
-      catch(InterruptedIOException unused) {
-        debug("Server waiting for connection was interrupted.");
-        continue;
-      }
-      catch(IOException e) {
-        error(e);
-        continue;
+  /**
+   * Register established collector connection as a console, in push mode. Console sends nothing but <code>PUSH</code>
+   * command line until collector acknowledges, see {@link #resume(RemoteConsoleClient)}.
+   *
+   * @param key collector channel selection key.
+   */
+  private void push(SelectionKey key)
+  {
+    SocketChannel channel = (SocketChannel)key.channel();
+    try {
+      RemoteConsoleClient client = new RemoteConsoleClient(channel, key, droppedCounts, compressionLevel);
+      client.push(session, System.nanoTime());
+      ++replayingCount;
+      key.attach(client);
+      clients.add(client);
+      count();
+      debug("Open connection with remote console collector |%s|.", client.address);
+    }
+    catch(IOException e) {
+      connector.fail(channel, e, System.nanoTime());
+    }
+  }
+
+  /**
+   * Resume push mode stream from the journal record following the sequence acknowledged by collector. If acknowledged
+   * record was overwritten, stream resumes from journal head. Reconnect delay is reset.
+   *
+   * @param client collector connection.
+   */
+  private void resume(RemoteConsoleClient client)
+  {
+    long sequence = client.acknowledged;
+    client.acknowledged = RemoteConsoleClient.NO_REQUEST;
+    long position;
+    if(sequence < journal.getHead()) {
+      position = journal.getHead();
+    }
+    else if(sequence < journal.getTail()) {
+      position = journal.next(sequence);
+    }
+    else {
+      position = journal.getTail();
+    }
+    // records overwritten before collector received them are reported as dropped
+    cursor.resume(client, sequence, position);
+    client.resume(position);
+    connector.reset();
+    debug("Remote console collector |%s| acknowledged sequence |%d|. Resume from |%d|.", client.address, sequence, position);
+  }
+
+  /**
+   * Move buffered messages to connected consoles outbound buffers and send buffers reaching batch size or linger time.
+   * Messages are left on messages buffer if there is no remote console connected. Remote consoles closed meanwhile are
+   * removed from list. If there are urgent lane messages all outbound buffers are sent, regardless of batch size and
+   * linger time.
+   *
+   * @param force send outbound buffers regardless of batch size and linger time.
+   */
+  private void dispatch(boolean force)
+  {
+    deadline = Long.MAX_VALUE;
+    if(clients.isEmpty() && datagram == null) {
+      return;
+    }
+    now = System.nanoTime();
+    if(drain(dispatcher) > 0) {
+      force = true;
+    }
+    if(datagram != null) {
+      deadline = datagram.flush(force, now, lingerTime);
+    }
+    if(replayingCount > 0) {
+      // after drain, so that messages just appended to journal are replayed too
+      replay();
+    }
+    if(dropReportPeriod > 0 && now - reportTime >= dropReportPeriod) {
+      reportTime = now;
+      for(int i = 0; i < clients.size(); ++i) {
+        clients.get(i).reportDropped(droppedCounts, now);
       }
-      debug("Open connection with remote console from |%s|.", client.getRemoteSocketAddress());
+    }
 
-      PrintStream stream;
-      try {
-        stream = new PrintStream(client.getOutputStream());
+    for(Iterator<RemoteConsoleClient> iterator = clients.iterator(); iterator.hasNext();) {
+      RemoteConsoleClient client = iterator.next();
+      if(client.deflateRequested && client.deflate(now)) {
+        compressionStats.add(client.stats);
       }
-      catch(IOException e) {
-        error(e);
+      if(!force && !client.behind && client.isLingering(now, batchSize, lingerTime)) {
+        deadline = Math.min(deadline, client.pendingTime + lingerTime);
         continue;
       }
-
-      for(;;) {
-        String message = null;
-        try {
-          message = queue.take();
+      if(!client.send()) {
+        iterator.remove();
+        compressionStats.remove(client.stats);
+        if(client.replaying) {
+          --replayingCount;
         }
-        catch(InterruptedException unused) {
-          Thread.currentThread().interrupt();
+        if(client.push) {
+          cursor.detach(client.getReplayPosition());
+          connector.backoff(now);
         }
-        if(Thread.interrupted()) {
+      }
+      else if(client.behind && !client.writing) {
+        // outbound buffer fully sent; continue journal replay without waiting for selector
+        deadline = now;
+      }
+    }
+    if(dropReportPeriod > 0) {
+      for(int i = 0; i < clients.size(); ++i) {
+        if(clients.get(i).hasDropped(droppedCounts)) {
+          // dropped messages marker is pending; report it even if no other messages are logged meanwhile
+          deadline = Math.min(deadline, reportTime + dropReportPeriod);
           break;
         }
-        if(message == null) {
-          continue;
-        }
-        if(message.equals(SHUTDOWN)) {
-          break SERVER_LOOP;
-        }
+      }
+    }
+    count();
+    if(clients.isEmpty() && journal != null && connector == null) {
+      cursor.detach(journal.getTail());
+    }
+  }
 
-        stream.print(message);
-        stream.print("\r\n");
-        if(stream.checkError()) {
-          debug("Remote console has been closed. Stop messages transmission.");
-          break;
+  /** Update connected consoles counters read by logging threads. */
+  private void count()
+  {
+    int compactCount = 0;
+    for(int i = 0; i < clients.size(); ++i) {
+      if(clients.get(i).compact != null) {
+        ++compactCount;
+      }
+    }
+    this.clientsCount = clients.size();
+    this.compactCount = compactCount;
+  }
+
+  /** Copy spill journal records to replaying consoles outbound buffers, as much as buffers have room. */
+  private void replay()
+  {
+    for(int i = 0; i < clients.size(); ++i) {
+      RemoteConsoleClient client = clients.get(i);
+      if(client.replaying && client.replay(journal, now)) {
+        --replayingCount;
+      }
+    }
+  }
+
+  /**
+   * Handle console request for journal messages since a given time. Request is ignored if spill journal is disabled.
+   *
+   * @param client remote console.
+   */
+  private void request(RemoteConsoleClient client)
+  {
+    long since = client.since;
+    client.since = RemoteConsoleClient.NO_REQUEST;
+    if(journal == null) {
+      return;
+    }
+    if(!client.replaying) {
+      ++replayingCount;
+    }
+    client.replay(journal.seek(since), since);
+  }
+
+  /**
+   * Append record to spill journal. Record larger than journal maximum record length is dropped.
+   *
+   * @param record encoded message.
+   */
+  private void spill(ByteBuffer record)
+  {
+    if(!journal.append(record)) {
+      droppedCounts[ConsoleRecord.getLevel(record)].increment();
+    }
+  }
+
+  /**
+   * Account spill journal record overwritten by append. Record is dropped for every replaying console that did not
+   * read it yet and accounted by journal cursor for the next journal reader, see {@link JournalCursor}.
+   *
+   * @param position record journal position,
+   * @param record overwritten record.
+   */
+  private void onEvicted(long position, ByteBuffer record)
+  {
+    for(int i = 0; i < clients.size(); ++i) {
+      clients.get(i).evicted(position, record);
+    }
+    cursor.evicted(position, ConsoleRecord.getLevel(record));
+  }
+
+  /**
+   * Drain lanes messages buffers in weighted round robin: on every round take up to lane weight records from every
+   * lane, most severe lane first, until all lanes are empty.
+   *
+   * @param handler records handler.
+   * @return the number of urgent lane records.
+   */
+  private int drain(RingBuffer.Handler handler)
+  {
+    int urgentCount = 0;
+    int count;
+    do {
+      count = 0;
+      for(Lane lane : Lane.VALUES) {
+        int laneCount = rings[lane.ordinal()].read(handler, lane.weight);
+        if(lane == Lane.URGENT) {
+          urgentCount += laneCount;
         }
+        count += laneCount;
       }
+    } while(count > 0);
+    return urgentCount;
+  }
 
-      stream.close();
-      try {
-        client.close();
+  /**
+   * Copy encoded message to all connected consoles outbound buffers.
+   *
+   * @param record encoded message.
+   */
+  private void offer(ByteBuffer record)
+  {
+    if(journal != null) {
+      // journal keeps recent history; also replaying consoles receive new messages from it, after replayed ones
+      spill(record);
+    }
+    for(int i = 0; i < clients.size(); ++i) {
+      RemoteConsoleClient client = clients.get(i);
+      if(!client.replaying) {
+        client.offer(record, now);
       }
-      catch(IOException e) {
-        error(e);
+    }
+    if(datagram != null) {
+      datagram.pack(record, now);
+    }
+  }
+
+  /**
+   * Lines assembler owned by a thread: string builder for characters written with {@link Writer} methods and
+   * destination for layout encoded events. Bytes buffer grows up to maximum record length; if encoded event is larger,
+   * complete lines from buffer are published and buffer reused for the rest of the event.
+   *
+   * @author Iulian Rotaru
+   */
+  private final class Assembler implements ByteBufferDestination
+  {
+    /** String builder for characters not yet published. */
+    private final StringBuilder builder = new StringBuilder();
+
+    /** Index of the first string builder character not yet scanned for line terminator. */
+    private int scanIndex;
+
+    /** Bytes buffer for layout encoded events. */
+    private ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+
+    /** Level code of the line or event being published. */
+    private byte level;
+
+    /** Timestamp of the line or event being published. */
+    private long time;
+
+    /** Logger name of the event being published; empty for lines written with writer methods. */
+    private CharSequence logger = "";
+
+    /** Thread name of the line or event being published. */
+    private CharSequence thread = "";
+
+    /** Context data of the event being published, see {@link ConsoleRecord}. */
+    private final StringBuilder context = new StringBuilder();
+
+    /** Message template of the event being published; empty if event is sent as text to compact stream consoles. */
+    private CharSequence template = "";
+
+    /** Rendered message arguments of the event being published, see {@link ConsoleRecord}. */
+    private final StringBuilder arguments = new StringBuilder();
+
+    /** Record header length for current fields. */
+    private int headerLength;
+
+    /**
+     * Set record header fields for the line or event being published; context data, message template and arguments
+     * should be already set. If header does not fit half of lane maximum record length, variable fields are discarded.
+     *
+     * @param level level code,
+     * @param time timestamp, milliseconds since epoch,
+     * @param logger logger name,
+     * @param thread thread name.
+     */
+    void fields(byte level, long time, CharSequence logger, CharSequence thread)
+    {
+      this.level = level;
+      this.time = time;
+      this.logger = logger;
+      this.thread = thread;
+      headerLength = ConsoleRecord.headerLength(logger, thread, context, template, arguments);
+      if(headerLength > ring(level).getMaxRecordLength() / 2) {
+        this.logger = "";
+        this.thread = "";
+        context.setLength(0);
+        template = "";
+        arguments.setLength(0);
+        headerLength = ConsoleRecord.FIXED_LENGTH;
       }
     }
 
-    try {
-      server.close();
+    /** Discard message template and arguments, e.g. when event is split into many records. */
+    void plain()
+    {
+      if(template.length() > 0) {
+        template = "";
+        arguments.setLength(0);
+        headerLength = ConsoleRecord.headerLength(logger, thread, context);
+      }
     }
-    catch(IOException e) {
-      error(e);
+
+    /**
+     * Write record header for current fields.
+     *
+     * @param record record buffer.
+     */
+    void putHeader(ByteBuffer record)
+    {
+      ConsoleRecord.putHeader(record, level, time, logger, thread, context, template, arguments);
     }
 
-    // notify main thread so that shutdown method can finish
-    synchronized(this) {
-      notify();
+    @Override
+    public ByteBuffer getByteBuffer()
+    {
+      return buffer;
+    }
+
+    @Override
+    public ByteBuffer drain(ByteBuffer buf)
+    {
+      buf.flip();
+      int maxRecordLength = ring(level).getMaxRecordLength();
+      if(buf.capacity() < maxRecordLength) {
+        buffer = ByteBuffer.allocate(Math.min(2 * buf.capacity(), maxRecordLength));
+        buffer.put(buf);
+        return buffer;
+      }
+      int limit = buf.limit();
+      buf.limit(cutPoint(buf, 0, limit));
+      plain();
+      publish(buf, false, this);
+      buf.limit(limit);
+      buf.compact();
+      return buf;
+    }
+
+    @Override
+    public void writeBytes(ByteBuffer data)
+    {
+      ByteBufferDestinationHelper.writeToUnsynchronized(data, this);
+    }
+
+    @Override
+    public void writeBytes(byte[] data, int offset, int length)
+    {
+      ByteBufferDestinationHelper.writeToUnsynchronized(data, offset, length, this);
+    }
+  }
+
+  private static void close(Closeable closeable)
+  {
+    if(closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch(IOException e) {
+        error(e);
+      }
     }
-    debug("Remote console server thread |%s| finished.", Thread.currentThread().getId());
   }
 
   // internal logging helpers
@@ -269,7 +1606,7 @@ public class RemoteConsoleWriter extends Writer implements Runnable
 
   /**
    * Internal debug message.
-   * 
+   *
    * @param message debug message,
    * @param args optional formatted message arguments.
    */
@@ -280,7 +1617,7 @@ public class RemoteConsoleWriter extends Writer implements Runnable
 
   /**
    * Internal error message.
-   * 
+   *
    * @param message error message,
    * @param args optional formatted message arguments.
    */
@@ -288,4 +1625,4 @@ public class RemoteConsoleWriter extends Writer implements Runnable
   {
     StatusLogger.getLogger().error(String.format(message.toString(), args));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package com.jslib.log4j;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+/**
+ * Size limits enforced while message is rendered, so that a careless argument, e.g. a huge collection or a multi
+ * megabyte <code>toString()</code>, cannot stall logging thread or flood appenders. There are next budgets, configured
+ * by log4j component properties; zero or negative value disables the limit:
+ * <ul>
+ * <li><code>js.log4j.maxArgumentLength</code> - maximum number of characters rendered for a single argument, default
+ * 8192,
+ * <li><code>js.log4j.maxMessageLength</code> - maximum number of characters of formatted message, default 65536,
+ * <li><code>js.log4j.maxItems</code> - maximum number of items rendered for arrays and collections, default 3.
+ * </ul>
+ * Truncated content is terminated by ellipsis and truncated length, ellipsis included, never exceeds the budget. Cut
+ * point is moved back if it would split a surrogate pair. Truncations are counted and the counter is exposed by
+ * {@link Log4jMXBean#getTruncationsCount()}.
+ *
+ * @author Iulian Rotaru
+ */
+final class RenderBudget
+{
+  /** Ellipsis constant. */
+  static final String ELLIPSIS = "...";
+
+  /** Maximum number of characters rendered for a single argument. */
+  static final int MAX_ARGUMENT_LENGTH = Math.max(limit("js.log4j.maxArgumentLength", 8192), ELLIPSIS.length());
+
+  /** Maximum number of characters of formatted message. */
+  static final int MAX_MESSAGE_LENGTH = Math.max(limit("js.log4j.maxMessageLength", 65536), ELLIPSIS.length());
+
+  /** Maximum number of items rendered for arrays and collections. */
+  static final int MAX_ITEMS = limit("js.log4j.maxItems", 3);
+
+  /** Number of truncated arguments and messages. */
+  private static final LongAdder TRUNCATIONS = new LongAdder();
+
+  /** Prevent default constructor synthesis. */
+  private RenderBudget()
+  {
+  }
+
+  /**
+   * Append argument string representation, truncated to argument budget. Only the part that fits the budget is copied
+   * into string builder.
+   *
+   * @param builder string builder,
+   * @param value argument string representation, null appended as <code>null</code>.
+   */
+  public static void appendArgument(StringBuilder builder, CharSequence value)
+  {
+    if(value == null) {
+      builder.append((Object)null);
+      return;
+    }
+    if(value.length() <= MAX_ARGUMENT_LENGTH) {
+      builder.append(value);
+      return;
+    }
+    int end = cutPoint(value, 0, MAX_ARGUMENT_LENGTH - ELLIPSIS.length());
+    builder.append(value, 0, end);
+    builder.append(ELLIPSIS);
+    TRUNCATIONS.increment();
+  }
+
+  /**
+   * Test if content rendered from given start position already reached argument budget.
+   *
+   * @param builder string builder,
+   * @param start argument start position.
+   * @return true if argument budget is spent.
+   */
+  public static boolean isArgumentFull(StringBuilder builder, int start)
+  {
+    return builder.length() - start >= MAX_ARGUMENT_LENGTH;
+  }
+
+  /**
+   * Truncate argument rendered from given start position if it exceeds argument budget.
+   *
+   * @param builder string builder,
+   * @param start argument start position.
+   */
+  public static void truncateArgument(StringBuilder builder, int start)
+  {
+    truncate(builder, start, MAX_ARGUMENT_LENGTH);
+  }
+
+  /**
+   * Test if message formatted from given start position already exceeds message budget.
+   *
+   * @param builder string builder,
+   * @param start message start position.
+   * @return true if message budget is exceeded.
+   */
+  public static boolean isMessageFull(StringBuilder builder, int start)
+  {
+    return builder.length() - start > MAX_MESSAGE_LENGTH;
+  }
+
+  /**
+   * Truncate message formatted from given start position if it exceeds message budget.
+   *
+   * @param builder string builder,
+   * @param start message start position.
+   */
+  public static void truncateMessage(StringBuilder builder, int start)
+  {
+    truncate(builder, start, MAX_MESSAGE_LENGTH);
+  }
+
+  /**
+   * Get the number of arguments and messages truncated since class loading.
+   *
+   * @return truncations count.
+   */
+  public static long getTruncationsCount()
+  {
+    return TRUNCATIONS.sum();
+  }
+
+  /**
+   * Ensure content appended from start position is not larger than requested maximum length. If larger, shorten it and
+   * append ellipsis; maximum length is not exceeded also when ellipsis is appended.
+   *
+   * @param builder string builder,
+   * @param start content start position,
+   * @param maxLength maximum allowed length.
+   */
+  private static void truncate(StringBuilder builder, int start, int maxLength)
+  {
+    if(builder.length() - start <= maxLength) {
+      return;
+    }
+    builder.setLength(cutPoint(builder, start, maxLength - ELLIPSIS.length()));
+    builder.append(ELLIPSIS);
+    TRUNCATIONS.increment();
+  }
+
+  /**
+   * Get the index where character sequence can be cut, keeping at most given length from start position and not
+   * splitting a surrogate pair.
+   *
+   * @param value character sequence,
+   * @param start start position,
+   * @param length requested length, start position plus length not larger than sequence length.
+   * @return cut index.
+   */
+  private static int cutPoint(CharSequence value, int start, int length)
+  {
+    int end = start + length;
+    if(length > 0 && Character.isHighSurrogate(value.charAt(end - 1))) {
+      return end - 1;
+    }
+    return end;
+  }
+
+  /**
+   * Read limit from log4j component properties. Zero or negative value disables the limit.
+   *
+   * @param name property name,
+   * @param defaultValue default value.
+   * @return configured limit.
+   */
+  private static int limit(String name, int defaultValue)
+  {
+    int value = PropertiesUtil.getProperties().getIntegerProperty(name, defaultValue);
+    return value > 0 ? value : Integer.MAX_VALUE;
+  }
+}
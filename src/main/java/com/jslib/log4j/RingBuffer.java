@@ -0,0 +1,278 @@
+package com.jslib.log4j;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-producer, single-consumer ring buffer of variable length byte records. Records storage is preallocated, on
+ * heap or off-heap in a direct byte buffer, and capacity is expressed in bytes; there is no allocation and no locking
+ * on records publishing.
+ * <p>
+ * Producers claim space by advancing tail position with compare and set, copy record bytes into claimed space then
+ * publish record by an ordered write of its length into record header. Record headers are kept in an atomic integers
+ * array with an entry for every {@link #ALIGNMENT} bytes of storage. A record that does not fit storage end is preceded
+ * by a padding record, with negative length, and is stored from storage start. Consumer reads records in claim order,
+ * stops on first record not yet published, clears consumed headers and finally advances head position, releasing
+ * space for producers.
+ * <p>
+ * Producers that know record length in advance but not its bytes, e.g. because bytes are transformed while copied, can
+ * write straight into records storage: {@link #claim(int)} record space, fill the buffer returned by
+ * {@link #view(int, int)} and {@link #commit(int, int)} the record. A claimed record should always be committed since
+ * consumer cannot read past it.
+ * <p>
+ * Storage position is a monotonic counter, masked with capacity to get storage offset; for this reason capacity is
+ * rounded up to a power of two.
+ *
+ * @author Iulian Rotaru
+ */
+final class RingBuffer
+{
+  /** Record alignment; every record starts at a storage offset multiple of alignment. */
+  static final int ALIGNMENT = 32;
+
+  /** Minimum ring buffer capacity, in bytes. */
+  static final int MIN_CAPACITY = 1024;
+
+  /**
+   * Consumer callback for records read from ring buffer.
+   *
+   * @author Iulian Rotaru
+   */
+  interface Handler
+  {
+    /**
+     * Handle a record. Record bytes are valid only for the duration of this call and should be copied if need to be
+     * retained.
+     *
+     * @param record record bytes, between buffer position and limit.
+     */
+    void onRecord(ByteBuffer record);
+  }
+
+  /** Records storage. */
+  private final ByteBuffer buffer;
+
+  /** Storage capacity, power of two. */
+  private final int capacity;
+
+  /** Mask for storage offset computation from a position. */
+  private final int mask;
+
+  /** Maximum record length, one eighth of capacity. */
+  private final int maxRecordLength;
+
+  /** Record headers, one for every {@link #ALIGNMENT} bytes of storage: zero for no record, record length or negative padding length. */
+  private final AtomicIntegerArray headers;
+
+  /** Position of next claimed record, shared by producers. */
+  private final AtomicLong tail = new AtomicLong();
+
+  /** Position of next record to read, updated only by consumer. */
+  private final AtomicLong head = new AtomicLong();
+
+  /** Producer views on storage, to copy records without changing storage buffer state. */
+  private final ThreadLocal<ByteBuffer> views;
+
+  /** Consumer view on storage, passed to records handler. */
+  private final ByteBuffer consumerView;
+
+  /**
+   * Create ring buffer with given capacity, rounded up to a power of two.
+   *
+   * @param capacity requested capacity, in bytes,
+   * @param direct if true allocate records storage off-heap, in a direct byte buffer.
+   */
+  public RingBuffer(int capacity, boolean direct)
+  {
+    this.capacity = capacity(capacity);
+    this.mask = this.capacity - 1;
+    this.maxRecordLength = this.capacity / 8;
+    this.buffer = direct ? ByteBuffer.allocateDirect(this.capacity) : ByteBuffer.allocate(this.capacity);
+    this.headers = new AtomicIntegerArray(this.capacity / ALIGNMENT);
+    this.views = ThreadLocal.withInitial(buffer::duplicate);
+    this.consumerView = buffer.duplicate();
+  }
+
+  private static int capacity(int capacity)
+  {
+    if(capacity <= MIN_CAPACITY) {
+      return MIN_CAPACITY;
+    }
+    if(capacity > 1 << 30) {
+      throw new IllegalArgumentException("Ring buffer capacity too large: " + capacity);
+    }
+    return Integer.highestOneBit(capacity - 1) << 1;
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  public int getMaxRecordLength()
+  {
+    return maxRecordLength;
+  }
+
+  public boolean isDirect()
+  {
+    return buffer.isDirect();
+  }
+
+  /**
+   * Publish record bytes, from source position to its limit. Source position is not changed. This method is safe to be
+   * invoked concurrently by many producers.
+   *
+   * @param source record bytes, not empty.
+   * @return false if there is not enough free space or if record is larger than maximum record length.
+   */
+  public boolean offer(ByteBuffer source)
+  {
+    int length = source.remaining();
+    int offset = claim(length);
+    if(offset == -1) {
+      return false;
+    }
+
+    int position = source.position();
+    view(offset, length).put(source);
+    source.position(position);
+
+    commit(offset, length);
+    return true;
+  }
+
+  /**
+   * Claim storage space for a record of given length, inserting a padding record if record does not fit storage end.
+   * Claimed record should be committed, see {@link #commit(int, int)}.
+   *
+   * @param length record length.
+   * @return claimed record offset or -1 if there is not enough free space or record is larger than maximum length.
+   */
+  public int claim(int length)
+  {
+    if(length <= 0 || length > maxRecordLength) {
+      return -1;
+    }
+    int required = align(length);
+    for(;;) {
+      long tail = this.tail.get();
+      int available = capacity - (int)(tail - head.get());
+      if(required > available) {
+        return -1;
+      }
+
+      int offset = (int)tail & mask;
+      int padding = 0;
+      if(required > capacity - offset) {
+        padding = capacity - offset;
+        if(padding + required > available) {
+          return -1;
+        }
+      }
+
+      if(this.tail.compareAndSet(tail, tail + padding + required)) {
+        if(padding == 0) {
+          return offset;
+        }
+        headers.lazySet(offset / ALIGNMENT, -padding);
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Get current producer thread view on records storage, with position and limit set to claimed record boundaries.
+   * Returned buffer is reused by all records published by current thread.
+   *
+   * @param offset claimed record offset,
+   * @param length claimed record length.
+   * @return storage view for claimed record.
+   */
+  public ByteBuffer view(int offset, int length)
+  {
+    ByteBuffer view = views.get();
+    view.limit(offset + length).position(offset);
+    return view;
+  }
+
+  /**
+   * Publish claimed record, making it visible to consumer.
+   *
+   * @param offset claimed record offset,
+   * @param length claimed record length.
+   */
+  public void commit(int offset, int length)
+  {
+    headers.lazySet(offset / ALIGNMENT, length);
+  }
+
+  /**
+   * Read published records, in publishing order, up to given limit. Reading stops on first claimed record not yet
+   * published. This method should be invoked only by consumer thread.
+   *
+   * @param handler records handler,
+   * @param limit maximum number of records to read.
+   * @return the number of records read.
+   */
+  public int read(Handler handler, int limit)
+  {
+    long head = this.head.get();
+    int count = 0;
+    try {
+      while(count < limit) {
+        int offset = (int)head & mask;
+        int index = offset / ALIGNMENT;
+        int length = headers.get(index);
+        if(length == 0) {
+          break;
+        }
+        if(length < 0) {
+          headers.lazySet(index, 0);
+          head -= length;
+          continue;
+        }
+
+        consumerView.limit(offset + length).position(offset);
+        try {
+          handler.onRecord(consumerView);
+        }
+        finally {
+          headers.lazySet(index, 0);
+          head += align(length);
+          ++count;
+        }
+      }
+    }
+    finally {
+      this.head.lazySet(head);
+    }
+    return count;
+  }
+
+  /**
+   * Test if there is no record claimed, published or not.
+   *
+   * @return true if ring buffer is empty.
+   */
+  public boolean isEmpty()
+  {
+    return tail.get() == head.get();
+  }
+
+  /**
+   * Get the number of bytes currently used by records, alignment and padding included.
+   *
+   * @return used bytes.
+   */
+  public int size()
+  {
+    return (int)(tail.get() - head.get());
+  }
+
+  private static int align(int length)
+  {
+    return (length + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+}
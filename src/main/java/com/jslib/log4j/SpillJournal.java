@@ -0,0 +1,380 @@
+package com.jslib.log4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Size capped, circular journal of remote console records, stored on a memory mapped file. Records are appended at
+ * journal tail; when there is no room for a new record oldest records are overwritten, so that journal always keeps
+ * the most recent history. Journal file is truncated when journal is created and its content is meaningful only for
+ * the journal instance that wrote it.
+ * <p>
+ * Every journal entry is a 4 bytes record length followed by record bytes, see {@link ConsoleRecord}. Entries are
+ * aligned to {@link #ALIGNMENT} bytes; an entry that does not fit file end is preceded by a padding marker and is
+ * stored from file start. Journal position is a monotonic counter; file offset is position modulo journal capacity.
+ * <p>
+ * A sparse index keeps an entry every {@link #INDEX_INTERVAL} bytes of journal: entry position and the maximum
+ * timestamp of all records before it. Because maximum timestamp is monotonic, {@link #seek(long)} finds by binary
+ * search a position before which there is no record newer than requested time, even if records are not appended in
+ * strict timestamp order.
+ * <p>
+ * Records overwritten by append are reported to {@link EvictionHandler}, if set, so that readers behind journal head
+ * can account records they will never read.
+ * <p>
+ * Closing journal releases file memory mapping explicitly, without waiting for garbage collector, so that journal file
+ * can be deleted or recreated right away; on Windows a mapped file can be neither deleted nor truncated. Journal should
+ * not be used after close.
+ * <p>
+ * This class is not thread safe; it is used only by remote console I/O thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class SpillJournal implements Closeable
+{
+  /** Entry alignment, in bytes. */
+  static final int ALIGNMENT = 8;
+
+  /** Minimum journal capacity, in bytes. */
+  static final int MIN_CAPACITY = 64 * 1024;
+
+  /** Journal bytes between sparse index entries. */
+  static final int INDEX_INTERVAL = 64 * 1024;
+
+  /** Entry length marker for padding up to file end. */
+  private static final int PADDING = -1;
+
+  /** Size of entry length field. */
+  private static final int LENGTH_SIZE = 4;
+
+  /**
+   * Handler for records overwritten by append, invoked before record is overwritten.
+   *
+   * @author Iulian Rotaru
+   */
+  interface EvictionHandler
+  {
+    /**
+     * Handle overwritten record. Record bytes are valid only for the duration of this call.
+     *
+     * @param position record journal position,
+     * @param record record bytes, between buffer position and limit.
+     */
+    void onEvicted(long position, ByteBuffer record);
+  }
+
+  /** Journal file channel. */
+  private final FileChannel channel;
+
+  /** Memory mapped journal file. */
+  private final MappedByteBuffer buffer;
+
+  /** View on journal file used for records reading, to not change mapped buffer state. */
+  private final ByteBuffer view;
+
+  /** View on journal file used for overwritten records, so that records returned by {@link #get(long)} are kept. */
+  private final ByteBuffer evictedView;
+
+  /** Handler for records overwritten by append, possible null. */
+  private EvictionHandler evictionHandler;
+
+  /** Journal capacity, in bytes, multiple of alignment. */
+  private final int capacity;
+
+  /** Position of the oldest entry. */
+  private long head;
+
+  /** Position of the next appended entry. */
+  private long tail;
+
+  /** Maximum timestamp of all appended records. */
+  private long maxTime = Long.MIN_VALUE;
+
+  /** Sparse index entries position, circular array. */
+  private final long[] indexPositions;
+
+  /** Sparse index entries maximum timestamp of records before entry position, circular array. */
+  private final long[] indexTimes;
+
+  /** Index of the oldest sparse index entry. */
+  private int indexFirst;
+
+  /** The number of sparse index entries. */
+  private int indexCount;
+
+  /**
+   * Create journal file, truncating existing one, and map it in memory.
+   *
+   * @param file journal file,
+   * @param capacity journal capacity, in bytes.
+   * @throws IOException if journal file creation or mapping fails.
+   */
+  public SpillJournal(File file, int capacity) throws IOException
+  {
+    this.capacity = Math.max(MIN_CAPACITY, capacity) & -ALIGNMENT;
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+    }
+    catch(IOException e) {
+      channel.close();
+      throw e;
+    }
+    this.view = buffer.duplicate();
+    this.evictedView = buffer.duplicate();
+    int indexSize = this.capacity / INDEX_INTERVAL + 2;
+    this.indexPositions = new long[indexSize];
+    this.indexTimes = new long[indexSize];
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * Get the maximum record length accepted by this journal.
+   *
+   * @return maximum record length, in bytes.
+   */
+  public int getMaxRecordLength()
+  {
+    return capacity / 4;
+  }
+
+  /**
+   * Set handler for records overwritten by append.
+   *
+   * @param evictionHandler eviction handler, null to disable notification.
+   */
+  public void setEvictionHandler(EvictionHandler evictionHandler)
+  {
+    this.evictionHandler = evictionHandler;
+  }
+
+  public long getHead()
+  {
+    return head;
+  }
+
+  public long getTail()
+  {
+    return tail;
+  }
+
+  /**
+   * Append record, from its position to limit, overwriting oldest entries if there is not enough free space. Record
+   * position is not changed.
+   *
+   * @param record record bytes, header included.
+   * @return false if record is larger than maximum record length.
+   */
+  public boolean append(ByteBuffer record)
+  {
+    int length = record.remaining();
+    if(length > getMaxRecordLength()) {
+      return false;
+    }
+    int required = align(LENGTH_SIZE + length);
+    int offset = offset(tail);
+    int padding = required > capacity - offset ? capacity - offset : 0;
+    while(tail + padding + required - head > capacity) {
+      if(evictionHandler != null) {
+        int headOffset = offset(head);
+        evictedView.limit(headOffset + LENGTH_SIZE + buffer.getInt(headOffset)).position(headOffset + LENGTH_SIZE);
+        evictionHandler.onEvicted(head, evictedView);
+      }
+      head = next(head);
+    }
+    if(padding > 0) {
+      buffer.putInt(offset, PADDING);
+      tail += padding;
+      offset = 0;
+    }
+
+    if(tail >= lastIndexPosition() + INDEX_INTERVAL) {
+      index(tail, maxTime);
+    }
+    maxTime = Math.max(maxTime, ConsoleRecord.getTime(record));
+
+    buffer.putInt(offset, length);
+    int position = record.position();
+    buffer.position(offset + LENGTH_SIZE);
+    buffer.put(record);
+    record.position(position);
+    tail += required;
+    return true;
+  }
+
+  /**
+   * Get the first entry position, not before journal head, not at a padding marker and not before given position.
+   *
+   * @param position journal position.
+   * @return first record position, equal to tail if there is no record.
+   */
+  public long first(long position)
+  {
+    position = Math.max(position, head);
+    if(position < tail && buffer.getInt(offset(position)) == PADDING) {
+      position += capacity - offset(position);
+    }
+    return position;
+  }
+
+  /**
+   * Get the position of entry following the one at given position. Returned position is normalized with
+   * {@link #first(long)}.
+   *
+   * @param position record position.
+   * @return next record position, equal to tail if there is no next record.
+   */
+  public long next(long position)
+  {
+    int offset = offset(position);
+    int length = buffer.getInt(offset);
+    if(length == PADDING) {
+      return first(position + capacity - offset);
+    }
+    return first(position + align(LENGTH_SIZE + length));
+  }
+
+  /**
+   * Get record stored at given position. Returned buffer is reused by subsequent calls.
+   *
+   * @param position record position, normalized with {@link #first(long)}.
+   * @return record bytes, between buffer position and limit.
+   */
+  public ByteBuffer get(long position)
+  {
+    int offset = offset(position);
+    int length = buffer.getInt(offset);
+    view.limit(offset + LENGTH_SIZE + length).position(offset + LENGTH_SIZE);
+    return view;
+  }
+
+  /**
+   * Find a journal position before which there is no record with timestamp equal or newer than given time. Records
+   * after returned position may still be older than requested time and caller should filter them.
+   *
+   * @param time timestamp, milliseconds since epoch.
+   * @return record position, normalized with {@link #first(long)}.
+   */
+  public long seek(long time)
+  {
+    evictIndex();
+    int low = 0;
+    int high = indexCount - 1;
+    long position = head;
+    while(low <= high) {
+      int middle = (low + high) >>> 1;
+      int index = (indexFirst + middle) % indexPositions.length;
+      if(indexTimes[index] < time) {
+        position = indexPositions[index];
+        low = middle + 1;
+      }
+      else {
+        high = middle - 1;
+      }
+    }
+    return first(position);
+  }
+
+  /**
+   * Close journal file and release its memory mapping. Journal should not be used after close, since mapped buffer is
+   * no longer valid. This method does nothing if journal is already closed.
+   *
+   * @throws IOException if file close fails.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    if(!channel.isOpen()) {
+      return;
+    }
+    try {
+      channel.close();
+    }
+    finally {
+      unmap(buffer);
+    }
+  }
+
+  private void index(long position, long time)
+  {
+    evictIndex();
+    if(indexCount == indexPositions.length) {
+      indexFirst = (indexFirst + 1) % indexPositions.length;
+      --indexCount;
+    }
+    int index = (indexFirst + indexCount) % indexPositions.length;
+    indexPositions[index] = position;
+    indexTimes[index] = time;
+    ++indexCount;
+  }
+
+  /** Remove index entries pointing before journal head, that is, to overwritten records. */
+  private void evictIndex()
+  {
+    while(indexCount > 0 && indexPositions[indexFirst] < head) {
+      indexFirst = (indexFirst + 1) % indexPositions.length;
+      --indexCount;
+    }
+  }
+
+  private long lastIndexPosition()
+  {
+    if(indexCount == 0) {
+      return 0;
+    }
+    return indexPositions[(indexFirst + indexCount - 1) % indexPositions.length];
+  }
+
+  private int offset(long position)
+  {
+    return (int)(position % capacity);
+  }
+
+  /**
+   * Release memory mapping of given buffer using JVM internal cleaner, looked up by reflection:
+   * <code>sun.misc.Unsafe#invokeCleaner</code> on Java 9 and later, direct buffer cleaner on Java 8. If cleaner is not
+   * accessible, mapping is released when buffer is garbage collected.
+   *
+   * @param buffer memory mapped buffer, not used after this call.
+   */
+  private static void unmap(MappedByteBuffer buffer)
+  {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      return;
+    }
+    catch(ReflectiveOperationException | RuntimeException unused) {
+      // no Unsafe#invokeCleaner before Java 9
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if(cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    }
+    catch(ReflectiveOperationException | RuntimeException unused) {
+      // cleaner not accessible; mapping is released by garbage collector
+    }
+  }
+
+  private static int align(int length)
+  {
+    return (length + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+}
@@ -0,0 +1,148 @@
+package com.jslib.log4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Remote console subscription, that is, records filter applied by I/O thread before records are copied into console
+ * outbound buffer. Filter works on record header bytes, see {@link ConsoleRecord}, without decoding record. A record is
+ * accepted if all configured criteria match:
+ * <ul>
+ * <li><code>level</code> - record level is at least as severe as subscription level,
+ * <li><code>logger</code> - record logger name starts with any of comma separated prefixes,
+ * <li><code>mdc</code> - record context data contains given <code>key=value</code> entry.
+ * </ul>
+ * Subscription is parsed from console command arguments, e.g.
+ * <code>SUBSCRIBE level=WARN logger=com.jslib.api,com.jslib.rmi mdc=user=john</code>. Missing criteria match all
+ * records.
+ *
+ * @author Iulian Rotaru
+ */
+final class Subscription
+{
+  /** Level code of the least severe accepted level. */
+  private final int level;
+
+  /** UTF-8 encoded logger name prefixes; empty if logger name is not filtered. */
+  private final byte[][] loggers;
+
+  /** UTF-8 encoded context data entry, line feed included; null if context data is not filtered. */
+  private final byte[] context;
+
+  private Subscription(int level, byte[][] loggers, byte[] context)
+  {
+    this.level = level;
+    this.loggers = loggers;
+    this.context = context;
+  }
+
+  /**
+   * Parse subscription from space separated <code>name=value</code> arguments.
+   *
+   * @param arguments subscription arguments, possible empty.
+   * @return subscription instance.
+   * @throws IllegalArgumentException if arguments are not valid.
+   */
+  public static Subscription parse(String arguments) throws IllegalArgumentException
+  {
+    int level = ConsoleRecord.LEVELS_COUNT - 1;
+    byte[][] loggers = new byte[0][];
+    byte[] context = null;
+
+    for(String argument : arguments.trim().split("\\s+")) {
+      if(argument.isEmpty()) {
+        continue;
+      }
+      int separator = argument.indexOf('=');
+      if(separator == -1) {
+        throw new IllegalArgumentException("Invalid subscription argument: " + argument);
+      }
+      String name = argument.substring(0, separator);
+      String value = argument.substring(separator + 1);
+      switch(name) {
+      case "level":
+        Level subscriptionLevel = Level.toLevel(value, null);
+        if(subscriptionLevel == null) {
+          throw new IllegalArgumentException("Invalid subscription level: " + value);
+        }
+        level = ConsoleRecord.code(subscriptionLevel);
+        break;
+
+      case "logger":
+        String[] prefixes = value.split(",");
+        loggers = new byte[prefixes.length][];
+        for(int i = 0; i < prefixes.length; ++i) {
+          loggers[i] = prefixes[i].getBytes(StandardCharsets.UTF_8);
+        }
+        break;
+
+      case "mdc":
+        if(value.indexOf('=') == -1) {
+          throw new IllegalArgumentException("Invalid subscription context entry: " + value);
+        }
+        context = (value + '\n').getBytes(StandardCharsets.UTF_8);
+        break;
+
+      default:
+        throw new IllegalArgumentException("Invalid subscription argument: " + argument);
+      }
+    }
+    return new Subscription(level, loggers, context);
+  }
+
+  /**
+   * Test if record starting at buffer position matches this subscription. Buffer position is not changed.
+   *
+   * @param record record buffer.
+   * @return true if record should be sent to console.
+   */
+  public boolean accept(ByteBuffer record)
+  {
+    if(ConsoleRecord.getLevel(record) > level) {
+      return false;
+    }
+    if(loggers.length > 0 && !matchLogger(record)) {
+      return false;
+    }
+    return context == null || matchContext(record);
+  }
+
+  private boolean matchLogger(ByteBuffer record)
+  {
+    int start = ConsoleRecord.getFieldStart(record, ConsoleRecord.LOGGER);
+    int length = ConsoleRecord.getFieldLength(record, ConsoleRecord.LOGGER);
+    for(byte[] logger : loggers) {
+      if(logger.length <= length && equals(record, start, logger)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean matchContext(ByteBuffer record)
+  {
+    int start = ConsoleRecord.getFieldStart(record, ConsoleRecord.CONTEXT);
+    int end = start + ConsoleRecord.getFieldLength(record, ConsoleRecord.CONTEXT);
+    // context entries are line feed terminated; match only at entry start
+    for(int entry = start; entry + context.length <= end;) {
+      if(equals(record, entry, context)) {
+        return true;
+      }
+      while(entry < end && record.get(entry++) != '\n') {
+      }
+    }
+    return false;
+  }
+
+  private static boolean equals(ByteBuffer record, int index, byte[] bytes)
+  {
+    for(int i = 0; i < bytes.length; ++i) {
+      if(record.get(index + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
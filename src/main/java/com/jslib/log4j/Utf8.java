@@ -0,0 +1,92 @@
+package com.jslib.log4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoding of character sequence ranges straight into byte buffers, without intermediate strings or arrays. Length
+ * of encoded range can be computed in advance, so that exact space can be reserved before encoding. A surrogate not
+ * part of a valid pair is encoded as question mark, like standard UTF-8 encoder does.
+ *
+ * @author Iulian Rotaru
+ */
+final class Utf8
+{
+  /** Replacement for malformed surrogates. */
+  private static final byte REPLACEMENT = '?';
+
+  /** Prevent default constructor synthesis. */
+  private Utf8()
+  {
+  }
+
+  /**
+   * Get the number of bytes of UTF-8 encoded characters range.
+   *
+   * @param chars characters sequence,
+   * @param start range start index,
+   * @param end range end index, exclusive.
+   * @return encoded length, in bytes.
+   */
+  public static int length(CharSequence chars, int start, int end)
+  {
+    int length = 0;
+    for(int i = start; i < end; ++i) {
+      char c = chars.charAt(i);
+      if(c < 0x80) {
+        ++length;
+      }
+      else if(c < 0x800) {
+        length += 2;
+      }
+      else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        length += 4;
+        ++i;
+      }
+      else if(Character.isSurrogate(c)) {
+        ++length;
+      }
+      else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Encode characters range into target buffer. Target should have room for encoded range, see
+   * {@link #length(CharSequence, int, int)}.
+   *
+   * @param chars characters sequence,
+   * @param start range start index,
+   * @param end range end index, exclusive,
+   * @param target target buffer.
+   */
+  public static void encode(CharSequence chars, int start, int end, ByteBuffer target)
+  {
+    for(int i = start; i < end; ++i) {
+      char c = chars.charAt(i);
+      if(c < 0x80) {
+        target.put((byte)c);
+      }
+      else if(c < 0x800) {
+        target.put((byte)(0xC0 | c >> 6));
+        target.put((byte)(0x80 | c & 0x3F));
+      }
+      else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        target.put((byte)(0xF0 | codePoint >> 18));
+        target.put((byte)(0x80 | codePoint >> 12 & 0x3F));
+        target.put((byte)(0x80 | codePoint >> 6 & 0x3F));
+        target.put((byte)(0x80 | codePoint & 0x3F));
+      }
+      else if(Character.isSurrogate(c)) {
+        target.put(REPLACEMENT);
+      }
+      else {
+        target.put((byte)(0xE0 | c >> 12));
+        target.put((byte)(0x80 | c >> 6 & 0x3F));
+        target.put((byte)(0x80 | c & 0x3F));
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ArgumentRenderersTest
+{
+  @Test
+  public void GivenBuiltinTypes_WhenRender_ThenBuiltinRepresentation()
+  {
+    assertThat(render(String.class), equalTo("java.lang.String"));
+    assertThat(render(new IOException("IO exception.")), equalTo("IO exception."));
+    assertThat(render(new IOException()), equalTo("java.io.IOException"));
+    assertThat(render(new File("file.txt")), equalTo(new File("file.txt").getAbsolutePath()));
+
+    Thread thread = new Thread("worker");
+    assertThat(render(thread), equalTo("worker:" + thread.getId()));
+  }
+
+  @Test
+  public void GivenArraysAndCollections_WhenRender_ThenFirstItems()
+  {
+    assertThat(render(new int[] {}), equalTo("[]"));
+    assertThat(render(new int[]
+    {
+        1, 2, 3
+    }), equalTo("[1,2,3]"));
+    assertThat(render(new long[]
+    {
+        1, 2, 3, 4
+    }), equalTo("[1,2,3,...]"));
+    assertThat(render(new double[]
+    {
+        0.5
+    }), equalTo("[0.5]"));
+    assertThat(render(new char[]
+    {
+        'a', 'b'
+    }), equalTo("[a,b]"));
+    assertThat(render(new String[]
+    {
+        "a", null, "", "b", "c", "d"
+    }), equalTo("[a,b,c,...]"));
+    assertThat(render(new ArrayList<>(Arrays.asList("a", "", null, "b"))), equalTo("[a,b]"));
+    assertThat(render(Collections.singleton(1)), equalTo("[1]"));
+  }
+
+  @Test
+  public void GivenBuiltinTypes_WhenRender_ThenReplaceToString()
+  {
+    // placeholders used to append argument toString(); built-in renderers replace it with a shorter representation
+    Object[] arguments = new Object[]
+    {
+        String.class, new IOException("IO exception."), new Thread("worker"), new File("file.txt"), new int[]
+        {
+            1
+        }, new Object[]
+        {
+            "a"
+        }, Arrays.asList("a", null)
+    };
+    for(Object argument : arguments) {
+      assertThat(render(argument), not(equalTo(argument.toString())));
+    }
+    assertThat(render(String.class), equalTo("java.lang.String"));
+    assertThat(String.class.toString(), equalTo("class java.lang.String"));
+    assertThat(render(Arrays.asList("a", null)), equalTo("[a]"));
+    assertThat(Arrays.asList("a", null).toString(), equalTo("[a, null]"));
+  }
+
+  @Test
+  public void GivenTypeWithoutRenderer_WhenGet_ThenNull()
+  {
+    assertThat(ArgumentRenderers.get(null), nullValue());
+    assertThat(ArgumentRenderers.get("text"), nullValue());
+    assertThat(ArgumentRenderers.get(42), nullValue());
+    assertThat(ArgumentRenderers.get(new IllegalStateException()), notNullValue());
+  }
+
+  @Test
+  public void GivenPrimitiveArgument_WhenRender_ThenPrimitiveValue()
+  {
+    // given
+    PrimitiveArgument argument = new PrimitiveArgument();
+    argument.set(1.5);
+
+    // when
+    String value = render(argument);
+
+    // then
+    assertThat(value, equalTo("1.5"));
+  }
+
+  @Test
+  public void GivenServiceRenderer_WhenRender_ThenUseServiceRenderer()
+  {
+    assertThat(render(new UserId(42)), equalTo("U-42"));
+    assertThat(render(new UserId[]
+    {
+        new UserId(1), new UserId(2)
+    }), equalTo("[UserId(1),UserId(2)]"));
+  }
+
+  private static String render(Object argument)
+  {
+    StringBuilder builder = new StringBuilder();
+    ArgumentRenderers.render(builder, argument);
+    return builder.toString();
+  }
+
+  private static class UserId
+  {
+    final long value;
+
+    UserId(long value)
+    {
+      this.value = value;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "UserId(" + value + ")";
+    }
+  }
+
+  /** Renderer loaded from <code>META-INF/services</code> test resource. */
+  public static class UserIdRenderer implements ArgumentRenderer<UserId>
+  {
+    @Override
+    public Class<UserId> getType()
+    {
+      return UserId.class;
+    }
+
+    @Override
+    public void render(StringBuilder builder, UserId userId)
+    {
+      builder.append("U-").append(userId.value);
+    }
+  }
+}
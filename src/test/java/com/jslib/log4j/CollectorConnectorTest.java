@@ -0,0 +1,96 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CollectorConnectorTest
+{
+  private static final int TIMEOUT = 5000;
+
+  private Selector selector;
+
+  @Before
+  public void beforeTest() throws IOException
+  {
+    selector = Selector.open();
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    selector.close();
+  }
+
+  @Test
+  public void GivenListeningCollector_WhenReconnect_ThenConnect() throws IOException
+  {
+    try (ServerSocket collector = new ServerSocket(0)) {
+      // given
+      CollectorConnector connector = connector(collector.getLocalPort(), 100L, 400L);
+
+      // when
+      SelectionKey key = connector.reconnect(selector, System.nanoTime());
+      if(key == null) {
+        assertThat(selector.select(TIMEOUT), equalTo(1));
+        key = selector.selectedKeys().iterator().next();
+        assertThat(connector.finishConnect(key, System.nanoTime()), equalTo(true));
+      }
+
+      // then
+      assertThat(key.interestOps(), equalTo(SelectionKey.OP_READ));
+      assertThat(connector.getDeadline(), equalTo(Long.MAX_VALUE));
+      key.channel().close();
+    }
+  }
+
+  @Test
+  public void GivenFailedAttempts_WhenBackoff_ThenDoubleDelayUpToMaximum()
+  {
+    // given
+    CollectorConnector connector = connector(1, 100L, 300L);
+
+    // when
+    connector.backoff(0L);
+    long first = connector.getDeadline();
+    connector.backoff(0L);
+    long second = connector.getDeadline();
+    connector.backoff(0L);
+    long third = connector.getDeadline();
+
+    // then
+    assertThat(first, equalTo(100L));
+    assertThat(second, equalTo(200L));
+    assertThat(third, equalTo(300L));
+  }
+
+  @Test
+  public void GivenAcknowledgedConnection_WhenReset_ThenInitialDelay()
+  {
+    // given
+    CollectorConnector connector = connector(1, 100L, 300L);
+    connector.backoff(0L);
+    connector.backoff(0L);
+
+    // when
+    connector.reset();
+    connector.backoff(0L);
+
+    // then
+    assertThat(connector.getDeadline(), equalTo(100L));
+  }
+
+  private static CollectorConnector connector(int port, long minReconnectDelay, long maxReconnectDelay)
+  {
+    return new CollectorConnector(InetSocketAddress.createUnresolved("localhost", port), minReconnectDelay, maxReconnectDelay);
+  }
+}
@@ -0,0 +1,136 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactDecoderTest
+{
+  private CompactDecoder decoder;
+  private ByteBuffer input;
+
+  @Before
+  public void beforeTest()
+  {
+    decoder = new CompactDecoder();
+    input = ByteBuffer.allocate(1024);
+  }
+
+  @Test
+  public void GivenIncompleteFrame_WhenNext_ThenFalseAndPositionOnFrame()
+  {
+    // given
+    define(0, "logger");
+    int frameStart = input.position();
+    event(Level.INFO, 1000L, 0, 0, 0, "arg");
+    int frameEnd = input.position();
+    input.flip();
+    input.limit(frameEnd - 1);
+
+    // when
+    boolean decoded = decoder.next(input);
+
+    // then
+    assertThat(decoded, equalTo(false));
+    assertThat(input.position(), equalTo(frameStart));
+    input.limit(frameEnd);
+    assertThat(decoder.next(input), equalTo(true));
+  }
+
+  @Test
+  public void GivenMissingArguments_WhenNext_ThenKeepPlaceholders()
+  {
+    // given
+    define(0, "logger");
+    define(1, "Value {} and {name}.");
+    event(Level.INFO, 1000L, 0, 0, 1, "one");
+    input.flip();
+
+    // when
+    decoder.next(input);
+
+    // then
+    assertThat(decoder.getMessage(), equalTo("Value one and {}."));
+  }
+
+  @Test
+  public void GivenTimestampDeltas_WhenNext_ThenAbsoluteTime()
+  {
+    // given
+    define(0, "");
+    define(1, "Message.");
+    event(Level.INFO, 5000L, 0, 0, 1);
+    event(Level.INFO, -3L, 0, 0, 1);
+    input.flip();
+
+    // then
+    decoder.next(input);
+    assertThat(decoder.getTime(), equalTo(5000L));
+    decoder.next(input);
+    assertThat(decoder.getTime(), equalTo(4997L));
+  }
+
+  @Test
+  public void GivenReset_WhenNext_ThenRedefineIds()
+  {
+    // given
+    define(0, "first");
+    frame(CompactEncoder.RESET);
+    define(0, "second");
+    define(1, "Message.");
+    event(Level.INFO, 1000L, 0, 0, 1);
+    input.flip();
+
+    // when
+    decoder.next(input);
+
+    // then
+    assertThat(decoder.getLoggerName(), equalTo("second"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void GivenUndefinedId_WhenNext_ThenException()
+  {
+    event(Level.INFO, 1000L, 0, 0, 0);
+    input.flip();
+    decoder.next(input);
+  }
+
+  private void define(int id, String value)
+  {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    CompactEncoder.putVarint(input, 1 + CompactEncoder.varintLength(id) + bytes.length);
+    input.put(CompactEncoder.DEFINE);
+    CompactEncoder.putVarint(input, id);
+    input.put(bytes);
+  }
+
+  private void frame(byte type)
+  {
+    input.put((byte)1).put(type);
+  }
+
+  private void event(Level level, long delta, int logger, int thread, int template, String... arguments)
+  {
+    ByteBuffer frame = ByteBuffer.allocate(256);
+    frame.put(CompactEncoder.EVENT).put(ConsoleRecord.code(level));
+    CompactEncoder.putVarint(frame, (delta << 1) ^ (delta >> 63));
+    CompactEncoder.putVarint(frame, logger);
+    CompactEncoder.putVarint(frame, thread);
+    CompactEncoder.putVarint(frame, template);
+    for(String argument : arguments) {
+      byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+      CompactEncoder.putVarint(frame, bytes.length);
+      frame.put(bytes);
+    }
+    frame.flip();
+    CompactEncoder.putVarint(input, frame.remaining());
+    input.put(frame);
+  }
+}
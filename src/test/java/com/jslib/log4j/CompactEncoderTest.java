@@ -0,0 +1,132 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactEncoderTest
+{
+  private CompactEncoder encoder;
+  private CompactDecoder decoder;
+
+  @Before
+  public void beforeTest()
+  {
+    encoder = new CompactEncoder();
+    decoder = new CompactDecoder();
+  }
+
+  @Test
+  public void GivenTemplatedRecord_WhenEncode_ThenDecodeEvent()
+  {
+    // given
+    ByteBuffer target = ByteBuffer.allocate(1024);
+
+    // when
+    encoder.encode(record(Level.WARN, 1234L, "User {} logged in from {}.", "john\u00000.0.0.1\u0000"), target, 0);
+    target.flip();
+
+    // then
+    assertThat(decoder.next(target), equalTo(true));
+    assertThat(decoder.getLevel(), equalTo(Level.WARN));
+    assertThat(decoder.getTime(), equalTo(1234L));
+    assertThat(decoder.getLoggerName(), equalTo("com.jslib.Service"));
+    assertThat(decoder.getThreadName(), equalTo("main"));
+    assertThat(decoder.getMessage(), equalTo("User john logged in from 0.0.0.1."));
+    assertThat(target.hasRemaining(), equalTo(false));
+  }
+
+  @Test
+  public void GivenRepeatedTemplate_WhenEncode_ThenSendOnlyArguments()
+  {
+    // given
+    ByteBuffer target = ByteBuffer.allocate(1024);
+    String template = "Request processed by service in {} milliseconds.";
+
+    // when
+    encoder.encode(record(Level.INFO, 1000L, template, "12\u0000"), target, 0);
+    int first = target.position();
+    encoder.encode(record(Level.INFO, 1001L, template, "13\u0000"), target, 0);
+    int second = target.position() - first;
+    target.flip();
+
+    // then
+    assertThat(second, lessThan(16));
+    assertThat(second, lessThan(first / 4));
+    assertThat(decoder.next(target), equalTo(true));
+    assertThat(decoder.next(target), equalTo(true));
+    assertThat(decoder.getTime(), equalTo(1001L));
+    assertThat(decoder.getMessage(), equalTo("Request processed by service in 13 milliseconds."));
+  }
+
+  @Test
+  public void GivenRecordWithoutTemplate_WhenEncode_ThenDecodeText()
+  {
+    // given
+    ByteBuffer target = ByteBuffer.allocate(1024);
+
+    // when
+    encoder.encode(record(Level.ERROR, 1000L, "", ""), target, 0);
+    target.flip();
+
+    // then
+    assertThat(decoder.next(target), equalTo(true));
+    assertThat(decoder.getLevel(), equalTo(Level.ERROR));
+    assertThat(decoder.getMessage(), equalTo("Layout text."));
+  }
+
+  @Test
+  public void GivenNoRoom_WhenEncode_ThenTargetAndDictionaryNotChanged()
+  {
+    // given
+    ByteBuffer record = record(Level.INFO, 1000L, "Template {}.", "x\u0000");
+    ByteBuffer target = ByteBuffer.allocate(1024);
+
+    // when
+    boolean encoded = encoder.encode(record, target, target.capacity() - 8);
+
+    // then
+    assertThat(encoded, equalTo(false));
+    assertThat(target.position(), equalTo(0));
+    // definitions are sent on next successful encoding
+    assertThat(encoder.encode(record, target, 0), equalTo(true));
+    target.flip();
+    assertThat(decoder.next(target), equalTo(true));
+    assertThat(decoder.getMessage(), equalTo("Template x."));
+  }
+
+  @Test
+  public void GivenFullDictionary_WhenEncode_ThenResetDictionary()
+  {
+    // given
+    ByteBuffer target = ByteBuffer.allocate(64 * 1024);
+
+    for(int i = 0; i < 2 * CompactEncoder.MAX_ENTRIES; ++i) {
+      // when
+      target.clear();
+      encoder.encode(record(Level.INFO, i, "Dynamic template " + i + " {}.", "x\u0000"), target, 0);
+      target.flip();
+
+      // then
+      assertThat(decoder.next(target), equalTo(true));
+      assertThat(decoder.getMessage(), equalTo("Dynamic template " + i + " x."));
+    }
+  }
+
+  private static ByteBuffer record(Level level, long time, String template, String arguments)
+  {
+    byte[] text = "Layout text.\r\n".getBytes(StandardCharsets.UTF_8);
+    String logger = "com.jslib.Service";
+    ByteBuffer record = ByteBuffer.allocate(ConsoleRecord.headerLength(logger, "main", "", template, arguments) + text.length);
+    ConsoleRecord.putHeader(record, ConsoleRecord.code(level), time, logger, "main", "", template, arguments);
+    record.put(text).flip();
+    return record;
+  }
+}
@@ -0,0 +1,139 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatagramPackerTest
+{
+  private static final int TIMEOUT = 5000;
+
+  private DatagramSocket receiver;
+  private LongAdder[] droppedCounts;
+  private DatagramPacker packer;
+
+  @Before
+  public void beforeTest() throws IOException
+  {
+    receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    receiver.setSoTimeout(TIMEOUT);
+    droppedCounts = new LongAdder[ConsoleRecord.LEVELS_COUNT];
+    for(int i = 0; i < droppedCounts.length; ++i) {
+      droppedCounts[i] = new LongAdder();
+    }
+    InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), receiver.getLocalPort());
+    packer = new DatagramPacker(target, 0, 0, 42L, droppedCounts);
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    packer.close();
+    receiver.close();
+  }
+
+  @Test
+  public void GivenPackedRecords_WhenFlush_ThenSendOnePacket() throws IOException
+  {
+    // given
+    packer.pack(record("First."), 0L);
+    packer.pack(record("Second."), 0L);
+
+    // when
+    long deadline = packer.flush(true, 0L, 1000L);
+
+    // then
+    ByteBuffer packet = receive();
+    assertThat(deadline, equalTo(Long.MAX_VALUE));
+    assertThat(packet.getLong(), equalTo(42L));
+    assertThat(packet.getLong(), equalTo(0L));
+    assertThat(text(packet), equalTo("First."));
+    assertThat(text(packet), equalTo("Second."));
+    assertThat(packet.hasRemaining(), equalTo(false));
+  }
+
+  @Test
+  public void GivenLingerTimeNotExpired_WhenFlush_ThenReturnDeadline()
+  {
+    // given
+    packer.pack(record("Message."), 1000L);
+
+    // when
+    long deadline = packer.flush(false, 1500L, 1000L);
+
+    // then
+    assertThat(deadline, equalTo(2000L));
+  }
+
+  @Test
+  public void GivenFullPacket_WhenPack_ThenSendPacketAndIncrementSequence() throws IOException
+  {
+    // given
+    String text = new String(new char[400]).replace('\0', 'x');
+    packer.pack(record(text), 0L);
+
+    // when
+    packer.pack(record(text), 0L);
+    packer.flush(true, 0L, 1000L);
+
+    // then
+    ByteBuffer first = receive();
+    ByteBuffer second = receive();
+    assertThat(first.getLong(8), equalTo(0L));
+    assertThat(second.getLong(8), equalTo(1L));
+  }
+
+  @Test
+  public void GivenRecordLargerThanMaxPacket_WhenPack_ThenDropped()
+  {
+    // given
+    String text = new String(new char[DatagramPacker.MAX_PACKET_SIZE]).replace('\0', 'x');
+
+    // when
+    packer.pack(record(text), 0L);
+
+    // then
+    assertThat(droppedCounts[ConsoleRecord.code(Level.INFO)].sum(), equalTo(1L));
+    assertThat(packer.flush(true, 0L, 1000L), equalTo(Long.MAX_VALUE));
+  }
+
+  private static ByteBuffer record(String text)
+  {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(ConsoleRecord.headerLength("", "", "") + bytes.length);
+    ConsoleRecord.putHeader(record, ConsoleRecord.code(Level.INFO), 1000L, "", "", "");
+    record.put(bytes);
+    record.flip();
+    return record;
+  }
+
+  private ByteBuffer receive() throws IOException
+  {
+    DatagramPacket datagram = new DatagramPacket(new byte[DatagramPacker.MAX_PACKET_SIZE], DatagramPacker.MAX_PACKET_SIZE);
+    receiver.receive(datagram);
+    return ByteBuffer.wrap(datagram.getData(), 0, datagram.getLength());
+  }
+
+  private static String text(ByteBuffer packet)
+  {
+    int length = packet.getShort() & 0xFFFF;
+    ByteBuffer record = packet.slice();
+    record.limit(length);
+    packet.position(packet.position() + length);
+    int start = ConsoleRecord.getTextStart(record);
+    return new String(record.array(), record.arrayOffset() + start, length - start, StandardCharsets.UTF_8);
+  }
+}
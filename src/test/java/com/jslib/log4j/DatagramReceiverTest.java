@@ -0,0 +1,146 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatagramReceiverTest
+{
+  private static final int TIMEOUT = 5000;
+
+  private ByteArrayOutputStream output;
+  private DatagramReceiver receiver;
+
+  @Before
+  public void beforeTest() throws IOException
+  {
+    output = new ByteArrayOutputStream();
+    receiver = new DatagramReceiver(0, 256 * 1024, output);
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    receiver.close();
+  }
+
+  @Test
+  public void GivenDatagramWriter_WhenWriteEvents_ThenReceiveLines() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = new RemoteConsoleConfig();
+    config.setDatagram("localhost:" + receiver.getPort());
+    RemoteConsoleWriter writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = PatternLayout.newBuilder().withPattern("%m%n").withCharset(StandardCharsets.UTF_8).build();
+    StringBuilder expected = new StringBuilder();
+
+    try {
+      // when
+      for(int i = 0; i < 20; ++i) {
+        String message = String.format("Datagram message %02d.", i);
+        writer.write(Log4jLogEvent.newBuilder().setLevel(Level.INFO).setMessage(new SimpleMessage(message)).build(), layout);
+        expected.append(message).append("\r\n");
+      }
+
+      // then
+      awaitOutput(expected.length());
+      assertThat(output.toString("UTF-8"), equalTo(expected.toString()));
+      assertThat(receiver.getPacketsCount(), lessThan(20L));
+      assertThat(receiver.getLostCount(), equalTo(0L));
+      assertThat(writer.getPort(), equalTo(-1));
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void GivenSequenceGap_WhenReceive_ThenReportLostPackets() throws Exception
+  {
+    // given
+    try (DatagramSocket socket = new DatagramSocket()) {
+      send(socket, 1L, 0L, "First message.\r\n");
+
+      // when
+      send(socket, 1L, 3L, "Second message.\r\n");
+
+      // then
+      String expected = "First message.\r\n[remote console] 2 packets lost\r\nSecond message.\r\n";
+      awaitOutput(expected.length());
+      assertThat(output.toString("UTF-8"), equalTo(expected));
+      assertThat(receiver.getLostCount(), equalTo(2L));
+    }
+  }
+
+  @Test
+  public void GivenLatePacket_WhenReceive_ThenNotLost() throws Exception
+  {
+    // given
+    try (DatagramSocket socket = new DatagramSocket()) {
+      send(socket, 1L, 0L, "A\r\n");
+      send(socket, 1L, 2L, "C\r\n");
+
+      // when
+      send(socket, 1L, 1L, "B\r\n");
+
+      // then
+      awaitOutput("A\r\n[remote console] 1 packets lost\r\nC\r\nB\r\n".length());
+      assertThat(receiver.getLostCount(), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void GivenNewSession_WhenReceive_ThenRestartSequence() throws Exception
+  {
+    // given
+    try (DatagramSocket socket = new DatagramSocket()) {
+      send(socket, 1L, 7L, "Old writer.\r\n");
+
+      // when
+      send(socket, 2L, 0L, "New writer.\r\n");
+
+      // then
+      awaitOutput("Old writer.\r\nNew writer.\r\n".length());
+      assertThat(output.toString("UTF-8"), equalTo("Old writer.\r\nNew writer.\r\n"));
+      assertThat(receiver.getLostCount(), equalTo(0L));
+    }
+  }
+
+  private void send(DatagramSocket socket, long session, long sequence, String text) throws IOException, InterruptedException
+  {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    int recordLength = ConsoleRecord.headerLength("", "", "") + bytes.length;
+    ByteBuffer packet = ByteBuffer.allocate(DatagramPacker.PACKET_HEADER_SIZE + DatagramPacker.PACKET_RECORD_LENGTH_SIZE + recordLength);
+    packet.putLong(session).putLong(sequence).putShort((short)recordLength);
+    ConsoleRecord.putHeader(packet, ConsoleRecord.code(Level.INFO), 1000L, "", "", "");
+    packet.put(bytes);
+    socket.send(new DatagramPacket(packet.array(), packet.capacity(), InetAddress.getLoopbackAddress(), receiver.getPort()));
+    // keep packets order on receiver
+    Thread.sleep(50);
+  }
+
+  private void awaitOutput(int length) throws InterruptedException
+  {
+    long start = System.currentTimeMillis();
+    while(output.size() < length && System.currentTimeMillis() - start < TIMEOUT) {
+      Thread.sleep(10);
+    }
+    assertThat(output.size(), equalTo(length));
+  }
+}
@@ -0,0 +1,105 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+
+import org.apache.logging.log4j.message.AsynchronouslyFormattable;
+import org.junit.Test;
+
+public class DeferredMessageTest
+{
+  @Test
+  public void GivenImmutableArguments_WhenCallerReusesArray_ThenFormatSnapshot()
+  {
+    // given
+    Object[] arguments = new Object[]
+    {
+        "John", 3
+    };
+    DeferredMessage message = DeferredMessage.create("User {user} logged {count} times.", arguments);
+
+    // when
+    arguments[0] = "Mike";
+
+    // then
+    assertThat(message.getParameters(), not(sameInstance(arguments)));
+    assertThat(message.getFormattedMessage(), equalTo("User John logged 3 times."));
+  }
+
+  @Test
+  public void GivenMutableArgument_WhenArgumentChanges_ThenFormatCreationState()
+  {
+    // given
+    StringBuilder user = new StringBuilder("John");
+    DeferredMessage message = DeferredMessage.create("User {user}.", new Object[]
+    {
+        user
+    });
+
+    // when
+    user.append(" Doe");
+
+    // then
+    assertThat(message.getFormattedMessage(), equalTo("User John."));
+  }
+
+  @Test
+  public void GivenPrimitiveArgument_WhenHolderReused_ThenFormatBoxedSnapshot()
+  {
+    // given
+    PrimitiveArgument argument = new PrimitiveArgument();
+    argument.set(42L);
+    DeferredMessage message = DeferredMessage.create("Count {}.", new Object[]
+    {
+        argument
+    });
+
+    // when
+    argument.set(7L);
+
+    // then
+    assertThat(message.getParameters()[0], equalTo(42L));
+    assertThat(message.getFormattedMessage(), equalTo("Count 42."));
+  }
+
+  @Test
+  public void GivenFormatTo_WhenFormat_ThenAppendToBuilder()
+  {
+    // given
+    DeferredMessage message = DeferredMessage.create("Phone %s.", new Object[]
+    {
+        "770 555-666"
+    });
+    StringBuilder builder = new StringBuilder("Message: ");
+
+    // when
+    message.formatTo(builder);
+
+    // then
+    assertThat(builder.toString(), equalTo("Message: Phone 770 555-666."));
+    assertThat(message.getFormat(), equalTo("Phone %s."));
+  }
+
+  @Test
+  public void GivenThrowable_WhenFormat_ThenThrowableSummary()
+  {
+    // given
+    DeferredMessage message = DeferredMessage.create(new IllegalStateException(new IOException("Broken pipe.")));
+
+    // when
+    String formattedMessage = message.getFormattedMessage();
+
+    // then
+    assertThat(formattedMessage, equalTo("java.lang.IllegalStateException: java.io.IOException: Broken pipe."));
+  }
+
+  @Test
+  public void GivenMessageClass_WhenLog4jInspects_ThenAsynchronouslyFormattable()
+  {
+    assertThat(DeferredMessage.class.isAnnotationPresent(AsynchronouslyFormattable.class), equalTo(true));
+  }
+}
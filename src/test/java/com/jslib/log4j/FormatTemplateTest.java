@@ -0,0 +1,109 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FormatTemplateTest
+{
+  private Locale locale;
+
+  @Before
+  public void beforeTest()
+  {
+    locale = Locale.getDefault(Locale.Category.FORMAT);
+    Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+  }
+
+  @After
+  public void afterTest()
+  {
+    Locale.setDefault(Locale.Category.FORMAT, locale);
+  }
+
+  @Test
+  public void GivenCommonSpecifiers_WhenFormat_ThenSameAsStringFormat()
+  {
+    assertFormat("Phone %s.", "770 555-666");
+    assertFormat("|%10s|%-10s|%.3s|", "left", "right", "truncated");
+    assertFormat("%d %d %d %d", 0, -1, Long.MIN_VALUE, (byte)-5);
+    assertFormat("|%5d|%-5d|%05d|%+d|% d|", 42, 42, -42, 42, 42);
+    assertFormat("%x %X %#x %08x %x %x", 255, 255, 255, -1, (short)-1, Long.MIN_VALUE);
+    assertFormat("%f %.2f %.0f %10.3f %-10.1f|", 3.14159, 1.005, 2.5, -0.125, 1e10);
+    assertFormat("%.3f %.3f %f", 9.99e-4, 1e-5, 1.5f);
+    assertFormat("100%% done%n", 1);
+  }
+
+  @Test
+  public void GivenExoticSpecifiers_WhenFormat_ThenDelegateToFormatter()
+  {
+    assertFormat("%S %b %c %e %,d %o", "upper", true, 'c', 12345.678, 1234567, 8);
+    assertFormat("%1$s %1$s %<s", "indexed");
+    assertFormat("%d", new java.math.BigInteger("12345678901234567890"));
+    assertFormat("%f %f", Double.NaN, Double.NEGATIVE_INFINITY);
+  }
+
+  @Test
+  public void GivenLocalizedLocale_WhenFormatNumbers_ThenDelegateToFormatter()
+  {
+    Locale.setDefault(Locale.Category.FORMAT, Locale.GERMANY);
+    assertFormat("%d %.2f %s", -42, 3.14159, "text");
+  }
+
+  @Test
+  public void GivenBadFormat_WhenFormat_ThenOriginalFormat()
+  {
+    assertThat(format("%q value", 1), equalTo("%q value"));
+    assertThat(format("value %", 1), equalTo("value %"));
+    assertThat(format("%05s value", "text"), equalTo("%05s value"));
+  }
+
+  @Test
+  public void GivenMismatchedArguments_WhenFormat_ThenOriginalFormat()
+  {
+    assertThat(format("%d value", "text"), equalTo("%d value"));
+    assertThat(format("%s and %s", "first"), equalTo("%s and %s"));
+    assertThat(format("%.2d value", 1), equalTo("%.2d value"));
+  }
+
+  @Test
+  public void GivenBuilderContent_WhenFormatFails_ThenKeepPreviousContent()
+  {
+    // given
+    StringBuilder builder = new StringBuilder("Prefix ");
+
+    // when
+    new FormatTemplate("%s and %d").format(builder, new Object[]
+    {
+        "first", "second"
+    });
+
+    // then
+    assertThat(builder.toString(), equalTo("Prefix %s and %d"));
+  }
+
+  @Test
+  public void GivenSpecifiers_WhenGetArgumentsCount_ThenCountConsumedArguments()
+  {
+    assertThat(new FormatTemplate("%s and %d%n100%%").getArgumentsCount(), equalTo(2));
+    assertThat(new FormatTemplate("%1$s %1$s").getArgumentsCount(), equalTo(-1));
+    assertThat(new FormatTemplate("%q value").getArgumentsCount(), equalTo(0));
+  }
+
+  private static void assertFormat(String format, Object... args)
+  {
+    assertThat(format(format, args), equalTo(String.format(format, args)));
+  }
+
+  private static String format(String format, Object... args)
+  {
+    StringBuilder builder = new StringBuilder();
+    new FormatTemplate(format).format(builder, args);
+    return builder.toString();
+  }
+}
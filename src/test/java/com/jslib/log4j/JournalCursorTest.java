@@ -0,0 +1,182 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalCursorTest
+{
+  private static final int INFO = ConsoleRecord.code(Level.INFO);
+  private static final int ERROR = ConsoleRecord.code(Level.ERROR);
+
+  private ServerSocketChannel server;
+  private SocketChannel channel;
+  private LongAdder[] ringDroppedCounts;
+
+  private JournalCursor cursor;
+
+  @Before
+  public void beforeTest() throws IOException
+  {
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress("localhost", 0));
+    channel = SocketChannel.open(server.getLocalAddress());
+    ringDroppedCounts = new LongAdder[ConsoleRecord.LEVELS_COUNT];
+    for(int i = 0; i < ringDroppedCounts.length; ++i) {
+      ringDroppedCounts[i] = new LongAdder();
+    }
+    cursor = new JournalCursor();
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    channel.close();
+    server.close();
+  }
+
+  @Test
+  public void GivenNewCursor_WhenEvicted_ThenLost()
+  {
+    // given
+
+    // when
+    cursor.evicted(0L, INFO);
+    cursor.evicted(64L, ERROR);
+
+    // then
+    assertThat(cursor.getSpillStart(), equalTo(0L));
+    assertThat(cursor.getLostCount(INFO), equalTo(1L));
+    assertThat(cursor.getLostCount(ERROR), equalTo(1L));
+  }
+
+  @Test
+  public void GivenAttachedReader_WhenEvicted_ThenNotLost() throws IOException
+  {
+    // given
+    cursor.attach(client());
+
+    // when
+    cursor.evicted(0L, INFO);
+
+    // then
+    assertThat(cursor.getLostCount(INFO), equalTo(0L));
+  }
+
+  @Test
+  public void GivenDetachedReader_WhenEvicted_ThenLostOnlyFromDetachPosition() throws IOException
+  {
+    // given
+    cursor.attach(client());
+    cursor.detach(128L);
+
+    // when
+    cursor.evicted(64L, INFO);
+    cursor.evicted(128L, INFO);
+    cursor.evicted(192L, INFO);
+
+    // then
+    assertThat(cursor.getSpillStart(), equalTo(128L));
+    assertThat(cursor.getLostCount(INFO), equalTo(2L));
+  }
+
+  @Test
+  public void GivenDetachedReader_WhenDetachAgain_ThenKeepFirstPosition() throws IOException
+  {
+    // given
+    cursor.attach(client());
+    cursor.detach(128L);
+
+    // when
+    cursor.detach(256L);
+
+    // then
+    assertThat(cursor.getSpillStart(), equalTo(128L));
+  }
+
+  @Test
+  public void GivenLostRecords_WhenAttach_ThenReportDroppedAndReset() throws IOException
+  {
+    // given
+    cursor.evicted(0L, INFO);
+    RemoteConsoleClient client = client();
+
+    // when
+    cursor.attach(client);
+
+    // then
+    assertThat(client.hasDropped(ringDroppedCounts), equalTo(true));
+    assertThat(cursor.getLostCount(INFO), equalTo(0L));
+  }
+
+  @Test
+  public void GivenUnacknowledgedRecordsOverwritten_WhenResume_ThenDropOnlyAfterSequence() throws IOException
+  {
+    // given
+    cursor.resume(client(), -1L, 0L);
+    cursor.detach(256L);
+    cursor.evicted(0L, INFO);
+    cursor.evicted(64L, ERROR);
+    cursor.evicted(128L, ERROR);
+    assertThat(cursor.getLostCount(ERROR), equalTo(0L));
+
+    // when
+    RemoteConsoleClient client = client();
+    cursor.resume(client, 64L, 256L);
+
+    // then
+    assertThat(client.hasDropped(ringDroppedCounts), equalTo(true));
+    assertThat(cursor.getLostCount(ERROR), equalTo(0L));
+  }
+
+  @Test
+  public void GivenAcknowledgedRecordsOverwritten_WhenResume_ThenNoDropped() throws IOException
+  {
+    // given
+    cursor.resume(client(), -1L, 0L);
+    cursor.detach(256L);
+    cursor.evicted(0L, INFO);
+    cursor.evicted(64L, ERROR);
+
+    // when
+    RemoteConsoleClient client = client();
+    cursor.resume(client, 128L, 256L);
+
+    // then
+    assertThat(client.hasDropped(ringDroppedCounts), equalTo(false));
+  }
+
+  @Test
+  public void GivenManyUnacknowledgedRecords_WhenEvicted_ThenGrowTracking() throws IOException
+  {
+    // given
+    cursor.resume(client(), -1L, 0L);
+    cursor.detach(1024L * 1024L);
+
+    // when
+    for(int i = 0; i < 1000; ++i) {
+      cursor.evicted(i * 64L, INFO);
+    }
+
+    // then
+    assertThat(cursor.getLostCount(INFO), equalTo(0L));
+    RemoteConsoleClient client = client();
+    cursor.resume(client, 999 * 64L - 1, 1024L * 1024L);
+    assertThat(client.hasDropped(ringDroppedCounts), equalTo(true));
+  }
+
+  private RemoteConsoleClient client() throws IOException
+  {
+    return new RemoteConsoleClient(channel, null, ringDroppedCounts, 0);
+  }
+}
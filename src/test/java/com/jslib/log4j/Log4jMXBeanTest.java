@@ -2,8 +2,19 @@ package com.jslib.log4j;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -51,4 +62,39 @@ public class Log4jMXBeanTest
       assertThat(bean.getLevel(LOGGER_NAME), equalTo(level));
     }
   }
+
+  @Test
+  public void truncationsCount()
+  {
+    long truncationsCount = bean.getTruncationsCount();
+    RenderBudget.appendArgument(new StringBuilder(), new String(new char[RenderBudget.MAX_ARGUMENT_LENGTH + 1]));
+    assertThat(bean.getTruncationsCount(), equalTo(truncationsCount + 1));
+  }
+
+  @Test
+  public void compressionStats() throws Exception
+  {
+    PatternLayout layout = PatternLayout.newBuilder().withPattern("%m%n").withCharset(StandardCharsets.UTF_8).build();
+    try (RemoteConsoleWriter writer = new RemoteConsoleWriter(0); Socket client = new Socket()) {
+      client.connect(new InetSocketAddress("localhost", writer.getPort()), 5000);
+      OutputStream output = client.getOutputStream();
+      output.write("DEFLATE\r\n".getBytes(StandardCharsets.US_ASCII));
+      output.flush();
+      long start = System.currentTimeMillis();
+      while(bean.getCompressionRatio() == 0 && System.currentTimeMillis() - start < 5000) {
+        writer.write(Log4jLogEvent.newBuilder().setLevel(Level.INFO).setMessage(new SimpleMessage("Compressed message.")).build(), layout);
+        Thread.sleep(20);
+      }
+      // let batches in flight complete so that statistics are stable
+      Thread.sleep(100);
+
+      String[] stats = bean.getCompressionStats();
+      assertThat(stats.length, equalTo(1));
+      assertThat(stats[0], startsWith(writer.getCompressionStats().get(0).getAddress()));
+      assertThat(bean.getCompressionRatio(), equalTo(writer.getCompressionStats().get(0).getRatio()));
+      assertThat(bean.getCompressionCost(), greaterThan(0L));
+    }
+    assertThat(bean.getCompressionStats().length, equalTo(0));
+    assertThat(bean.getCompressionRatio(), equalTo(0.0));
+  }
 }
@@ -1,17 +1,36 @@
 package com.jslib.log4j;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -44,7 +63,7 @@ public class LogImplTest
 
     // then
     ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(logger, times(1)).debug(message.capture());
+    verify(logger, times(1)).log(eq(Level.DEBUG), message.capture());
 
     assertThat(message.getValue(), equalTo("Debug message."));
   }
@@ -57,15 +76,13 @@ public class LogImplTest
   {
     // given
     when(logger.isEnabled(Level.DEBUG)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.DEBUG);
 
     // when
     log.debug("Phone {phone}.", "770 555-666");
 
     // then
-    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(logger, times(1)).debug(message.capture());
-
-    assertThat(message.getValue(), equalTo("Phone 770 555-666."));
+    assertThat(messages, contains("Phone 770 555-666."));
   }
 
   @Test
@@ -73,15 +90,34 @@ public class LogImplTest
   {
     // given
     when(logger.isEnabled(Level.DEBUG)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.DEBUG);
 
     // when
     log.debug("Phone {}.", "770 555-666");
 
     // then
-    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(logger, times(1)).debug(message.capture());
+    assertThat(messages, contains("Phone 770 555-666."));
+  }
+
+  /**
+   * Constant template is formatted by scanning its characters on first call and from compiled template afterwards. Both
+   * should produce the same message.
+   */
+  @Test
+  public void GivenConstantTemplate_WhenRepeatedDebug_ThenSameMessage()
+  {
+    // given
+    when(logger.isEnabled(Level.DEBUG)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.DEBUG);
+
+    // when
+    for(int i = 0; i < 3; ++i) {
+      log.debug("User {user} logged from {address} using {}.", "John", "localhost");
+    }
 
-    assertThat(message.getValue(), equalTo("Phone 770 555-666."));
+    // then
+    String message = "User John logged from localhost using {}.";
+    assertThat(messages, contains(message, message, message));
   }
 
   @Test
@@ -89,15 +125,13 @@ public class LogImplTest
   {
     // given
     when(logger.isEnabled(Level.DEBUG)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.DEBUG);
 
     // when
     log.debug("Phone %s.", "770 555-666");
 
     // then
-    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(logger, times(1)).debug(message.capture());
-
-    assertThat(message.getValue(), equalTo("Phone 770 555-666."));
+    assertThat(messages, contains("Phone 770 555-666."));
   }
 
   @Test
@@ -111,7 +145,7 @@ public class LogImplTest
 
     // then
     ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(logger, times(1)).debug(message.capture());
+    verify(logger, times(1)).log(eq(Level.DEBUG), message.capture());
 
     assertThat(message.getValue(), equalTo("Phone {phone}."));
   }
@@ -127,7 +161,7 @@ public class LogImplTest
 
     // then
     ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(logger, times(1)).debug(message.capture());
+    verify(logger, times(1)).log(eq(Level.DEBUG), message.capture());
 
     assertThat(message.getValue(), equalTo("Phone {}."));
   }
@@ -142,7 +176,7 @@ public class LogImplTest
     log.debug(null);
 
     // then
-    verify(logger, times(1)).debug((String)null);
+    verify(logger, times(1)).log(Level.DEBUG, (String)null);
   }
 
   @Test
@@ -195,4 +229,402 @@ public class LogImplTest
     // then
     verify(logger, times(0)).fatal(anyString(), any(Throwable.class));
   }
+
+  @Test
+  public void GivenFixedArity_WhenInfo_ThenFormatArguments()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+
+    // when
+    log.info("User {user}.", "John");
+    log.info("User {user} from {address}.", "John", "localhost");
+    log.info("{} {} {}.", "one", "two", "three");
+    log.info("{} {} {} {}.", "one", "two", "three", "four");
+
+    // then
+    assertThat(messages, contains("User John.", "User John from localhost.", "one two three.", "one two three four."));
+  }
+
+  @Test
+  public void GivenPrimitiveArguments_WhenInfo_ThenFormatArguments()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+
+    // when
+    log.info("Count {}.", 42);
+    log.info("Id {}.", Long.MIN_VALUE);
+    log.info("Ratio {}.", 0.25);
+    log.info("Enabled {}.", true);
+    log.info("Hex %08x.", -1);
+    log.info("Ratio %.2f.", 1.005);
+    log.info("Count %5d|", 42);
+
+    // then
+    assertThat(messages, contains("Count 42.", "Id -9223372036854775808.", "Ratio 0.25.", "Enabled true.", "Hex ffffffff.", "Ratio 1.01.", "Count    42|"));
+  }
+
+  @Test
+  public void GivenPrimitiveArgument_WhenFormatterSpecifier_ThenBoxedArgument()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+
+    // when
+    log.info("Value %,d.", 1234567);
+    log.info("Value %b.", false);
+
+    // then
+    assertThat(messages, contains(String.format("Value %,d.", 1234567), "Value false."));
+  }
+
+  @Test
+  public void GivenPrimitiveArgument_WhenInfo_ThenBoxedParameter()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<Object[]> parameters = new ArrayList<>();
+    doAnswer(invocation -> {
+      parameters.add(invocation.<Message> getArgument(1).getParameters());
+      return null;
+    }).when(logger).log(eq(Level.INFO), any(Message.class));
+
+    // when
+    log.info("Count {}.", 42L);
+
+    // then
+    assertThat(parameters.get(0)[0], equalTo(42L));
+  }
+
+  @Test
+  public void GivenRenderedArguments_WhenInfo_ThenSameForPlaceholderAndSpecifier()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+    int[] ids = new int[]
+    {
+        1, 2, 3, 4
+    };
+
+    // when
+    log.info("Load {type} ids {ids}.", String.class, ids);
+    log.info("Load %s ids %s.", String.class, ids);
+
+    // then
+    assertThat(messages, contains("Load java.lang.String ids [1,2,3,...].", "Load java.lang.String ids [1,2,3,...]."));
+  }
+
+  @Test
+  public void GivenRenderedArguments_WhenInfoWithPlaceholders_ThenReplaceToString()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+    int[] ids = new int[]
+    {
+        1, 2
+    };
+    String[] names = new String[]
+    {
+        "a", "b"
+    };
+
+    // when
+    log.info("Load {type} ids {ids} names {names}.", String.class, ids, names);
+
+    // then
+    // placeholders used to append argument toString(), e.g. class java.lang.String and [I@1b6d3586
+    String toString = String.format("Load %s ids %s names %s.", String.class.toString(), ids.toString(), names.toString());
+    assertThat(messages, contains("Load java.lang.String ids [1,2] names [a,b]."));
+    assertThat(messages.get(0), not(equalTo(toString)));
+  }
+
+  @Test
+  public void GivenSupplierArgument_WhenInfo_ThenRenderSupplierValue()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+    Supplier<String> user = () -> "John";
+
+    // when
+    log.info("User {user}.", user);
+    log.info("User %s.", user);
+
+    // then
+    assertThat(messages, contains("User John.", "User John."));
+  }
+
+  @Test
+  public void GivenInfoLevelDisabled_WhenSupplierArgument_ThenSupplierNotInvoked()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(false);
+    AtomicInteger invocations = new AtomicInteger();
+
+    // when
+    log.info("Cache dump {}.", (Supplier<String>)() -> "dump" + invocations.incrementAndGet());
+
+    // then
+    assertThat(invocations.get(), equalTo(0));
+  }
+
+  @Test
+  public void GivenSupplierWithoutPlaceholder_WhenInfo_ThenSupplierNotInvoked()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.INFO);
+    AtomicInteger invocations = new AtomicInteger();
+    Supplier<String> dump = () -> "dump" + invocations.incrementAndGet();
+
+    // when
+    log.info("User {user}.", "John", dump);
+    log.info("User %s.", "John", dump);
+
+    // then
+    assertThat(messages, contains("User John.", "User John."));
+    assertThat(invocations.get(), equalTo(0));
+  }
+
+  @Test
+  public void GivenThrowableSupplier_WhenFormatSpecifier_ThenThrowableSummary()
+  {
+    // given
+    when(logger.isEnabled(Level.ERROR)).thenReturn(true);
+    List<String> messages = formattedMessages(Level.ERROR);
+
+    // when
+    log.error("Request failed: %s", (Supplier<Throwable>)() -> new IOException("IO exception."));
+
+    // then
+    assertThat(messages, contains("Request failed: IO exception."));
+  }
+
+  @Test
+  public void GivenNotCoreLogger_WhenLevelChanges_ThenAskLoggerOnEveryCall()
+  {
+    // given
+    when(logger.isEnabled(Level.INFO)).thenReturn(false, true);
+
+    // when
+    log.info("Disabled.");
+    log.info("Enabled.");
+
+    // then
+    verify(logger, times(2)).isEnabled(Level.INFO);
+    verify(logger, times(1)).log(Level.INFO, "Enabled.");
+  }
+
+  @Test
+  public void GivenCachedLevels_WhenConfiguratorSetLevel_ThenInvalidateLevels()
+  {
+    // given
+    RenderingAppender appender = new RenderingAppender();
+    org.apache.logging.log4j.core.Logger coreLogger = coreLogger("com.jslib.log4j.gate.configurator", appender);
+    Configurator.setLevel(coreLogger.getName(), Level.INFO);
+    LogImpl log = new LogImpl(coreLogger);
+    log.debug("Disabled {}.", 1);
+
+    // when
+    Configurator.setLevel(coreLogger.getName(), Level.DEBUG);
+    log.debug("Enabled {}.", 2);
+
+    // then
+    coreLogger.removeAppender(appender);
+    assertThat(appender.builder.toString(), equalTo("Enabled 2."));
+  }
+
+  @Test
+  public void GivenCachedLevels_WhenMXBeanSetLevel_ThenInvalidateLevels()
+  {
+    // given
+    RenderingAppender appender = new RenderingAppender();
+    org.apache.logging.log4j.core.Logger coreLogger = coreLogger("com.jslib.log4j.gate.mxbean", appender);
+    Log4jMXBean bean = new Log4jMXBeanImpl();
+    bean.setLevel(coreLogger.getName(), "WARN");
+    LogImpl log = new LogImpl(coreLogger);
+    log.info("Disabled {}.", 1);
+
+    // when
+    bean.setLevel(coreLogger.getName(), "INFO");
+    log.info("Enabled {}.", 2);
+
+    // then
+    coreLogger.removeAppender(appender);
+    assertThat(appender.builder.toString(), equalTo("Enabled 2."));
+  }
+
+  @Test
+  public void GivenCachedLevels_WhenCoreLoggerSetLevel_ThenUpdateLevels()
+  {
+    // given
+    RenderingAppender appender = new RenderingAppender();
+    org.apache.logging.log4j.core.Logger coreLogger = coreLogger("com.jslib.log4j.gate.core", appender);
+    coreLogger.setLevel(Level.INFO);
+    LogImpl log = new LogImpl(coreLogger);
+    log.debug("Disabled {}.", 1);
+
+    // when
+    coreLogger.setLevel(Level.DEBUG);
+    log.debug("Enabled {}.", 2);
+    coreLogger.setLevel(Level.INFO);
+    log.debug("Disabled {}.", 3);
+
+    // then
+    coreLogger.removeAppender(appender);
+    assertThat(appender.builder.toString(), equalTo("Enabled 2."));
+  }
+
+  /**
+   * Steady state logging with arguments should not allocate: message is formatted into a reused thread buffer and
+   * log4j receives it as reusable message. Allocations are measured on a real log4j logger with an appender that
+   * renders every event.
+   */
+  @Test
+  public void GivenReusableMessage_WhenSteadyStateLogging_ThenNoAllocation()
+  {
+    // given
+    Object[] args = new Object[]
+    {
+        "GET", "/api/users", "200"
+    };
+
+    // when
+    RenderingAppender appender = new RenderingAppender();
+    long allocatedBytes = allocatedBytes(appender, log -> log.info("Request {method} {path} completed with status {status}.", args));
+
+    // then
+    assertThat(appender.builder.toString(), equalTo("Request GET /api/users completed with status 200."));
+    // less than one byte per logging call
+    assertThat(allocatedBytes, lessThan(10000L));
+  }
+
+  /** Primitive argument is neither boxed nor stored into an arguments array. */
+  @Test
+  public void GivenPrimitiveArgument_WhenSteadyStateLogging_ThenNoAllocation()
+  {
+    // given
+    long userId = 1234567890123L;
+
+    // when
+    RenderingAppender appender = new RenderingAppender();
+    long allocatedBytes = allocatedBytes(appender, log -> log.info("Load user {user_id}.", userId));
+
+    // then
+    assertThat(appender.builder.toString(), equalTo("Load user 1234567890123."));
+    assertThat(allocatedBytes, lessThan(10000L));
+  }
+
+  /** Java format specifiers render arguments and supplier values without copying arguments array. */
+  @Test
+  public void GivenFormatSpecifiers_WhenSteadyStateLogging_ThenNoAllocation()
+  {
+    // given
+    Supplier<String> user = () -> "John";
+    int[] ids = new int[]
+    {
+        1, 2, 3
+    };
+
+    // when
+    RenderingAppender appender = new RenderingAppender();
+    long allocatedBytes = allocatedBytes(appender, log -> log.info("User %s loads %s ids %s.", user, String.class, ids));
+
+    // then
+    assertThat(appender.builder.toString(), equalTo("User John loads java.lang.String ids [1,2,3]."));
+    assertThat(allocatedBytes, lessThan(10000L));
+  }
+
+  /**
+   * Measure bytes allocated by 10000 logging calls on a real log4j logger. Logging calls are measured in rounds and the
+   * best one is kept, after JIT warm up.
+   * 
+   * @param appender appender rendering logging events,
+   * @param logging logging call.
+   * @return allocated bytes.
+   */
+  private static long allocatedBytes(RenderingAppender appender, Consumer<LogImpl> logging)
+  {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)threadBean;
+    assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+    org.apache.logging.log4j.core.Logger coreLogger = coreLogger("com.jslib.log4j.allocation", appender);
+    coreLogger.setLevel(Level.ALL);
+
+    LogImpl log = new LogImpl(coreLogger);
+    long threadId = Thread.currentThread().getId();
+
+    long allocatedBytes = Long.MAX_VALUE;
+    try {
+      for(int round = 0; round < 50; ++round) {
+        long roundBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < 10000; ++i) {
+          logging.accept(log);
+        }
+        allocatedBytes = Math.min(allocatedBytes, allocationBean.getThreadAllocatedBytes(threadId) - roundBytes);
+      }
+    }
+    finally {
+      coreLogger.removeAppender(appender);
+    }
+    return allocatedBytes;
+  }
+
+  /**
+   * Get log4j core logger with given appender attached as its single appender.
+   * 
+   * @param name logger name,
+   * @param appender appender rendering logging events.
+   * @return log4j core logger.
+   */
+  private static org.apache.logging.log4j.core.Logger coreLogger(String name, RenderingAppender appender)
+  {
+    org.apache.logging.log4j.core.Logger coreLogger = (org.apache.logging.log4j.core.Logger)LogManager.getLogger(name);
+    appender.start();
+    coreLogger.addAppender(appender);
+    coreLogger.setAdditive(false);
+    return coreLogger;
+  }
+
+  /**
+   * Reusable message is released when logging call returns. Record formatted message while logging call is running.
+   * 
+   * @param level logging level.
+   * @return formatted messages list.
+   */
+  private List<String> formattedMessages(Level level)
+  {
+    List<String> messages = new ArrayList<>();
+    doAnswer(invocation -> {
+      messages.add(invocation.<Message> getArgument(1).getFormattedMessage());
+      return null;
+    }).when(logger).log(eq(level), any(Message.class));
+    return messages;
+  }
+
+  private static class RenderingAppender extends AbstractAppender
+  {
+    final StringBuilder builder = new StringBuilder();
+
+    RenderingAppender()
+    {
+      super("rendering", null, null, true, Property.EMPTY_ARRAY);
+    }
+
+    @Override
+    public void append(LogEvent event)
+    {
+      builder.setLength(0);
+      ((StringBuilderFormattable)event.getMessage()).formatTo(builder);
+    }
+  }
 }
@@ -0,0 +1,69 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Test;
+
+import com.jslib.api.log.Log;
+
+public class LogProviderImplTest
+{
+  @Test
+  public void GivenLoggerName_WhenGetLoggerTwice_ThenSameInstance()
+  {
+    // given
+    LogProviderImpl provider = new LogProviderImpl(false);
+
+    // when
+    Log first = provider.getLogger("com.jslib.log4j.cache");
+    Log second = provider.getLogger("com.jslib.log4j.cache");
+
+    // then
+    assertThat(first, notNullValue());
+    assertThat(second, sameInstance(first));
+  }
+
+  @Test
+  public void GivenDifferentNames_WhenGetLogger_ThenDifferentInstances()
+  {
+    // given
+    LogProviderImpl provider = new LogProviderImpl(false);
+
+    // when
+    Log first = provider.getLogger("com.jslib.log4j.cache.first");
+    Log second = provider.getLogger("com.jslib.log4j.cache.second");
+
+    // then
+    assertThat(second, not(sameInstance(first)));
+  }
+
+  @Test
+  public void GivenWeakLoggers_WhenGetLoggerTwice_ThenSameInstance()
+  {
+    // given
+    LogProviderImpl provider = new LogProviderImpl(true);
+
+    // when
+    Log first = provider.getLogger("com.jslib.log4j.cache.weak");
+    Log second = provider.getLogger("com.jslib.log4j.cache.weak");
+
+    // then
+    assertThat(second, sameInstance(first));
+  }
+
+  @Test
+  public void GivenNullName_WhenGetLogger_ThenNotCachedLogger()
+  {
+    // given
+    LogProviderImpl provider = new LogProviderImpl(false);
+
+    // when
+    Log log = provider.getLogger(null);
+
+    // then
+    assertThat(log, notNullValue());
+  }
+}
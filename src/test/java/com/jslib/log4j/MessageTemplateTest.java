@@ -0,0 +1,205 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class MessageTemplateTest
+{
+  @Test
+  public void GivenNamedParameters_WhenCompile_ThenRecordNames()
+  {
+    // given
+    String template = "User {user} logged from {}.";
+
+    // when
+    MessageTemplate compiled = new MessageTemplate(template);
+
+    // then
+    assertThat(compiled.getParametersCount(), equalTo(2));
+    assertThat(compiled.getParameterName(0), equalTo("user"));
+    assertThat(compiled.getParameterName(1), equalTo(""));
+    assertThat(compiled.getFormat(), nullValue());
+  }
+
+  @Test
+  public void GivenArguments_WhenFormat_ThenReplaceParameters()
+  {
+    // given
+    MessageTemplate compiled = new MessageTemplate("User {user} logged from {}.");
+
+    // when
+    String message = format(compiled, "John", "localhost");
+
+    // then
+    assertThat(message, equalTo("User John logged from localhost."));
+  }
+
+  @Test
+  public void GivenMissingArguments_WhenFormat_ThenPrintPlaceholders()
+  {
+    // given
+    MessageTemplate compiled = new MessageTemplate("User {user} logged from {address}.");
+
+    // when
+    String message = format(compiled, "John");
+
+    // then
+    assertThat(message, equalTo("User John logged from {}."));
+  }
+
+  @Test
+  public void GivenNotClosedParameter_WhenFormat_ThenIgnoreTrailingText()
+  {
+    assertThat(format(new MessageTemplate("User {user"), "John"), equalTo("User John"));
+    assertThat(format(new MessageTemplate("User {} from {address"), "John"), equalTo("User John from {"));
+  }
+
+  @Test
+  public void GivenFormatSpecifier_WhenCompile_ThenSplitFormatTail()
+  {
+    // given
+    String template = "User {user} logged %d times.";
+
+    // when
+    MessageTemplate compiled = new MessageTemplate(template);
+
+    // then
+    assertThat(compiled.getParametersCount(), equalTo(1));
+    assertThat(compiled.getFormat().toString(), equalTo("%d times."));
+    assertThat(format(compiled, "John", 3), equalTo("User John logged "));
+  }
+
+  @Test
+  public void GivenMessageBudgetSpent_WhenFormat_ThenDoNotRenderRemainingArguments()
+  {
+    // given
+    char[] literal = new char[RenderBudget.MAX_MESSAGE_LENGTH];
+    Arrays.fill(literal, 'x');
+    MessageTemplate compiled = new MessageTemplate("{} " + new String(literal) + " {}");
+    AtomicInteger invocations = new AtomicInteger();
+    Supplier<String> supplier = () -> {
+      invocations.incrementAndGet();
+      return "value";
+    };
+
+    // when
+    String message = format(compiled, "first", supplier);
+
+    // then
+    assertThat(invocations.get(), equalTo(0));
+    assertThat(message, startsWith("first xxx"));
+    assertThat(message, not(endsWith("value")));
+  }
+
+  @Test
+  public void GivenTemplate_WhenLookupTwice_ThenCacheOnSecondLookup()
+  {
+    // given
+    String template = new String("Cached {} template.");
+
+    // when
+    MessageTemplate first = MessageTemplate.lookup(template);
+    MessageTemplate second = MessageTemplate.lookup(template);
+    MessageTemplate third = MessageTemplate.lookup(template);
+
+    // then
+    assertThat(first, nullValue());
+    assertThat(second, notNullValue());
+    assertThat(third, sameInstance(second));
+  }
+
+  @Test
+  public void GivenEqualTemplates_WhenLookup_ThenDoNotCache()
+  {
+    // given
+    String template = "Dynamic {} template.";
+
+    // when
+    MessageTemplate first = MessageTemplate.lookup(new String(template));
+    MessageTemplate second = MessageTemplate.lookup(new String(template));
+
+    // then
+    assertThat(first, nullValue());
+    assertThat(second, nullValue());
+  }
+
+  @Test
+  public void GivenTemplatesSharingCacheSet_WhenLookupAlternately_ThenCacheBoth()
+  {
+    // given
+    String[] templates = sameSet(2, "Alternate {} template %d.");
+
+    // when
+    MessageTemplate[] first = lookup(templates);
+    MessageTemplate[] second = lookup(templates);
+    MessageTemplate[] third = lookup(templates);
+
+    // then
+    assertThat(first[0], nullValue());
+    assertThat(first[1], nullValue());
+    assertThat(second[0], notNullValue());
+    assertThat(second[1], notNullValue());
+    assertThat(third[0], sameInstance(second[0]));
+    assertThat(third[1], sameInstance(second[1]));
+  }
+
+  @Test
+  public void GivenCachedTemplate_WhenOtherTemplateBurstOnSameSet_ThenKeepCachedTemplate()
+  {
+    // given
+    String[] templates = sameSet(2, "Burst {} template %d.");
+    MessageTemplate.lookup(templates[0]);
+    MessageTemplate cached = MessageTemplate.lookup(templates[0]);
+
+    // when
+    for(int i = 0; i < 10; ++i) {
+      MessageTemplate.lookup(templates[1]);
+    }
+
+    // then
+    assertThat(cached, notNullValue());
+    assertThat(MessageTemplate.lookup(templates[0]), sameInstance(cached));
+  }
+
+  private static String[] sameSet(int count, String pattern)
+  {
+    List<String> templates = new ArrayList<>();
+    for(int i = 0; templates.size() < count; ++i) {
+      String template = String.format(pattern, i);
+      if(templates.isEmpty() || MessageTemplate.set(template) == MessageTemplate.set(templates.get(0))) {
+        templates.add(template);
+      }
+    }
+    return templates.toArray(new String[count]);
+  }
+
+  private static MessageTemplate[] lookup(String[] templates)
+  {
+    MessageTemplate[] compiled = new MessageTemplate[templates.length];
+    for(int i = 0; i < templates.length; ++i) {
+      compiled[i] = MessageTemplate.lookup(templates[i]);
+    }
+    return compiled;
+  }
+
+  private static String format(MessageTemplate template, Object... arguments)
+  {
+    StringBuilder builder = new StringBuilder();
+    template.format(builder, arguments);
+    return builder.toString();
+  }
+}
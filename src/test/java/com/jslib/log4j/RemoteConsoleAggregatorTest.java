@@ -0,0 +1,186 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RemoteConsoleAggregatorTest
+{
+  private static final int TIMEOUT = 5000;
+
+  private RemoteConsoleWriter first;
+  private RemoteConsoleWriter second;
+  private RemoteConsoleAggregator aggregator;
+  private PatternLayout layout;
+
+  @Before
+  public void beforeTest() throws IOException
+  {
+    first = new RemoteConsoleWriter(0);
+    second = new RemoteConsoleWriter(0);
+    layout = PatternLayout.newBuilder().withPattern("%m%n").withCharset(StandardCharsets.UTF_8).build();
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    if(aggregator != null) {
+      aggregator.close();
+    }
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void GivenTwoNodes_WhenWriteEvents_ThenMergeByTimestamp() throws Exception
+  {
+    // given
+    aggregator = new RemoteConsoleAggregator(0, 2000, "first=localhost:" + first.getPort(), "second=localhost:" + second.getPort());
+    try (Socket client = connect()) {
+      awaitConnections(2);
+      BufferedReader reader = reader(client);
+
+      // when
+      first.write(event(1000L, "Message 1000."), layout);
+      first.write(event(1003L, "Message 1003."), layout);
+      Thread.sleep(100);
+      second.write(event(1001L, "Message 1001."), layout);
+      second.write(event(1002L, "Message 1002."), layout);
+
+      // then
+      assertThat(reader.readLine(), equalTo("[first] Message 1000."));
+      assertThat(reader.readLine(), equalTo("[second] Message 1001."));
+      assertThat(reader.readLine(), equalTo("[second] Message 1002."));
+      assertThat(reader.readLine(), equalTo("[first] Message 1003."));
+    }
+  }
+
+  @Test
+  public void GivenIdleNode_WhenReorderWindowExpires_ThenEmitRecord() throws Exception
+  {
+    // given
+    aggregator = new RemoteConsoleAggregator(0, 100, "first=localhost:" + first.getPort(), "second=localhost:" + second.getPort());
+    try (Socket client = connect()) {
+      awaitConnections(2);
+      BufferedReader reader = reader(client);
+
+      // when
+      long start = System.currentTimeMillis();
+      first.write(event(1000L, "Message."), layout);
+
+      // then
+      assertThat(reader.readLine(), equalTo("[first] Message."));
+      assertThat(System.currentTimeMillis() - start, lessThan(2000L));
+    }
+  }
+
+  @Test
+  public void GivenMultilineEvent_WhenMerge_ThenTagEveryLine() throws Exception
+  {
+    // given
+    aggregator = new RemoteConsoleAggregator(0, 100, "localhost:" + first.getPort());
+    try (Socket client = connect()) {
+      awaitConnections(1);
+      BufferedReader reader = reader(client);
+
+      // when
+      first.write(event(1000L, "First line.\nSecond line."), layout);
+
+      // then
+      String tag = "[localhost:" + first.getPort() + "] ";
+      assertThat(reader.readLine(), equalTo(tag + "First line."));
+      assertThat(reader.readLine(), equalTo(tag + "Second line."));
+    }
+  }
+
+  @Test
+  public void GivenRecordsBatch_WhenParse_ThenKeepNodeConnected() throws Exception
+  {
+    // given
+    aggregator = new RemoteConsoleAggregator(0, 100, "first=localhost:" + first.getPort());
+    try (Socket client = connect()) {
+      awaitConnections(1);
+      BufferedReader reader = reader(client);
+
+      // when
+      for(int i = 0; i < 10; ++i) {
+        first.write(event(1000L + i, "Message " + i + "."), layout);
+      }
+
+      // then
+      for(int i = 0; i < 10; ++i) {
+        assertThat(reader.readLine(), equalTo("[first] Message " + i + "."));
+      }
+      assertThat(aggregator.getNodesCount(), equalTo(1));
+    }
+  }
+
+  @Test
+  public void GivenTwoClients_WhenWriteEvent_ThenFanOut() throws Exception
+  {
+    // given
+    aggregator = new RemoteConsoleAggregator(0, 100, "first=localhost:" + first.getPort());
+    try (Socket client1 = connect(); Socket client2 = connect()) {
+      awaitConnections(1);
+
+      // when
+      first.write(event(1000L, "Message."), layout);
+
+      // then
+      assertThat(reader(client1).readLine(), equalTo("[first] Message."));
+      assertThat(reader(client2).readLine(), equalTo("[first] Message."));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void GivenMissingPort_WhenCreate_ThenException() throws IOException
+  {
+    new RemoteConsoleAggregator(0, 100, "localhost");
+  }
+
+  private static LogEvent event(long time, String message)
+  {
+    return Log4jLogEvent.newBuilder().setLevel(Level.INFO).setTimeMillis(time).setThreadName("main").setMessage(new SimpleMessage(message)).build();
+  }
+
+  private Socket connect() throws IOException
+  {
+    Socket socket = new Socket();
+    socket.connect(new InetSocketAddress("localhost", aggregator.getPort()), TIMEOUT);
+    socket.setSoTimeout(TIMEOUT);
+    return socket;
+  }
+
+  /** Wait for nodes connected and switched to framed protocol. */
+  private void awaitConnections(int nodesCount) throws InterruptedException
+  {
+    long start = System.currentTimeMillis();
+    while(aggregator.getNodesCount() < nodesCount && System.currentTimeMillis() - start < TIMEOUT) {
+      Thread.sleep(10);
+    }
+    assertThat(aggregator.getNodesCount(), equalTo(nodesCount));
+    // give writers time to process framed command
+    Thread.sleep(200);
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException
+  {
+    return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+  }
+}
@@ -2,18 +2,30 @@ package com.jslib.log4j;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -38,16 +50,85 @@ public class RemoteConsoleAppenderTest
   @Test
   public void append() throws IOException
   {
-    when(layout.toByteArray(event)).thenReturn("Debug message.".getBytes());
     appender.append(event);
+    verify(writer, times(1)).write(event, layout);
+  }
+
+  @Test
+  public void GivenPatternLayout_WhenAppend_ThenClientReceiveEncodedEvent() throws IOException
+  {
+    // given
+    Layout<?> layout = PatternLayout.newBuilder().withPattern("%-5p %m%n").withCharset(StandardCharsets.UTF_8).build();
+    RemoteConsoleWriter writer = new RemoteConsoleWriter(0);
+    RemoteConsoleAppender appender = new RemoteConsoleAppender(layout, writer);
+    LogEvent event = Log4jLogEvent.newBuilder().setLevel(Level.INFO).setMessage(new SimpleMessage("Caf\u00e9 message.")).build();
+
+    try (Socket client = new Socket("localhost", writer.getPort())) {
+      client.setSoTimeout(5000);
 
-    ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
-    verify(writer, times(1)).write(message.capture());
-    assertThat(message.getValue(), equalTo("Debug message."));
+      // when
+      appender.append(event);
 
-    verify(writer, times(1)).flush();
+      // then
+      BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+      assertThat(reader.readLine(), equalTo("INFO  Caf\u00e9 message."));
+    }
+    finally {
+      appender.stop();
+    }
   }
   
+  @Test
+  public void GivenStartedAppender_WhenConcurrentFirstAppends_ThenAllEventsOnSingleWriter() throws Exception
+  {
+    // given
+    final int threadsCount = 8;
+    final int eventsCount = 1000;
+    Layout<?> layout = PatternLayout.newBuilder().withPattern("%m%n").withCharset(StandardCharsets.UTF_8).build();
+    RemoteConsoleAppender appender = new RemoteConsoleAppender("race", null, layout, false);
+    appender.setPort(0);
+    appender.start();
+    RemoteConsoleWriter writer = appender.getWriter();
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    for(int i = 0; i < threadsCount; ++i) {
+      final int threadIndex = i;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          for(int j = 0; j < eventsCount; ++j) {
+            appender.append(Log4jLogEvent.newBuilder().setLevel(Level.INFO).setMessage(new SimpleMessage("thread-" + threadIndex + " event-" + j)).build());
+          }
+        }
+        catch(Throwable e) {
+          errors.add(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    try {
+      // when
+      start.countDown();
+      for(Thread thread : threads) {
+        thread.join();
+      }
+
+      // then
+      assertThat(errors, empty());
+      assertThat(appender.getWriter(), sameInstance(writer));
+      int[] count = new int[1];
+      writer.getRing(Lane.NORMAL).read(record -> ++count[0], Integer.MAX_VALUE);
+      assertThat(count[0], equalTo(threadsCount * eventsCount));
+    }
+    finally {
+      appender.stop();
+    }
+  }
+
   @Test
   public void close() throws IOException {
     appender.stop();
@@ -1,43 +1,65 @@
 package com.jslib.log4j;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
-import static org.hamcrest.Matchers.hasSize;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
-
-import java.io.ByteArrayOutputStream;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.BlockingQueue;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.InflaterInputStream;
 
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mock;
-import org.mockito.Mockito;
-import org.mockito.junit.MockitoJUnitRunner;
 
-@RunWith(MockitoJUnitRunner.class)
 public class RemoteConsoleWriterTest
 {
-  @Mock
-  private ServerSocket server;
+  private static final int TIMEOUT = 5000;
 
   private RemoteConsoleWriter writer;
-  private BlockingQueue<String> queue;
 
   @Before
   public void beforeTest()
   {
-    writer = new RemoteConsoleWriter(server);
-    queue = writer.getQueue();
+    writer = new RemoteConsoleWriter(0);
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    writer.close();
   }
 
   @Test
@@ -47,8 +69,7 @@ public class RemoteConsoleWriterTest
     writer.write(message, 0, message.length);
     writer.flush();
 
-    assertThat(queue, hasSize(1));
-    assertThat(queue.poll(), equalTo("Debug message."));
+    assertThat(messages(), contains("Debug message.\r\n"));
   }
 
   @Test
@@ -58,9 +79,7 @@ public class RemoteConsoleWriterTest
     writer.write(message, 0, message.length);
     writer.flush();
 
-    assertThat(queue, hasSize(2));
-    assertThat(queue.poll(), equalTo("Debug message."));
-    assertThat(queue.poll(), equalTo("Info message."));
+    assertThat(messages(), contains("Debug message.\r\n", "Info message.\r\n"));
   }
 
   @Test
@@ -71,52 +90,1200 @@ public class RemoteConsoleWriterTest
     writer.write(message, message.length - 5, 5);
     writer.flush();
 
-    assertThat(queue, hasSize(1));
-    assertThat(queue.poll(), equalTo("Debug message."));
+    assertThat(messages(), contains("Debug message.\r\n"));
   }
 
   @Test
   public void flush_Empty() throws IOException
   {
     writer.flush();
-    assertThat(queue, hasSize(0));
+    assertThat(messages(), empty());
   }
 
   @Test
-  public void server() throws IOException
+  public void GivenLineTerminatorSplitAcrossWrites_WhenFlush_ThenSingleTerminator() throws IOException
   {
-    // a debug message followed by a shutdown command - SD
-    char[] message = "Debug message.\r\nSD\r\n".toCharArray();
-    writer.write(message, 0, message.length);
+    // given
+    writer.write("Debug message.\r");
     writer.flush();
+    assertThat(messages(), empty());
+
+    // when
+    writer.write("\nInfo \rmessage.\n\n");
+    writer.flush();
+
+    // then
+    assertThat(messages(), contains("Debug message.\r\n", "Info \rmessage.\r\n", "\r\n"));
+  }
 
-    Socket client = Mockito.mock(Socket.class);
-    OutputStream stream = new ByteArrayOutputStream();
-    when(server.accept()).thenReturn(client);
-    when(client.getOutputStream()).thenReturn(stream);
+  @Test
+  public void GivenNonAsciiCharacters_WhenFlush_ThenUtf8Encoded() throws IOException
+  {
+    // given
+    writer.write("Caf\u00e9 \u20ac \uD83D\uDE00\r\n");
 
-    writer.run();
+    // when
+    writer.flush();
 
-    assertThat(stream.toString(), equalTo("Debug message.\r\n"));
-    verify(server, times(1)).close();
+    // then
+    assertThat(messages(), contains("Caf\u00e9 \u20ac \uD83D\uDE00\r\n"));
   }
 
   @Test
-  public void server_ClientClose() throws IOException
+  public void GivenLargeStackTrace_WhenFlush_ThenLinearTime() throws IOException
   {
-    char[] message = "Debug message.\r\nSD\r\n".toCharArray();
-    writer.write(message, 0, message.length);
+    // given
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(8 * 1024 * 1024);
+    writer = new RemoteConsoleWriter(config);
+
+    final int linesCount = 50000;
+    StringBuilder trace = new StringBuilder("java.lang.IllegalStateException: Stack trace.\r\n");
+    for(int i = 1; i < linesCount; ++i) {
+      trace.append("\tat com.jslib.Frame.method").append(i).append("(Frame.java:").append(i).append(")\r\n");
+    }
+
+    // when
+    long start = System.nanoTime();
+    writer.write(trace.toString());
     writer.flush();
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // then
+    List<String> messages = messages();
+    assertThat(messages.size(), equalTo(linesCount));
+    assertThat(messages.get(linesCount - 1), equalTo("\tat com.jslib.Frame.method49999(Frame.java:49999)\r\n"));
+    assertThat(elapsed, lessThan(2000L));
+  }
+
+  @Test
+  public void GivenLineLargerThanMaxRecord_WhenFlush_ThenSplitIntoRecords() throws IOException
+  {
+    // given
+    int maxLength = writer.getRing().getMaxRecordLength();
+    StringBuilder line = new StringBuilder();
+    while(line.length() < maxLength) {
+      line.append("\u20ac");
+    }
+    writer.write(line.toString());
+    writer.write("\r\n");
+
+    // when
+    writer.flush();
+
+    // then
+    List<String> messages = messages();
+    assertThat(messages.size(), greaterThanOrEqualTo(3));
+    assertThat(String.join("", messages), equalTo(line + "\r\n"));
+  }
+
+  @Test
+  public void GivenMultilineEvent_WhenWriteEvent_ThenNormalizedLineTerminators()
+  {
+    // given
+    LogEvent event = event("first line\nsecond line\r\nthird line");
+
+    // when
+    writer.write(event, layout("%m"));
+
+    // then
+    assertThat(messages(), contains("first line\r\nsecond line\r\nthird line\r\n"));
+  }
+
+  @Test
+  public void GivenEventLargerThanMaxRecord_WhenWriteEvent_ThenSplitOnLineBoundaries()
+  {
+    // given
+    int maxLength = writer.getRing().getMaxRecordLength();
+    StringBuilder message = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for(int i = 0; message.length() < 3 * maxLength; ++i) {
+      String line = String.format("\tat com.jslib.Frame.method%05d(Frame.java:%d)", i, i);
+      message.append(line).append('\n');
+      expected.append(line).append("\r\n");
+    }
+
+    // when
+    writer.write(event(message.toString()), layout("%m"));
+
+    // then
+    List<String> records = messages();
+    assertThat(records.size(), greaterThanOrEqualTo(4));
+    StringBuilder received = new StringBuilder();
+    for(String record : records) {
+      assertThat(record.endsWith("\r\n"), equalTo(true));
+      received.append(record);
+    }
+    assertThat(received.toString(), equalTo(expected.toString()));
+  }
+
+  @Test
+  public void GivenConcurrentWriters_WhenWriteAndFlush_ThenLinesNotInterleaved() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(8 * 1024 * 1024);
+    writer = new RemoteConsoleWriter(config);
+
+    final int threadsCount = 8;
+    final int linesCount = 5000;
+    PatternLayout layout = layout("%m%n");
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<Throwable> errors = new ArrayList<>();
+
+    Thread[] threads = new Thread[threadsCount];
+    for(int i = 0; i < threadsCount; ++i) {
+      final int thread = i;
+      threads[i] = new Thread(() -> {
+        try {
+          startLatch.await();
+          for(int line = 0; line < linesCount; ++line) {
+            if(line % 2 == 0) {
+              // write line in pieces, to give other threads the chance to interleave
+              writer.write("thread-" + thread);
+              writer.write(':');
+              writer.append("line-").append(Integer.toString(line));
+              writer.write("\r\n");
+              writer.flush();
+            }
+            else {
+              writer.write(event("thread-" + thread + ":line-" + line), layout);
+            }
+          }
+        }
+        catch(Throwable t) {
+          synchronized(errors) {
+            errors.add(t);
+          }
+        }
+      });
+      threads[i].start();
+    }
+
+    // when
+    startLatch.countDown();
+    for(Thread thread : threads) {
+      thread.join();
+    }
+
+    // then
+    assertThat(errors, empty());
+    List<String> messages = messages();
+    assertThat(messages.size(), equalTo(threadsCount * linesCount));
+    int[] nextLines = new int[threadsCount];
+    for(String message : messages) {
+      Matcher matcher = Pattern.compile("thread-(\\d+):line-(\\d+)\r\n").matcher(message);
+      assertThat(message, matcher.matches(), equalTo(true));
+      int thread = Integer.parseInt(matcher.group(1));
+      assertThat(Integer.parseInt(matcher.group(2)), equalTo(nextLines[thread]++));
+    }
+  }
+
+  @Test
+  public void GivenQueuedMessage_WhenClientConnect_ThenReceiveMessage() throws Exception
+  {
+    // given
+    writer.write("Debug message.\r\n");
+    writer.flush();
+
+    // when
+    try (Socket client = connect()) {
+      BufferedReader reader = reader(client);
+
+      // then
+      assertThat(reader.readLine(), equalTo("Debug message."));
+    }
+  }
+
+  @Test
+  public void GivenTwoClients_WhenWrite_ThenBothReceiveMessages() throws Exception
+  {
+    // given
+    try (Socket client1 = connect(); Socket client2 = connect()) {
+      awaitClients(2);
+
+      // when
+      writer.write("Debug message.\r\nInfo message.\r\n");
+      writer.flush();
+
+      // then
+      BufferedReader reader1 = reader(client1);
+      assertThat(reader1.readLine(), equalTo("Debug message."));
+      assertThat(reader1.readLine(), equalTo("Info message."));
+      BufferedReader reader2 = reader(client2);
+      assertThat(reader2.readLine(), equalTo("Debug message."));
+      assertThat(reader2.readLine(), equalTo("Info message."));
+    }
+  }
+
+  @Test
+  public void GivenSlowClient_WhenWriteBurst_ThenOtherClientNotBlocked() throws Exception
+  {
+    // given
+    StringBuilder line = new StringBuilder();
+    for(int i = 0; i < 1000; ++i) {
+      line.append('x');
+    }
+    line.append("\r\n");
+
+    try (Socket slowClient = new Socket(); Socket client = connect()) {
+      // slow client never reads
+      slowClient.setReceiveBufferSize(1024);
+      slowClient.connect(new InetSocketAddress("localhost", writer.getPort()), TIMEOUT);
+      awaitClients(2);
+
+      CountDownLatch endLatch = new CountDownLatch(1);
+      BufferedReader reader = reader(client);
+      Thread thread = new Thread(() -> {
+        try {
+          for(String message = reader.readLine(); message != null; message = reader.readLine()) {
+            if(message.equals("END")) {
+              endLatch.countDown();
+              break;
+            }
+          }
+        }
+        catch(IOException ignore) {
+        }
+      });
+      thread.start();
+
+      // when
+      long start = System.currentTimeMillis();
+      for(int i = 0; i < 4000; ++i) {
+        writer.write(line.toString());
+        writer.flush();
+      }
+      long burstTime = System.currentTimeMillis() - start;
+      while(!writer.getRing().isEmpty() && System.currentTimeMillis() - start < TIMEOUT) {
+        Thread.sleep(10);
+      }
+      writer.write("END\r\n");
+      writer.flush();
+
+      // then
+      assertThat(burstTime, lessThan((long)TIMEOUT));
+      assertThat(endLatch.await(TIMEOUT, TimeUnit.MILLISECONDS), equalTo(true));
+      thread.join(TIMEOUT);
+    }
+  }
+
+  @Test
+  public void GivenSleepingWaitStrategy_WhenWrite_ThenClientReceiveMessage() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setDirectBuffer(true);
+    config.setWaitStrategy(RemoteConsoleConfig.WaitStrategy.SLEEPING);
+    writer = new RemoteConsoleWriter(config);
+
+    try (Socket client = connect()) {
+      awaitClients(1);
 
-    Socket client = Mockito.mock(Socket.class);
-    OutputStream stream = Mockito.mock(OutputStream.class);
-    when(server.accept()).thenReturn(client);
-    when(client.getOutputStream()).thenReturn(stream);
+      // when
+      writer.write("Debug message.\r\n");
+      writer.flush();
 
-    doThrow(IOException.class).when(stream).write(any(byte[].class), anyInt(), anyInt());
+      // then
+      assertThat(reader(client).readLine(), equalTo("Debug message."));
+    }
+  }
+
+  @Test
+  public void GivenLingerTime_WhenWriteSmallMessage_ThenSendAfterLingerTime() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setLingerTime(200);
+    writer = new RemoteConsoleWriter(config);
+
+    try (Socket client = connect()) {
+      awaitClients(1);
+      BufferedReader reader = reader(client);
+
+      // when
+      long start = System.nanoTime();
+      writer.write("Debug message.\r\n");
+      writer.flush();
+      String message = reader.readLine();
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      // then
+      assertThat(message, equalTo("Debug message."));
+      assertThat(elapsed, greaterThanOrEqualTo(190L));
+    }
+  }
+
+  @Test
+  public void GivenBatchSize_WhenWriteMoreThanBatch_ThenSendBeforeLingerTime() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setBatchSize(1024);
+    config.setLingerTime(60000);
+    writer = new RemoteConsoleWriter(config);
+
+    try (Socket client = connect()) {
+      awaitClients(1);
+      BufferedReader reader = reader(client);
+
+      // when
+      for(int i = 0; i < 40; ++i) {
+        writer.write(String.format("Debug message %03d with some padding to make it about one hundred bytes long.....................\r\n", i));
+        writer.flush();
+      }
+
+      // then
+      assertThat(reader.readLine(), equalTo("Debug message 000 with some padding to make it about one hundred bytes long....................."));
+    }
+  }
+
+  @Test
+  public void GivenClientClosed_WhenWrite_ThenClientRemoved() throws Exception
+  {
+    // given
+    Socket client = connect();
+    awaitClients(1);
+
+    // when
+    client.close();
+    long start = System.currentTimeMillis();
+    while(writer.getClientsCount() > 0 && System.currentTimeMillis() - start < TIMEOUT) {
+      writer.write("Debug message.\r\n");
+      writer.flush();
+      Thread.sleep(10);
+    }
+
+    // then
+    assertThat(writer.getClientsCount(), equalTo(0));
+  }
+
+  @Test
+  public void GivenFullBuffer_WhenWriteEvent_ThenDropNewestAndCount() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(1024);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+
+    // when
+    // every record takes 64 bytes of ring buffer
+    for(int i = 0; i < 20; ++i) {
+      writer.write(event(String.format("Info message %02d padding to fill record.", i)), layout);
+    }
+    writer.write(event(Level.WARN, "Warn message with padding to fill record."), layout);
+
+    // then
+    List<String> messages = messages();
+    assertThat(messages.size(), equalTo(16));
+    assertThat(messages.get(0), equalTo("Info message 00 padding to fill record.\r\n"));
+    assertThat(messages.get(15), equalTo("Info message 15 padding to fill record.\r\n"));
+    assertThat(writer.getDroppedCount(Level.INFO), equalTo(4L));
+    assertThat(writer.getDroppedCount(Level.WARN), equalTo(1L));
+    assertThat(writer.getDroppedCount(), equalTo(5L));
+  }
+
+  @Test
+  public void GivenDropOldestPolicy_WhenWriteWithoutClients_ThenKeepNewest() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(1024);
+    config.setOverflowPolicy(RemoteConsoleConfig.OverflowPolicy.DROP_OLDEST);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+
+    // when
+    for(int i = 0; i < 40; ++i) {
+      writer.write(event(String.format("Info message %02d padding to fill record.", i)), layout);
+      Thread.sleep(1);
+    }
+    long start = System.currentTimeMillis();
+    while(writer.getRing().size() > 768 && System.currentTimeMillis() - start < TIMEOUT) {
+      Thread.sleep(10);
+    }
+
+    // then
+    List<String> messages = messages();
+    assertThat(messages.get(messages.size() - 1), equalTo("Info message 39 padding to fill record.\r\n"));
+    assertThat(writer.getDroppedCount(Level.INFO), equalTo(40L - messages.size()));
+  }
+
+  @Test
+  public void GivenBlockPolicy_WhenWriteBurst_ThenNoMessageDropped() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(1024);
+    config.setLingerTime(0);
+    config.setOverflowPolicy(RemoteConsoleConfig.OverflowPolicy.BLOCK);
+    config.setBlockTimeout(TIMEOUT);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+
+    try (Socket client = connect()) {
+      awaitClients(1);
+      BufferedReader reader = reader(client);
+
+      // when
+      for(int i = 0; i < 1000; ++i) {
+        writer.write(event(String.format("Info message %03d.", i)), layout);
+      }
+
+      // then
+      for(int i = 0; i < 1000; ++i) {
+        assertThat(reader.readLine(), equalTo(String.format("Info message %03d.", i)));
+      }
+      assertThat(writer.getDroppedCount(), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void GivenDropByLevelPolicy_WhenBufferFills_ThenShedLowSeverityFirst() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setVerboseBufferSize(1024);
+    config.setOverflowPolicy(RemoteConsoleConfig.OverflowPolicy.DROP_BY_LEVEL);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+    String message = "Message with padding to fill record.";
+
+    // when
+    // 9 records of 64 bytes exceed half of ring buffer
+    for(int i = 0; i < 9; ++i) {
+      writer.write(event(Level.DEBUG, message), layout);
+    }
+    writer.write(event(Level.TRACE, message), layout);
+    // 13 records exceed three quarters of ring buffer
+    for(int i = 0; i < 4; ++i) {
+      writer.write(event(Level.DEBUG, message), layout);
+    }
+    writer.write(event(Level.DEBUG, message), layout);
+    writer.write(event(Level.TRACE, message), layout);
+
+    // then
+    assertThat(messages(Lane.VERBOSE).size(), equalTo(13));
+    assertThat(writer.getDroppedCount(Level.TRACE), equalTo(2L));
+    assertThat(writer.getDroppedCount(Level.DEBUG), equalTo(1L));
+  }
+
+  @Test
+  public void GivenDebugFlood_WhenWriteError_ThenErrorNotDropped() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setVerboseBufferSize(1024);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+    // every record takes 64 bytes of ring buffer
+    for(int i = 0; i < 100; ++i) {
+      writer.write(event(Level.DEBUG, "Debug message."), layout);
+    }
+
+    // when
+    writer.write(event(Level.ERROR, "Error message."), layout);
+    writer.write(event(Level.INFO, "Info message."), layout);
+
+    // then
+    assertThat(writer.getDroppedCount(Level.DEBUG), equalTo(100L - RingBuffer.MIN_CAPACITY / (2 * RingBuffer.ALIGNMENT)));
+    assertThat(writer.getDroppedCount(Level.ERROR), equalTo(0L));
+    assertThat(messages(Lane.URGENT), contains("Error message.\r\n"));
+    assertThat(messages(), contains("Info message.\r\n"));
+  }
+
+  @Test
+  public void GivenLingerTime_WhenWriteError_ThenSendWithoutLinger() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setLingerTime(60000);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+
+    try (Socket client = connect()) {
+      awaitClients(1);
+      BufferedReader reader = reader(client);
+
+      // when
+      long start = System.currentTimeMillis();
+      writer.write(event(Level.ERROR, "Error message."), layout);
+
+      // then
+      assertThat(reader.readLine(), equalTo("Error message."));
+      assertThat(System.currentTimeMillis() - start, lessThan((long)TIMEOUT));
+    }
+  }
+
+  @Test
+  public void GivenDroppedMessages_WhenReportPeriod_ThenClientReceiveMarker() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setDropReportPeriod(10);
+    writer = new RemoteConsoleWriter(config);
+    StringBuilder line = new StringBuilder();
+    for(int i = 0; i < 1000; ++i) {
+      line.append('x');
+    }
+    line.append("\r\n");
+
+    try (Socket client = new Socket()) {
+      // client does not read until burst ends so that its outbound buffer overflows
+      client.setReceiveBufferSize(1024);
+      client.connect(new InetSocketAddress("localhost", writer.getPort()), TIMEOUT);
+      client.setSoTimeout(TIMEOUT);
+      awaitClients(1);
+
+      // when
+      for(int i = 0; i < 20000; ++i) {
+        writer.write(line.toString());
+        writer.flush();
+      }
+
+      // then
+      Pattern marker = Pattern.compile("^\\[remote console\\] (\\d+) messages dropped: INFO=(\\d+)$");
+      BufferedReader reader = reader(client);
+      for(String message = reader.readLine();; message = reader.readLine()) {
+        Matcher matcher = marker.matcher(message);
+        if(matcher.find()) {
+          assertThat(matcher.group(1), equalTo(matcher.group(2)));
+          break;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void GivenJournalAndNoClient_WhenClientConnect_ThenReplaySpilledMessages() throws Exception
+  {
+    // given
+    File journal = File.createTempFile("remote-console", ".journal");
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(4096);
+    config.setJournalFile(journal.getPath());
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+    // ring buffer keeps 64 records; others are spilled on journal
+    for(int i = 0; i < 100; ++i) {
+      writer.write(event(String.format("Info message %03d.", i)), layout);
+      Thread.sleep(1);
+    }
 
-    writer.run();
+    try (Socket client = connect()) {
+      // when
+      BufferedReader reader = reader(client);
 
-    verify(client, times(1)).close();
+      // then
+      for(int i = 0; i < 100; ++i) {
+        assertThat(reader.readLine(), equalTo(String.format("Info message %03d.", i)));
+      }
+      assertThat(writer.getDroppedCount(), equalTo(0L));
+    }
+    finally {
+      writer.close();
+      journal.delete();
+    }
+  }
+
+  @Test
+  public void GivenJournal_WhenSinceCommand_ThenReplayMessagesSinceTime() throws Exception
+  {
+    // given
+    File journal = File.createTempFile("remote-console", ".journal");
+    RemoteConsoleConfig config = config();
+    config.setBufferSize(1024);
+    config.setJournalFile(journal.getPath());
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+    for(int i = 0; i < 100; ++i) {
+      writer.write(event(1000 * (i + 1), String.format("Info message %03d.", i)), layout);
+      Thread.sleep(1);
+    }
+
+    try (Socket client = connect()) {
+      BufferedReader reader = reader(client);
+      for(int i = 0; i < 100; ++i) {
+        assertThat(reader.readLine(), equalTo(String.format("Info message %03d.", i)));
+      }
+
+      // when
+      client.getOutputStream().write("SINCE 96000\r\n".getBytes(StandardCharsets.US_ASCII));
+      client.getOutputStream().flush();
+
+      // then
+      for(int i = 95; i < 100; ++i) {
+        assertThat(reader.readLine(), equalTo(String.format("Info message %03d.", i)));
+      }
+    }
+    finally {
+      writer.close();
+      journal.delete();
+    }
+  }
+
+  @Test
+  public void GivenFramedCommand_WhenWriteEvent_ThenReceiveFrame() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (Socket client = connect()) {
+      awaitClients(1);
+      DataInputStream input = new DataInputStream(client.getInputStream());
+      command(client, "FRAMED");
+
+      // when
+      writer.write(Log4jLogEvent.newBuilder() //
+          .setLevel(Level.WARN).setTimeMillis(1234L).setLoggerName("com.jslib.Service").setThreadName("worker") //
+          .setMessage(new SimpleMessage("Warn message.")).build(), layout);
+      byte[] frame = new byte[input.readInt()];
+      input.readFully(frame);
+
+      // then
+      ByteBuffer record = ByteBuffer.wrap(frame);
+      assertThat(ConsoleRecord.level(ConsoleRecord.getLevel(record)), equalTo(Level.WARN));
+      assertThat(ConsoleRecord.getTime(record), equalTo(1234L));
+      assertThat(field(record, ConsoleRecord.LOGGER), equalTo("com.jslib.Service"));
+      assertThat(field(record, ConsoleRecord.THREAD), equalTo("worker"));
+      assertThat(new String(frame, ConsoleRecord.getTextStart(record), frame.length - ConsoleRecord.getTextStart(record), StandardCharsets.UTF_8), equalTo("Warn message.\r\n"));
+    }
+  }
+
+  @Test
+  public void GivenSubscription_WhenWriteEvents_ThenReceiveOnlyMatchingEvents() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (Socket client = connect()) {
+      awaitClients(1);
+      BufferedReader reader = reader(client);
+      command(client, "SUBSCRIBE level=INFO logger=com.jslib.api mdc=user=john");
+
+      // when
+      writer.write(event(Level.INFO, "org.apache", "john", "Apache message."), layout);
+      writer.write(event(Level.DEBUG, "com.jslib.api.Service", "john", "Debug message."), layout);
+      writer.write(event(Level.INFO, "com.jslib.api.Service", "jane", "Jane message."), layout);
+      writer.write(event(Level.INFO, "com.jslib.rmi.Client", "john", "Rmi message."), layout);
+      writer.write(event(Level.ERROR, "com.jslib.api.Service", "john", "Error message."), layout);
+
+      // then
+      assertThat(reader.readLine(), equalTo("Error message."));
+    }
+  }
+
+  @Test
+  public void GivenCompactCommand_WhenWriteEvents_ThenDecodeMessages() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (Socket client = connect()) {
+      awaitClients(1);
+      DataInputStream input = new DataInputStream(client.getInputStream());
+      command(client, "COMPACT");
+
+      // when
+      int textLength = 0;
+      for(int i = 0; i < 100; ++i) {
+        DeferredMessage message = DeferredMessage.create("User {} logged in from host {}.", new Object[]
+        {
+            "john", i
+        });
+        textLength += message.getFormattedMessage().length() + 2;
+        writer.write(Log4jLogEvent.newBuilder() //
+            .setLevel(Level.INFO).setTimeMillis(1000L + i).setLoggerName("com.jslib.Service").setThreadName("main") //
+            .setMessage(message).build(), layout);
+      }
+      writer.write(event(Level.WARN, "Text message."), layout);
+
+      // then
+      CompactDecoder decoder = new CompactDecoder();
+      ByteBuffer stream = ByteBuffer.allocate(64 * 1024);
+      stream.limit(0);
+      for(int i = 0; i < 100; ++i) {
+        assertThat(next(decoder, input, stream), equalTo(true));
+        assertThat(decoder.getTime(), equalTo(1000L + i));
+        assertThat(decoder.getLoggerName(), equalTo("com.jslib.Service"));
+        assertThat(decoder.getMessage(), equalTo("User john logged in from host " + i + "."));
+      }
+      assertThat(stream.position(), lessThan(textLength / 2));
+      assertThat(next(decoder, input, stream), equalTo(true));
+      assertThat(decoder.getLevel(), equalTo(Level.WARN));
+      assertThat(decoder.getMessage(), equalTo("Text message."));
+    }
+  }
+
+  @Test
+  public void GivenCompactCommand_WhenWriteLogMessage_ThenRenderArgumentsOnce() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    int[] renderCount = new int[1];
+    Object user = new Object()
+    {
+      @Override
+      public String toString()
+      {
+        ++renderCount[0];
+        return "john";
+      }
+    };
+    try (Socket client = connect()) {
+      awaitClients(1);
+      DataInputStream input = new DataInputStream(client.getInputStream());
+      command(client, "COMPACT");
+      LogMessage message = LogMessage.acquire("User {} logged in.", user);
+
+      // when
+      try {
+        writer.write(Log4jLogEvent.newBuilder().setLevel(Level.INFO).setThreadName("main").setMessage(message).build(), layout);
+      }
+      finally {
+        message.release();
+      }
+
+      // then
+      assertThat(renderCount[0], equalTo(1));
+      CompactDecoder decoder = new CompactDecoder();
+      ByteBuffer stream = ByteBuffer.allocate(64 * 1024);
+      stream.limit(0);
+      assertThat(next(decoder, input, stream), equalTo(true));
+      assertThat(decoder.getMessage(), equalTo("User john logged in."));
+    }
+  }
+
+  @Test
+  public void GivenDeflateCommand_WhenWriteEvents_ThenReceiveCompressedStream() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (Socket client = connect()) {
+      awaitClients(1);
+      InputStream input = client.getInputStream();
+      writer.write(event("Plain message."), layout);
+      assertThat(readLine(input), equalTo("Plain message."));
+      command(client, "DEFLATE");
+
+      // when
+      for(int i = 0; i < 100; ++i) {
+        writer.write(event(String.format("Compressed message %03d.", i)), layout);
+      }
+
+      // then
+      assertThat(readLine(input), equalTo("[remote console] deflate"));
+      // do not use a reader since it blocks on inflater input stream available bytes estimation
+      InputStream inflater = new InflaterInputStream(input);
+      for(int i = 0; i < 100; ++i) {
+        assertThat(readLine(inflater), equalTo(String.format("Compressed message %03d.", i)));
+      }
+      List<CompressionStats> stats = writer.getCompressionStats();
+      assertThat(stats.size(), equalTo(1));
+      assertThat(stats.get(0).getUncompressedBytes(), equalTo(100L * 25));
+      assertThat(stats.get(0).getRatio(), greaterThan(1.0));
+    }
+  }
+
+  @Test
+  public void GivenCompressionDisabled_WhenDeflateCommand_ThenPlainStream() throws Exception
+  {
+    // given
+    RemoteConsoleConfig config = config();
+    config.setCompressionLevel(0);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+    try (Socket client = connect()) {
+      awaitClients(1);
+      command(client, "DEFLATE");
+
+      // when
+      writer.write(event("Plain message."), layout);
+
+      // then
+      assertThat(readLine(client.getInputStream()), equalTo("Plain message."));
+      assertThat(writer.getCompressionStats(), empty());
+    }
+  }
+
+  @Test
+  public void GivenCollector_WhenWriteEvents_ThenPushSequencedFrames() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (ServerSocket collector = collector(0)) {
+      RemoteConsoleConfig config = config();
+      config.setCollector("localhost:" + collector.getLocalPort());
+      writer = new RemoteConsoleWriter(config);
+      writer.write(event("Message before connect."), layout);
+
+      try (Socket connection = accept(collector)) {
+        DataInputStream input = new DataInputStream(connection.getInputStream());
+        assertThat(readLine(input), startsWith("PUSH "));
+        command(connection, "ACK -1");
+
+        // when
+        writer.write(event("Message after connect."), layout);
+
+        // then
+        List<Long> sequences = new ArrayList<>();
+        assertThat(pushed(input, sequences), equalTo("Message before connect.\r\n"));
+        assertThat(pushed(input, sequences), equalTo("Message after connect.\r\n"));
+        assertThat(sequences.get(0), greaterThanOrEqualTo(0L));
+        assertThat(sequences.get(1), greaterThan(sequences.get(0)));
+        assertThat(writer.getPort(), equalTo(-1));
+      }
+    }
+  }
+
+  @Test
+  public void GivenAcknowledgedSequence_WhenReconnect_ThenResumeWithoutDuplicates() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (ServerSocket collector = collector(0)) {
+      RemoteConsoleConfig config = config();
+      config.setCollector("localhost:" + collector.getLocalPort());
+      config.setReconnectDelay(10);
+      writer = new RemoteConsoleWriter(config);
+      for(int i = 1; i <= 3; ++i) {
+        writer.write(event("Message " + i + "."), layout);
+      }
+
+      List<Long> sequences = new ArrayList<>();
+      String push;
+      try (Socket connection = accept(collector)) {
+        DataInputStream input = new DataInputStream(connection.getInputStream());
+        push = readLine(input);
+        command(connection, "ACK -1");
+        for(int i = 1; i <= 3; ++i) {
+          assertThat(pushed(input, sequences), equalTo("Message " + i + ".\r\n"));
+        }
+      }
+
+      // when
+      writer.write(event("Message 4."), layout);
+
+      // then
+      try (Socket connection = accept(collector)) {
+        DataInputStream input = new DataInputStream(connection.getInputStream());
+        assertThat(readLine(input), equalTo(push));
+        command(connection, "ACK " + sequences.get(1));
+        assertThat(pushed(input, sequences), equalTo("Message 3.\r\n"));
+        assertThat(pushed(input, sequences), equalTo("Message 4.\r\n"));
+        assertThat(sequences.get(3), equalTo(sequences.get(2)));
+        assertThat(sequences.get(4), greaterThan(sequences.get(2)));
+      }
+    }
+  }
+
+  @Test
+  public void GivenJournalOverwritten_WhenCollectorConnects_ThenReportDroppedRecords() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (ServerSocket collector = collector(0)) {
+      RemoteConsoleConfig config = config();
+      config.setCollector("localhost:" + collector.getLocalPort());
+      config.setJournalSize(SpillJournal.MIN_CAPACITY);
+      config.setDropReportPeriod(10);
+      writer = new RemoteConsoleWriter(config);
+      for(int i = 0; i < 2000; ++i) {
+        writer.write(event(String.format("Message %04d.", i)), layout);
+      }
+
+      try (Socket connection = accept(collector)) {
+        DataInputStream input = new DataInputStream(connection.getInputStream());
+        assertThat(readLine(input), startsWith("PUSH "));
+
+        // when
+        command(connection, "ACK -1");
+
+        // then
+        List<Long> sequences = new ArrayList<>();
+        long droppedCount = 0;
+        int receivedCount = 0;
+        String last = null;
+        while(droppedCount + receivedCount < 2000) {
+          String text = pushed(input, sequences);
+          if(sequences.get(sequences.size() - 1) == -1L) {
+            Matcher matcher = Pattern.compile("\\[remote console\\] (\\d+) messages dropped: INFO=\\1\r\n").matcher(text);
+            assertThat(text, matcher.matches(), equalTo(true));
+            droppedCount += Long.parseLong(matcher.group(1));
+            continue;
+          }
+          ++receivedCount;
+          last = text;
+        }
+        assertThat(droppedCount, greaterThan(0L));
+        assertThat(last, equalTo("Message 1999.\r\n"));
+      }
+    }
+  }
+
+  @Test
+  public void GivenSlowCollector_WhenJournalLapsCollector_ThenReportDroppedRecords() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (ServerSocket collector = new ServerSocket()) {
+      collector.setReceiveBufferSize(4096);
+      collector.bind(new InetSocketAddress("localhost", 0));
+      collector.setSoTimeout(TIMEOUT);
+      RemoteConsoleConfig config = config();
+      config.setCollector("localhost:" + collector.getLocalPort());
+      config.setJournalSize(SpillJournal.MIN_CAPACITY);
+      config.setDropReportPeriod(10);
+      writer = new RemoteConsoleWriter(config);
+
+      try (Socket connection = accept(collector)) {
+        DataInputStream input = new DataInputStream(connection.getInputStream());
+        assertThat(readLine(input), startsWith("PUSH "));
+        command(connection, "ACK -1");
+
+        // when
+        int count = 200000;
+        for(int i = 0; i < count; ++i) {
+          writer.write(event(String.format("Message %06d.", i)), layout);
+          if(i % 1000 == 0) {
+            // let I/O thread drain messages buffer into journal
+            Thread.sleep(1);
+          }
+        }
+        Thread.sleep(500);
+
+        // then
+        List<Long> sequences = new ArrayList<>();
+        long droppedCount = 0;
+        int receivedCount = 0;
+        while(droppedCount + receivedCount < count) {
+          String text = pushed(input, sequences);
+          if(sequences.get(sequences.size() - 1) == -1L) {
+            Matcher matcher = Pattern.compile("\\[remote console\\] (\\d+) messages dropped: INFO=\\1\r\n").matcher(text);
+            assertThat(text, matcher.matches(), equalTo(true));
+            droppedCount += Long.parseLong(matcher.group(1));
+            continue;
+          }
+          ++receivedCount;
+        }
+        assertThat(droppedCount, greaterThan(0L));
+        assertThat(droppedCount + receivedCount, equalTo((long)count));
+      }
+    }
+  }
+
+  @Test
+  public void GivenCollectorDown_WhenCollectorStarts_ThenConnectWithBackoff() throws Exception
+  {
+    // given
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    RemoteConsoleConfig config = config();
+    config.setCollector("localhost:" + port);
+    config.setReconnectDelay(10);
+    config.setMaxReconnectDelay(100);
+    writer = new RemoteConsoleWriter(config);
+    PatternLayout layout = layout("%m%n");
+    writer.write(event("Message while collector down."), layout);
+    Thread.sleep(200);
+
+    // when
+    try (ServerSocket collector = collector(port); Socket connection = accept(collector)) {
+      DataInputStream input = new DataInputStream(connection.getInputStream());
+      assertThat(readLine(input), startsWith("PUSH "));
+      command(connection, "ACK -1");
+
+      // then
+      assertThat(pushed(input, new ArrayList<>()), equalTo("Message while collector down.\r\n"));
+    }
+  }
+
+  @Test
+  public void GivenDatagramTarget_WhenWriteEvents_ThenPackRecordsInSequencedPackets() throws Exception
+  {
+    // given
+    PatternLayout layout = layout("%m%n");
+    try (DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+      receiver.setSoTimeout(TIMEOUT);
+      RemoteConsoleConfig config = config();
+      config.setDatagram("localhost:" + receiver.getLocalPort());
+      config.setPacketSize(512);
+      writer = new RemoteConsoleWriter(config);
+
+      // when
+      for(int i = 0; i < 50; ++i) {
+        writer.write(event(String.format("Datagram message %02d.", i)), layout);
+      }
+      char[] large = new char[2000];
+      Arrays.fill(large, 'x');
+      writer.write(event(new String(large)), layout);
+
+      // then
+      List<String> messages = new ArrayList<>();
+      long sequence = 0;
+      DatagramPacket datagram = new DatagramPacket(new byte[DatagramPacker.MAX_PACKET_SIZE], DatagramPacker.MAX_PACKET_SIZE);
+      while(messages.size() < 51) {
+        receiver.receive(datagram);
+        ByteBuffer packet = ByteBuffer.wrap(datagram.getData(), 0, datagram.getLength());
+        packet.getLong();
+        assertThat(packet.getLong(), equalTo(sequence++));
+        if(messages.size() < 50) {
+          assertThat(datagram.getLength(), lessThanOrEqualTo(512));
+        }
+        while(packet.hasRemaining()) {
+          int end = (packet.getShort() & 0xFFFF) + packet.position();
+          int textStart = ConsoleRecord.getTextStart(packet);
+          messages.add(new String(datagram.getData(), textStart, end - textStart - 2, StandardCharsets.UTF_8));
+          packet.position(end);
+        }
+      }
+      assertThat(sequence, greaterThan(2L));
+      for(int i = 0; i < 50; ++i) {
+        assertThat(messages.get(i), equalTo(String.format("Datagram message %02d.", i)));
+      }
+      assertThat(messages.get(50), equalTo(new String(large)));
+    }
+  }
+
+  /** Close default writer and return configuration for a replacement writer listening on ephemeral port. */
+  private RemoteConsoleConfig config() throws IOException
+  {
+    writer.close();
+    RemoteConsoleConfig config = new RemoteConsoleConfig();
+    config.setPort(0);
+    return config;
+  }
+
+  private List<String> messages()
+  {
+    return messages(Lane.NORMAL);
+  }
+
+  private List<String> messages(Lane lane)
+  {
+    List<String> messages = new ArrayList<>();
+    writer.getRing(lane).read(record -> {
+      record.position(ConsoleRecord.getTextStart(record));
+      byte[] bytes = new byte[record.remaining()];
+      record.get(bytes);
+      messages.add(new String(bytes, StandardCharsets.UTF_8));
+    }, Integer.MAX_VALUE);
+    return messages;
+  }
+
+  private static LogEvent event(String message)
+  {
+    return event(Level.INFO, message);
+  }
+
+  private static LogEvent event(long time, String message)
+  {
+    return Log4jLogEvent.newBuilder().setLevel(Level.INFO).setTimeMillis(time).setThreadName("main").setMessage(new SimpleMessage(message)).build();
+  }
+
+  private static LogEvent event(Level level, String logger, String user, String message)
+  {
+    return Log4jLogEvent.newBuilder().setLevel(level).setLoggerName(logger).setThreadName("main") //
+        .setContextData(new SortedArrayStringMap(Collections.singletonMap("user", user))).setMessage(new SimpleMessage(message)).build();
+  }
+
+  /**
+   * Decode next compact stream event, reading bytes from socket as needed. Stream position is the number of consumed
+   * bytes and its limit the number of received bytes.
+   */
+  private static boolean next(CompactDecoder decoder, DataInputStream input, ByteBuffer stream) throws IOException
+  {
+    while(!decoder.next(stream)) {
+      int b = input.read();
+      if(b == -1) {
+        return false;
+      }
+      stream.limit(stream.limit() + 1);
+      stream.put(stream.limit() - 1, (byte)b);
+    }
+    return true;
+  }
+
+  /** Read a line from input stream, byte by byte so that bytes following line are not consumed. */
+  private static String readLine(InputStream input) throws IOException
+  {
+    StringBuilder line = new StringBuilder();
+    for(int b = input.read(); b != -1 && b != '\n'; b = input.read()) {
+      if(b != '\r') {
+        line.append((char)b);
+      }
+    }
+    return line.toString();
+  }
+
+  /** Read a push mode frame, add its sequence number to given list and return record text. */
+  private static String pushed(DataInputStream input, List<Long> sequences) throws IOException
+  {
+    byte[] record = new byte[input.readInt() - 8];
+    sequences.add(input.readLong());
+    input.readFully(record);
+    int textStart = ConsoleRecord.getTextStart(ByteBuffer.wrap(record));
+    return new String(record, textStart, record.length - textStart, StandardCharsets.UTF_8);
+  }
+
+  private static String field(ByteBuffer record, int field)
+  {
+    return new String(record.array(), ConsoleRecord.getFieldStart(record, field), ConsoleRecord.getFieldLength(record, field), StandardCharsets.UTF_8);
+  }
+
+  /** Send command line to remote console writer and give I/O thread time to process it. */
+  private static void command(Socket socket, String command) throws IOException, InterruptedException
+  {
+    socket.getOutputStream().write((command + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    socket.getOutputStream().flush();
+    Thread.sleep(200);
+  }
+
+  private static LogEvent event(Level level, String message)
+  {
+    return Log4jLogEvent.newBuilder().setLevel(level).setThreadName("main").setMessage(new SimpleMessage(message)).build();
+  }
+
+  private static PatternLayout layout(String pattern)
+  {
+    return PatternLayout.newBuilder().withPattern(pattern).withCharset(StandardCharsets.UTF_8).build();
+  }
+
+  private Socket connect() throws IOException
+  {
+    Socket socket = new Socket();
+    socket.connect(new InetSocketAddress("localhost", writer.getPort()), TIMEOUT);
+    socket.setSoTimeout(TIMEOUT);
+    return socket;
+  }
+
+  private static ServerSocket collector(int port) throws IOException
+  {
+    ServerSocket collector = new ServerSocket();
+    collector.setReuseAddress(true);
+    collector.bind(new InetSocketAddress("localhost", port));
+    collector.setSoTimeout(TIMEOUT);
+    return collector;
+  }
+
+  private static Socket accept(ServerSocket collector) throws IOException
+  {
+    Socket socket = collector.accept();
+    socket.setSoTimeout(TIMEOUT);
+    return socket;
+  }
+
+  private void awaitClients(int count) throws InterruptedException
+  {
+    long start = System.currentTimeMillis();
+    while(writer.getClientsCount() < count && System.currentTimeMillis() - start < TIMEOUT) {
+      Thread.sleep(10);
+    }
+    assertThat(writer.getClientsCount(), equalTo(count));
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException
+  {
+    return new BufferedReader(new InputStreamReader(socket.getInputStream()));
   }
 }
@@ -0,0 +1,134 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Render budgets are configured by test <code>log4j2.component.properties</code>: argument budget is 100 characters and
+ * message budget is 200 characters.
+ */
+public class RenderBudgetTest
+{
+  @Test
+  public void GivenBudgets_WhenLoad_ThenTestConfiguration()
+  {
+    assertThat(RenderBudget.MAX_ARGUMENT_LENGTH, equalTo(100));
+    assertThat(RenderBudget.MAX_MESSAGE_LENGTH, equalTo(200));
+    assertThat(RenderBudget.MAX_ITEMS, equalTo(3));
+  }
+
+  @Test
+  public void GivenLargeArgument_WhenAppendArgument_ThenTruncateWithEllipsis()
+  {
+    // given
+    StringBuilder builder = new StringBuilder("Value: ");
+    long truncations = RenderBudget.getTruncationsCount();
+
+    // when
+    RenderBudget.appendArgument(builder, repeat('x', 1000));
+
+    // then
+    assertThat(builder.length(), equalTo(7 + 100));
+    assertThat(builder.toString(), equalTo("Value: " + repeat('x', 97) + "..."));
+    assertThat(RenderBudget.getTruncationsCount(), equalTo(truncations + 1));
+  }
+
+  @Test
+  public void GivenArgumentWithinBudget_WhenAppendArgument_ThenNotTruncated()
+  {
+    // given
+    StringBuilder builder = new StringBuilder();
+    long truncations = RenderBudget.getTruncationsCount();
+
+    // when
+    RenderBudget.appendArgument(builder, repeat('x', 100));
+
+    // then
+    assertThat(builder.toString(), equalTo(repeat('x', 100)));
+    assertThat(RenderBudget.getTruncationsCount(), equalTo(truncations));
+  }
+
+  @Test
+  public void GivenSurrogatePairOnCutPoint_WhenAppendArgument_ThenKeepPairWhole()
+  {
+    // given
+    StringBuilder builder = new StringBuilder();
+    // surrogate pair occupies positions 96 and 97, cut point is 97
+    String value = repeat('x', 96) + "\uD83D\uDE00" + repeat('x', 100);
+
+    // when
+    RenderBudget.appendArgument(builder, value);
+
+    // then
+    assertThat(builder.toString(), equalTo(repeat('x', 96) + "..."));
+  }
+
+  @Test
+  public void GivenLargeMessage_WhenTruncateMessage_ThenTruncateFromStart()
+  {
+    // given
+    StringBuilder builder = new StringBuilder("prefix");
+    builder.append(repeat('m', 500));
+
+    // when
+    RenderBudget.truncateMessage(builder, 6);
+
+    // then
+    assertThat(builder.toString(), equalTo("prefix" + repeat('m', 197) + "..."));
+  }
+
+  @Test
+  public void GivenLargeArguments_WhenRender_ThenArgumentBudget()
+  {
+    // given
+    List<String> items = new ArrayList<>(Collections.nCopies(1000, repeat('i', 60)));
+    long[] numbers = new long[1000];
+
+    // when
+    String collection = render(items);
+    String array = render(numbers);
+    String value = render(new StringBuilder(repeat('s', 1000)));
+
+    // then
+    assertThat(collection.length(), equalTo(100));
+    assertThat(collection, startsWith("[iii"));
+    assertThat(array, equalTo("[0,0,0,...]"));
+    assertThat(value.length(), equalTo(100));
+  }
+
+  @Test
+  public void GivenLargeArgument_WhenLogMessage_ThenMessageBudget()
+  {
+    // given
+    StringBuilder builder = new StringBuilder();
+    String argument = repeat('a', 90);
+
+    // when
+    LogImpl.message(builder, "{} {} {} {}", argument, argument, argument, argument);
+
+    // then
+    assertThat(builder.length(), equalTo(200));
+    assertThat(builder.toString(), equalTo(argument + " " + argument + " " + repeat('a', 15) + "..."));
+  }
+
+  private static String render(Object argument)
+  {
+    StringBuilder builder = new StringBuilder();
+    ArgumentRenderers.render(builder, argument);
+    return builder.toString();
+  }
+
+  private static String repeat(char c, int count)
+  {
+    char[] chars = new char[count];
+    java.util.Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
@@ -0,0 +1,170 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RingBufferTest
+{
+  @Test
+  public void GivenCapacity_WhenCreate_ThenPowerOfTwo()
+  {
+    assertThat(new RingBuffer(0, false).getCapacity(), equalTo(RingBuffer.MIN_CAPACITY));
+    assertThat(new RingBuffer(5000, false).getCapacity(), equalTo(8192));
+    assertThat(new RingBuffer(8192, true).getCapacity(), equalTo(8192));
+    assertThat(new RingBuffer(8192, true).isDirect(), equalTo(true));
+  }
+
+  @Test
+  public void GivenPublishedRecords_WhenRead_ThenPublishingOrder()
+  {
+    // given
+    RingBuffer ring = new RingBuffer(1024, false);
+    ByteBuffer source = bytes("first");
+    ring.offer(source);
+    ring.offer(bytes("second"));
+
+    // when
+    List<String> records = read(ring);
+
+    // then
+    assertThat(records, contains("first", "second"));
+    assertThat(source.position(), equalTo(0));
+    assertThat(ring.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  public void GivenFullBuffer_WhenOffer_ThenFalse()
+  {
+    // given
+    RingBuffer ring = new RingBuffer(1024, false);
+    for(int i = 0; i < 1024 / RingBuffer.ALIGNMENT; ++i) {
+      assertThat(ring.offer(bytes("record")), equalTo(true));
+    }
+
+    // when
+    boolean offered = ring.offer(bytes("record"));
+
+    // then
+    assertThat(offered, equalTo(false));
+    assertThat(ring.size(), equalTo(1024));
+  }
+
+  @Test
+  public void GivenRecordLargerThanMaximum_WhenOffer_ThenFalse()
+  {
+    RingBuffer ring = new RingBuffer(1024, false);
+    assertThat(ring.offer(ByteBuffer.allocate(ring.getMaxRecordLength() + 1)), equalTo(false));
+    assertThat(ring.offer(ByteBuffer.allocate(0)), equalTo(false));
+    assertThat(ring.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  public void GivenRecordNotFittingStorageEnd_WhenOffer_ThenWrapWithPadding()
+  {
+    // given
+    RingBuffer ring = new RingBuffer(1024, true);
+    String record = repeat('a', 100);
+    // 7 records of 128 aligned bytes leave 128 bytes at storage end
+    for(int i = 0; i < 7; ++i) {
+      ring.offer(bytes(record));
+    }
+    read(ring);
+    ring.offer(bytes(repeat('b', 100)));
+
+    // when
+    boolean offered = ring.offer(bytes(repeat('c', 120)));
+    List<String> records = read(ring);
+
+    // then
+    assertThat(offered, equalTo(true));
+    assertThat(records, contains(repeat('b', 100), repeat('c', 120)));
+    assertThat(ring.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  public void GivenConcurrentProducers_WhenRead_ThenAllRecordsInProducerOrder() throws InterruptedException
+  {
+    // given
+    final int producersCount = 4;
+    final int recordsCount = 20000;
+    RingBuffer ring = new RingBuffer(16 * 1024, false);
+
+    Thread[] producers = new Thread[producersCount];
+    for(int i = 0; i < producersCount; ++i) {
+      final int producer = i;
+      producers[i] = new Thread(() -> {
+        ByteBuffer record = ByteBuffer.allocate(8);
+        for(int sequence = 0; sequence < recordsCount;) {
+          record.clear();
+          record.putInt(producer).putInt(sequence).flip();
+          if(ring.offer(record)) {
+            ++sequence;
+          }
+          else {
+            Thread.yield();
+          }
+        }
+      });
+    }
+
+    // when
+    for(Thread producer : producers) {
+      producer.start();
+    }
+    int[] sequences = new int[producersCount];
+    AtomicInteger errors = new AtomicInteger();
+    int total = 0;
+    long start = System.currentTimeMillis();
+    while(total < producersCount * recordsCount && System.currentTimeMillis() - start < 10000) {
+      total += ring.read(record -> {
+        int producer = record.getInt();
+        int sequence = record.getInt();
+        if(sequences[producer]++ != sequence) {
+          errors.incrementAndGet();
+        }
+      }, Integer.MAX_VALUE);
+    }
+    for(Thread producer : producers) {
+      producer.join();
+    }
+
+    // then
+    assertThat(total, equalTo(producersCount * recordsCount));
+    assertThat(errors.get(), equalTo(0));
+    assertThat(ring.isEmpty(), equalTo(true));
+  }
+
+  private static List<String> read(RingBuffer ring)
+  {
+    List<String> records = new ArrayList<>();
+    ring.read(record -> {
+      byte[] bytes = new byte[record.remaining()];
+      record.get(bytes);
+      records.add(new String(bytes, StandardCharsets.UTF_8));
+    }, Integer.MAX_VALUE);
+    return records;
+  }
+
+  private static ByteBuffer bytes(String value)
+  {
+    return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String repeat(char c, int count)
+  {
+    StringBuilder builder = new StringBuilder();
+    for(int i = 0; i < count; ++i) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,158 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillJournalTest
+{
+  private File file;
+  private SpillJournal journal;
+
+  @Before
+  public void beforeTest() throws IOException
+  {
+    file = File.createTempFile("remote-console", ".journal");
+    journal = new SpillJournal(file, SpillJournal.MIN_CAPACITY);
+  }
+
+  @After
+  public void afterTest() throws IOException
+  {
+    journal.close();
+    file.delete();
+  }
+
+  @Test
+  public void GivenAppendedRecords_WhenRead_ThenAppendOrder()
+  {
+    // given
+    journal.append(record(1000, "first"));
+    journal.append(record(2000, "second"));
+
+    // when
+    List<String> records = read(journal.getHead());
+
+    // then
+    assertThat(records, contains("first", "second"));
+  }
+
+  @Test
+  public void GivenFullJournal_WhenAppend_ThenOverwriteOldest()
+  {
+    // given
+    String text = repeat('x', 1000);
+    int count = 3 * journal.getCapacity() / 1000;
+
+    // when
+    for(int i = 0; i < count; ++i) {
+      journal.append(record(i, String.format("%04d%s", i, text)));
+    }
+    List<String> records = read(journal.getHead());
+
+    // then
+    assertThat(journal.getTail() - journal.getHead(), lessThanOrEqualTo((long)journal.getCapacity()));
+    assertThat(records.get(records.size() - 1).substring(0, 4), equalTo(String.format("%04d", count - 1)));
+    for(int i = 1; i < records.size(); ++i) {
+      int previous = Integer.parseInt(records.get(i - 1).substring(0, 4));
+      assertThat(Integer.parseInt(records.get(i).substring(0, 4)), equalTo(previous + 1));
+    }
+  }
+
+  @Test
+  public void GivenTimestamps_WhenSeek_ThenNoNewerRecordBeforePosition() throws IOException
+  {
+    // given
+    journal.close();
+    journal = new SpillJournal(file, 1024 * 1024);
+    String text = repeat('x', 500);
+    for(int i = 0; i < 1000; ++i) {
+      journal.append(record(i, String.format("%04d%s", i, text)));
+    }
+
+    // when
+    long position = journal.seek(900);
+
+    // then
+    List<String> records = read(position);
+    assertThat(records.size(), lessThan(100 + SpillJournal.INDEX_INTERVAL / 500));
+    assertThat(records.get(records.size() - 1).substring(0, 4), equalTo("0999"));
+    for(long p = journal.first(journal.getHead()); p < position; p = journal.next(p)) {
+      assertThat(ConsoleRecord.getTime(journal.get(p)), lessThan(900L));
+    }
+  }
+
+  /** Memory mappings are listed by Linux proc file system; test is skipped on other systems. */
+  @Test
+  public void GivenMappedJournal_WhenClose_ThenReleaseMapping() throws IOException
+  {
+    // given
+    File maps = new File("/proc/self/maps");
+    assumeTrue(maps.exists());
+    String path = file.getCanonicalPath();
+    assertThat(new String(Files.readAllBytes(Paths.get(maps.getPath())), StandardCharsets.UTF_8), containsString(path));
+
+    // when
+    journal.close();
+
+    // then
+    assertThat(new String(Files.readAllBytes(Paths.get(maps.getPath())), StandardCharsets.UTF_8), not(containsString(path)));
+  }
+
+  @Test
+  public void GivenRecordLargerThanMaximum_WhenAppend_ThenFalse()
+  {
+    assertThat(journal.append(record(0, repeat('x', journal.getMaxRecordLength()))), equalTo(false));
+    assertThat(journal.getTail(), equalTo(0L));
+  }
+
+  private List<String> read(long position)
+  {
+    List<String> records = new ArrayList<>();
+    for(position = journal.first(position); position < journal.getTail(); position = journal.next(position)) {
+      ByteBuffer record = journal.get(position);
+      record.position(ConsoleRecord.getTextStart(record));
+      byte[] bytes = new byte[record.remaining()];
+      record.get(bytes);
+      records.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return records;
+  }
+
+  private static ByteBuffer record(long time, String text)
+  {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(ConsoleRecord.FIXED_LENGTH + bytes.length);
+    ConsoleRecord.putHeader(record, ConsoleRecord.code(Level.INFO), time, "", "", "");
+    record.put(bytes).flip();
+    return record;
+  }
+
+  private static String repeat(char c, int count)
+  {
+    StringBuilder builder = new StringBuilder();
+    for(int i = 0; i < count; ++i) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
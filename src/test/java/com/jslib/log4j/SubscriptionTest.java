@@ -0,0 +1,91 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.logging.log4j.Level;
+import org.junit.Test;
+
+public class SubscriptionTest
+{
+  @Test
+  public void GivenNoArguments_WhenAccept_ThenTrue()
+  {
+    Subscription subscription = Subscription.parse("");
+    assertThat(subscription.accept(record(Level.TRACE, "com.jslib.api.Service", "")), equalTo(true));
+  }
+
+  @Test
+  public void GivenLevel_WhenAccept_ThenAtLeastAsSevere()
+  {
+    // given
+    Subscription subscription = Subscription.parse("level=WARN");
+
+    // then
+    assertThat(subscription.accept(record(Level.ERROR, "", "")), equalTo(true));
+    assertThat(subscription.accept(record(Level.WARN, "", "")), equalTo(true));
+    assertThat(subscription.accept(record(Level.INFO, "", "")), equalTo(false));
+  }
+
+  @Test
+  public void GivenLoggerPrefixes_WhenAccept_ThenMatchAnyPrefix()
+  {
+    // given
+    Subscription subscription = Subscription.parse("logger=com.jslib.api,com.jslib.rmi");
+
+    // then
+    assertThat(subscription.accept(record(Level.INFO, "com.jslib.api.Service", "")), equalTo(true));
+    assertThat(subscription.accept(record(Level.INFO, "com.jslib.rmi.Client", "")), equalTo(true));
+    assertThat(subscription.accept(record(Level.INFO, "com.jslib.log4j.Appender", "")), equalTo(false));
+    assertThat(subscription.accept(record(Level.INFO, "com.jslib", "")), equalTo(false));
+  }
+
+  @Test
+  public void GivenContextEntry_WhenAccept_ThenMatchWholeEntry()
+  {
+    // given
+    Subscription subscription = Subscription.parse("mdc=user=john");
+
+    // then
+    assertThat(subscription.accept(record(Level.INFO, "", "session=1\nuser=john\n")), equalTo(true));
+    assertThat(subscription.accept(record(Level.INFO, "", "user=johnny\n")), equalTo(false));
+    assertThat(subscription.accept(record(Level.INFO, "", "superuser=john\n")), equalTo(false));
+    assertThat(subscription.accept(record(Level.INFO, "", "")), equalTo(false));
+  }
+
+  @Test
+  public void GivenAllCriteria_WhenAccept_ThenAllMustMatch()
+  {
+    // given
+    Subscription subscription = Subscription.parse(" level=INFO  logger=com.jslib mdc=user=john ");
+
+    // then
+    assertThat(subscription.accept(record(Level.INFO, "com.jslib.api", "user=john\n")), equalTo(true));
+    assertThat(subscription.accept(record(Level.DEBUG, "com.jslib.api", "user=john\n")), equalTo(false));
+    assertThat(subscription.accept(record(Level.INFO, "org.apache", "user=john\n")), equalTo(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void GivenInvalidLevel_WhenParse_ThenException()
+  {
+    Subscription.parse("level=LOUD");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void GivenUnknownArgument_WhenParse_ThenException()
+  {
+    Subscription.parse("thread=main");
+  }
+
+  private static ByteBuffer record(Level level, String logger, String context)
+  {
+    byte[] text = "Message.\r\n".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(ConsoleRecord.headerLength(logger, "main", context) + text.length);
+    ConsoleRecord.putHeader(record, ConsoleRecord.code(level), 0, logger, "main", context);
+    record.put(text).flip();
+    return record;
+  }
+}
@@ -0,0 +1,54 @@
+package com.jslib.log4j;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class Utf8Test
+{
+  @Test
+  public void GivenMixedCharacters_WhenEncode_ThenStandardUtf8()
+  {
+    assertEncoding("");
+    assertEncoding("ASCII text.");
+    assertEncoding("Caf\u00e9 \u0436 \u20ac \uD83D\uDE00 end");
+  }
+
+  @Test
+  public void GivenMalformedSurrogates_WhenEncode_ThenQuestionMark()
+  {
+    assertEncoding("high \uD83D alone");
+    assertEncoding("low \uDE00 alone");
+    assertEncoding("trailing \uD83D");
+  }
+
+  @Test
+  public void GivenRange_WhenEncode_ThenOnlyRangeEncoded()
+  {
+    // given
+    String text = "<\u20ac>";
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+
+    // when
+    int length = Utf8.length(text, 1, 2);
+    Utf8.encode(text, 1, 2, buffer);
+
+    // then
+    assertThat(length, equalTo(3));
+    assertThat(buffer.position(), equalTo(3));
+  }
+
+  private static void assertEncoding(String text)
+  {
+    byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+    assertThat(Utf8.length(text, 0, text.length()), equalTo(expected.length));
+
+    ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+    Utf8.encode(text, 0, text.length(), buffer);
+    assertThat(buffer.array(), equalTo(expected));
+  }
+}